@@ -1,19 +1,38 @@
 package mrp;
 
 import mrp.auth.TokenManager;
+import mrp.cache.IntKeyCache;
+import mrp.cache.ResultCache;
+import mrp.cache.UserCache;
+import mrp.cache.Version;
 import mrp.controller.RatingController;
 import mrp.controller.UserController;
 import mrp.controller.MediaController;
 import mrp.controller.LeaderboardController;
+import mrp.controller.MetricsController;
+import mrp.controller.ImportController;
 import mrp.db.DatabaseManager;
+import mrp.leaderboard.Leaderboard;
+import mrp.metrics.MetricsRegistry;
+import mrp.model.Media;
+import mrp.model.User;
 import mrp.repository.RatingRepository;
 import mrp.repository.UserRepository;
 import mrp.repository.MediaRepository;
+import mrp.repository.MediaRepository.SearchQuery;
+import mrp.server.HttpRequest;
 import mrp.server.HttpServer;
+import mrp.server.NioHttpServer;
+import mrp.server.RequestScope;
 import mrp.server.Router;
+import mrp.server.ServerConfig;
 import mrp.service.RatingService;
 import mrp.service.UserService;
 import mrp.service.MediaService;
+import mrp.service.ImportService;
+import mrp.service.RatingStatsRepairJob;
+
+import java.sql.SQLException;
 
 public class Main {
     public static void main(String[] args) {
@@ -26,38 +45,97 @@ public class Main {
 
         // --- Dependency injection setup ---
 
-        // 1. Media
-        MediaRepository mediaRepository = new MediaRepository(db);
-        MediaService mediaService = new MediaService(mediaRepository);
+        // Leaderboard im Speicher, alle Repositories melden ihre Änderungen dorthin
+        Leaderboard leaderboard = new Leaderboard();
+
+        // 1. Media (getById über den Cache, -Dmrp.cache.mediaSize=0 schaltet ihn ab)
+        IntKeyCache<Media> mediaCache = new IntKeyCache<Media>(Integer.getInteger("mrp.cache.mediaSize", 10_000),
+                Long.getLong("mrp.cache.mediaTtlSeconds", 300) * 1000).registerMetrics("media");
+        // Version der Medienliste für ETags; mit Replikas erst nach mrp.db.readYourWritesMillis gültig
+        Version mediaListVersion = new Version(db.hasReplicas() ? db.getReadYourWritesMillis() : 0);
+        MediaRepository mediaRepository = new MediaRepository(db, mediaCache, leaderboard, mediaListVersion);
+        // Such-Cache: JSON der Trefferlisten, in Bytes begrenzt (-Dmrp.cache.searchBytes=0 schaltet ihn ab)
+        ResultCache<SearchQuery> searchCache = new ResultCache<SearchQuery>(Long.getLong("mrp.cache.searchBytes", 32L << 20),
+                Integer.getInteger("mrp.cache.searchMaxEntryBytes", 1 << 20)).registerMetrics("search");
+        MediaService mediaService = new MediaService(mediaRepository, searchCache);
         MediaController mediaController = new MediaController(mediaService, tokenManager);
 
         // 2. Rating
-        RatingRepository ratingRepository = new RatingRepository(db);
+        RatingRepository ratingRepository = new RatingRepository(db, mediaCache, leaderboard, mediaListVersion);
         RatingService ratingService = new RatingService(ratingRepository, mediaRepository);
         RatingController ratingController = new RatingController(ratingService, tokenManager);
+        // Rating-Aggregate regelmäßig gegen die Ratings prüfen (-Dmrp.db.statsRepairMinutes)
+        new RatingStatsRepairJob(ratingRepository).start();
 
         // 3. User (mediaService und ratingService mitgeben)
-        UserRepository userRepository = new UserRepository(db);
-        UserService userService = new UserService(userRepository, tokenManager);
+        // User-Cache nach Name und ID, unbekannte Namen kurz als negativer Eintrag (-Dmrp.cache.userSize=0 = aus)
+        UserCache userCache = new UserCache(Integer.getInteger("mrp.cache.userSize", 10_000),
+                Long.getLong("mrp.cache.userTtlSeconds", 300) * 1000,
+                Long.getLong("mrp.cache.userNegativeTtlSeconds", 5) * 1000).registerMetrics("user");
+        UserRepository userRepository = new UserRepository(db, leaderboard, userCache);
+        UserService userService = new UserService(userRepository, tokenManager, leaderboard);
         UserController userController = new UserController(userService, tokenManager, mediaService, ratingService);
 
-        // 4. Leaderboard
+        // 4. Leaderboard: einmal aus der DB laden, danach nur noch Deltas
+        try {
+            leaderboard.load(userRepository.getLeaderboard());
+        } catch (SQLException e) {
+            System.err.println("Failed to load leaderboard: " + e.getMessage());
+            throw new RuntimeException(e);
+        }
         LeaderboardController leaderboardController = new LeaderboardController(userService);
 
+        // 5. Bulk import
+        ImportService importService = new ImportService(mediaRepository, ratingRepository);
+        ImportController importController = new ImportController(importService, tokenManager);
+
+        // 6. Metrics
+        MetricsController metricsController = new MetricsController(MetricsRegistry.getInstance());
+
         // --- Set up routing ---
         Router router = new Router();
 
+        // Queries pro Request zählen, Requests über mrp.db.queryBudget loggen
+        router.addRequestScope(new RequestScope() {
+            @Override
+            public Runnable open(HttpRequest request) {
+                return db.trackQueries(request.getMethod(), request.getPath());
+            }
+
+            @Override
+            public void detach() {
+                db.detachQueries();
+            }
+        });
+
+        // Read-Replikas: Lesezugriffe eines Users nach einem Schreib-Request an den Primary (read-your-writes)
+        if (db.hasReplicas()) {
+            router.addRequestScope(new RequestScope() {
+                @Override
+                public Runnable open(HttpRequest request) {
+                    User user = tokenManager.getUserByToken(request.getToken());
+                    if (user == null) return null;
+                    return db.bindUser(user.getId(), !request.getMethod().equals("GET") && !request.getMethod().equals("HEAD"));
+                }
+
+                @Override
+                public void detach() {
+                    db.detachUser();
+                }
+            });
+        }
+
         // Public endpoints (no auth needed)
         router.addRoute("POST", "/api/users/register", userController::register);
         router.addRoute("POST", "/api/users/login", userController::login);
 
         // Protected user endpoints
-        router.addRoute("GET", "/api/users/{username}/profile", userController::getProfile);
+        router.addAsyncRoute("GET", "/api/users/{username}/profile", userController::getProfile);
         router.addRoute("PUT", "/api/users/{username}/profile", userController::updateProfile);
 
         // Media endpoints
         router.addRoute("POST", "/api/media", mediaController::create);
-        router.addRoute("GET", "/api/media/{id}", mediaController::getById);
+        router.addAsyncRoute("GET", "/api/media/{id}", mediaController::getById);
         router.addRoute("GET", "/api/media", mediaController::getAll);
         router.addRoute("PUT", "/api/media/{id}", mediaController::update);
         router.addRoute("DELETE", "/api/media/{id}", mediaController::delete);
@@ -75,11 +153,24 @@ public class Main {
 
         // Leaderboard & Rating History
         router.addRoute("GET", "/api/leaderboard", leaderboardController::getLeaderboard);
+        router.addRoute("GET", "/api/leaderboard/{username}", leaderboardController::getRank);
         router.addRoute("GET", "/api/users/{username}/ratings", userController::getRatingHistory);
         router.addRoute("DELETE", "/api/ratings/{id}", ratingController::delete);
 
+        // Bulk import (body is streamed, not limited by maxBodyBytes)
+        router.addUploadRoute("POST", "/api/import/media", importController::importMedia);
+        router.addUploadRoute("POST", "/api/import/ratings", importController::importRatings);
+
+        // Monitoring (Prometheus)
+        router.addRoute("GET", "/metrics", metricsController::getMetrics);
+
         // --- Start server ---
-        HttpServer server = new HttpServer(9090, router);
-        server.start();
+        // Engine is selected with -Dmrp.server.engine=blocking|nio
+        ServerConfig serverConfig = ServerConfig.fromSystemProperties();
+        if (serverConfig.getEngine() == ServerConfig.Engine.NIO) {
+            new NioHttpServer(serverConfig, router).start();
+        } else {
+            new HttpServer(serverConfig, router).start();
+        }
     }
 }
\ No newline at end of file
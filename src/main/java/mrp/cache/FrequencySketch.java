@@ -0,0 +1,58 @@
+package mrp.cache;
+
+// Approximate access counts for TinyLFU admission: count-min sketch with four 4-bit counters per key
+// (max 15). After sampleSize increments all counters are halved, so old popularity fades out and a key
+// that was hot an hour ago does not block new hot keys forever.
+// Not thread safe, every IntKeyCache segment has its own sketch and uses it under its lock.
+final class FrequencySketch {
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;  // 16 counters of 4 bit per long
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int maximumSize) {
+        int length = Integer.highestOneBit(Math.max(8, maximumSize) - 1) << 1;
+        table = new long[length];
+        mask = length - 1;
+        sampleSize = 10 * Math.max(1, maximumSize);
+    }
+
+    int frequency(int hash) {
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int offset = (start + i) << 2;
+            int count = (int) ((table[indexOf(hash, i)] >>> offset) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    void increment(int hash) {
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int offset = (start + i) << 2;
+            if (((table[index] >>> offset) & 0xfL) != 0xfL) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) reset();
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) table[i] = (table[i] >>> 1) & RESET_MASK;
+        additions /= 2;
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int) h & mask;
+    }
+}
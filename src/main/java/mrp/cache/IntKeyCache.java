@@ -0,0 +1,423 @@
+package mrp.cache;
+
+import mrp.metrics.MetricsRegistry;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+// In-process cache for rows looked up by their int id, keys are never boxed.
+// Eviction is W-TinyLFU: new entries go into a small LRU window (1%); when it overflows, its oldest entry
+// only gets into the main area (SLRU: probation + protected) if it was requested more often than the entry it
+// would replace, according to a FrequencySketch that also counts misses. One-off lookups (crawlers, scans over
+// all ids) therefore cannot push out the popular entries, which a plain LRU would do.
+// Entries also expire after ttl, as a bound for changes the owner cannot invalidate (manual SQL).
+//
+// The key space is split into segments with their own lock, table, queues and sketch; a lookup only holds
+// its segment's lock for a few pointer updates (ReentrantLock, not synchronized: no pinning of virtual threads).
+public final class IntKeyCache<V> {
+
+    @FunctionalInterface
+    public interface Loader<V> {
+        // null = nothing found, not cached
+        V load(int key) throws SQLException;
+    }
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private static final class Node<V> {
+        final int key;
+        V value;
+        long expiresAt;
+        int queue;
+        Node<V> prev;
+        Node<V> next;
+        Node<V> chain;  // next node in the same table bucket
+
+        Node(int key) {
+            this.key = key;
+        }
+    }
+
+    private final Segment<V>[] segments;
+    private final int segmentMask;
+    private final long ttlNanos;     // <= 0: no expiry
+    private final LongSupplier clock;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // maximumSize 0 = disabled: nothing is stored, getOrLoad always loads
+    public IntKeyCache(int maximumSize, long ttlMillis) {
+        this(maximumSize, ttlMillis, System::nanoTime);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})  // generic arrays (Segment[], Node[]) can only be created raw
+    IntKeyCache(int maximumSize, long ttlMillis, LongSupplier clock) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.clock = clock;
+        // about 64 entries per segment at least, so the window and the sketch still work per segment
+        int count = Math.max(1, Integer.highestOneBit(Math.min(16, Math.max(1, maximumSize / 64))));
+        this.segments = new Segment[count];
+        this.segmentMask = count - 1;
+        int perSegment = maximumSize <= 0 ? 0 : (maximumSize + count - 1) / count;
+        for (int i = 0; i < count; i++) segments[i] = new Segment<>(perSegment, ttlNanos, evictions);
+    }
+
+    // hit, miss and eviction counters + size as mrp_cache_* with label cache=name
+    public IntKeyCache<V> registerMetrics(String name) {
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        String cache = MetricsRegistry.label("cache", name);
+        metrics.counter("mrp_cache_requests_total", "Cache lookups by result",
+                cache + "," + MetricsRegistry.label("result", "hit"), hits::sum);
+        metrics.counter("mrp_cache_requests_total", "Cache lookups by result",
+                cache + "," + MetricsRegistry.label("result", "miss"), misses::sum);
+        metrics.counter("mrp_cache_evictions_total", "Entries dropped to stay within the size limit or expired",
+                cache, evictions::sum);
+        metrics.gauge("mrp_cache_size", "Entries in the cache", cache, this::size);
+        return this;
+    }
+
+    private static int spread(int key) {
+        int h = key * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private Segment<V> segmentFor(int hash) {
+        return segments[(hash >>> 28) & segmentMask];
+    }
+
+    public V get(int key) {
+        int hash = spread(key);
+        V value = segmentFor(hash).get(key, hash, clock.getAsLong(), true);
+        if (value != null) hits.increment();
+        else misses.increment();
+        return value;
+    }
+
+    // Only a hit counts (as hit and as access), for a fast path in front of getOrLoad, which then counts the miss
+    public V getIfPresent(int key) {
+        int hash = spread(key);
+        V value = segmentFor(hash).get(key, hash, clock.getAsLong(), false);
+        if (value != null) hits.increment();
+        return value;
+    }
+
+    public boolean isEnabled() {
+        return segments[0].maxSize > 0;
+    }
+
+    // Read-through: cached value, or loaded and cached. The load runs without holding a lock; if the key is
+    // invalidated while it runs (a write committed meanwhile), the possibly old result is returned but not cached.
+    public V getOrLoad(int key, Loader<V> loader) throws SQLException {
+        int hash = spread(key);
+        Segment<V> segment = segmentFor(hash);
+        long now = clock.getAsLong();
+        V value = segment.get(key, hash, now, true);
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        long generation = segment.generation();
+        value = loader.load(key);
+        if (value != null) segment.put(key, hash, value, clock.getAsLong(), generation);
+        return value;
+    }
+
+    public void put(int key, V value) {
+        int hash = spread(key);
+        segmentFor(hash).put(key, hash, value, clock.getAsLong(), -1);
+    }
+
+    // Call after the change is committed, so a concurrent load either sees the new row or is not cached
+    public void invalidate(int key) {
+        int hash = spread(key);
+        segmentFor(hash).invalidate(key, hash);
+    }
+
+    public void invalidateAll() {
+        for (Segment<V> segment : segments) segment.clear();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) size += segment.size();
+        return size;
+    }
+
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getEvictions() { return evictions.sum(); }
+
+    private static final class Segment<T> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long ttlNanos;
+        private final LongAdder evictions;
+        private final int maxSize;
+        private final int windowMax;
+        private final int mainMax;
+        private final int protectedMax;
+        private final FrequencySketch sketch;
+        private final Node<T> window = sentinel();
+        private final Node<T> probation = sentinel();
+        private final Node<T> protectedQueue = sentinel();
+        private Node<T>[] table;
+        private int size;
+        private int windowSize;
+        private int probationSize;
+        private int protectedSize;
+        private long generation;  // bumped by every invalidation, see getOrLoad
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Segment(int maxSize, long ttlNanos, LongAdder evictions) {
+            this.maxSize = maxSize;
+            this.ttlNanos = ttlNanos;
+            this.evictions = evictions;
+            this.windowMax = Math.max(1, maxSize / 100);
+            this.mainMax = Math.max(0, maxSize - windowMax);
+            this.protectedMax = mainMax * 4 / 5;
+            this.sketch = new FrequencySketch(maxSize);
+            this.table = new Node[Math.max(4, Integer.highestOneBit(Math.max(1, maxSize)) >> 2)];
+        }
+
+        private static <T> Node<T> sentinel() {
+            Node<T> node = new Node<>(0);
+            empty(node);
+            return node;
+        }
+
+        private static <T> void empty(Node<T> queue) {
+            queue.prev = queue;
+            queue.next = queue;
+        }
+
+        T get(int key, int hash, long now, boolean recordMiss) {
+            if (maxSize == 0) return null;
+            lock.lock();
+            try {
+                Node<T> node = find(key, hash);
+                if (node != null || recordMiss) sketch.increment(hash);
+                if (node == null) return null;
+                if (expired(node, now)) {
+                    remove(node);
+                    evictions.increment();
+                    return null;
+                }
+                onHit(node);
+                return node.value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // expectedGeneration -1 = unconditional
+        void put(int key, int hash, T value, long now, long expectedGeneration) {
+            if (maxSize == 0) return;
+            lock.lock();
+            try {
+                if (expectedGeneration >= 0 && expectedGeneration != generation) return;
+                Node<T> node = find(key, hash);
+                if (node != null) {
+                    node.value = value;
+                    node.expiresAt = now + ttlNanos;
+                    return;
+                }
+                node = new Node<>(key);
+                node.value = value;
+                node.expiresAt = now + ttlNanos;
+                node.queue = WINDOW;
+                insert(node, hash);
+                append(window, node);
+                windowSize++;
+                evict(now);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long generation() {
+            lock.lock();
+            try {
+                return generation;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void invalidate(int key, int hash) {
+            lock.lock();
+            try {
+                generation++;
+                Node<T> node = find(key, hash);
+                if (node != null) remove(node);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        void clear() {
+            lock.lock();
+            try {
+                generation++;
+                table = new Node[table.length];
+                empty(window);
+                empty(probation);
+                empty(protectedQueue);
+                size = windowSize = probationSize = protectedSize = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return size;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean expired(Node<T> node, long now) {
+            return ttlNanos > 0 && node.expiresAt - now <= 0;
+        }
+
+        private void onHit(Node<T> node) {
+            switch (node.queue) {
+                case WINDOW -> moveToTail(window, node);
+                case PROBATION -> {
+                    // requested again while on probation: protected from now on
+                    unlink(node);
+                    probationSize--;
+                    node.queue = PROTECTED;
+                    append(protectedQueue, node);
+                    protectedSize++;
+                    if (protectedSize > protectedMax) {
+                        Node<T> demoted = protectedQueue.next;
+                        unlink(demoted);
+                        protectedSize--;
+                        demoted.queue = PROBATION;
+                        append(probation, demoted);
+                        probationSize++;
+                    }
+                }
+                default -> moveToTail(protectedQueue, node);
+            }
+        }
+
+        // Window overflow: its oldest entry competes with the main area's next victim for the place
+        private void evict(long now) {
+            while (windowSize > windowMax) {
+                Node<T> candidate = window.next;
+                unlink(candidate);
+                windowSize--;
+                if (probationSize + protectedSize < mainMax) {
+                    admit(candidate);
+                    continue;
+                }
+                Node<T> victim = probation.next != probation ? probation.next
+                        : protectedQueue.next != protectedQueue ? protectedQueue.next : null;
+                if (victim == null) {
+                    drop(candidate);
+                } else if (expired(victim, now)
+                        || sketch.frequency(spread(candidate.key)) > sketch.frequency(spread(victim.key))) {
+                    remove(victim);
+                    evictions.increment();
+                    admit(candidate);
+                } else {
+                    drop(candidate);
+                }
+            }
+        }
+
+        private void admit(Node<T> node) {
+            node.queue = PROBATION;
+            append(probation, node);
+            probationSize++;
+        }
+
+        // candidate that lost against the victim, already unlinked from its queue
+        private void drop(Node<T> node) {
+            removeFromTable(node);
+            evictions.increment();
+        }
+
+        private void remove(Node<T> node) {
+            unlink(node);
+            switch (node.queue) {
+                case WINDOW -> windowSize--;
+                case PROBATION -> probationSize--;
+                default -> protectedSize--;
+            }
+            removeFromTable(node);
+        }
+
+        private Node<T> find(int key, int hash) {
+            for (Node<T> node = table[hash & (table.length - 1)]; node != null; node = node.chain) {
+                if (node.key == key) return node;
+            }
+            return null;
+        }
+
+        private void insert(Node<T> node, int hash) {
+            if (size >= table.length) resize();
+            int index = hash & (table.length - 1);
+            node.chain = table[index];
+            table[index] = node;
+            size++;
+        }
+
+        private void removeFromTable(Node<T> node) {
+            int index = spread(node.key) & (table.length - 1);
+            Node<T> previous = null;
+            for (Node<T> current = table[index]; current != null; previous = current, current = current.chain) {
+                if (current == node) {
+                    if (previous == null) table[index] = current.chain;
+                    else previous.chain = current.chain;
+                    size--;
+                    return;
+                }
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void resize() {
+            Node<T>[] old = table;
+            table = new Node[old.length * 2];
+            for (Node<T> head : old) {
+                for (Node<T> node = head; node != null; ) {
+                    Node<T> next = node.chain;
+                    int index = spread(node.key) & (table.length - 1);
+                    node.chain = table[index];
+                    table[index] = node;
+                    node = next;
+                }
+            }
+        }
+
+        private void append(Node<T> queue, Node<T> node) {
+            node.prev = queue.prev;
+            node.next = queue;
+            queue.prev.next = node;
+            queue.prev = node;
+        }
+
+        private void unlink(Node<T> node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+        }
+
+        private void moveToTail(Node<T> queue, Node<T> node) {
+            unlink(node);
+            append(queue, node);
+        }
+    }
+}
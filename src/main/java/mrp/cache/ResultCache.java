@@ -0,0 +1,129 @@
+package mrp.cache;
+
+import mrp.metrics.MetricsRegistry;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Finished response bodies (serialized JSON) by a normalized key, bounded in bytes instead of entries:
+// a search hit list can be 200 bytes or 2 MB, an entry count says nothing about memory.
+// LRU over all entries; every entry carries the generation (see Version.generation()) it was built under.
+// A lookup with another generation is a miss, so a write only has to bump its counter and no key has to be
+// found or scanned. The first put under a newer generation drops everything older in one go (clear), those
+// entries can never be hit again anyway.
+// One lock for all entries: get/put only relink a node, the bytes are built and written outside of it.
+public final class ResultCache<K> {
+    private static final int ENTRY_OVERHEAD = 96;  // map node, entry object, array header, key object (estimate)
+
+    private record Entry(long generation, byte[] value, int weight) {}
+
+    private final long maxBytes;
+    private final int maxEntryBytes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<K, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);  // access order = LRU
+    private long bytes;
+    private long newestGeneration = -1;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // maxBytes 0 = disabled; maxEntryBytes: larger values are not cached (one of them could push out everything else)
+    public ResultCache(long maxBytes, int maxEntryBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+        this.maxEntryBytes = (int) Math.min(Math.max(0, maxEntryBytes), this.maxBytes);
+    }
+
+    public ResultCache<K> registerMetrics(String name) {
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        String cache = MetricsRegistry.label("cache", name);
+        metrics.counter("mrp_cache_requests_total", "Cache lookups by result",
+                cache + "," + MetricsRegistry.label("result", "hit"), hits::sum);
+        metrics.counter("mrp_cache_requests_total", "Cache lookups by result",
+                cache + "," + MetricsRegistry.label("result", "miss"), misses::sum);
+        metrics.counter("mrp_cache_evictions_total", "Entries dropped to stay within the size limit or expired",
+                cache, evictions::sum);
+        metrics.gauge("mrp_cache_size", "Entries in the cache", cache, this::size);
+        metrics.gauge("mrp_cache_bytes", "Estimated memory held by the cache entries", cache, this::bytes);
+        return this;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    // Largest value put() accepts, for callers that capture a streamed body and give up beyond it
+    public int getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    // Value stored under exactly this generation, null otherwise (older entries are removed on the way)
+    public byte[] get(K key, long generation) {
+        if (!isEnabled() || generation < 0) return null;
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.generation() == generation) {
+                hits.increment();
+                return entry.value();
+            }
+            if (entry != null) {
+                entries.remove(key);
+                bytes -= entry.weight();
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+        misses.increment();
+        return null;
+    }
+
+    // generation must have been read BEFORE the value was built: a change while building then leaves the entry
+    // under the old generation, where it is never hit. Negative generation = do not cache (Version not settled).
+    public void put(K key, long generation, byte[] value) {
+        if (!isEnabled() || generation < 0 || value.length > maxEntryBytes) return;
+        int weight = value.length + ENTRY_OVERHEAD;
+        lock.lock();
+        try {
+            if (generation < newestGeneration) return;  // built before a change that others have already seen
+            if (generation > newestGeneration) {
+                evictions.add(entries.size());
+                entries.clear();
+                bytes = 0;
+                newestGeneration = generation;
+            }
+            Entry previous = entries.put(key, new Entry(generation, value, weight));
+            if (previous != null) bytes -= previous.weight();
+            bytes += weight;
+            Iterator<Entry> oldest = entries.values().iterator();
+            while (bytes > maxBytes && oldest.hasNext()) {
+                bytes -= oldest.next().weight();
+                oldest.remove();
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long bytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
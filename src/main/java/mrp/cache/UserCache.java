@@ -0,0 +1,200 @@
+package mrp.cache;
+
+import mrp.metrics.MetricsRegistry;
+import mrp.model.User;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+// Users by username and by id (both maps share the entry), for the lookups that register, login, profile,
+// favorites and rating history do on every request. Lookups are lock-free (ConcurrentHashMap).
+// Unknown usernames are kept as negative entries for a short time, so probing for names (enumeration,
+// login attempts with made-up users) does not reach the database each time.
+// Entries expire after ttl as a bound for changes made outside this process (manual SQL).
+// When full, expired entries are swept first, then entries in map iteration order (hash order, i.e. random)
+// are dropped down to 90%: the working set of active users is small, a precise LRU is not worth its lock.
+public final class UserCache {
+
+    @FunctionalInterface
+    public interface Loader<K> {
+        // null = no such user, cached as negative entry
+        User load(K key) throws SQLException;
+    }
+
+    private record Entry(User user, long expiresAt) {}  // user null = username does not exist
+
+    private final int maximumSize;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<String, Entry> byName = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Entry> byId = new ConcurrentHashMap<>();
+    // incremented by every invalidation: a load that overlaps one is not cached (it may have read the old row)
+    private final AtomicLong invalidations = new AtomicLong();
+    private final ReentrantLock sweepLock = new ReentrantLock();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // maximumSize 0 = disabled; ttlMillis 0 = no expiry; negativeTtlMillis 0 = unknown usernames are not cached
+    public UserCache(int maximumSize, long ttlMillis, long negativeTtlMillis) {
+        this(maximumSize, ttlMillis, negativeTtlMillis, System::nanoTime);
+    }
+
+    // clock in nanoseconds, replaceable for tests
+    UserCache(int maximumSize, long ttlMillis, long negativeTtlMillis, LongSupplier clock) {
+        this.maximumSize = Math.max(0, maximumSize);
+        this.ttlNanos = ttlMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(ttlMillis) : Long.MAX_VALUE / 2;  // <= 0: no expiry
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis);
+        this.clock = clock;
+    }
+
+    public UserCache registerMetrics(String name) {
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        String cache = MetricsRegistry.label("cache", name);
+        metrics.counter("mrp_cache_requests_total", "Cache lookups by result",
+                cache + "," + MetricsRegistry.label("result", "hit"), hits::sum);
+        metrics.counter("mrp_cache_requests_total", "Cache lookups by result",
+                cache + "," + MetricsRegistry.label("result", "negative_hit"), negativeHits::sum);
+        metrics.counter("mrp_cache_requests_total", "Cache lookups by result",
+                cache + "," + MetricsRegistry.label("result", "miss"), misses::sum);
+        metrics.counter("mrp_cache_evictions_total", "Entries dropped to stay within the size limit or expired",
+                cache, evictions::sum);
+        metrics.gauge("mrp_cache_size", "Entries in the cache", cache, this::size);
+        metrics.gauge("mrp_cache_hit_ratio", "Share of lookups answered from the cache since start", cache, this::getHitRate);
+        return this;
+    }
+
+    public boolean isEnabled() {
+        return maximumSize > 0;
+    }
+
+    // Read-through by username; null = no such user (possibly answered by a negative entry)
+    public User getOrLoadByName(String username, Loader<String> loader) throws SQLException {
+        Optional<User> cached = getIfPresentByName(username);
+        if (cached != null) return cached.orElse(null);
+        misses.increment();
+        long generation = invalidations.get();
+        User user = loader.load(username);
+        store(username, user, generation);
+        return user;
+    }
+
+    // Read-through by id; unknown ids are not cached (ids are not guessed by name, nothing to probe)
+    public User getOrLoadById(int id, Loader<Integer> loader) throws SQLException {
+        User cached = getIfPresentById(id);
+        if (cached != null) return cached;
+        misses.increment();
+        long generation = invalidations.get();
+        User user = loader.load(id);
+        if (user != null) store(user.getUsername(), user, generation);
+        return user;
+    }
+
+    // Only a hit counts, for a fast path in front of getOrLoadByName (which then counts the miss).
+    // null = not cached, Optional.empty() = known not to exist
+    public Optional<User> getIfPresentByName(String username) {
+        if (!isEnabled() || username == null) return null;
+        Entry entry = byName.get(username);
+        if (entry == null || expired(entry, username)) return null;
+        if (entry.user() == null) {
+            negativeHits.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(entry.user());
+    }
+
+    public User getIfPresentById(int id) {
+        if (!isEnabled()) return null;
+        Entry entry = byId.get(id);
+        if (entry == null || expired(entry, entry.user().getUsername())) return null;
+        hits.increment();
+        return entry.user();
+    }
+
+    // After the change is committed (profile update, new user under a formerly unknown name), see invalidations
+    public void invalidate(String username) {
+        invalidations.incrementAndGet();
+        Entry entry = byName.remove(username);
+        if (entry != null && entry.user() != null) byId.remove(entry.user().getId(), entry);
+    }
+
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        byName.clear();
+        byId.clear();
+    }
+
+    public int size() {
+        return byName.size();
+    }
+
+    public long getHits() { return hits.sum() + negativeHits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getEvictions() { return evictions.sum(); }
+
+    public double getHitRate() {
+        long found = getHits();
+        long total = found + getMisses();
+        return total == 0 ? 0 : (double) found / total;
+    }
+
+    private boolean expired(Entry entry, String username) {
+        if (entry.expiresAt() - clock.getAsLong() > 0) return false;
+        remove(username, entry);
+        evictions.increment();
+        return true;
+    }
+
+    private void remove(String username, Entry entry) {
+        byName.remove(username, entry);
+        if (entry.user() != null) byId.remove(entry.user().getId(), entry);
+    }
+
+    private void store(String username, User user, long generation) {
+        if (!isEnabled() || username == null) return;
+        if (user == null && negativeTtlNanos <= 0) return;
+        if (generation != invalidations.get()) return;
+        if (byName.size() >= maximumSize) sweep();
+
+        Entry entry = new Entry(user, clock.getAsLong() + (user == null ? negativeTtlNanos : ttlNanos));
+        byName.put(username, entry);
+        if (user != null) byId.put(user.getId(), entry);
+        // an invalidation between the check above and the put: take the entry out again
+        if (generation != invalidations.get()) remove(username, entry);
+    }
+
+    // One thread sweeps, the others store anyway (the map may briefly exceed maximumSize)
+    private void sweep() {
+        if (!sweepLock.tryLock()) return;
+        try {
+            long now = clock.getAsLong();
+            int target = maximumSize - maximumSize / 10;
+            for (Iterator<Map.Entry<String, Entry>> it = byName.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, Entry> next = it.next();
+                if (next.getValue().expiresAt() - now <= 0) {
+                    remove(next.getKey(), next.getValue());
+                    evictions.increment();
+                }
+            }
+            for (Iterator<Map.Entry<String, Entry>> it = byName.entrySet().iterator(); it.hasNext() && byName.size() > target; ) {
+                Map.Entry<String, Entry> next = it.next();
+                remove(next.getKey(), next.getValue());
+                evictions.increment();
+            }
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package mrp.cache;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Change counter for data behind list endpoints: every write that changes what the list shows calls bump()
+// after its commit. A list ETag built from stamp() stays valid until the next change, so a conditional GET
+// can be answered with 304 without running the query.
+// The epoch (random per process) keeps tags from before a restart, where the counter starts at 0 again, from matching.
+public final class Version {
+    private static final String EPOCH = Long.toString(ThreadLocalRandom.current().nextLong() >>> 1, 36);
+
+    private final long settleNanos;
+    private final AtomicLong value = new AtomicLong();
+    private volatile long changedAt;
+
+    // settleMillis: how long after a change the data may still be missing on a read replica
+    public Version(long settleMillis) {
+        this.settleNanos = TimeUnit.MILLISECONDS.toNanos(settleMillis);
+        this.changedAt = System.nanoTime() - settleNanos;
+    }
+
+    public void bump() {
+        changedAt = System.nanoTime();  // before the increment: whoever sees the new value also sees the time
+        value.incrementAndGet();
+    }
+
+    public long get() {
+        return value.get();
+    }
+
+    // Identifies the current state, null while the last change is younger than settleMillis: a replica read now
+    // could still return the old rows, and those must not be cached by clients under the new version
+    public String stamp() {
+        long current = generation();
+        return current < 0 ? null : EPOCH + "-" + current;
+    }
+
+    // The counter under the same condition as stamp(), -1 while not settled (for server-side caches, see ResultCache)
+    public long generation() {
+        long current = value.get();
+        if (settleNanos > 0 && System.nanoTime() - changedAt < settleNanos) return -1;
+        return current;
+    }
+}
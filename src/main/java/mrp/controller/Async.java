@@ -0,0 +1,14 @@
+package mrp.controller;
+
+import java.util.concurrent.CompletionException;
+
+// Helpers for async handlers (Router.addAsyncRoute)
+final class Async {
+
+    private Async() {}
+
+    // Exceptions of a composed future arrive wrapped in a CompletionException
+    static Throwable cause(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+}
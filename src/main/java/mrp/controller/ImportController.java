@@ -0,0 +1,56 @@
+package mrp.controller;
+
+import mrp.auth.TokenManager;
+import mrp.model.ImportResult;
+import mrp.model.User;
+import mrp.server.HttpRequest;
+import mrp.server.HttpResponse;
+import mrp.service.ImportService;
+import mrp.util.JsonUtil;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+// Upload routes (Router.addUploadRoute): the body is read while it arrives, never buffered as a whole
+public class ImportController {
+    private final ImportService importService;
+    private final TokenManager tokenManager;
+
+    public ImportController(ImportService importService, TokenManager tokenManager) {
+        this.importService = importService;
+        this.tokenManager = tokenManager;
+    }
+
+    @FunctionalInterface
+    private interface Importer {
+        ImportResult run(HttpRequest req, User user) throws IOException, SQLException;
+    }
+
+    // POST /api/import/media
+    public HttpResponse importMedia(HttpRequest req) {
+        return handle(req, (r, user) -> importService.importMedia(r.getBodyStream(), r.getHeader("Content-Type"), user.getId()));
+    }
+
+    // POST /api/import/ratings
+    public HttpResponse importRatings(HttpRequest req) {
+        return handle(req, (r, user) -> importService.importRatings(r.getBodyStream(), r.getHeader("Content-Type"), user.getId()));
+    }
+
+    private HttpResponse handle(HttpRequest req, Importer importer) {
+        // Checked before the first read: a rejected upload is never transferred (Expect: 100-continue)
+        User user = tokenManager.getUserByToken(req.getToken());
+        if (user == null) return HttpResponse.unauthorized();
+
+        try {
+            return HttpResponse.ok(JsonUtil.toJson(importer.run(req, user)));
+        } catch (IllegalArgumentException e) {
+            return HttpResponse.error(415, e.getMessage());  // only thrown for an unknown Content-Type
+        } catch (IOException e) {
+            // Upload broke off or timed out: the COPY was cancelled, nothing imported
+            return HttpResponse.badRequest("Upload aborted: " + e.getMessage());
+        } catch (SQLException e) {
+            System.err.println("Import failed: " + e.getMessage());
+            return HttpResponse.internalError("Import failed");
+        }
+    }
+}
@@ -1,28 +1,61 @@
 package mrp.controller;
 
-import mrp.model.User;
+import mrp.server.ETag;
 import mrp.server.HttpRequest;
 import mrp.server.HttpResponse;
 import mrp.service.UserService;
 import mrp.util.JsonUtil;
 
-import java.sql.SQLException;
-import java.util.List;
-
 public class LeaderboardController {
+    private static final int DEFAULT_NEIGHBOURS = 2;
+    private static final int MAX_NEIGHBOURS = 10;
+
     private final UserService userService;
 
     public LeaderboardController(UserService userService) {
         this.userService = userService;
     }
 
-    //GET /api/leaderboard
+    //GET /api/leaderboard (in memory; ?limit=N = top N, weiter mit ?cursor=...)
     public HttpResponse getLeaderboard(HttpRequest req) {
+        String etag = etag(req);
+        if (ETag.matches(req, etag)) return HttpResponse.notModified(etag);
         try {
-            List<User> leaderboard = userService.getLeaderboard();
-            return HttpResponse.ok(JsonUtil.toJson(leaderboard));
-        } catch (SQLException e) {
-            return HttpResponse.internalError("Database error: " + e.getMessage());
+            if (Paging.requested(req)) {
+                return HttpResponse.ok(JsonUtil.toJson(
+                        userService.getLeaderboardPage(Paging.cursor(req), Paging.limit(req)))).header("ETag", etag);
+            }
+            return HttpResponse.ok(JsonUtil.toJson(userService.getLeaderboard())).header("ETag", etag);
+        } catch (IllegalArgumentException e) { // ungültiges limit/cursor
+            return HttpResponse.badRequest(e.getMessage());
+        }
+    }
+
+    //GET /api/leaderboard/{username}?neighbours=N: Platz des Users und die N User darüber und darunter
+    public HttpResponse getRank(HttpRequest req) {
+        String etag = etag(req);
+        if (ETag.matches(req, etag)) return HttpResponse.notModified(etag);
+        int neighbours = DEFAULT_NEIGHBOURS;
+        String value = req.getQueryParam("neighbours");
+        if (value != null && !value.isBlank()) {
+            try {
+                neighbours = Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                return HttpResponse.badRequest("neighbours must be a number");
+            }
+            if (neighbours < 0) return HttpResponse.badRequest("neighbours must not be negative");
+            neighbours = Math.min(neighbours, MAX_NEIGHBOURS);
         }
+        try {
+            return HttpResponse.ok(JsonUtil.toJson(userService.getLeaderboardRank(req.getPathParam("username"), neighbours)))
+                    .header("ETag", etag);
+        } catch (IllegalArgumentException e) {
+            return HttpResponse.notFound();
+        }
+    }
+
+    // Version of the leaderboard before reading it: a change in between only makes the tag older than the body
+    private String etag(HttpRequest req) {
+        return ETag.ofVersion(userService.getLeaderboardVersion().stamp(), req);
     }
-}
\ No newline at end of file
+}
@@ -2,15 +2,17 @@ package mrp.controller;
 
 import mrp.model.Media;
 import mrp.model.User;
+import mrp.repository.MediaRepository.SearchQuery;
 import mrp.service.MediaService;
 import mrp.auth.TokenManager;
+import mrp.server.ETag;
 import mrp.server.HttpRequest;
 import mrp.server.HttpResponse;
 import mrp.util.JsonUtil;
 
 import java.sql.SQLException;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class MediaController {
     private final MediaService service;
@@ -38,33 +40,52 @@ public class MediaController {
         }
     }
 
-    public HttpResponse getById(HttpRequest req) {
+    // Async: the query runs on the DB executor
+    public CompletableFuture<HttpResponse> getById(HttpRequest req) {
+        int id;
         try {
-            int id = Integer.parseInt(req.getPathParam("id"));
-            Media media = service.getMediaById(id);
-            if (media == null) return HttpResponse.notFound();
-
-            return HttpResponse.ok(JsonUtil.toJson(media));
+            id = Integer.parseInt(req.getPathParam("id"));
         } catch (NumberFormatException e) {
-            return HttpResponse.badRequest("ID must be a number");
-        } catch (Exception e) {
-            return HttpResponse.internalError(e.getMessage());
+            return CompletableFuture.completedFuture(HttpResponse.badRequest("ID must be a number"));
         }
+        return service.getMediaByIdAsync(id)
+                .thenApply(media -> media == null ? HttpResponse.notFound() : HttpResponse.ok(JsonUtil.toJson(media)).etagFromBody())
+                .exceptionally(e -> HttpResponse.internalError(Async.cause(e).getMessage()));
     }
 
     public HttpResponse getAll(HttpRequest req) {
         try {
+            // ETag aus der Listen-Version: unverändert -> 304 ohne Query (null kurz nach einer Änderung, siehe Version)
+            String stamp = service.getListVersion().stamp();
+            String etag = stamp != null ? ETag.ofVersion(stamp, req) : null;
+            if (ETag.matches(req, etag)) return HttpResponse.notModified(etag);
+
             // Query-Parameter aus URL holen
             Map<String, String> queryParams = req.getQueryParams();
 
-            List<Media> results = service.searchAndFilter(queryParams);
+            // Mit limit/cursor: eine Seite (Keyset), klein genug für eine normale Antwort
+            if (Paging.requested(req)) {
+                int limit = Paging.limit(req);
+                SearchQuery query = service.buildSearchPage(queryParams, Paging.cursor(req), limit);
+                return tagged(new HttpResponse(200).body(service.searchPageJson(query, limit)), etag);
+            }
 
-            return HttpResponse.ok(JsonUtil.toJson(results));
+            // Abfrage vorab bauen, damit ungültige Parameter noch ein 400 ergeben
+            SearchQuery query = service.buildSearch(queryParams);
+
+            // Gleiche Filter seit der letzten Änderung schon abgefragt -> fertiges JSON aus dem Such-Cache
+            byte[] cached = service.getCachedSearch(query);
+            if (cached != null) return tagged(new HttpResponse(200).body(cached), etag);
+
+            // Treffer direkt aus dem ResultSet in die Antwort schreiben, ohne Liste im Speicher
+            return tagged(HttpResponse.stream(200, out -> service.streamSearchJson(query, out)), etag);
 
         } catch (NumberFormatException e) {
             return HttpResponse.badRequest("Invalid number format in query parameters");
+        } catch (IllegalArgumentException e) {
+            return HttpResponse.badRequest(e.getMessage());
         } catch (SQLException e) {
-            return HttpResponse.internalError("Database error during search: " + e.getMessage());
+            return HttpResponse.internalError(e.getMessage());
         }
     }
 
@@ -144,4 +165,8 @@ public class MediaController {
             return HttpResponse.badRequest("Invalid ID");
         }
     }
-}
\ No newline at end of file
+
+    private static HttpResponse tagged(HttpResponse response, String etag) {
+        return etag != null ? response.header("ETag", etag) : response;
+    }
+}
@@ -0,0 +1,20 @@
+package mrp.controller;
+
+import mrp.metrics.MetricsRegistry;
+import mrp.server.HttpRequest;
+import mrp.server.HttpResponse;
+
+public class MetricsController {
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final MetricsRegistry registry;
+
+    public MetricsController(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    //GET /metrics (Prometheus scrape endpoint)
+    public HttpResponse getMetrics(HttpRequest req) {
+        return HttpResponse.ok(registry.render()).header("Content-Type", CONTENT_TYPE);
+    }
+}
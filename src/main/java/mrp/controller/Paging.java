@@ -0,0 +1,34 @@
+package mrp.controller;
+
+import mrp.server.HttpRequest;
+
+// Query parameters for paged lists: ?limit=..&cursor=... Without both the lists are returned complete as
+// before (JSON array); with one of them as {"items":[...],"next":"<cursor>"}, next = null on the last page.
+final class Paging {
+    static final int DEFAULT_LIMIT = Integer.getInteger("mrp.api.pageSize", 20);
+    static final int MAX_LIMIT = Integer.getInteger("mrp.api.maxPageSize", 100);
+
+    private Paging() {}
+
+    static boolean requested(HttpRequest req) {
+        return req.getQueryParam("limit") != null || req.getQueryParam("cursor") != null;
+    }
+
+    // Larger values are capped instead of rejected, so a client asking for "everything" still gets pages
+    static int limit(HttpRequest req) {
+        String value = req.getQueryParam("limit");
+        if (value == null || value.isBlank()) return Math.min(DEFAULT_LIMIT, MAX_LIMIT);
+        int limit;
+        try {
+            limit = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("limit must be a number");
+        }
+        if (limit < 1) throw new IllegalArgumentException("limit must be at least 1");
+        return Math.min(limit, MAX_LIMIT);
+    }
+
+    static String cursor(HttpRequest req) {
+        return req.getQueryParam("cursor");
+    }
+}
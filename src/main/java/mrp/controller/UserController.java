@@ -1,16 +1,14 @@
 package mrp.controller;
 
 import mrp.auth.TokenManager;
-import mrp.model.Media;
-import mrp.model.Rating;
 import mrp.model.User;
 import mrp.server.HttpRequest;
 import mrp.server.HttpResponse;
 import mrp.service.UserService;
 import mrp.util.JsonUtil;
 
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class UserController {
     private final UserService userService;
@@ -76,25 +74,26 @@ public class UserController {
     /**
      * GET /api/users/{username}/profile
      * Requires authentication
+     * Async: user and both statistics queries run on the DB executor, the worker does not wait
      */
-    public HttpResponse getProfile(HttpRequest request) {
-        try {
-            // Auth check
-            User authUser = authenticate(request);
-            if (authUser == null) return HttpResponse.unauthorized();
-
-            String username = request.getPathParam("username");
-            User user = userService.getProfile(username);
-
-            // Build profile response
-            user.setPassword(null);
-            return HttpResponse.ok(JsonUtil.toJson(user));
-
-        } catch (IllegalArgumentException e) {
-            return HttpResponse.notFound();
-        } catch (Exception e) {
-            return HttpResponse.internalError(e.getMessage());
-        }
+    public CompletableFuture<HttpResponse> getProfile(HttpRequest request) {
+        // Auth check
+        User authUser = authenticate(request);
+        if (authUser == null) return CompletableFuture.completedFuture(HttpResponse.unauthorized());
+
+        String username = request.getPathParam("username");
+        return userService.getProfileAsync(username)
+                .thenApply(user -> {
+                    // Build profile response
+                    user.setPassword(null);
+                    // Statistik braucht die Queries ohnehin, das ETag spart nur die Übertragung
+                    return HttpResponse.ok(JsonUtil.toJson(user)).etagFromBody();
+                })
+                .exceptionally(e -> {
+                    Throwable cause = Async.cause(e);
+                    if (cause instanceof IllegalArgumentException) return HttpResponse.notFound();
+                    return HttpResponse.internalError(cause.getMessage());
+                });
     }
 
     /**
@@ -142,13 +141,23 @@ public class UserController {
             if (authUser == null) return HttpResponse.unauthorized();
 
             String username = req.getPathParam("username");
-            // Check ob user existiert
-            User targetUser = userService.getProfile(username);
-
-            // Favoriten über MediaService laden
-            List<Media> favorites = mediaService.getFavoritesByUserId(targetUser.getId());
-
-            return HttpResponse.ok(JsonUtil.toJson(favorites));
+            // Check ob user existiert (nur die id, ohne Statistik-Queries des Profils)
+            int userId = userService.getUserId(username);
+            if (Paging.requested(req)) {
+                try {
+                    return HttpResponse.ok(JsonUtil.toJson(
+                            mediaService.getFavoritesPage(userId, Paging.cursor(req), Paging.limit(req))));
+                } catch (IllegalArgumentException e) { // ungültiges limit/cursor, nicht "User nicht gefunden"
+                    return HttpResponse.badRequest(e.getMessage());
+                }
+            }
+
+            // Favoriten über MediaService direkt in die Antwort streamen
+            return HttpResponse.stream(200, out -> {
+                try (JsonUtil.ArrayWriter json = JsonUtil.arrayWriter(out)) {
+                    mediaService.streamFavoritesByUserId(userId, json::write);
+                }
+            });
 
         } catch (IllegalArgumentException e) {
             return HttpResponse.notFound();
@@ -166,11 +175,22 @@ public class UserController {
             if (authUser == null) return HttpResponse.unauthorized();
 
             String username = req.getPathParam("username");
-            // Profil laden (prüft ob User existiert)
-            User targetUser = userService.getProfile(username);
-
-            java.util.List<Rating> history = ratingService.getRatingsByUserId(targetUser.getId());
-            return HttpResponse.ok(JsonUtil.toJson(history));
+            // Check ob user existiert (nur die id, ohne Statistik-Queries des Profils)
+            int userId = userService.getUserId(username);
+            if (Paging.requested(req)) {
+                try {
+                    return HttpResponse.ok(JsonUtil.toJson(
+                            ratingService.getRatingPageByUserId(userId, Paging.cursor(req), Paging.limit(req))));
+                } catch (IllegalArgumentException e) {
+                    return HttpResponse.badRequest(e.getMessage());
+                }
+            }
+
+            return HttpResponse.stream(200, out -> {
+                try (JsonUtil.ArrayWriter json = JsonUtil.arrayWriter(out)) {
+                    ratingService.streamRatingsByUserId(userId, json::write);
+                }
+            });
 
         } catch (IllegalArgumentException e) {
             return HttpResponse.notFound();
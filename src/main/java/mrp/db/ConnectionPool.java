@@ -0,0 +1,569 @@
+package mrp.db;
+
+import mrp.metrics.Histogram;
+import mrp.metrics.MetricsRegistry;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Pool of physical JDBC connections behind DatabaseManager.getConnection().
+// Callers get a proxy whose close() hands the connection back instead of closing it, so the
+// repositories keep their try-with-resources unchanged.
+//   - idle connections are a LIFO stack: the most recently used one is reused, the others age out (idleTimeout)
+//   - a connection that was idle longer than validationInterval is checked with isValid() before it is handed out
+//   - on return an open transaction is rolled back and autocommit/readOnly are reset
+//   - prepareStatement() is served from a per-connection StatementCache, close() on the statement returns it there
+//   - a housekeeper thread closes idle and too old connections, refills to minIdle and reports leaks
+// ReentrantLock/Condition instead of synchronized/wait: waiting virtual threads do not pin their carrier.
+public final class ConnectionPool implements AutoCloseable {
+
+    public interface ConnectionFactory {
+        Connection open() throws SQLException;
+    }
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    // One physical connection + bookkeeping
+    private static final class PooledConnection {
+        final Connection raw;
+        final long createdAt;
+        final StatementCache statements;  // null if statementCacheSize = 0
+        long lastUsed;                    // guarded by the pool lock while idle
+        volatile long borrowedAt;
+        volatile String borrowedBy;
+        volatile Throwable borrowSite;    // only with leak detection
+        volatile boolean leakReported;
+
+        PooledConnection(Connection raw, long createdAt, StatementCache statements) {
+            this.raw = raw;
+            this.createdAt = createdAt;
+            this.lastUsed = createdAt;
+            this.statements = statements;
+        }
+    }
+
+    private final String name;
+    private final ConnectionFactory factory;
+    private final int minIdle;
+    private final int maxConnections;
+    private final long acquireTimeoutNanos;
+    private final long idleTimeoutNanos;
+    private final long maxLifetimeNanos;
+    private final long validationIntervalNanos;
+    private final long leakDetectionNanos;
+    private final int statementCacheSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final ArrayDeque<PooledConnection> idle = new ArrayDeque<>();  // first = most recently returned
+    private int total;       // open + currently being opened (guarded by lock)
+    private int waiting;     // threads waiting for a connection (guarded by lock)
+    private boolean closed;  // guarded by lock
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService housekeeper;
+
+    // Statistics
+    private final Histogram acquireTime;
+    private final LongAdder created = new LongAdder();
+    private final LongAdder destroyed = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+    private final LongAdder statementEvictions = new LongAdder();
+
+    public ConnectionPool(String name, PoolConfig config, ConnectionFactory factory) {
+        this.name = name;
+        this.factory = factory;
+        this.minIdle = config.getMinIdle();
+        this.maxConnections = config.getMaxConnections();
+        this.acquireTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getAcquireTimeoutMillis());
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getIdleTimeoutMillis());
+        this.maxLifetimeNanos = TimeUnit.MILLISECONDS.toNanos(config.getMaxLifetimeMillis());
+        this.validationIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getValidationIntervalMillis());
+        this.leakDetectionNanos = TimeUnit.MILLISECONDS.toNanos(config.getLeakDetectionMillis());
+        this.statementCacheSize = config.getStatementCacheSize();
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        String pool = MetricsRegistry.label("pool", name);
+        this.acquireTime = metrics.histogram("mrp_db_connection_acquire_seconds",
+                "Time to get a database connection from the pool", pool);
+        metrics.gauge("mrp_db_connections", "Open database connections by state",
+                pool + "," + MetricsRegistry.label("state", "active"), this::getActive);
+        metrics.gauge("mrp_db_connections", "Open database connections by state",
+                pool + "," + MetricsRegistry.label("state", "idle"), this::getIdle);
+        metrics.gauge("mrp_db_connections_pending", "Threads waiting for a database connection", pool, this::getWaiting);
+        metrics.counter("mrp_db_connections_created_total", "Physical connections opened", pool, created::sum);
+        metrics.counter("mrp_db_connections_closed_total", "Physical connections closed", pool, destroyed::sum);
+        metrics.counter("mrp_db_connection_timeouts_total", "getConnection() calls that timed out", pool, timeouts::sum);
+        metrics.counter("mrp_db_connection_validation_failures_total", "Idle connections found dead on borrow", pool, validationFailures::sum);
+        metrics.counter("mrp_db_connection_leaks_total", "Connections borrowed longer than leakDetectionMillis", pool, leaks::sum);
+        metrics.counter("mrp_db_statement_cache_hits_total", "prepareStatement() calls served from the statement cache", pool, statementHits::sum);
+        metrics.counter("mrp_db_statement_cache_misses_total", "prepareStatement() calls that prepared a new statement", pool, statementMisses::sum);
+        metrics.counter("mrp_db_statement_cache_evictions_total", "Statements closed to make room in the statement cache", pool, statementEvictions::sum);
+
+        // housekeepingMillis <= 0: no background thread (tests call housekeep() themselves)
+        if (config.getHousekeepingMillis() > 0) {
+            this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "db-pool-" + name);
+                t.setDaemon(true);
+                return t;
+            });
+            housekeeper.scheduleWithFixedDelay(this::housekeepSafely,
+                    0, config.getHousekeepingMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            this.housekeeper = null;
+        }
+    }
+
+    // Borrows a connection, waiting at most acquireTimeoutMillis. close() on the result returns it.
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + acquireTimeoutNanos;
+        while (true) {
+            PooledConnection pc = takeIdleOrReserve(deadline);
+            if (pc == null) {
+                pc = openReserved();
+            } else if (System.nanoTime() - pc.lastUsed > validationIntervalNanos && !isAlive(pc.raw)) {
+                // e.g. killed by the server or a firewall while idle -> throw away, try the next one
+                validationFailures.increment();
+                destroy(pc);
+                continue;
+            }
+            return lease(pc, start);
+        }
+    }
+
+    // Returns an idle connection, or null if the caller may open a new one (slot reserved in total)
+    private PooledConnection takeIdleOrReserve(long deadline) throws SQLException {
+        try {
+            lock.lockInterruptibly();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        try {
+            while (true) {
+                if (closed) throw new SQLException("Connection pool " + name + " is closed");
+                PooledConnection pc = idle.pollFirst();
+                if (pc != null) return pc;
+                if (total < maxConnections) {
+                    total++;
+                    return null;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    timeouts.increment();
+                    throw new SQLTransientConnectionException("Timed out waiting for a database connection ("
+                            + name + ": " + total + " of " + maxConnections + " in use)");
+                }
+                waiting++;
+                try {
+                    available.awaitNanos(remaining);
+                } finally {
+                    waiting--;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Opens the connection for a slot reserved by takeIdleOrReserve, gives the slot back on failure
+    private PooledConnection openReserved() throws SQLException {
+        try {
+            Connection raw = factory.open();
+            created.increment();
+            StatementCache statements = statementCacheSize > 0
+                    ? new StatementCache(raw, statementCacheSize, statementHits, statementMisses, statementEvictions)
+                    : null;
+            return new PooledConnection(raw, System.nanoTime(), statements);
+        } catch (SQLException | RuntimeException e) {
+            releaseSlot();
+            throw e;
+        }
+    }
+
+    private Connection lease(PooledConnection pc, long start) {
+        pc.borrowedAt = System.nanoTime();
+        pc.borrowedBy = Thread.currentThread().getName();
+        pc.borrowSite = leakDetectionNanos > 0 ? new Throwable("Connection borrowed here") : null;
+        pc.leakReported = false;
+        borrowed.add(pc);
+        acquireTime.observeSince(start);
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, new Lease(pc));
+    }
+
+    // Called once per lease from the proxy's close()
+    private void release(PooledConnection pc) {
+        borrowed.remove(pc);
+        long now = System.nanoTime();
+        if (!reset(pc.raw) || expired(pc, now)) {
+            destroy(pc);
+            return;
+        }
+        pc.lastUsed = now;
+        returnToIdle(pc);
+    }
+
+    // Leaves the connection as a fresh one would be: no open transaction, autocommit on, read-write
+    private static boolean reset(Connection raw) {
+        try {
+            if (raw.isClosed()) return false;
+            if (!raw.getAutoCommit()) {
+                raw.rollback();
+                raw.setAutoCommit(true);
+            }
+            if (raw.isReadOnly()) raw.setReadOnly(false);
+            raw.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            return false;  // broken, do not hand it out again
+        }
+    }
+
+    private void returnToIdle(PooledConnection pc) {
+        lock.lock();
+        try {
+            if (!closed) {
+                idle.addFirst(pc);
+                available.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        destroy(pc);
+    }
+
+    private boolean expired(PooledConnection pc, long now) {
+        return maxLifetimeNanos > 0 && now - pc.createdAt > maxLifetimeNanos;
+    }
+
+    private static boolean isAlive(Connection raw) {
+        try {
+            return raw.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void destroy(PooledConnection pc) {
+        releaseSlot();
+        destroyed.increment();
+        try {
+            pc.raw.close();
+        } catch (SQLException ignored) {
+            // already broken
+        }
+    }
+
+    private void releaseSlot() {
+        lock.lock();
+        try {
+            total--;
+            available.signal();  // a waiter may open a new connection now
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void housekeepSafely() {
+        try {
+            housekeep();
+        } catch (RuntimeException e) {
+            System.err.println("Connection pool " + name + ": housekeeping failed: " + e.getMessage());
+        }
+    }
+
+    // Closes idle connections above minIdle that were unused for idleTimeout and connections older than
+    // maxLifetime, then opens connections up to minIdle and reports leaks. Package-private for tests.
+    void housekeep() {
+        long now = System.nanoTime();
+        List<PooledConnection> evicted = new ArrayList<>();
+        lock.lock();
+        try {
+            Iterator<PooledConnection> it = idle.descendingIterator();  // least recently used first
+            while (it.hasNext()) {
+                PooledConnection pc = it.next();
+                boolean unused = idleTimeoutNanos > 0 && now - pc.lastUsed > idleTimeoutNanos && idle.size() > minIdle;
+                if (unused || expired(pc, now)) {
+                    it.remove();
+                    evicted.add(pc);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (PooledConnection pc : evicted) destroy(pc);
+
+        fillToMinIdle();
+        reportLeaks(now);
+    }
+
+    private void fillToMinIdle() {
+        while (true) {
+            lock.lock();
+            try {
+                if (closed || idle.size() >= minIdle || total >= maxConnections) return;
+                total++;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                returnToIdle(openReserved());
+            } catch (SQLException | RuntimeException e) {
+                System.err.println("Connection pool " + name + ": could not open connection: " + e.getMessage());
+                return;  // next round
+            }
+        }
+    }
+
+    private void reportLeaks(long now) {
+        if (leakDetectionNanos <= 0) return;
+        for (PooledConnection pc : borrowed) {
+            long heldNanos = now - pc.borrowedAt;
+            if (!pc.leakReported && heldNanos > leakDetectionNanos) {
+                pc.leakReported = true;
+                leaks.increment();
+                System.err.println("Connection pool " + name + ": possible connection leak, borrowed by "
+                        + pc.borrowedBy + " " + TimeUnit.NANOSECONDS.toMillis(heldNanos) + " ms ago and not closed");
+                Throwable site = pc.borrowSite;
+                if (site != null) site.printStackTrace();
+            }
+        }
+    }
+
+    // Closes idle connections now, borrowed ones when they are returned
+    @Override
+    public void close() {
+        List<PooledConnection> toClose;
+        lock.lock();
+        try {
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (housekeeper != null) housekeeper.shutdownNow();
+        for (PooledConnection pc : toClose) destroy(pc);
+    }
+
+    // Getters for the statistics
+    public int getMaxConnections() { return maxConnections; }
+    public int getActive() { return borrowed.size(); }
+
+    public int getIdle() {
+        lock.lock();
+        try {
+            return idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getTotal() {
+        lock.lock();
+        try {
+            return total;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getWaiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getCreated() { return created.sum(); }
+    public long getTimeouts() { return timeouts.sum(); }
+    public long getValidationFailures() { return validationFailures.sum(); }
+    public long getLeaks() { return leaks.sum(); }
+    public long getStatementHits() { return statementHits.sum(); }
+    public long getStatementMisses() { return statementMisses.sum(); }
+
+    // The Connection handed out for one borrow. After close() every call fails, so a stale reference
+    // cannot use the connection while someone else has it. Statements still open are closed on close(),
+    // as with a real connection (cached ones go back to the cache).
+    private final class Lease implements InvocationHandler {
+        private final PooledConnection pc;
+        private final AtomicBoolean returned = new AtomicBoolean(false);
+        private final List<CachedStatement> cachedInUse = new ArrayList<>(2);
+        private final List<Statement> uncached = new ArrayList<>(0);
+
+        Lease(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (returned.compareAndSet(false, true)) {
+                        closeStatements();
+                        release(pc);
+                    }
+                    return null;
+                case "isClosed":
+                    if (returned.get()) return true;
+                    break;
+                case "prepareStatement":
+                    if (!returned.get() && pc.statements != null && isCacheable(args)) {
+                        StatementCache.Entry entry = pc.statements.acquire((String) args[0]);
+                        if (entry != null) {
+                            CachedStatement handler = new CachedStatement((Connection) proxy, entry);
+                            cachedInUse.add(handler);
+                            Statement cached = (Statement) Proxy.newProxyInstance(
+                                    PreparedStatement.class.getClassLoader(),
+                                    new Class<?>[]{PreparedStatement.class}, handler);
+                            return tracked(cached, method, args);
+                        }
+                    }
+                    break;
+                case "commit":
+                case "rollback":
+                    QueryStats stats = QueryStats.current();
+                    if (stats != null && !returned.get()) {
+                        long start = System.nanoTime();
+                        try {
+                            return method.invoke(pc.raw, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        } finally {
+                            stats.roundTrip(System.nanoTime() - start);
+                        }
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled(" + name + ")" + pc.raw;
+                default:
+                    break;
+            }
+            if (returned.get()) throw new SQLException("Connection is closed (returned to the pool)");
+            try {
+                Object result = method.invoke(pc.raw, args);
+                if (result instanceof Statement statement) {
+                    uncached.add(statement);
+                    return tracked(statement, method, args);
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        // while a request counts its queries (QueryStats bound), statements report to it
+        private Statement tracked(Statement statement, Method method, Object[] args) {
+            QueryStats stats = QueryStats.current();
+            if (stats == null) return statement;
+            @SuppressWarnings("unchecked")
+            Class<? extends Statement> type = (Class<? extends Statement>) method.getReturnType();
+            String sql = args != null && args.length > 0 && args[0] instanceof String s ? s : null;
+            return TrackedStatement.wrap(statement, type, sql, stats);
+        }
+
+        // prepareStatement(sql) or the equivalent prepareStatement(sql, FORWARD_ONLY, READ_ONLY)
+        private boolean isCacheable(Object[] args) {
+            return args.length == 1
+                    || (args.length == 3 && (int) args[1] == ResultSet.TYPE_FORWARD_ONLY
+                        && (int) args[2] == ResultSet.CONCUR_READ_ONLY);
+        }
+
+        private void closeStatements() {
+            for (CachedStatement statement : cachedInUse) statement.giveBack();
+            cachedInUse.clear();
+            for (Statement statement : uncached) {
+                try {
+                    statement.close();
+                } catch (SQLException ignored) {
+                    // reset() decides whether the connection is still usable
+                }
+            }
+            uncached.clear();
+        }
+
+        // PreparedStatement from the cache: close() hands it back instead of closing it
+        private final class CachedStatement implements InvocationHandler {
+            private final Connection connection;
+            private final StatementCache.Entry entry;
+            private boolean closed;
+
+            CachedStatement(Connection connection, StatementCache.Entry entry) {
+                this.connection = connection;
+                this.entry = entry;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (!closed) {
+                            cachedInUse.remove(this);
+                            giveBack();
+                        }
+                        return null;
+                    case "isClosed":
+                        return closed || entry.stmt.isClosed();
+                    case "getConnection":
+                        return connection;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return entry.stmt.toString();
+                    default:
+                        break;
+                }
+                if (closed) throw new SQLException("Statement is closed");
+                try {
+                    return method.invoke(entry.stmt, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+
+            void giveBack() {
+                closed = true;
+                pc.statements.release(entry);
+            }
+        }
+    }
+}
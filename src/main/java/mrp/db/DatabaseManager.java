@@ -1,84 +1,176 @@
 package mrp.db;
 
+import mrp.metrics.MetricsRegistry;
+
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
 public class DatabaseManager {
-    private static final String URL = "jdbc:postgresql://localhost:5432/mrp";
-    private static final String USER = "mrp";
-    private static final String PASSWORD = "mrp";
+    private static final String URL = System.getProperty("mrp.db.url", "jdbc:postgresql://localhost:5432/mrp");
+    private static final String USER = System.getProperty("mrp.db.user", "mrp");
+    private static final String PASSWORD = System.getProperty("mrp.db.password", "mrp");
+    // Read replicas: comma separated JDBC URLs (same user/password), empty = every read goes to the primary
+    private static final String REPLICA_URLS = System.getProperty("mrp.db.replicaUrls", "");
+    // A replica that failed to hand out a connection is skipped for this long, its reads go to the primary
+    private static final long REPLICA_RETRY_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    // Connections are pooled: opening one means TCP + auth + a new PostgreSQL backend process.
+    // maxConnections also bounds the load on the database when thousands of virtual threads are running.
+    private final ConnectionPool pool = new ConnectionPool("primary", PoolConfig.fromSystemProperties(),
+            () -> DriverManager.getConnection(URL, USER, PASSWORD));
+    // One pool per replica with the same settings, used round robin
+    private final ConnectionPool[] replicas;
+    private final AtomicLongArray replicaDownUntil;  // nanoTime, 0 = up
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final ReadYourWrites readYourWrites = new ReadYourWrites(Long.getLong("mrp.db.readYourWritesMillis", 2000));
+    private final DbExecutor executor;
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder primaryReads = new LongAdder();
+    private final LongAdder replicaFailures = new LongAdder();
+    // Statements per request before it is logged as over budget (0 = no check); logQueries logs every request
+    private final QueryBudget queryBudget = new QueryBudget(Integer.getInteger("mrp.db.queryBudget", 10),
+            Boolean.getBoolean("mrp.db.logQueries"));
+    // Rows per round trip for streamed queries (server-side cursor)
+    private final int fetchSize = Integer.getInteger("mrp.db.fetchSize", 500);
+    // Batched inserts (likes, favorites): max rows per statement and how long to wait for more
+    private final int batchMaxSize = Integer.getInteger("mrp.db.batchMaxSize", 100);
+    private final long batchLingerMillis = Long.getLong("mrp.db.batchLingerMillis", 2);
 
-    private static DatabaseManager instance;
+    private DatabaseManager() {
+        String[] urls = REPLICA_URLS.isBlank() ? new String[0] : REPLICA_URLS.trim().split("\\s*,\\s*");
+        replicas = new ConnectionPool[urls.length];
+        for (int i = 0; i < urls.length; i++) {
+            String url = urls[i];
+            replicas[i] = new ConnectionPool("replica-" + (i + 1), PoolConfig.fromSystemProperties(),
+                    () -> DriverManager.getConnection(url, USER, PASSWORD));
+        }
+        replicaDownUntil = new AtomicLongArray(urls.length);
+        // Async repository calls: by default one thread per connection of all pools
+        int connections = pool.getMaxConnections();
+        for (ConnectionPool replica : replicas) connections += replica.getMaxConnections();
+        int threads = Integer.getInteger("mrp.db.executorThreads", connections);
+        executor = new DbExecutor(threads, Integer.getInteger("mrp.db.executorQueue", 1000), readYourWrites);
 
-    private DatabaseManager() {}
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.counter("mrp_db_reads_total", "Connections handed out by getReadConnection()",
+                MetricsRegistry.label("target", "replica"), replicaReads::sum);
+        metrics.counter("mrp_db_reads_total", "Connections handed out by getReadConnection()",
+                MetricsRegistry.label("target", "primary"), primaryReads::sum);
+        metrics.counter("mrp_db_replica_failures_total", "Replica connections that failed, read went to the primary",
+                "", replicaFailures::sum);
+    }
 
     // Singleton (one db instance for whole application)
-    public static synchronized DatabaseManager getInstance() {
-        if (instance == null) {
-            instance = new DatabaseManager();
-        }
-        return instance;
+    // Holder idiom instead of a synchronized getter: lazy and thread safe without a monitor
+    // that could pin virtual threads to their carrier
+    private static class Holder {
+        private static final DatabaseManager INSTANCE = new DatabaseManager();
+    }
+
+    public static DatabaseManager getInstance() {
+        return Holder.INSTANCE;
     }
 
-    // Returns fresh connections each time
+    // Connection to the primary: for all writes, and for reads that decide a write (ownership checks,
+    // login, SELECT ... FOR UPDATE). Borrows from the pool, close() gives it back.
+    // Callers block (virtual threads just park) until one is free, at most mrp.db.acquireTimeoutMillis.
     public Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+        return pool.getConnection();
+    }
+
+    // Connection for pure reads (lists, search, profiles, leaderboard): a replica if configured, the primary
+    // if there is none, none is reachable, or the current user wrote within mrp.db.readYourWritesMillis.
+    // Data from a replica can be slightly behind, never write on it (it is read only anyway).
+    public Connection getReadConnection() throws SQLException {
+        if (replicas.length > 0 && !readYourWrites.pinned()) {
+            int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.length);
+            for (int n = 0; n < replicas.length; n++) {
+                int i = (start + n) % replicas.length;
+                long downUntil = replicaDownUntil.get(i);
+                if (downUntil != 0 && downUntil - System.nanoTime() > 0) continue;
+                try {
+                    Connection conn = replicas[i].getConnection();
+                    replicaDownUntil.set(i, 0);
+                    replicaReads.increment();
+                    return conn;
+                } catch (SQLException e) {
+                    replicaFailures.increment();
+                    replicaDownUntil.set(i, System.nanoTime() + REPLICA_RETRY_NANOS);
+                    System.err.println("Replica " + (i + 1) + " unavailable, reading from primary: " + e.getMessage());
+                }
+            }
+        }
+        primaryReads.increment();
+        return pool.getConnection();
+    }
+
+    // Binds the user of the current request to the thread for getReadConnection(); writes = the request may
+    // change data (POST/PUT/DELETE). The returned Runnable unbinds it when the request is done.
+    public Runnable bindUser(int userId, boolean writes) {
+        return readYourWrites.bind(userId, writes);
+    }
+
+    // Async route handed its request off (RequestScope.detach): the user binding leaves this thread,
+    // async calls already carry it with them
+    public void detachUser() {
+        readYourWrites.restore(null);
+    }
+
+    // Same for the query accounting of the request
+    public void detachQueries() {
+        QueryStats.unbind();
+    }
+
+    // Runs a repository call on the DB executor instead of the calling thread (async repository variants).
+    // Query accounting and read-your-writes routing of the current request apply to it as well.
+    public <T> CompletableFuture<T> async(SqlCall<T> call) {
+        return executor.submit(call);
+    }
+
+    // Counts queries, round trips, rows and database time of the current request (QueryStats) until the
+    // returned Runnable runs, then reports them and checks mrp.db.queryBudget.
+    public Runnable trackQueries(String method, String path) {
+        return queryBudget.open(method, path);
+    }
+
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    public boolean hasReplicas() {
+        return replicas.length > 0;
+    }
+
+    // How long replicas are assumed to lag behind (the read-your-writes window)
+    public long getReadYourWritesMillis() {
+        return readYourWrites.getWindowMillis();
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public int getBatchMaxSize() {
+        return batchMaxSize;
+    }
+
+    public long getBatchLingerMillis() {
+        return batchLingerMillis;
     }
 
-    // Called once at startup
+    // Called once at startup: brings the schema to the latest version (src/main/resources/db/migration)
     public void initializeSchema() {
-        String sql = """
-            CREATE TABLE IF NOT EXISTS users (
-                id SERIAL PRIMARY KEY,
-                username VARCHAR(255) UNIQUE NOT NULL,
-                password VARCHAR(255) NOT NULL,
-                bio TEXT DEFAULT '',
-                created_at TIMESTAMP DEFAULT NOW(),
-                email varchar(255)
-            );
-
-            CREATE TABLE IF NOT EXISTS media (
-                id SERIAL PRIMARY KEY,
-                title VARCHAR(255) NOT NULL,
-                description TEXT,
-                media_type VARCHAR(50) NOT NULL,
-                release_year INT,
-                genre VARCHAR(255),
-                age_restriction INT DEFAULT 0,
-                created_by INT REFERENCES users(id),
-                created_at TIMESTAMP DEFAULT NOW()
-            );
-
-            CREATE TABLE IF NOT EXISTS ratings (
-                id SERIAL PRIMARY KEY,
-                media_id INT REFERENCES media(id) ON DELETE CASCADE,
-                user_id INT REFERENCES users(id),
-                stars INT NOT NULL CHECK (stars BETWEEN 1 AND 5),
-                comment TEXT,
-                comment_visible BOOLEAN DEFAULT FALSE,
-                created_at TIMESTAMP DEFAULT NOW(),
-                UNIQUE(media_id, user_id)
-            );
-
-            CREATE TABLE IF NOT EXISTS rating_likes (
-                rating_id INT REFERENCES ratings(id) ON DELETE CASCADE,
-                user_id INT REFERENCES users(id),
-                PRIMARY KEY (rating_id, user_id)
-            );
-
-            CREATE TABLE IF NOT EXISTS favorites (
-                user_id INT REFERENCES users(id),
-                media_id INT REFERENCES media(id) ON DELETE CASCADE,
-                PRIMARY KEY (user_id, media_id)
-            );
-            """;
-        try (Connection conn = getConnection(); Statement stmt = conn.createStatement()) {
-            stmt.execute(sql);
-            System.out.println("Database schema initialized.");
-        } catch (SQLException e) {
-            System.err.println("Failed to initialized schema: " + e.getMessage());
+        try {
+            new MigrationRunner(this, "db/migration").migrate();
+        } catch (SQLException | IOException e) {
+            System.err.println("Failed to migrate schema: " + e.getMessage());
             throw new RuntimeException(e);
         }
     }
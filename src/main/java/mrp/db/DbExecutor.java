@@ -0,0 +1,75 @@
+package mrp.db;
+
+import mrp.metrics.MetricsRegistry;
+
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Runs the async repository variants (CompletableFuture) off the HTTP worker. One thread per pooled
+// connection: more threads would only wait for a connection, fewer would leave connections unused.
+// At most queueCapacity calls wait, more fail right away like a pool timeout (SQLTransientConnectionException).
+//
+// The request context of the submitting thread (QueryStats, read-your-writes user) is bound on the executor
+// thread while the call runs and while the stages depending on it run: those execute on this thread when the
+// future completes, and further async calls they start belong to the same request. Consequence: a stage
+// must never block on another future (join/get), with all threads waiting that is a deadlock.
+final class DbExecutor {
+    private final ThreadPoolExecutor executor;
+    private final ReadYourWrites readYourWrites;
+    private final LongAdder rejected = new LongAdder();
+
+    DbExecutor(int threads, int queueCapacity, ReadYourWrites readYourWrites) {
+        this.readYourWrites = readYourWrites;
+        AtomicInteger number = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+                    Thread thread = new Thread(r, "db-executor-" + number.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.gauge("mrp_db_executor_queue_depth", "Async repository calls waiting for a thread",
+                () -> executor.getQueue().size());
+        metrics.gauge("mrp_db_executor_active", "Async repository calls running", executor::getActiveCount);
+        metrics.counter("mrp_db_executor_rejected_total", "Async repository calls rejected because the queue was full",
+                "", rejected::sum);
+    }
+
+    <T> CompletableFuture<T> submit(SqlCall<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        QueryStats stats = QueryStats.current();
+        ReadYourWrites.Binding user = readYourWrites.current();
+        try {
+            executor.execute(() -> run(call, future, stats, user));
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            future.completeExceptionally(new SQLTransientConnectionException("Database executor queue is full"));
+        }
+        return future;
+    }
+
+    private <T> void run(SqlCall<T> call, CompletableFuture<T> future, QueryStats stats, ReadYourWrites.Binding user) {
+        QueryStats.attach(stats);
+        readYourWrites.restore(user);
+        try {
+            T result;
+            try {
+                result = call.call();
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+                return;
+            }
+            future.complete(result);
+        } finally {
+            QueryStats.unbind();
+            readYourWrites.restore(null);
+        }
+    }
+}
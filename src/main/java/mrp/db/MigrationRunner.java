@@ -0,0 +1,188 @@
+package mrp.db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Versioned schema migrations: V<version>__<description>.sql files from the classpath, applied in order,
+// each in its own transaction together with its row in schema_version. The checksum of every applied
+// script is stored, a script that was edited afterwards stops the start instead of silently diverging.
+// Several instances starting at once are serialized with a PostgreSQL advisory lock.
+public class MigrationRunner {
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+    private static final long LOCK_KEY = 0x6d72705f736368L;  // "mrp_sch", any constant shared by all instances
+
+    private static final String CREATE_VERSION_TABLE_SQL = """
+            CREATE TABLE IF NOT EXISTS schema_version (
+                version INT PRIMARY KEY,
+                description VARCHAR(255) NOT NULL,
+                checksum VARCHAR(64) NOT NULL,
+                installed_at TIMESTAMP DEFAULT NOW(),
+                execution_ms INT NOT NULL
+            )""";
+
+    public record Migration(int version, String description, String script, String checksum) {}
+
+    private final DatabaseManager db;
+    private final String location;
+
+    public MigrationRunner(DatabaseManager db, String location) {
+        this.db = db;
+        this.location = location;
+    }
+
+    // Applies all pending migrations, returns how many were applied
+    public int migrate() throws SQLException, IOException {
+        List<Migration> migrations = scan(location);
+        try (Connection conn = db.getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("SELECT pg_advisory_lock(" + LOCK_KEY + ")");
+            }
+            try {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute(CREATE_VERSION_TABLE_SQL);
+                }
+                Map<Integer, String> applied = appliedChecksums(conn);
+                int count = 0;
+                for (Migration migration : migrations) {
+                    String checksum = applied.remove(migration.version());
+                    if (checksum == null) {
+                        apply(conn, migration);
+                        count++;
+                    } else if (!checksum.equals(migration.checksum())) {
+                        throw new IllegalStateException("Migration V" + migration.version() + " (" + migration.description()
+                                + ") was changed after it was applied, add a new migration instead");
+                    }
+                }
+                for (int version : applied.keySet()) {
+                    System.err.println("Warning: migration V" + version + " is applied but no longer on the classpath");
+                }
+                int current = migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).version();
+                System.out.println("Database schema up to date (version " + current + ", " + count + " applied).");
+                return count;
+            } finally {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("SELECT pg_advisory_unlock(" + LOCK_KEY + ")");
+                }
+            }
+        }
+    }
+
+    private static Map<Integer, String> appliedChecksums(Connection conn) throws SQLException {
+        Map<Integer, String> applied = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version, checksum FROM schema_version")) {
+            while (rs.next()) applied.put(rs.getInt(1), rs.getString(2));
+        }
+        return applied;
+    }
+
+    // Script and version row in one transaction: a failing migration leaves nothing behind (PostgreSQL has transactional DDL)
+    private static void apply(Connection conn, Migration migration) throws SQLException {
+        long start = System.nanoTime();
+        conn.setAutoCommit(false);
+        try {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(migration.script());
+            }
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO schema_version (version, description, checksum, execution_ms) VALUES (?, ?, ?, ?)")) {
+                stmt.setInt(1, migration.version());
+                stmt.setString(2, migration.description());
+                stmt.setString(3, migration.checksum());
+                stmt.setInt(4, (int) millis);
+                stmt.executeUpdate();
+            }
+            conn.commit();
+            System.out.println("Applied migration V" + migration.version() + " (" + migration.description() + ") in " + millis + " ms");
+        } catch (SQLException e) {
+            conn.rollback();
+            throw new SQLException("Migration V" + migration.version() + " (" + migration.description() + ") failed: "
+                    + e.getMessage(), e);
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    // All migrations below location on the classpath (directory or jar), sorted by version
+    static List<Migration> scan(String location) throws IOException {
+        ClassLoader loader = MigrationRunner.class.getClassLoader();
+        URL url = loader.getResource(location);
+        if (url == null) throw new IOException("Migration location not found on classpath: " + location);
+
+        List<String> names = new ArrayList<>();
+        if (url.getProtocol().equals("jar")) {
+            JarURLConnection connection = (JarURLConnection) url.openConnection();
+            connection.setUseCaches(false);
+            try (JarFile jar = connection.getJarFile()) {
+                String prefix = location + "/";
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    String entry = entries.nextElement().getName();
+                    if (entry.startsWith(prefix) && entry.indexOf('/', prefix.length()) < 0) {
+                        names.add(entry.substring(prefix.length()));
+                    }
+                }
+            }
+        } else {
+            try (DirectoryStream<Path> dir = Files.newDirectoryStream(Path.of(url.toURI()))) {
+                for (Path file : dir) names.add(file.getFileName().toString());
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            }
+        }
+
+        List<Migration> migrations = new ArrayList<>();
+        for (String name : names) {
+            if (!name.endsWith(".sql")) continue;
+            Matcher m = FILE_NAME.matcher(name);
+            if (!m.matches()) throw new IllegalStateException("Invalid migration file name (expected V<n>__<description>.sql): " + name);
+            String script;
+            try (InputStream in = loader.getResourceAsStream(location + "/" + name)) {
+                script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            migrations.add(new Migration(Integer.parseInt(m.group(1)), m.group(2).replace('_', ' '), script, checksum(script)));
+        }
+        migrations.sort((a, b) -> Integer.compare(a.version(), b.version()));
+        for (int i = 1; i < migrations.size(); i++) {
+            if (migrations.get(i).version() == migrations.get(i - 1).version()) {
+                throw new IllegalStateException("Duplicate migration version V" + migrations.get(i).version());
+            }
+        }
+        return migrations;
+    }
+
+    // SHA-256 over the script with normalized line endings, so a checkout with CRLF (Windows) does not count as changed
+    static String checksum(String script) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(script.replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package mrp.db;
+
+// Settings for the ConnectionPool
+// Defaults can be overridden at startup with system properties, e.g. -Dmrp.db.maxConnections=20
+public class PoolConfig {
+    private int minIdle = 2;                          // kept open even when nothing is going on
+    private int maxConnections = 10;                  // upper bound for open connections (PostgreSQL backends)
+    private long acquireTimeoutMillis = 5_000;        // waited longer for a free connection -> SQLException
+    private long idleTimeoutMillis = 10 * 60_000;     // idle connections above minIdle are closed after this
+    private long maxLifetimeMillis = 30 * 60_000;     // connections are replaced after this (0 = never)
+    private long validationIntervalMillis = 1_000;    // idle longer than this -> isValid() check on borrow
+    private long leakDetectionMillis = 60_000;        // borrowed longer than this -> warning with stack trace (0 = off)
+    private long housekeepingMillis = 30_000;         // interval of eviction, refill and leak check
+    private int statementCacheSize = 64;              // cached PreparedStatements per connection (0 = off)
+
+    public PoolConfig() {}
+
+    public static PoolConfig fromSystemProperties() {
+        PoolConfig config = new PoolConfig();
+        config.minIdle = Integer.getInteger("mrp.db.minIdle", config.minIdle);
+        config.maxConnections = Integer.getInteger("mrp.db.maxConnections", config.maxConnections);
+        config.acquireTimeoutMillis = Long.getLong("mrp.db.acquireTimeoutMillis", config.acquireTimeoutMillis);
+        config.idleTimeoutMillis = Long.getLong("mrp.db.idleTimeoutMillis", config.idleTimeoutMillis);
+        config.maxLifetimeMillis = Long.getLong("mrp.db.maxLifetimeMillis", config.maxLifetimeMillis);
+        config.validationIntervalMillis = Long.getLong("mrp.db.validationIntervalMillis", config.validationIntervalMillis);
+        config.leakDetectionMillis = Long.getLong("mrp.db.leakDetectionMillis", config.leakDetectionMillis);
+        config.housekeepingMillis = Long.getLong("mrp.db.housekeepingMillis", config.housekeepingMillis);
+        config.statementCacheSize = Integer.getInteger("mrp.db.statementCacheSize", config.statementCacheSize);
+        if (config.maxConnections < 1 || config.minIdle < 0 || config.minIdle > config.maxConnections) {
+            throw new IllegalArgumentException("Invalid pool size: minIdle=" + config.minIdle
+                    + ", maxConnections=" + config.maxConnections);
+        }
+        return config;
+    }
+
+    // Getters & setters
+    public int getMinIdle() { return minIdle; }
+    public void setMinIdle(int minIdle) { this.minIdle = minIdle; }
+
+    public int getMaxConnections() { return maxConnections; }
+    public void setMaxConnections(int maxConnections) { this.maxConnections = maxConnections; }
+
+    public long getAcquireTimeoutMillis() { return acquireTimeoutMillis; }
+    public void setAcquireTimeoutMillis(long acquireTimeoutMillis) { this.acquireTimeoutMillis = acquireTimeoutMillis; }
+
+    public long getIdleTimeoutMillis() { return idleTimeoutMillis; }
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) { this.idleTimeoutMillis = idleTimeoutMillis; }
+
+    public long getMaxLifetimeMillis() { return maxLifetimeMillis; }
+    public void setMaxLifetimeMillis(long maxLifetimeMillis) { this.maxLifetimeMillis = maxLifetimeMillis; }
+
+    public long getValidationIntervalMillis() { return validationIntervalMillis; }
+    public void setValidationIntervalMillis(long validationIntervalMillis) { this.validationIntervalMillis = validationIntervalMillis; }
+
+    public long getLeakDetectionMillis() { return leakDetectionMillis; }
+    public void setLeakDetectionMillis(long leakDetectionMillis) { this.leakDetectionMillis = leakDetectionMillis; }
+
+    public long getHousekeepingMillis() { return housekeepingMillis; }
+    public void setHousekeepingMillis(long housekeepingMillis) { this.housekeepingMillis = housekeepingMillis; }
+
+    public int getStatementCacheSize() { return statementCacheSize; }
+    public void setStatementCacheSize(int statementCacheSize) { this.statementCacheSize = statementCacheSize; }
+}
@@ -0,0 +1,73 @@
+package mrp.db;
+
+import mrp.metrics.Histogram;
+import mrp.metrics.MetricsRegistry;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counts the database work of every request (QueryStats) and flags requests that need more statements
+// than mrp.db.queryBudget: usually an N+1 loop or a lookup that loads far more than the endpoint needs.
+// The warning names the statement repeated most often, that is mostly the one to look at.
+final class QueryBudget {
+    private static final int SQL_LOG_LENGTH = 120;
+
+    private final int budget;   // statements per request, 0 = no check
+    private final boolean logAll;
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder roundTrips = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder exceeded = new LongAdder();
+    private final Histogram dbTime;
+
+    QueryBudget(int budget, boolean logAll) {
+        this.budget = budget;
+        this.logAll = logAll;
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        dbTime = metrics.histogram("mrp_db_request_seconds", "Time spent in the database per request");
+        metrics.counter("mrp_db_queries_total", "Statements executed by requests", "", queries::sum);
+        metrics.counter("mrp_db_round_trips_total", "Database round trips of requests (statements, commits, cursor fetches)",
+                "", roundTrips::sum);
+        metrics.counter("mrp_db_rows_read_total", "Rows read by requests", "", rows::sum);
+        metrics.counter("mrp_db_query_budget_exceeded_total", "Requests with more statements than mrp.db.queryBudget",
+                "", exceeded::sum);
+    }
+
+    Runnable open(String method, String path) {
+        QueryStats stats = QueryStats.bind();
+        return () -> {
+            QueryStats.unbind();
+            finish(method, path, stats);
+        };
+    }
+
+    private void finish(String method, String path, QueryStats stats) {
+        if (stats.getRoundTrips() == 0) return;  // nothing from the database (metrics, cache hits)
+        queries.add(stats.getQueries());
+        roundTrips.add(stats.getRoundTrips());
+        rows.add(stats.getRows());
+        dbTime.observeNanos(stats.getDbNanos());
+
+        boolean over = budget > 0 && stats.getQueries() > budget;
+        if (over) exceeded.increment();
+        if (!over && !logAll) return;
+
+        StringBuilder line = new StringBuilder(over ? "Query budget exceeded: " : "Queries: ")
+                .append(method).append(' ').append(path).append(' ')
+                .append(stats.getQueries()).append(" queries");
+        if (over) line.append(" (budget ").append(budget).append(')');
+        line.append(", ").append(stats.getRoundTrips()).append(" round trips, ")
+                .append(stats.getRows()).append(" rows, ")
+                .append(String.format("%.1f", stats.getDbNanos() / 1e6)).append(" ms db");
+        Map.Entry<String, Integer> repeated = stats.mostRepeated();
+        if (repeated != null) {
+            line.append("; repeated ").append(repeated.getValue()).append("x: ").append(shorten(repeated.getKey()));
+        }
+        (over ? System.err : System.out).println(line);
+    }
+
+    private static String shorten(String sql) {
+        String oneLine = sql.replaceAll("\\s+", " ").trim();
+        return oneLine.length() <= SQL_LOG_LENGTH ? oneLine : oneLine.substring(0, SQL_LOG_LENGTH) + "...";
+    }
+}
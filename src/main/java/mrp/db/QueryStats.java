@@ -0,0 +1,73 @@
+package mrp.db;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Database work of one HTTP request: statements, round trips, rows read and time spent in the driver.
+// Bound to the request thread by QueryBudget; while bound, the pool hands out statements wrapped in a
+// TrackedStatement that count here. Streamed bodies are written on the same thread, so they count too.
+// The DbExecutor binds the same instance on its threads for async repository calls, those can run in
+// parallel, hence the atomics. Work on other threads (BatchWriter) is not included.
+public final class QueryStats {
+    private static final ThreadLocal<QueryStats> CURRENT = new ThreadLocal<>();
+
+    private final AtomicInteger queries = new AtomicInteger();
+    private final AtomicInteger roundTrips = new AtomicInteger();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder dbNanos = new LongAdder();
+    private final Map<String, Integer> executionsBySql = new ConcurrentHashMap<>();
+
+    public static QueryStats current() {
+        return CURRENT.get();
+    }
+
+    static QueryStats bind() {
+        QueryStats stats = new QueryStats();
+        CURRENT.set(stats);
+        return stats;
+    }
+
+    // carries the stats of a request over to another thread, null = none
+    static void attach(QueryStats stats) {
+        if (stats != null) CURRENT.set(stats);
+    }
+
+    static void unbind() {
+        CURRENT.remove();
+    }
+
+    void query(String sql, long nanos) {
+        queries.incrementAndGet();
+        roundTrips.incrementAndGet();
+        dbNanos.add(nanos);
+        if (sql != null) executionsBySql.merge(sql, 1, Integer::sum);
+    }
+
+    // commit/rollback, or the next batch of rows of a server-side cursor
+    void roundTrip(long nanos) {
+        roundTrips.incrementAndGet();
+        dbNanos.add(nanos);
+    }
+
+    void rowTime(long nanos, boolean gotRow) {
+        dbNanos.add(nanos);
+        if (gotRow) rows.increment();
+    }
+
+    public int getQueries() { return queries.get(); }
+    public int getRoundTrips() { return roundTrips.get(); }
+    public long getRows() { return rows.sum(); }
+    public long getDbNanos() { return dbNanos.sum(); }
+
+    // The statement run most often in this request (same SQL text), null if none ran more than once.
+    // The same query again and again with other parameters is the typical N+1 pattern.
+    public Map.Entry<String, Integer> mostRepeated() {
+        Map.Entry<String, Integer> top = null;
+        for (Map.Entry<String, Integer> entry : executionsBySql.entrySet()) {
+            if (entry.getValue() > 1 && (top == null || entry.getValue() > top.getValue())) top = entry;
+        }
+        return top;
+    }
+}
@@ -0,0 +1,66 @@
+package mrp.db;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// Replicas lag a little behind the primary. Reads during a request that writes (ownership and existence
+// checks) always go to the primary, and so that a user sees their own rating/favorite right after creating
+// it, their reads stay there for windowMillis afterwards. The user of the current request is bound to the
+// thread by DatabaseManager.bindUser (via a RequestScope).
+final class ReadYourWrites {
+    private static final int SWEEP_THRESHOLD = 10_000;
+
+    record Binding(int userId, boolean writes) {}
+
+    private final long windowNanos;
+    private final ThreadLocal<Binding> current = new ThreadLocal<>();
+    private final ConcurrentHashMap<Integer, Long> pinnedUntil = new ConcurrentHashMap<>();  // user id -> nanoTime
+
+    ReadYourWrites(long windowMillis) {
+        this.windowNanos = windowMillis * 1_000_000;
+    }
+
+    long getWindowMillis() {
+        return windowNanos / 1_000_000;
+    }
+
+    Runnable bind(int userId, boolean writes) {
+        current.set(new Binding(userId, writes));
+        if (!writes) return current::remove;
+        return () -> {
+            // the window starts when the request is done, the commit is on the primary by then
+            if (windowNanos > 0) pin(userId);
+            current.remove();
+        };
+    }
+
+    // Binding of the current thread, for handing it to a DbExecutor thread with restore()
+    Binding current() {
+        return current.get();
+    }
+
+    // null = unbind
+    void restore(Binding binding) {
+        if (binding == null) current.remove();
+        else current.set(binding);
+    }
+
+    private void pin(int userId) {
+        pinnedUntil.put(userId, System.nanoTime() + windowNanos);
+        if (pinnedUntil.size() > SWEEP_THRESHOLD) {
+            long now = System.nanoTime();
+            pinnedUntil.values().removeIf(until -> until - now <= 0);
+        }
+    }
+
+    // true if reads of the current thread have to see the primary
+    boolean pinned() {
+        Binding binding = current.get();
+        if (binding == null) return false;
+        if (binding.writes()) return true;
+        Long until = pinnedUntil.get(binding.userId());
+        if (until == null) return false;
+        if (until - System.nanoTime() > 0) return true;
+        pinnedUntil.remove(binding.userId(), until);
+        return false;
+    }
+}
@@ -0,0 +1,9 @@
+package mrp.db;
+
+import java.sql.SQLException;
+
+// Repository call run by the DbExecutor, e.g. () -> getById(id)
+@FunctionalInterface
+public interface SqlCall<T> {
+    T call() throws SQLException;
+}
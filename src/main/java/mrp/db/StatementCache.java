@@ -0,0 +1,107 @@
+package mrp.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// PreparedStatements of one physical connection, keyed by SQL text and kept across borrows (LRU).
+// A reused statement keeps its server-side prepared statement: after pgjdbc's prepareThreshold
+// executions PostgreSQL no longer parses it, and once it settles on a generic plan no longer plans it.
+// Only used by the thread that currently has the connection borrowed, so no locking.
+final class StatementCache {
+
+    static final class Entry {
+        final String sql;
+        final PreparedStatement stmt;
+        boolean inUse;
+        boolean evicted;  // dropped from the cache while in use -> close when returned
+
+        Entry(String sql, PreparedStatement stmt) {
+            this.sql = sql;
+            this.stmt = stmt;
+        }
+    }
+
+    private final Connection raw;
+    private final int maxSize;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);  // access order
+
+    StatementCache(Connection raw, int maxSize, LongAdder hits, LongAdder misses, LongAdder evictions) {
+        this.raw = raw;
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    // Returns the cached statement for sql (marked in use), or null if it is already in use
+    // (same SQL open twice at once) -> caller prepares an uncached one.
+    Entry acquire(String sql) throws SQLException {
+        Entry entry = entries.get(sql);
+        if (entry != null) {
+            if (entry.inUse) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            entry.inUse = true;
+            return entry;
+        }
+        misses.increment();
+        entry = new Entry(sql, raw.prepareStatement(sql));
+        entry.inUse = true;
+        entries.put(sql, entry);
+        evictEldest();
+        return entry;
+    }
+
+    // Statement closed by the caller: leave it as a freshly prepared one would be
+    void release(Entry entry) {
+        try {
+            ResultSet rs = entry.stmt.getResultSet();
+            if (rs != null) rs.close();  // frees the rows of a fully fetched result
+            entry.stmt.clearParameters();
+            if (entry.stmt.getFetchSize() != 0) entry.stmt.setFetchSize(0);
+            entry.stmt.clearWarnings();
+            entry.inUse = false;
+            if (!entry.evicted) return;
+        } catch (SQLException e) {
+            entries.remove(entry.sql, entry);
+        }
+        closeQuietly(entry);
+    }
+
+    private void evictEldest() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > maxSize && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            evictions.increment();
+            if (eldest.inUse) {
+                eldest.evicted = true;
+            } else {
+                closeQuietly(eldest);
+            }
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private static void closeQuietly(Entry entry) {
+        try {
+            entry.stmt.close();
+        } catch (SQLException ignored) {
+            // connection broken, the pool will notice on return
+        }
+    }
+}
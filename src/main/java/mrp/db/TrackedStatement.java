@@ -0,0 +1,108 @@
+package mrp.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// Statement wrapper that reports to a QueryStats: every execute*() is one query and one round trip, its
+// ResultSet counts rows and, for a server-side cursor (fetch size + no autocommit), one more round trip per
+// fetched batch. Time inside the driver counts as database time.
+final class TrackedStatement implements InvocationHandler {
+    private final Statement target;
+    private final String sql;  // prepared SQL, null for plain Statements (SQL comes with execute)
+    private final QueryStats stats;
+
+    private TrackedStatement(Statement target, String sql, QueryStats stats) {
+        this.target = target;
+        this.sql = sql;
+        this.stats = stats;
+    }
+
+    static Statement wrap(Statement target, Class<? extends Statement> type, String sql, QueryStats stats) {
+        return (Statement) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                new TrackedStatement(target, sql, stats));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        switch (name) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "getResultSet":
+                return track((ResultSet) call(method, args));
+            default:
+                break;
+        }
+        if (!name.startsWith("execute")) return call(method, args);
+
+        String text = args != null && args.length > 0 && args[0] instanceof String s ? s : sql;
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = call(method, args);
+        } finally {
+            stats.query(text, System.nanoTime() - start);
+        }
+        return result instanceof ResultSet rs ? track(rs) : result;
+    }
+
+    private Object call(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private ResultSet track(ResultSet rs) throws SQLException {
+        if (rs == null) return null;
+        int fetchSize = target.getFetchSize();
+        boolean cursor = fetchSize > 0 && !target.getConnection().getAutoCommit();
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                new TrackedResultSet(rs, cursor ? fetchSize : 0));
+    }
+
+    private final class TrackedResultSet implements InvocationHandler {
+        private final ResultSet rs;
+        private final int batchSize;  // 0 = whole result arrived with the query
+        private long rowsRead;
+
+        TrackedResultSet(ResultSet rs, int batchSize) {
+            this.rs = rs;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "next": {
+                    boolean fetches = batchSize > 0 && rowsRead > 0 && rowsRead % batchSize == 0;
+                    long start = System.nanoTime();
+                    boolean row = rs.next();
+                    long nanos = System.nanoTime() - start;
+                    if (fetches) stats.roundTrip(0);
+                    stats.rowTime(nanos, row);
+                    if (row) rowsRead++;
+                    return row;
+                }
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    try {
+                        return method.invoke(rs, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
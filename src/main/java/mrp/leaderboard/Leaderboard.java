@@ -0,0 +1,217 @@
+package mrp.leaderboard;
+
+import mrp.cache.Version;
+import mrp.model.LeaderboardRank;
+import mrp.model.Page;
+import mrp.model.User;
+import mrp.repository.PageCursor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Users ordered by number of ratings, kept in memory: loaded once at startup (UserRepository.getLeaderboard),
+// afterwards the repositories report every change after their commit (new users, ratings created/deleted,
+// imports, media deleted together with their ratings). GET /api/leaderboard then needs no query at all,
+// top-K, pages and the rank of a user are O(log n) in the RankedSkipList.
+// Only changes made through this process are seen; after manual SQL a restart reloads the counts.
+public class Leaderboard {
+    private static final String CURSOR_SORT = "rank";
+
+    static final class Entry {
+        final int userId;
+        final String username;
+        final LocalDateTime createdAt;
+        volatile String bio;
+        int ratingCount;  // only changed while unlinked from the skip list, under the write lock
+
+        Entry(int userId, String username, String bio, LocalDateTime createdAt, int ratingCount) {
+            this.userId = userId;
+            this.username = username;
+            this.bio = bio;
+            this.createdAt = createdAt;
+            this.ratingCount = ratingCount;
+        }
+
+        User toUser() {
+            User user = new User();
+            user.setId(userId);
+            user.setUsername(username);
+            user.setBio(bio);
+            user.setCreatedAt(createdAt);
+            user.setRatingCount(ratingCount);
+            return user;
+        }
+    }
+
+    // Read lock for lookups, so concurrent GETs do not queue behind each other; writes are short
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final RankedSkipList ranking = new RankedSkipList();
+    private final Map<Integer, Entry> byId = new HashMap<>();
+    private final Map<String, Entry> byName = new HashMap<>();
+    // every change, for the ETags of the leaderboard endpoints (in memory, nothing to wait for -> settles at once)
+    private final Version version = new Version(0);
+
+    // Replaces the whole content, users with their ratingCount
+    public void load(List<User> users) {
+        lock.writeLock().lock();
+        try {
+            ranking.clear();
+            byId.clear();
+            byName.clear();
+            for (User user : users) add(user);
+            version.bump();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addUser(User user) {
+        lock.writeLock().lock();
+        try {
+            if (!byId.containsKey(user.getId())) {
+                add(user);
+                version.bump();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(User user) {
+        Entry entry = new Entry(user.getId(), user.getUsername(), user.getBio(), user.getCreatedAt(), user.getRatingCount());
+        byId.put(entry.userId, entry);
+        byName.put(entry.username, entry);
+        ranking.insert(entry);
+    }
+
+    // The bio is shown in the list but does not affect the order
+    public void updateBio(int userId, String bio) {
+        lock.readLock().lock();
+        try {
+            Entry entry = byId.get(userId);
+            if (entry != null) {
+                entry.bio = bio;
+                version.bump();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // delta ratings for one user (+1 created, -1 deleted); unknown users are ignored
+    public void adjust(int userId, int delta) {
+        if (delta == 0) return;
+        lock.writeLock().lock();
+        try {
+            move(userId, delta);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Several users at once (import, medium deleted with its ratings): userId -> delta
+    public void adjustAll(Map<Integer, Integer> deltas) {
+        if (deltas.isEmpty()) return;
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<Integer, Integer> delta : deltas.entrySet()) move(delta.getKey(), delta.getValue());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void move(int userId, int delta) {
+        Entry entry = byId.get(userId);
+        if (entry == null || delta == 0) return;
+        ranking.remove(entry);
+        entry.ratingCount = Math.max(0, entry.ratingCount + delta);
+        ranking.insert(entry);
+        version.bump();
+    }
+
+    public Version getVersion() {
+        return version;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ranking.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Whole list, as GET /api/leaderboard returned it before
+    public List<User> all() {
+        lock.readLock().lock();
+        try {
+            List<User> users = new ArrayList<>(ranking.size());
+            for (RankedSkipList.Node node = ranking.first(); node != null; node = node.next[0]) users.add(node.entry.toUser());
+            return users;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Top-K (cursor null) or the page after cursor. The cursor is the position (count, username) of the last
+    // entry, so a user moving up or down between two pages does not shift the following pages.
+    public Page<User> page(String cursor, int limit) {
+        PageCursor after = PageCursor.decode(cursor, CURSOR_SORT);
+        int afterCount = 0;
+        String afterName = null;
+        if (after != null) {
+            String key = after.key();
+            int colon = key.indexOf(':');
+            try {
+                afterCount = Integer.parseInt(key.substring(0, Math.max(colon, 0)));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor", e);
+            }
+            afterName = key.substring(colon + 1);
+        }
+
+        lock.readLock().lock();
+        try {
+            RankedSkipList.Node node = afterName == null ? ranking.first() : ranking.firstAfter(afterCount, afterName);
+            List<User> items = new ArrayList<>(limit);
+            Entry last = null;
+            for (; node != null && items.size() < limit; node = node.next[0]) {
+                items.add(node.entry.toUser());
+                last = node.entry;
+            }
+            if (node == null || last == null) return new Page<>(items, null);
+            return new Page<>(items, new PageCursor(CURSOR_SORT, last.ratingCount + ":" + last.username, last.userId).encode());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Rank of a user with up to neighbours users above and below, null if the user is unknown
+    public LeaderboardRank rankOf(String username, int neighbours) {
+        lock.readLock().lock();
+        try {
+            Entry entry = byName.get(username);
+            if (entry == null) return null;
+            int rank = ranking.rank(entry);
+
+            List<User> above = new ArrayList<>(neighbours);
+            int first = Math.max(1, rank - neighbours);
+            for (RankedSkipList.Node node = ranking.byRank(first); node != null && node.entry != entry; node = node.next[0]) {
+                above.add(node.entry.toUser());
+            }
+            List<User> below = new ArrayList<>(neighbours);
+            RankedSkipList.Node node = ranking.byRank(rank);
+            for (node = node.next[0]; node != null && below.size() < neighbours; node = node.next[0]) {
+                below.add(node.entry.toUser());
+            }
+            return new LeaderboardRank(rank, ranking.size(), entry.toUser(), above, below);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package mrp.leaderboard;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Skip list with span counts (like a Redis sorted set): every forward link also stores how many entries it
+// skips, so insert, remove, the rank of an entry and the entry at a rank are all O(log n).
+// Order: more ratings first, equal counts by username (same as the old ORDER BY rating_count DESC, username).
+// Not thread safe, Leaderboard guards it with its lock. An entry's count must not change while it is linked.
+final class RankedSkipList {
+    private static final int MAX_LEVEL = 32;
+
+    static final class Node {
+        final Leaderboard.Entry entry;
+        final Node[] next;
+        final int[] span;  // span[i]: rank distance to next[i]
+        Node prev;         // level 0 only
+
+        Node(Leaderboard.Entry entry, int level) {
+            this.entry = entry;
+            this.next = new Node[level];
+            this.span = new int[level];
+        }
+    }
+
+    private final Node head = new Node(null, MAX_LEVEL);
+    private int level = 1;
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    // < 0: a comes before b
+    static int compare(int countA, String nameA, int countB, String nameB) {
+        if (countA != countB) return Integer.compare(countB, countA);
+        return nameA.compareTo(nameB);
+    }
+
+    private static boolean before(Node node, int count, String username) {
+        return compare(node.entry.ratingCount, node.entry.username, count, username) < 0;
+    }
+
+    void insert(Leaderboard.Entry entry) {
+        Node[] update = new Node[MAX_LEVEL];
+        int[] rank = new int[MAX_LEVEL];
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            rank[i] = i == level - 1 ? 0 : rank[i + 1];
+            while (x.next[i] != null && before(x.next[i], entry.ratingCount, entry.username)) {
+                rank[i] += x.span[i];
+                x = x.next[i];
+            }
+            update[i] = x;
+        }
+
+        int nodeLevel = randomLevel();
+        if (nodeLevel > level) {
+            for (int i = level; i < nodeLevel; i++) {
+                rank[i] = 0;
+                update[i] = head;
+                head.span[i] = size;
+            }
+            level = nodeLevel;
+        }
+
+        Node node = new Node(entry, nodeLevel);
+        for (int i = 0; i < nodeLevel; i++) {
+            node.next[i] = update[i].next[i];
+            update[i].next[i] = node;
+            // update[i] was rank[i], the new node is rank[0] + 1
+            node.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+            update[i].span[i] = rank[0] - rank[i] + 1;
+        }
+        for (int i = nodeLevel; i < level; i++) update[i].span[i]++;
+
+        node.prev = update[0] == head ? null : update[0];
+        if (node.next[0] != null) node.next[0].prev = node;
+        size++;
+    }
+
+    boolean remove(Leaderboard.Entry entry) {
+        Node[] update = new Node[MAX_LEVEL];
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && before(x.next[i], entry.ratingCount, entry.username)) x = x.next[i];
+            update[i] = x;
+        }
+        Node node = x.next[0];
+        if (node == null || node.entry != entry) return false;
+
+        for (int i = 0; i < level; i++) {
+            if (update[i].next[i] == node) {
+                update[i].span[i] += node.span[i] - 1;
+                update[i].next[i] = node.next[i];
+            } else {
+                update[i].span[i]--;
+            }
+        }
+        if (node.next[0] != null) node.next[0].prev = node.prev;
+        while (level > 1 && head.next[level - 1] == null) level--;
+        size--;
+        return true;
+    }
+
+    // 1-based rank of a linked entry, 0 if it is not in the list
+    int rank(Leaderboard.Entry entry) {
+        int rank = 0;
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null
+                    && compare(x.next[i].entry.ratingCount, x.next[i].entry.username, entry.ratingCount, entry.username) <= 0) {
+                rank += x.span[i];
+                x = x.next[i];
+            }
+            if (x.entry == entry) return rank;
+        }
+        return 0;
+    }
+
+    // Node at a 1-based rank, null if out of range
+    Node byRank(int rank) {
+        if (rank < 1 || rank > size) return null;
+        int traversed = 0;
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && traversed + x.span[i] <= rank) {
+                traversed += x.span[i];
+                x = x.next[i];
+            }
+            if (traversed == rank) return x;
+        }
+        return null;
+    }
+
+    // First node ordered after (count, username), which need not be in the list (keyset cursor)
+    Node firstAfter(int count, String username) {
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && compare(x.next[i].entry.ratingCount, x.next[i].entry.username, count, username) <= 0) {
+                x = x.next[i];
+            }
+        }
+        return x.next[0];
+    }
+
+    Node first() {
+        return head.next[0];
+    }
+
+    void clear() {
+        for (int i = 0; i < MAX_LEVEL; i++) {
+            head.next[i] = null;
+            head.span[i] = 0;
+        }
+        level = 1;
+        size = 0;
+    }
+
+    // p = 1/4 per level: about 1.33 links per entry, O(log n) levels
+    private static int randomLevel() {
+        int level = 1;
+        while (level < MAX_LEVEL && (ThreadLocalRandom.current().nextInt() & 3) == 0) level++;
+        return level;
+    }
+}
@@ -0,0 +1,63 @@
+package mrp.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency histogram with fixed buckets, lock-free: observe() is a bucket search plus two LongAdder increments,
+// so it can stay on in production. Rendered in Prometheus format (cumulative buckets, seconds).
+public class Histogram {
+    // Upper bounds in seconds: 0.5 ms .. 10 s, everything above lands in +Inf
+    static final double[] BOUNDS = {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    private static final long[] BOUNDS_NANOS = new long[BOUNDS.length];
+    private static final String[] BOUND_LABELS = new String[BOUNDS.length];
+
+    static {
+        for (int i = 0; i < BOUNDS.length; i++) {
+            BOUNDS_NANOS[i] = (long) (BOUNDS[i] * 1_000_000_000L);
+            BOUND_LABELS[i] = Double.toString(BOUNDS[i]);
+        }
+    }
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];  // not cumulative, last = +Inf
+    private final LongAdder sumNanos = new LongAdder();
+
+    public Histogram() {
+        for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+    }
+
+    public void observeNanos(long nanos) {
+        int i = 0;
+        while (i < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[i]) i++;
+        buckets[i].increment();
+        sumNanos.add(nanos);
+    }
+
+    // Convenience for timing a section: long start = System.nanoTime(); ... histogram.observeSince(start);
+    public void observeSince(long startNanos) {
+        observeNanos(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) count += bucket.sum();
+        return count;
+    }
+
+    public double getSumSeconds() {
+        return sumNanos.sum() / 1e9;
+    }
+
+    // name_bucket{labels,le="..."} lines + name_sum + name_count
+    void render(StringBuilder out, String name, String labels) {
+        String prefix = labels.isEmpty() ? "{" : "{" + labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i].sum();
+            out.append(name).append("_bucket").append(prefix).append("le=\"")
+                    .append(i < BOUND_LABELS.length ? BOUND_LABELS[i] : "+Inf").append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        String suffix = labels.isEmpty() ? " " : "{" + labels + "} ";
+        out.append(name).append("_sum").append(suffix).append(getSumSeconds()).append('\n');
+        out.append(name).append("_count").append(suffix).append(cumulative).append('\n');
+    }
+}
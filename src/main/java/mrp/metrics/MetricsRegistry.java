@@ -0,0 +1,99 @@
+package mrp.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+// All metrics of the application, rendered for GET /metrics in the Prometheus text format.
+// Histograms are created once and then only updated (lock-free), counters and gauges are read
+// from the components that own the numbers (WorkerPool, DatabaseManager, ...) only while rendering.
+public class MetricsRegistry {
+
+    private enum Type { COUNTER, GAUGE, HISTOGRAM }
+
+    // One metric name: HELP/TYPE line + one child per label combination
+    private static final class Family {
+        final String help;
+        final Type type;
+        final Map<String, Object> children = new ConcurrentSkipListMap<>();  // labels -> Histogram or DoubleSupplier
+
+        Family(String help, Type type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    MetricsRegistry() {}  // package-private for tests, the application uses getInstance()
+
+    // Singleton, holder idiom like DatabaseManager
+    private static class Holder {
+        private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+    }
+
+    public static MetricsRegistry getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    // Returns the histogram for name + labels, creating it on first use.
+    // labels are pre-formatted: method="GET",route="/api/media"
+    public Histogram histogram(String name, String help, String labels) {
+        Family family = family(name, help, Type.HISTOGRAM);
+        return (Histogram) family.children.computeIfAbsent(labels, l -> new Histogram());
+    }
+
+    public Histogram histogram(String name, String help) {
+        return histogram(name, help, "");
+    }
+
+    // Counter whose value lives elsewhere (e.g. a LongAdder), read on render. Re-registering replaces the source.
+    public void counter(String name, String help, String labels, DoubleSupplier value) {
+        family(name, help, Type.COUNTER).children.put(labels, value);
+    }
+
+    public void gauge(String name, String help, String labels, DoubleSupplier value) {
+        family(name, help, Type.GAUGE).children.put(labels, value);
+    }
+
+    public void gauge(String name, String help, DoubleSupplier value) {
+        gauge(name, help, "", value);
+    }
+
+    private Family family(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(name, n -> new Family(help, type));
+        if (family.type != type) {
+            throw new IllegalArgumentException("Metric " + name + " already registered as " + family.type);
+        }
+        return family;
+    }
+
+    // Prometheus text exposition format 0.0.4
+    public String render() {
+        StringBuilder out = new StringBuilder(8 * 1024);
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type.name().toLowerCase()).append('\n');
+            for (Map.Entry<String, Object> child : family.children.entrySet()) {
+                String labels = child.getKey();
+                if (child.getValue() instanceof Histogram histogram) {
+                    histogram.render(out, name, labels);
+                } else {
+                    double value = ((DoubleSupplier) child.getValue()).getAsDouble();
+                    out.append(name);
+                    if (!labels.isEmpty()) out.append('{').append(labels).append('}');
+                    out.append(' ').append(value).append('\n');
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    // Escapes a label value (backslash, quote, newline) -> route="/api/media/{id}"
+    public static String label(String name, String value) {
+        String escaped = value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        return name + "=\"" + escaped + "\"";
+    }
+}
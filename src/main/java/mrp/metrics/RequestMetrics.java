@@ -0,0 +1,35 @@
+package mrp.metrics;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Request latency of one route (method + pattern as registered in Router.addRoute), split by status code.
+// The histogram per status is created on first use and then found by array index, no map lookup
+// or label string per request.
+public class RequestMetrics {
+    static final String NAME = "mrp_http_request_duration_seconds";
+    private static final String HELP = "Time from parsed request until the response is ready (streamed: fully written), by route and status";
+
+    private final MetricsRegistry registry;
+    private final String labels;
+    private final AtomicReferenceArray<Histogram> byStatus = new AtomicReferenceArray<>(600);
+
+    public RequestMetrics(String method, String route) {
+        this(MetricsRegistry.getInstance(), method, route);
+    }
+
+    RequestMetrics(MetricsRegistry registry, String method, String route) {
+        this.registry = registry;
+        this.labels = MetricsRegistry.label("method", method) + "," + MetricsRegistry.label("route", route);
+    }
+
+    public void observe(int status, long nanos) {
+        int index = status >= 100 && status < 600 ? status : 0;
+        Histogram histogram = byStatus.get(index);
+        if (histogram == null) {
+            // Races are harmless: the registry hands out the same instance for the same labels
+            histogram = registry.histogram(NAME, HELP, labels + "," + MetricsRegistry.label("status", String.valueOf(status)));
+            byStatus.set(index, histogram);
+        }
+        histogram.observeNanos(nanos);
+    }
+}
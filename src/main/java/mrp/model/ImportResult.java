@@ -0,0 +1,34 @@
+package mrp.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Outcome of a bulk import: how many rows were imported and rejected, plus the first
+// MAX_ERRORS rejected lines with the reason (a huge broken upload does not produce a huge response)
+public class ImportResult {
+    public static final int MAX_ERRORS = 100;
+
+    public record LineError(long line, String error) {}
+
+    private long accepted;
+    private long rejected;
+    private final List<LineError> errors = new ArrayList<>();
+
+    public void addAccepted(long rows) {
+        accepted += rows;
+    }
+
+    public void reject(long line, String error) {
+        rejected++;
+        if (errors.size() < MAX_ERRORS) errors.add(new LineError(line, error));
+    }
+
+    // Rejected rows without a known line (e.g. lost a race against a concurrent insert)
+    public void addRejected(long rows) {
+        rejected += rows;
+    }
+
+    public long getAccepted() { return accepted; }
+    public long getRejected() { return rejected; }
+    public List<LineError> getErrors() { return errors; }
+}
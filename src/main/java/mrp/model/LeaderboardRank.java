@@ -0,0 +1,6 @@
+package mrp.model;
+
+import java.util.List;
+
+// A user's place on the leaderboard (1-based, out of total) with the users directly above and below
+public record LeaderboardRank(int rank, int total, User user, List<User> above, List<User> below) {}
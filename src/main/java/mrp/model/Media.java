@@ -1,6 +1,7 @@
 package mrp.model;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 public class Media {
@@ -17,6 +18,20 @@ public class Media {
 
     public Media() {}
 
+    // Copy, e.g. of a cached instance that callers may change
+    public Media(Media other) {
+        this.id = other.id;
+        this.title = other.title;
+        this.description = other.description;
+        this.mediaType = other.mediaType;
+        this.releaseYear = other.releaseYear;
+        this.genres = other.genres != null ? new ArrayList<>(other.genres) : null;
+        this.ageRestriction = other.ageRestriction;
+        this.createdBy = other.createdBy;
+        this.createdAt = other.createdAt;
+        this.averageScore = other.averageScore;
+    }
+
     // Getters and setters
     public int getId() { return id; }
     public void setId(int id) { this.id = id; }
@@ -0,0 +1,6 @@
+package mrp.model;
+
+import java.util.List;
+
+// One page of a list; next is the cursor for the following page, null on the last page
+public record Page<T>(List<T> items, String next) {}
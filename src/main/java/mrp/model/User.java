@@ -20,6 +20,19 @@ public class User {
         this.password = password;
     }
 
+    // Copy, e.g. of a cached instance that callers may change
+    public User(User other) {
+        this.id = other.id;
+        this.username = other.username;
+        this.password = other.password;
+        this.bio = other.bio;
+        this.createdAt = other.createdAt;
+        this.ratingCount = other.ratingCount;
+        this.averageScore = other.averageScore;
+        this.favoriteGenre = other.favoriteGenre;
+        this.email = other.email;
+    }
+
     // Getters and setters
     public int getId() { return id; }
     public void setId(int id) { this.id = id; }
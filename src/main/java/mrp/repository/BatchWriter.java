@@ -0,0 +1,173 @@
+package mrp.repository;
+
+import mrp.db.DatabaseManager;
+import mrp.metrics.Histogram;
+import mrp.metrics.MetricsRegistry;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Collects small inserts (likes, favorites) from many request threads and writes them as one
+// multi-row statement in one transaction: instead of a connection checkout + round trip + commit
+// per click, one per batch. A batch is flushed when it has maxBatchSize items or lingerMillis after
+// its first item, whichever comes first. submit() blocks until its batch is written and returns the
+// result for its own row, so callers keep the synchronous addLike()/addFavorite() contract.
+final class BatchWriter<T> {
+
+    // Writes all items with one statement on conn (inside a transaction), returns per item whether a row was inserted
+    @FunctionalInterface
+    interface Flusher<T> {
+        boolean[] flush(Connection conn, List<T> items) throws SQLException;
+    }
+
+    private record Pending<T>(T item, CompletableFuture<Boolean> result) {}
+
+    private final DatabaseManager db;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final Flusher<T> flusher;
+    private final LinkedBlockingQueue<Pending<T>> queue = new LinkedBlockingQueue<>();
+
+    // Statistics
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final Histogram flushTime;
+
+    BatchWriter(String name, DatabaseManager db, Flusher<T> flusher) {
+        this(name, db, db.getBatchMaxSize(), db.getBatchLingerMillis(), flusher);
+    }
+
+    BatchWriter(String name, DatabaseManager db, int maxBatchSize, long lingerMillis, Flusher<T> flusher) {
+        this.db = db;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.flusher = flusher;
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        String writer = MetricsRegistry.label("writer", name);
+        this.flushTime = metrics.histogram("mrp_db_batch_flush_seconds", "Time to write one batch", writer);
+        metrics.counter("mrp_db_batch_flushes_total", "Batches written", writer, flushes::sum);
+        metrics.counter("mrp_db_batch_rows_total", "Items written in batches", writer, rows::sum);
+
+        // One writer thread per batch type: batches of the same type never compete for connections
+        Thread thread = new Thread(this::run, "batch-writer-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Queues the item and waits until its batch is written. true = row inserted, false = already there
+    // or filtered out by the flusher. A failing row only fails its own caller.
+    boolean submit(T item) throws SQLException {
+        Pending<T> pending = new Pending<>(item, new CompletableFuture<>());
+        queue.add(pending);
+        try {
+            return pending.result().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for batch write", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException sqlException) throw sqlException;
+            throw new SQLException("Batch write failed", e.getCause());
+        }
+    }
+
+    private void run() {
+        List<Pending<T>> batch = new ArrayList<>(maxBatchSize);
+        while (true) {
+            boolean interrupted = false;
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    // after the linger time only take what is already queued
+                    Pending<T> next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+            if (!batch.isEmpty()) flush(batch);
+            batch.clear();
+            if (interrupted) return;
+        }
+    }
+
+    private void flush(List<Pending<T>> batch) {
+        long start = System.nanoTime();
+        List<T> items = new ArrayList<>(batch.size());
+        for (Pending<T> pending : batch) items.add(pending.item());
+        try {
+            boolean[] results = write(items);
+            for (int i = 0; i < batch.size(); i++) batch.get(i).result().complete(results[i]);
+        } catch (SQLException e) {
+            if (batch.size() == 1 || !isIntegrityViolation(e)) {
+                // Database down, pool exhausted, ...: row by row would only fail the same way, one
+                // acquire timeout per row, with every queued item waiting behind it
+                for (Pending<T> pending : batch) pending.result().completeExceptionally(e);
+            } else {
+                // e.g. a rating deleted while its like was queued (FK violation): one bad row must not fail
+                // the whole batch, so retry row by row and let only the bad one fail
+                for (Pending<T> pending : batch) {
+                    try {
+                        pending.result().complete(write(List.of(pending.item()))[0]);
+                    } catch (SQLException single) {
+                        pending.result().completeExceptionally(single);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            for (Pending<T> pending : batch) pending.result().completeExceptionally(e);
+        } finally {
+            flushes.increment();
+            rows.add(batch.size());
+            flushTime.observeSince(start);
+        }
+    }
+
+    // SQLState class 23: foreign key, unique, check, not null - caused by a row, not by the database
+    static boolean isIntegrityViolation(SQLException e) {
+        String state = e.getSQLState();
+        return state != null && state.startsWith("23");
+    }
+
+    private boolean[] write(List<T> items) throws SQLException {
+        try (Connection conn = db.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                boolean[] results = flusher.flush(conn, items);
+                conn.commit();
+                conn.setAutoCommit(true);
+                return results;
+            } catch (SQLException | RuntimeException e) {
+                try {
+                    conn.rollback();
+                } catch (SQLException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        }
+    }
+
+    // Maps the rows a flusher got back (e.g. via RETURNING) to the items. An item that occurs twice
+    // in one batch (double click) is only reported as inserted once.
+    static <T> boolean[] inserted(List<T> items, Set<T> returned) {
+        boolean[] results = new boolean[items.size()];
+        for (int i = 0; i < results.length; i++) results[i] = returned.remove(items.get(i));
+        return results;
+    }
+
+    long getFlushes() {
+        return flushes.sum();
+    }
+}
@@ -0,0 +1,102 @@
+package mrp.repository;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+// Writes rows in the text format of COPY ... FROM STDIN (tab separated, \N = NULL) through the driver's
+// CopyManager. Rows are encoded into a fixed buffer that goes to the server whenever it is full, so an
+// import of any size needs constant memory and no statement round trip per row.
+final class CopyWriter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final CopyIn copyIn;
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private int count;
+    private boolean rowStart = true;
+
+    CopyWriter(Connection conn, String copySql) throws SQLException {
+        this.copyIn = conn.unwrap(PGConnection.class).getCopyAPI().copyIn(copySql);
+    }
+
+    CopyWriter field(String value) throws SQLException {
+        separator();
+        if (value == null) {
+            put((byte) '\\');
+            put((byte) 'N');
+            return this;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> escape('\\');
+                case '\t' -> escape('t');
+                case '\n' -> escape('n');
+                case '\r' -> escape('r');
+                default -> {
+                    if (c < 0x80) {
+                        put((byte) c);
+                    } else {
+                        // Non-ASCII: encode the code point (surrogate pairs together)
+                        int end = Character.isHighSurrogate(c) && i + 1 < value.length() ? i + 2 : i + 1;
+                        for (byte b : value.substring(i, end).getBytes(StandardCharsets.UTF_8)) put(b);
+                        i = end - 1;
+                    }
+                }
+            }
+        }
+        return this;
+    }
+
+    CopyWriter field(long value) throws SQLException {
+        separator();
+        String digits = Long.toString(value);
+        for (int i = 0; i < digits.length(); i++) put((byte) digits.charAt(i));
+        return this;
+    }
+
+    void endRow() throws SQLException {
+        put((byte) '\n');
+        rowStart = true;
+    }
+
+    // Sends the rest and ends the COPY, returns the number of rows the server took
+    long finish() throws SQLException {
+        flush();
+        return copyIn.endCopy();
+    }
+
+    // For finally blocks: aborts the COPY if finish() was not reached (the server discards all rows)
+    void cancel() {
+        if (!copyIn.isActive()) return;
+        try {
+            copyIn.cancelCopy();
+        } catch (SQLException ignored) {
+            // connection broken, the pool notices on return
+        }
+    }
+
+    private void separator() throws SQLException {
+        if (!rowStart) put((byte) '\t');
+        rowStart = false;
+    }
+
+    private void escape(char c) throws SQLException {
+        put((byte) '\\');
+        put((byte) c);
+    }
+
+    private void put(byte b) throws SQLException {
+        if (count == buf.length) flush();
+        buf[count++] = b;
+    }
+
+    private void flush() throws SQLException {
+        if (count == 0) return;
+        copyIn.writeToCopy(buf, 0, count);
+        count = 0;
+    }
+}
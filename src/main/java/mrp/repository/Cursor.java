@@ -0,0 +1,54 @@
+package mrp.repository;
+
+import mrp.db.DatabaseManager;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// Runs a query with a server-side cursor and hands every row to a RowConsumer. Only used for lists,
+// so it reads from a replica if there is one (DatabaseManager.getReadConnection()).
+// PostgreSQL only uses a cursor if autocommit is off and a fetch size is set, otherwise the
+// driver reads the whole result into memory before the first rs.next() returns.
+final class Cursor {
+
+    @FunctionalInterface
+    interface Binder {
+        void bind(PreparedStatement stmt) throws SQLException;
+    }
+
+    @FunctionalInterface
+    interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    private Cursor() {}
+
+    static <T> void stream(DatabaseManager db, String sql, Binder binder, RowMapper<T> mapper,
+                           RowConsumer<? super T> consumer) throws SQLException, IOException {
+        try (Connection conn = db.getReadConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                stmt.setFetchSize(db.getFetchSize());
+                binder.bind(stmt);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        consumer.accept(mapper.map(rs));
+                    }
+                }
+                conn.commit();
+                conn.setAutoCommit(true);
+            } catch (SQLException | IOException | RuntimeException e) {
+                // read only, nothing to undo; just end the transaction (e.g. client went away mid-stream)
+                try {
+                    conn.rollback();
+                } catch (SQLException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -1,20 +1,45 @@
 package mrp.repository;
 
+import mrp.cache.IntKeyCache;
+import mrp.cache.Version;
 import mrp.db.DatabaseManager;
+import mrp.leaderboard.Leaderboard;
 import mrp.model.Media;
+import mrp.model.Page;
 
+import java.io.IOException;
+import java.math.BigDecimal;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public class MediaRepository {
     private final DatabaseManager db;
+    private final BatchWriter<Favorite> favoriteWriter;
+    // getById, with average score; invalidated here on update/delete and by RatingRepository on rating changes
+    private final IntKeyCache<Media> cache;
+    // deleting a medium also deletes its ratings (ON DELETE CASCADE), their users lose one rating each
+    private final Leaderboard leaderboard;
+    // bumped by every change the media list shows (ETag of GET /api/media), also by RatingRepository
+    private final Version listVersion;
 
     public MediaRepository(DatabaseManager db) {
+        this(db, new IntKeyCache<>(0, 0), new Leaderboard(), new Version(0));
+    }
+
+    public MediaRepository(DatabaseManager db, IntKeyCache<Media> cache, Leaderboard leaderboard, Version listVersion) {
         this.db = db;
+        this.cache = cache;
+        this.leaderboard = leaderboard;
+        this.listVersion = listVersion;
+        this.favoriteWriter = new BatchWriter<>("favorites", db, MediaRepository::insertFavorites);
     }
 
     public Media create(Media media) throws SQLException {
@@ -43,16 +68,53 @@ public class MediaRepository {
                 media.setCreatedAt(LocalDateTime.now());
             }
         }
+        listVersion.bump();
         return media;
     }
 
+    // Bulk import: the rows are streamed from the source into COPY media FROM STDIN while they are parsed.
+    // A single statement: if the upload breaks off (IOException) nothing is imported. Returns the imported rows.
+    public long importMedia(RowSource<Media> rows) throws SQLException, IOException {
+        try (Connection conn = db.getConnection()) {
+            CopyWriter copy = new CopyWriter(conn, "COPY media (title, description, media_type, release_year, genre, age_restriction, created_by) FROM STDIN");
+            try {
+                Media media;
+                while ((media = rows.next()) != null) {
+                    copy.field(media.getTitle())
+                            .field(media.getDescription())
+                            .field(media.getMediaType())
+                            .field(media.getReleaseYear())
+                            .field(media.getGenres() != null ? String.join(",", media.getGenres()) : "")
+                            .field(media.getAgeRestriction())
+                            .field(media.getCreatedBy())
+                            .endRow();
+                }
+                long imported = copy.finish();
+                listVersion.bump();
+                return imported;
+            } finally {
+                copy.cancel();
+            }
+        }
+    }
+
+    private static final String BY_ID_SQL = "SELECT m.*, COALESCE(s.avg_score, 0) AS avg_score FROM media m " +
+            "LEFT JOIN media_rating_stats s ON s.media_id = m.id WHERE m.id = ?";
+
+    // Read-through the media cache; callers get their own copy
     public Media getById(int id) throws SQLException {
-        String sql = "SELECT * FROM media WHERE id = ?";
-        try (Connection conn = db.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        Media media = cache.getOrLoad(id, this::loadById);
+        return media != null ? new Media(media) : null;
+    }
+
+    private Media loadById(int id) throws SQLException {
+        // With the cache on the primary: a lagging replica could still return the row from before an
+        // invalidating write, and that would then stay cached until the TTL ends
+        try (Connection conn = cache.isEnabled() ? db.getConnection() : db.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(BY_ID_SQL)) {
             stmt.setInt(1, id);
             ResultSet rs = stmt.executeQuery();
-            if (rs.next()) return mapRow(rs);
+            if (rs.next()) return mapSearchRow(rs);
         }
         return null;
     }
@@ -60,7 +122,7 @@ public class MediaRepository {
     public List<Media> getAll() throws SQLException {
         String sql = "SELECT * FROM media ORDER BY id DESC";
         List<Media> list = new ArrayList<>();
-        try (Connection conn = db.getConnection();
+        try (Connection conn = db.getReadConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) list.add(mapRow(rs));
@@ -85,18 +147,39 @@ public class MediaRepository {
             stmt.setInt(7, media.getId());
             stmt.setInt(8, media.getCreatedBy());
 
-            return stmt.executeUpdate() > 0;
+            boolean updated = stmt.executeUpdate() > 0;
+            if (updated) {
+                cache.invalidate(media.getId());
+                listVersion.bump();
+            }
+            return updated;
         }
     }
 
+    // Also returns the raters of the medium: the SELECT sees the snapshot before the statement, i.e. the ratings
+    // the cascade removes. One row per rating (user_id NULL: medium without ratings), no row = nothing deleted.
     public boolean delete(int mediaId, int userId) throws SQLException {
-        String sql = "DELETE FROM media WHERE id=? AND created_by=?";
+        String sql = "WITH deleted AS (DELETE FROM media WHERE id = ? AND created_by = ? RETURNING id) " +
+                "SELECT r.user_id FROM deleted d LEFT JOIN ratings r ON r.media_id = d.id";
+        Map<Integer, Integer> lostRatings = new HashMap<>();
+        boolean deleted = false;
         try (Connection conn = db.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, mediaId);
             stmt.setInt(2, userId);
-            return stmt.executeUpdate() > 0;
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                deleted = true;
+                int rater = rs.getInt("user_id");
+                if (!rs.wasNull()) lostRatings.merge(rater, -1, Integer::sum);
+            }
+        }
+        if (deleted) {
+            cache.invalidate(mediaId);
+            listVersion.bump();
+            leaderboard.adjustAll(lostRatings);
         }
+        return deleted;
     }
 
     private Media mapRow(ResultSet rs) throws SQLException {
@@ -126,19 +209,45 @@ public class MediaRepository {
 
     // --- Favoriten ---
 
+    // Gesammelt geschrieben wie die Likes (BatchWriter).
+    // false, wenn es schon in Favoriten ist oder das Medium nicht existiert
     public boolean addFavorite(int mediaId, int userId) {
-        String sql = "INSERT INTO favorites (user_id, media_id) VALUES (?, ?)";
-        try (Connection conn = db.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, userId);
-            stmt.setInt(2, mediaId);
-            return stmt.executeUpdate() > 0;
+        try {
+            return favoriteWriter.submit(new Favorite(userId, mediaId));
         } catch (SQLException e) {
-            // Ignorieren, wenn es schon in Favoriten ist (Primary Key)
             return false;
         }
     }
 
+    private record Favorite(int userId, int mediaId) {}
+
+    // Gleiches Schema wie RatingRepository.ADD_LIKES_SQL: ein SQL für jede Batch-Größe, JOIN statt FK-Fehler
+    private static final String ADD_FAVORITES_SQL =
+            "INSERT INTO favorites (user_id, media_id) " +
+            "SELECT f.user_id, f.media_id FROM unnest(?::int[], ?::int[]) AS f(user_id, media_id) " +
+            "JOIN media m ON m.id = f.media_id " +
+            "ON CONFLICT DO NOTHING RETURNING user_id, media_id";
+
+    private static boolean[] insertFavorites(Connection conn, List<Favorite> favorites) throws SQLException {
+        Integer[] userIds = new Integer[favorites.size()];
+        Integer[] mediaIds = new Integer[favorites.size()];
+        for (int i = 0; i < favorites.size(); i++) {
+            userIds[i] = favorites.get(i).userId();
+            mediaIds[i] = favorites.get(i).mediaId();
+        }
+        Set<Favorite> inserted = new HashSet<>();
+        try (PreparedStatement stmt = conn.prepareStatement(ADD_FAVORITES_SQL)) {
+            stmt.setArray(1, conn.createArrayOf("int4", userIds));
+            stmt.setArray(2, conn.createArrayOf("int4", mediaIds));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    inserted.add(new Favorite(rs.getInt("user_id"), rs.getInt("media_id")));
+                }
+            }
+        }
+        return BatchWriter.inserted(favorites, inserted);
+    }
+
     public boolean removeFavorite(int mediaId, int userId) {
         String sql = "DELETE FROM favorites WHERE user_id = ? AND media_id = ?";
         try (Connection conn = db.getConnection();
@@ -151,12 +260,16 @@ public class MediaRepository {
         }
     }
 
+    //JOIN, um direkt alle Media-Daten der Favoriten zu bekommen. Neueste Medien zuerst, in der Reihenfolge
+    // des Primärschlüssels (user_id, media_id): für die Seiten reicht dann ein Index-Range-Scan
+    private static final String FAVORITES_SQL = "SELECT m.* FROM media m JOIN favorites f ON m.id = f.media_id WHERE f.user_id = ? ORDER BY f.media_id DESC";
+    private static final String FAVORITES_PAGE_SQL = "SELECT m.* FROM media m JOIN favorites f ON m.id = f.media_id WHERE f.user_id = ? ORDER BY f.media_id DESC LIMIT ?";
+    private static final String FAVORITES_AFTER_SQL = "SELECT m.* FROM media m JOIN favorites f ON m.id = f.media_id WHERE f.user_id = ? AND f.media_id < ? ORDER BY f.media_id DESC LIMIT ?";
+
     public List<Media> getFavoritesByUserId(int userId) throws SQLException {
-        //JOIN, um direkt alle Media-Daten der Favoriten zu bekommen
-        String sql = "SELECT m.* FROM media m JOIN favorites f ON m.id = f.media_id WHERE f.user_id = ?";
         List<Media> list = new ArrayList<>();
-        try (Connection conn = db.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = db.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(FAVORITES_SQL)) {
             stmt.setInt(1, userId);
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
@@ -166,79 +279,263 @@ public class MediaRepository {
         return list;
     }
 
+    // Wie getFavoritesByUserId, aber Zeile für Zeile (Server-Side Cursor) statt als Liste
+    public void streamFavoritesByUserId(int userId, RowConsumer<Media> consumer) throws SQLException, IOException {
+        Cursor.stream(db, FAVORITES_SQL, stmt -> stmt.setInt(1, userId), this::mapRow, consumer);
+    }
+
+    // Eine Seite der Favoriten ab dem Cursor (null = erste Seite)
+    public Page<Media> getFavoritesPage(int userId, String cursor, int limit) throws SQLException {
+        PageCursor after = PageCursor.decode(cursor, "favorites");
+        List<Media> items = new ArrayList<>();
+        try (Connection conn = db.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(after != null ? FAVORITES_AFTER_SQL : FAVORITES_PAGE_SQL)) {
+            int i = 1;
+            stmt.setInt(i++, userId);
+            if (after != null) stmt.setInt(i++, after.id());
+            stmt.setInt(i, limit + 1);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) items.add(mapRow(rs));
+        }
+        if (items.size() <= limit) return new Page<>(items, null);
+        items.remove(limit);
+        return new Page<>(items, new PageCursor("favorites", null, items.get(limit - 1).getId()).encode());
+    }
+
     // --- Suche und Filter ---
 
-    public List<Media> searchAndFilter(Map<String, String> params) throws SQLException {
-        // grundquery mit JOIN für den Durchschnittsscore
-        StringBuilder sql = new StringBuilder(
-                "SELECT m.*, COALESCE(AVG(r.stars), 0) AS avg_score " +
-                        "FROM media m " +
-                        "LEFT JOIN ratings r ON m.id = r.media_id " +
-                        "WHERE 1=1 " // 1=1 ist ein Trick, damit wir alle folgenden Filter mit "AND ..." anhängen können
-        );
+    // Fertige Suchabfrage: SQL + Werte für die Platzhalter, sort = Name der Sortierung (für den Cursor)
+    public record SearchQuery(String sql, List<Object> values, String sort) {}
+
+    // Kanonisches SQL pro Filter-Kombination: gleiche Filter -> exakt derselbe String (auch dasselbe Objekt),
+    // damit der Statement-Cache pro Verbindung und PostgreSQL das vorbereitete Statement samt Plan wiederverwenden.
+    // 6 Filter (inkl. Mindest-Rating) = 64 Kombinationen x 4 Sortierungen x 3 Varianten (alles, erste Seite,
+    // Seite nach Cursor) = 768 Strings, einmal beim Laden gebaut.
+    private static final String[] SEARCH_WHERE = {
+            "AND m.title ILIKE ? ",          // ILIKE ignoriert Groß-/Kleinschreibung
+            "AND m.genre ILIKE ? ",
+            "AND m.media_type = ? ",
+            "AND m.release_year = ? ",
+            "AND m.age_restriction <= ? "
+    };
+    private static final int SEARCH_MIN_RATING = 1 << SEARCH_WHERE.length;
+    private static final String[] SEARCH_SORT = {"id", "title", "year", "score"};
+    // id als zweiter Schlüssel: eindeutige Reihenfolge, sonst kann ein Cursor gleiche Titel/Jahre/Scores überspringen
+    private static final String[] SEARCH_ORDER = {
+            "ORDER BY m.id DESC ",           // Standard Sortierung
+            "ORDER BY m.title ASC, m.id ASC ",
+            "ORDER BY m.release_year DESC, m.id DESC ",
+            "ORDER BY avg_score DESC, m.id DESC "
+    };
+    // Keyset: alles nach der letzten Zeile der vorigen Seite (Zeilenvergleich, passend zur Richtung in SEARCH_ORDER)
+    private static final String[] SEARCH_AFTER = {
+            "AND m.id < ? ",
+            "AND (m.title, m.id) > (?, ?) ",
+            "AND (m.release_year, m.id) < (?, ?) ",
+            "AND (COALESCE(s.avg_score, 0), m.id) < (?, ?) "
+    };
+    private static final int ALL = 0, FIRST_PAGE = 1, NEXT_PAGE = 2;
+    private static final String[] SEARCH_SQL = buildSearchSql();
+
+    private static String[] buildSearchSql() {
+        String[] result = new String[(SEARCH_MIN_RATING << 1) * SEARCH_ORDER.length * 3];
+        for (int filters = 0; filters < SEARCH_MIN_RATING << 1; filters++) {
+            for (int order = 0; order < SEARCH_ORDER.length; order++) {
+                for (int variant = ALL; variant <= NEXT_PAGE; variant++) {
+                    // grundquery: Durchschnittsscore aus dem Aggregat (eine Zeile pro Medium), kein JOIN über alle Ratings
+                    StringBuilder sql = new StringBuilder(
+                            "SELECT m.*, COALESCE(s.avg_score, 0) AS avg_score " +
+                                    "FROM media m " +
+                                    "LEFT JOIN media_rating_stats s ON s.media_id = m.id " +
+                                    "WHERE 1=1 " // 1=1 ist ein Trick, damit wir alle folgenden Filter mit "AND ..." anhängen können
+                    );
+                    for (int i = 0; i < SEARCH_WHERE.length; i++) {
+                        if ((filters & (1 << i)) != 0) sql.append(SEARCH_WHERE[i]);
+                    }
+                    if ((filters & SEARCH_MIN_RATING) != 0) {
+                        sql.append("AND COALESCE(s.avg_score, 0) >= ? ");
+                    }
+                    if (variant == NEXT_PAGE) sql.append(SEARCH_AFTER[order]);
+                    sql.append(SEARCH_ORDER[order]);
+                    if (variant != ALL) sql.append("LIMIT ?");
+                    result[searchIndex(filters, order, variant)] = sql.toString();
+                }
+            }
+        }
+        return result;
+    }
 
+    private static int searchIndex(int filters, int order, int variant) {
+        return (filters * SEARCH_ORDER.length + order) * 3 + variant;
+    }
+
+    // Baut die Abfrage aus den Query-Parametern, ohne sie auszuführen.
+    // Ungültige Zahlen fallen hier schon auf (NumberFormatException), also bevor eine Antwort gestreamt wird
+    public SearchQuery buildSearch(Map<String, String> params) {
+        return buildSearch(params, null, 0);
+    }
+
+    // Eine Seite ab dem Cursor (null = erste Seite). Ein ungültiger oder zu einer anderen Sortierung
+    // gehörender Cursor ergibt eine IllegalArgumentException
+    public SearchQuery buildSearchPage(Map<String, String> params, String cursor, int limit) {
+        if (limit < 1) throw new IllegalArgumentException("limit must be at least 1");
+        return buildSearch(params, cursor, limit);
+    }
+
+    private SearchQuery buildSearch(Map<String, String> params, String cursor, int limit) {
         List<Object> values = new ArrayList<>();
+        int filters = 0;
 
-        // 1. Filter (WHERE)
+        // 1. Filter (WHERE), Reihenfolge wie in SEARCH_WHERE
         if (params.containsKey("title") && !params.get("title").isBlank()) {
-            sql.append("AND m.title ILIKE ? "); // ILIKE ignoriert Groß-/Kleinschreibung
+            filters |= 1;
             values.add("%" + params.get("title") + "%");
         }
         if (params.containsKey("genre") && !params.get("genre").isBlank()) {
-            sql.append("AND m.genre ILIKE ? ");
+            filters |= 1 << 1;
             values.add("%" + params.get("genre") + "%");
         }
         if (params.containsKey("mediaType") && !params.get("mediaType").isBlank()) {
-            sql.append("AND m.media_type = ? ");
+            filters |= 1 << 2;
             values.add(params.get("mediaType"));
         }
         if (params.containsKey("releaseYear") && !params.get("releaseYear").isBlank()) {
-            sql.append("AND m.release_year = ? ");
+            filters |= 1 << 3;
             values.add(Integer.parseInt(params.get("releaseYear")));
         }
         if (params.containsKey("ageRestriction") && !params.get("ageRestriction").isBlank()) {
-            sql.append("AND m.age_restriction <= ? ");
+            filters |= 1 << 4;
             values.add(Integer.parseInt(params.get("ageRestriction")));
         }
 
-        // 2. Gruppierung (notwendig wegen JOINs und der AVG-Funktion)
-        sql.append("GROUP BY m.id ");
-
-        // 3. Rating-Filter (HAVING)
+        // 2. Mindest-Rating
         if (params.containsKey("rating") && !params.get("rating").isBlank()) {
-            sql.append("HAVING COALESCE(AVG(r.stars), 0) >= ? ");
+            filters |= SEARCH_MIN_RATING;
             values.add(Double.parseDouble(params.get("rating")));
         }
 
-        // 4. Sortierung (ORDER BY)
-        String sortBy = params.getOrDefault("sortBy", "id");
-        if (sortBy.equals("title")) {
-            sql.append("ORDER BY m.title ASC ");
-        } else if (sortBy.equals("year")) {
-            sql.append("ORDER BY m.release_year DESC ");
-        } else if (sortBy.equals("score")) {
-            sql.append("ORDER BY avg_score DESC ");
-        } else {
-            sql.append("ORDER BY m.id DESC "); // Standard Sortierung
+        // 3. Sortierung (ORDER BY)
+        int order = switch (params.getOrDefault("sortBy", "id")) {
+            case "title" -> 1;
+            case "year" -> 2;
+            case "score" -> 3;
+            default -> 0;
+        };
+        String sort = SEARCH_SORT[order];
+        if (limit <= 0) return new SearchQuery(SEARCH_SQL[searchIndex(filters, order, ALL)], values, sort);
+
+        // 4. Seite: Keyset-Werte aus dem Cursor, dann LIMIT (eine Zeile mehr, um zu wissen, ob es weitergeht)
+        PageCursor after = PageCursor.decode(cursor, sort);
+        if (after != null) {
+            try {
+                switch (order) {
+                    case 1 -> values.add(after.key());
+                    case 2 -> values.add(Integer.parseInt(after.key()));
+                    case 3 -> values.add(new BigDecimal(after.key()));
+                    default -> { }
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor", e);
+            }
+            values.add(after.id());
         }
+        values.add(limit + 1);
+        return new SearchQuery(SEARCH_SQL[searchIndex(filters, order, after != null ? NEXT_PAGE : FIRST_PAGE)], values, sort);
+    }
+
+    public List<Media> searchAndFilter(Map<String, String> params) throws SQLException {
+        SearchQuery query = buildSearch(params);
 
         // --- Ausführung ---
         List<Media> list = new ArrayList<>();
-        try (Connection conn = db.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+        try (Connection conn = db.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(query.sql())) {
 
             // Werte dynamisch in das Statement einsetzen
-            for (int i = 0; i < values.size(); i++) {
-                stmt.setObject(i + 1, values.get(i));
-            }
+            bindValues(stmt, query.values());
 
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
-                Media m = mapRow(rs); // Bisheriges Mapping nutzen
-                m.setAverageScore(rs.getDouble("avg_score")); // berechneten Score ergänzen
-                list.add(m);
+                list.add(mapSearchRow(rs));
             }
         }
         return list;
     }
-}
\ No newline at end of file
+
+    // Wie searchAndFilter, aber die Treffer gehen Zeile für Zeile an den Consumer (Server-Side Cursor)
+    public void streamSearch(SearchQuery query, RowConsumer<Media> consumer) throws SQLException, IOException {
+        Cursor.stream(db, query.sql(), stmt -> bindValues(stmt, query.values()), this::mapSearchRow, consumer);
+    }
+
+    // Eine Seite der Suche (Abfrage aus buildSearchPage). Der Cursor für die nächste Seite kommt aus der
+    // letzten Zeile, der Score dabei exakt als NUMERIC-Text, damit gleiche Scores an der Grenze nicht kippen
+    public Page<Media> searchPage(SearchQuery query, int limit) throws SQLException {
+        List<Media> items = new ArrayList<>();
+        String next = null;
+        try (Connection conn = db.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(query.sql())) {
+            bindValues(stmt, query.values());
+            ResultSet rs = stmt.executeQuery();
+            String lastKey = null;
+            while (rs.next()) {
+                if (items.size() == limit) { // Zeile limit+1: es gibt eine weitere Seite
+                    next = new PageCursor(query.sort(), lastKey, items.get(limit - 1).getId()).encode();
+                    break;
+                }
+                items.add(mapSearchRow(rs));
+                lastKey = switch (query.sort()) {
+                    case "title" -> rs.getString("title");
+                    case "year" -> String.valueOf(rs.getInt("release_year"));
+                    case "score" -> rs.getBigDecimal("avg_score").toPlainString();
+                    default -> null;
+                };
+            }
+        }
+        return new Page<>(items, next);
+    }
+
+    // --- Async variants: run on the DB executor, the calling thread does not wait (DatabaseManager.async) ---
+
+    public Version getListVersion() {
+        return listVersion;
+    }
+
+    public CompletableFuture<Media> getByIdAsync(int id) {
+        // cache hit: answered right here, no hop to the executor
+        Media cached = cache.getIfPresent(id);
+        if (cached != null) return CompletableFuture.completedFuture(new Media(cached));
+        return db.async(() -> getById(id));
+    }
+
+    public CompletableFuture<Page<Media>> getFavoritesPageAsync(int userId, String cursor, int limit) {
+        return db.async(() -> getFavoritesPage(userId, cursor, limit));
+    }
+
+    public CompletableFuture<Page<Media>> searchPageAsync(SearchQuery query, int limit) {
+        return db.async(() -> searchPage(query, limit));
+    }
+
+    public CompletableFuture<Media> createAsync(Media media) {
+        return db.async(() -> create(media));
+    }
+
+    public CompletableFuture<Boolean> updateAsync(Media media) {
+        return db.async(() -> update(media));
+    }
+
+    public CompletableFuture<Boolean> deleteAsync(int mediaId, int userId) {
+        return db.async(() -> delete(mediaId, userId));
+    }
+
+    private static void bindValues(PreparedStatement stmt, List<Object> values) throws SQLException {
+        for (int i = 0; i < values.size(); i++) {
+            stmt.setObject(i + 1, values.get(i));
+        }
+    }
+
+    private Media mapSearchRow(ResultSet rs) throws SQLException {
+        Media m = mapRow(rs); // Bisheriges Mapping nutzen
+        m.setAverageScore(rs.getDouble("avg_score")); // berechneten Score ergänzen
+        return m;
+    }
+}
@@ -0,0 +1,34 @@
+package mrp.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Position after the last row of a page for keyset pagination: the sort key and the id (tiebreaker) of that row.
+// The next page continues with WHERE (key, id) < (?, ?) on the same index instead of OFFSET, so page 1000 costs
+// the same as page 1. For the client it is an opaque token (base64url), only the repository reads it again.
+public record PageCursor(String sort, String key, int id) {
+
+    public String encode() {
+        String plain = sort + "\n" + id + "\n" + (key != null ? key : "");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(plain.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // null token = first page. A cursor from another sort order would skip or repeat rows, so it is rejected
+    public static PageCursor decode(String token, String expectedSort) {
+        if (token == null || token.isEmpty()) return null;
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\n", 3);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+        if (parts.length != 3 || !parts[0].equals(expectedSort)) {
+            throw new IllegalArgumentException("Invalid cursor for this sort order");
+        }
+        try {
+            return new PageCursor(parts[0], parts[2], Integer.parseInt(parts[1]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
@@ -1,71 +1,281 @@
 package mrp.repository;
 
+import mrp.cache.IntKeyCache;
+import mrp.cache.Version;
 import mrp.db.DatabaseManager;
+import mrp.leaderboard.Leaderboard;
+import mrp.model.ImportResult;
+import mrp.model.Media;
+import mrp.model.Page;
 import mrp.model.Rating;
 
+import java.io.IOException;
 import java.sql.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public class RatingRepository {
     private final DatabaseManager db;
+    private final BatchWriter<Like> likeWriter;
+    // MediaRepository's cache: cached media carry the average score, so rating writes invalidate them
+    private final IntKeyCache<Media> mediaCache;
+    // rating counts per user, adjusted after every commit that adds or removes ratings
+    private final Leaderboard leaderboard;
+    // version of the media list (see MediaRepository), the list shows the average score
+    private final Version mediaListVersion;
 
     public RatingRepository(DatabaseManager db) {
+        this(db, new IntKeyCache<>(0, 0), new Leaderboard(), new Version(0));
+    }
+
+    public RatingRepository(DatabaseManager db, IntKeyCache<Media> mediaCache, Leaderboard leaderboard,
+                            Version mediaListVersion) {
         this.db = db;
+        this.mediaCache = mediaCache;
+        this.leaderboard = leaderboard;
+        this.mediaListVersion = mediaListVersion;
+        this.likeWriter = new BatchWriter<>("likes", db, RatingRepository::insertLikes);
+    }
+
+    // Bulk import staging: COPY cannot skip rows, so the upload goes into a temp table first and only the
+    // rows that fit (media exists, not rated yet, first rating per media in the upload) are moved on
+    private static final String IMPORT_STAGING_SQL =
+            "CREATE TEMP TABLE rating_import (line BIGINT, media_id INT, user_id INT, stars INT, comment TEXT) ON COMMIT DROP";
+    private static final String IMPORT_COPY_SQL = "COPY rating_import (line, media_id, user_id, stars, comment) FROM STDIN";
+    private static final String IMPORT_REJECT_UNKNOWN_MEDIA_SQL =
+            "DELETE FROM rating_import i WHERE NOT EXISTS (SELECT 1 FROM media m WHERE m.id = i.media_id) RETURNING i.line";
+    private static final String IMPORT_REJECT_RATED_SQL =
+            "DELETE FROM rating_import i USING ratings r WHERE r.media_id = i.media_id AND r.user_id = i.user_id RETURNING i.line";
+    private static final String IMPORT_REJECT_DUPLICATES_SQL = """
+            DELETE FROM rating_import WHERE line IN (
+                SELECT line FROM (
+                    SELECT line, row_number() OVER (PARTITION BY media_id, user_id ORDER BY line) AS n FROM rating_import
+                ) d WHERE d.n > 1
+            ) RETURNING line""";
+    // Inserts the staged ratings and adds them to media_rating_stats in the same statement
+    private static final String IMPORT_INSERT_SQL = """
+            WITH inserted AS (
+                INSERT INTO ratings (media_id, user_id, stars, comment, comment_visible)
+                SELECT media_id, user_id, stars, comment, false FROM rating_import
+                ON CONFLICT (media_id, user_id) DO NOTHING
+                RETURNING media_id, user_id, stars
+            ), stats AS (
+                INSERT INTO media_rating_stats AS s (media_id, rating_count, star_sum, stars_1, stars_2, stars_3, stars_4, stars_5)
+                SELECT media_id, count(*), sum(stars),
+                       count(*) FILTER (WHERE stars = 1), count(*) FILTER (WHERE stars = 2), count(*) FILTER (WHERE stars = 3),
+                       count(*) FILTER (WHERE stars = 4), count(*) FILTER (WHERE stars = 5)
+                FROM inserted GROUP BY media_id ORDER BY media_id
+                ON CONFLICT (media_id) DO UPDATE SET
+                    rating_count = s.rating_count + EXCLUDED.rating_count, star_sum = s.star_sum + EXCLUDED.star_sum,
+                    stars_1 = s.stars_1 + EXCLUDED.stars_1, stars_2 = s.stars_2 + EXCLUDED.stars_2,
+                    stars_3 = s.stars_3 + EXCLUDED.stars_3, stars_4 = s.stars_4 + EXCLUDED.stars_4,
+                    stars_5 = s.stars_5 + EXCLUDED.stars_5, updated_at = NOW()
+            )
+            SELECT user_id, count(*) FROM inserted GROUP BY user_id""";
+
+    // Bulk import of already validated ratings, one transaction. Rows the database rejects are reported
+    // with their upload line in result; if the upload breaks off (IOException) nothing is imported.
+    public void importRatings(RowSource<Rating> rows, ImportResult result) throws SQLException, IOException {
+        try (Connection conn = db.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute(IMPORT_STAGING_SQL);
+                }
+                long staged;
+                CopyWriter copy = new CopyWriter(conn, IMPORT_COPY_SQL);
+                try {
+                    Rating rating;
+                    while ((rating = rows.next()) != null) {
+                        copy.field(rows.line())
+                                .field(rating.getMediaId())
+                                .field(rating.getUserId())
+                                .field(rating.getStars())
+                                .field(rating.getComment())
+                                .endRow();
+                    }
+                    staged = copy.finish();
+                } finally {
+                    copy.cancel();
+                }
+
+                staged -= rejectStaged(conn, IMPORT_REJECT_UNKNOWN_MEDIA_SQL, "Media not found", result);
+                staged -= rejectStaged(conn, IMPORT_REJECT_RATED_SQL, "User has already rated this media", result);
+                staged -= rejectStaged(conn, IMPORT_REJECT_DUPLICATES_SQL, "Media rated twice in this import", result);
+                Map<Integer, Integer> perUser = new HashMap<>();
+                long inserted = 0;
+                try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(IMPORT_INSERT_SQL)) {
+                    while (rs.next()) {
+                        perUser.put(rs.getInt(1), rs.getInt(2));
+                        inserted += rs.getInt(2);
+                    }
+                }
+                result.addAccepted(inserted);
+                result.addRejected(staged - inserted);  // rated concurrently in the meantime
+                conn.commit();
+                if (inserted > 0) {
+                    mediaCache.invalidateAll();  // touches any number of media
+                    mediaListVersion.bump();
+                }
+                leaderboard.adjustAll(perUser);
+            } catch (SQLException | IOException | RuntimeException e) {
+                try {
+                    conn.rollback();
+                } catch (SQLException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        }
+    }
+
+    // Deletes the staged rows matched by sql (DELETE ... RETURNING line) and reports them, returns how many
+    private static long rejectStaged(Connection conn, String sql, String reason, ImportResult result) throws SQLException {
+        long count = 0;
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                result.reject(rs.getLong(1), reason);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // --- Rating-Aggregat (media_rating_stats) ---
+    // Jede Änderung an ratings passt die Zeile des Mediums in derselben Transaktion um ein Delta an,
+    // die Suche liest Anzahl und Durchschnitt von dort statt bei jeder Anfrage alle Ratings zu aggregieren.
+    private static final String STATS_DELTA_SQL = """
+            INSERT INTO media_rating_stats AS s (media_id, rating_count, star_sum, stars_1, stars_2, stars_3, stars_4, stars_5)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (media_id) DO UPDATE SET
+                rating_count = s.rating_count + EXCLUDED.rating_count, star_sum = s.star_sum + EXCLUDED.star_sum,
+                stars_1 = s.stars_1 + EXCLUDED.stars_1, stars_2 = s.stars_2 + EXCLUDED.stars_2,
+                stars_3 = s.stars_3 + EXCLUDED.stars_3, stars_4 = s.stars_4 + EXCLUDED.stars_4,
+                stars_5 = s.stars_5 + EXCLUDED.stars_5, updated_at = NOW()""";
+
+    // added/removed: Sterne des hinzugekommenen bzw. entfernten Ratings, 0 = keins
+    static void applyStatsDelta(Connection conn, int mediaId, int added, int removed) throws SQLException {
+        int[] delta = statsDelta(added, removed);
+        try (PreparedStatement stmt = conn.prepareStatement(STATS_DELTA_SQL)) {
+            stmt.setInt(1, mediaId);
+            for (int i = 0; i < delta.length; i++) stmt.setInt(2 + i, delta[i]);
+            stmt.executeUpdate();
+        }
+    }
+
+    // {rating_count, star_sum, stars_1 .. stars_5} als Delta: Erstellen (s, 0), Sterne ändern (neu, alt), Löschen (0, s)
+    static int[] statsDelta(int added, int removed) {
+        int[] delta = new int[7];
+        delta[0] = (added > 0 ? 1 : 0) - (removed > 0 ? 1 : 0);
+        delta[1] = added - removed;
+        if (added > 0) delta[1 + added]++;
+        if (removed > 0) delta[1 + removed]--;
+        return delta;
+    }
+
+    @FunctionalInterface
+    private interface Work<T> {
+        T run(Connection conn) throws SQLException;
+    }
+
+    private <T> T inTransaction(Work<T> work) throws SQLException {
+        try (Connection conn = db.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                T result = work.run(conn);
+                conn.commit();
+                conn.setAutoCommit(true);
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                try {
+                    conn.rollback();
+                } catch (SQLException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        }
     }
 
     // Erstellt ein neues Rating
     public Rating create(Rating rating) throws SQLException {
         String sql = "INSERT INTO ratings (media_id, user_id, stars, comment, comment_visible) VALUES (?, ?, ?, ?, false) RETURNING id, created_at";
-        try (Connection conn = db.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setInt(1, rating.getMediaId());
-            stmt.setInt(2, rating.getUserId());
-            stmt.setInt(3, rating.getStars());
-            stmt.setString(4, rating.getComment());
+        Rating created = inTransaction(conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setInt(1, rating.getMediaId());
+                stmt.setInt(2, rating.getUserId());
+                stmt.setInt(3, rating.getStars());
+                stmt.setString(4, rating.getComment());
 
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                rating.setId(rs.getInt("id"));
-                rating.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
-                rating.setCommentVisible(false);
+                ResultSet rs = stmt.executeQuery();
+                if (rs.next()) {
+                    rating.setId(rs.getInt("id"));
+                    rating.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
+                    rating.setCommentVisible(false);
+                }
             }
-        }
-        return rating;
+            applyStatsDelta(conn, rating.getMediaId(), rating.getStars(), 0);
+            return rating;
+        });
+        mediaCache.invalidate(rating.getMediaId());  // erst nach dem Commit, sonst lädt ein Leser den alten Stand neu
+        mediaListVersion.bump();
+        leaderboard.adjust(rating.getUserId(), 1);
+        return created;
     }
 
     // Findet ein Rating anhand seiner ID
     public Rating getById(int id) throws SQLException {
         String sql = "SELECT * FROM ratings WHERE id = ?";
-        try (Connection conn = db.getConnection();
+        try (Connection conn = db.getReadConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, id);
             ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                Rating r = new Rating();
-                r.setId(rs.getInt("id"));
-                r.setMediaId(rs.getInt("media_id"));
-                r.setUserId(rs.getInt("user_id"));
-                r.setStars(rs.getInt("stars"));
-                r.setComment(rs.getString("comment"));
-                r.setCommentVisible(rs.getBoolean("comment_visible"));
-                r.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
-                return r;
-            }
+            if (rs.next()) return mapRow(rs);
         }
         return null;
     }
 
     // Aktualisiert Sterne und Kommentar (nur von Autor des Ratings)
+    // Alte Sterne werden mit FOR UPDATE gelesen, damit das Delta auch bei gleichzeitigen Updates stimmt
     public boolean update(int ratingId, int userId, int stars, String comment) throws SQLException {
-        String sql = "UPDATE ratings SET stars = ?, comment = ? WHERE id = ? AND user_id = ?";
-        try (Connection conn = db.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, stars);
-            stmt.setString(2, comment);
-            stmt.setInt(3, ratingId);
-            stmt.setInt(4, userId);
-            return stmt.executeUpdate() > 0;
+        String lockSql = "SELECT media_id, stars FROM ratings WHERE id = ? AND user_id = ? FOR UPDATE";
+        String sql = "UPDATE ratings SET stars = ?, comment = ? WHERE id = ?";
+        int[] changedMedia = {0};  // Medium, dessen Durchschnitt sich geändert hat
+        boolean updated = inTransaction(conn -> {
+            int mediaId;
+            int oldStars;
+            try (PreparedStatement stmt = conn.prepareStatement(lockSql)) {
+                stmt.setInt(1, ratingId);
+                stmt.setInt(2, userId);
+                ResultSet rs = stmt.executeQuery();
+                if (!rs.next()) return false;
+                mediaId = rs.getInt("media_id");
+                oldStars = rs.getInt("stars");
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setInt(1, stars);
+                stmt.setString(2, comment);
+                stmt.setInt(3, ratingId);
+                stmt.executeUpdate();
+            }
+            if (stars != oldStars) {
+                applyStatsDelta(conn, mediaId, stars, oldStars);
+                changedMedia[0] = mediaId;
+            }
+            return true;
+        });
+        if (changedMedia[0] != 0) {
+            mediaCache.invalidate(changedMedia[0]);
+            mediaListVersion.bump();
         }
+        return updated;
     }
 
     // Setzt den Kommentar auf sichtbar
@@ -79,48 +289,215 @@ public class RatingRepository {
     }
 
     // Fügt Like hinzu (SQLExceptions werden abgefangen, falls User schon gelikt hat)
+    // Likes kommen in Wellen (viele kleine Inserts) -> werden vom BatchWriter gesammelt und zusammen geschrieben.
+    // false, wenn der User schon gelikt hat oder das Rating nicht existiert
     public boolean addLike(int ratingId, int userId) {
-        String sql = "INSERT INTO rating_likes (rating_id, user_id) VALUES (?, ?)";
-        try (Connection conn = db.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, ratingId);
-            stmt.setInt(2, userId);
-            return stmt.executeUpdate() > 0;
+        try {
+            return likeWriter.submit(new Like(ratingId, userId));
         } catch (SQLException e) {
-            // Ignorieren, wenn User schon gelikt hat
             return false;
         }
     }
 
+    private record Like(int ratingId, int userId) {}
+
+    // Arrays statt VALUES-Liste: gleiches SQL für jede Batch-Größe (Statement-Cache).
+    // JOIN auf ratings filtert Likes auf nicht existierende Ratings heraus, statt dass ein FK-Fehler die ganze Batch abbricht
+    private static final String ADD_LIKES_SQL =
+            "INSERT INTO rating_likes (rating_id, user_id) " +
+            "SELECT l.rating_id, l.user_id FROM unnest(?::int[], ?::int[]) AS l(rating_id, user_id) " +
+            "JOIN ratings r ON r.id = l.rating_id " +
+            "ON CONFLICT DO NOTHING RETURNING rating_id, user_id";
+
+    private static boolean[] insertLikes(Connection conn, List<Like> likes) throws SQLException {
+        Integer[] ratingIds = new Integer[likes.size()];
+        Integer[] userIds = new Integer[likes.size()];
+        for (int i = 0; i < likes.size(); i++) {
+            ratingIds[i] = likes.get(i).ratingId();
+            userIds[i] = likes.get(i).userId();
+        }
+        Set<Like> inserted = new HashSet<>();
+        try (PreparedStatement stmt = conn.prepareStatement(ADD_LIKES_SQL)) {
+            stmt.setArray(1, conn.createArrayOf("int4", ratingIds));
+            stmt.setArray(2, conn.createArrayOf("int4", userIds));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    inserted.add(new Like(rs.getInt("rating_id"), rs.getInt("user_id")));
+                }
+            }
+        }
+        return BatchWriter.inserted(likes, inserted);
+    }
+
+    // id als zweiter Schlüssel, damit die Reihenfolge auch bei gleicher Zeit eindeutig ist (Cursor)
+    private static final String BY_USER_SQL = "SELECT * FROM ratings WHERE user_id = ? ORDER BY created_at DESC, id DESC";
+    private static final String BY_USER_PAGE_SQL = "SELECT * FROM ratings WHERE user_id = ? ORDER BY created_at DESC, id DESC LIMIT ?";
+    private static final String BY_USER_AFTER_SQL = "SELECT * FROM ratings WHERE user_id = ? AND (created_at, id) < (?, ?) ORDER BY created_at DESC, id DESC LIMIT ?";
+
     public java.util.List<Rating> getByUserId(int userId) throws SQLException {
-        String sql = "SELECT * FROM ratings WHERE user_id = ? ORDER BY created_at DESC";
         java.util.List<Rating> list = new java.util.ArrayList<>();
-        try (Connection conn = db.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = db.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(BY_USER_SQL)) {
             stmt.setInt(1, userId);
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
-                Rating r = new Rating();
-                r.setId(rs.getInt("id"));
-                r.setMediaId(rs.getInt("media_id"));
-                r.setUserId(rs.getInt("user_id"));
-                r.setStars(rs.getInt("stars"));
-                r.setComment(rs.getString("comment"));
-                r.setCommentVisible(rs.getBoolean("comment_visible"));
-                r.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
-                list.add(r);
+                list.add(mapRow(rs));
             }
         }
         return list;
     }
+
+    // Rating-Historie Zeile für Zeile (Server-Side Cursor) statt als Liste
+    public void streamByUserId(int userId, RowConsumer<Rating> consumer) throws SQLException, IOException {
+        Cursor.stream(db, BY_USER_SQL, stmt -> stmt.setInt(1, userId), this::mapRow, consumer);
+    }
+
+    // Eine Seite der Rating-Historie ab dem Cursor (null = erste Seite); der Cursor trägt created_at mit Mikrosekunden
+    public Page<Rating> getPageByUserId(int userId, String cursor, int limit) throws SQLException {
+        PageCursor after = PageCursor.decode(cursor, "created");
+        Timestamp afterTime = null;
+        if (after != null) {
+            try {
+                afterTime = Timestamp.valueOf(LocalDateTime.parse(after.key()));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid cursor", e);
+            }
+        }
+        List<Rating> items = new ArrayList<>();
+        try (Connection conn = db.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(after != null ? BY_USER_AFTER_SQL : BY_USER_PAGE_SQL)) {
+            int i = 1;
+            stmt.setInt(i++, userId);
+            if (after != null) {
+                stmt.setTimestamp(i++, afterTime);
+                stmt.setInt(i++, after.id());
+            }
+            stmt.setInt(i, limit + 1);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) items.add(mapRow(rs));
+        }
+        if (items.size() <= limit) return new Page<>(items, null);
+        items.remove(limit);
+        Rating last = items.get(limit - 1);
+        return new Page<>(items, new PageCursor("created", last.getCreatedAt().toString(), last.getId()).encode());
+    }
+
     public boolean delete(int ratingId, int userId) throws SQLException {
-        String sql = "DELETE FROM ratings WHERE id = ? AND user_id = ?";
+        String sql = "DELETE FROM ratings WHERE id = ? AND user_id = ? RETURNING media_id, stars";
+        int mediaId = inTransaction(conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setInt(1, ratingId);
+                stmt.setInt(2, userId);
+                ResultSet rs = stmt.executeQuery();
+                if (!rs.next()) return 0; // keine Zeile gelöscht
+                applyStatsDelta(conn, rs.getInt("media_id"), 0, rs.getInt("stars"));
+                return rs.getInt("media_id");
+            }
+        });
+        if (mediaId == 0) return false;
+        mediaCache.invalidate(mediaId);
+        mediaListVersion.bump();
+        leaderboard.adjust(userId, -1);
+        return true;
+    }
+
+    // --- Reparatur des Aggregats ---
+
+    // Media whose stats row differs from their ratings (manual SQL, restored backups, bugs)
+    private static final String STATS_DRIFT_SQL = """
+            SELECT COALESCE(a.media_id, s.media_id) AS media_id
+            FROM (
+                SELECT media_id, count(*) AS c, sum(stars) AS total,
+                       count(*) FILTER (WHERE stars = 1) AS s1, count(*) FILTER (WHERE stars = 2) AS s2,
+                       count(*) FILTER (WHERE stars = 3) AS s3, count(*) FILTER (WHERE stars = 4) AS s4,
+                       count(*) FILTER (WHERE stars = 5) AS s5
+                FROM ratings GROUP BY media_id
+            ) a
+            FULL JOIN media_rating_stats s ON s.media_id = a.media_id
+            WHERE (COALESCE(a.c, 0), COALESCE(a.total, 0), COALESCE(a.s1, 0), COALESCE(a.s2, 0), COALESCE(a.s3, 0),
+                   COALESCE(a.s4, 0), COALESCE(a.s5, 0))
+                  IS DISTINCT FROM
+                  (COALESCE(s.rating_count, 0), COALESCE(s.star_sum, 0), COALESCE(s.stars_1, 0), COALESCE(s.stars_2, 0),
+                   COALESCE(s.stars_3, 0), COALESCE(s.stars_4, 0), COALESCE(s.stars_5, 0))""";
+    private static final String STATS_ENSURE_ROW_SQL =
+            "INSERT INTO media_rating_stats (media_id) SELECT id FROM media WHERE id = ? ON CONFLICT DO NOTHING";
+    private static final String STATS_LOCK_ROW_SQL = "SELECT 1 FROM media_rating_stats WHERE media_id = ? FOR UPDATE";
+    private static final String STATS_RECOMPUTE_SQL = """
+            UPDATE media_rating_stats s SET
+                rating_count = a.c, star_sum = a.total, stars_1 = a.s1, stars_2 = a.s2, stars_3 = a.s3,
+                stars_4 = a.s4, stars_5 = a.s5, updated_at = NOW()
+            FROM (
+                SELECT count(*) AS c, COALESCE(sum(stars), 0) AS total,
+                       count(*) FILTER (WHERE stars = 1) AS s1, count(*) FILTER (WHERE stars = 2) AS s2,
+                       count(*) FILTER (WHERE stars = 3) AS s3, count(*) FILTER (WHERE stars = 4) AS s4,
+                       count(*) FILTER (WHERE stars = 5) AS s5
+                FROM ratings WHERE media_id = ?
+            ) a
+            WHERE s.media_id = ?""";
+
+    // Recomputes the stats rows that drifted, returns how many. Each medium is fixed in its own transaction
+    // while holding the lock on its stats row: rating changes that commit before are counted by the recompute,
+    // the ones still in flight wait for the lock and then apply their delta on top of the corrected row.
+    public int repairStats() throws SQLException {
+        List<Integer> drifted = new ArrayList<>();
         try (Connection conn = db.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, ratingId);
-            stmt.setInt(2, userId);
-            return stmt.executeUpdate() > 0; // true wenn eine Zeile gelöscht wurde
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(STATS_DRIFT_SQL)) {
+            while (rs.next()) drifted.add(rs.getInt("media_id"));
+        }
+        for (int mediaId : drifted) {
+            inTransaction(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(STATS_ENSURE_ROW_SQL)) {
+                    stmt.setInt(1, mediaId);
+                    stmt.executeUpdate();
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(STATS_LOCK_ROW_SQL)) {
+                    stmt.setInt(1, mediaId);
+                    stmt.executeQuery().close();
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(STATS_RECOMPUTE_SQL)) {
+                    stmt.setInt(1, mediaId);
+                    stmt.setInt(2, mediaId);
+                    return stmt.executeUpdate();
+                }
+            });
+            mediaCache.invalidate(mediaId);
         }
+        if (!drifted.isEmpty()) mediaListVersion.bump();
+        return drifted.size();
+    }
+
+    // --- Async variants: run on the DB executor, the calling thread does not wait (DatabaseManager.async) ---
+
+    public CompletableFuture<Rating> getByIdAsync(int id) {
+        return db.async(() -> getById(id));
+    }
+
+    public CompletableFuture<Page<Rating>> getPageByUserIdAsync(int userId, String cursor, int limit) {
+        return db.async(() -> getPageByUserId(userId, cursor, limit));
+    }
+
+    public CompletableFuture<Rating> createAsync(Rating rating) {
+        return db.async(() -> create(rating));
     }
 
-}
\ No newline at end of file
+    public CompletableFuture<Boolean> updateAsync(int ratingId, int userId, int stars, String comment) {
+        return db.async(() -> update(ratingId, userId, stars, comment));
+    }
+
+    public CompletableFuture<Boolean> deleteAsync(int ratingId, int userId) {
+        return db.async(() -> delete(ratingId, userId));
+    }
+
+    private Rating mapRow(ResultSet rs) throws SQLException {
+        Rating r = new Rating();
+        r.setId(rs.getInt("id"));
+        r.setMediaId(rs.getInt("media_id"));
+        r.setUserId(rs.getInt("user_id"));
+        r.setStars(rs.getInt("stars"));
+        r.setComment(rs.getString("comment"));
+        r.setCommentVisible(rs.getBoolean("comment_visible"));
+        r.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
+        return r;
+    }
+}
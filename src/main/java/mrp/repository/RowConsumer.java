@@ -0,0 +1,10 @@
+package mrp.repository;
+
+import java.io.IOException;
+
+// Receives the rows of a streamed query one by one, e.g. to write each one straight into the response.
+// The rows are not collected anywhere, so memory does not grow with the result size.
+@FunctionalInterface
+public interface RowConsumer<T> {
+    void accept(T row) throws IOException;
+}
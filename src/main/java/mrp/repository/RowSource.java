@@ -0,0 +1,13 @@
+package mrp.repository;
+
+import java.io.IOException;
+
+// Rows pulled one by one by a bulk import, e.g. parsed from an upload while it is still arriving.
+// Counterpart of RowConsumer: nothing is collected, so memory does not grow with the import size.
+public interface RowSource<T> {
+    // Next row, null at the end
+    T next() throws IOException;
+
+    // Line of the upload the last returned row came from (for error reports)
+    long line();
+}
@@ -1,15 +1,28 @@
 package mrp.repository;
 
+import mrp.cache.UserCache;
 import mrp.db.DatabaseManager;
+import mrp.leaderboard.Leaderboard;
 import mrp.model.User;
 
 import java.sql.*;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public class UserRepository {
     private final DatabaseManager db;
+    private final Leaderboard leaderboard;
+    // findByUsername/findById/findIdByUsername, including unknown usernames for a short time
+    private final UserCache cache;
 
     public UserRepository(DatabaseManager db) {
+        this(db, new Leaderboard(), new UserCache(0, 0, 0));
+    }
+
+    public UserRepository(DatabaseManager db, Leaderboard leaderboard, UserCache cache) {
         this.db = db;
+        this.leaderboard = leaderboard;
+        this.cache = cache;
     }
 
     public User create(User user) throws SQLException {
@@ -25,6 +38,8 @@ public class UserRepository {
             if (rs.next()) {
                 user.setId(rs.getInt("id"));
                 user.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
+                leaderboard.addUser(user);
+                cache.invalidate(user.getUsername());  // negative entry from the "already taken?" check
                 return user;
             }
             return null;
@@ -32,7 +47,13 @@ public class UserRepository {
         // If username exists: service layer catches SQLException later
     }
 
+    // Copy of the cached user: callers set bio, statistics etc. on it
     public User findByUsername(String username) throws SQLException {
+        User user = cache.getOrLoadByName(username, this::loadByUsername);
+        return user != null ? new User(user) : null;
+    }
+
+    private User loadByUsername(String username) throws SQLException {
         String sql = "SELECT * FROM users WHERE username = ?";
 
         try (Connection conn = db.getConnection();
@@ -48,10 +69,39 @@ public class UserRepository {
         }
     }
 
+    // Only the id (index-only on the username index), for endpoints that just need to know the user exists.
+    // Primary like findByUsername: a user who registered a moment ago may not be on a replica yet.
+    public Integer findIdByUsername(String username) throws SQLException {
+        if (cache.isEnabled()) {
+            // the whole row costs the same single-row lookup and is then cached for the other endpoints too
+            User user = cache.getOrLoadByName(username, this::loadByUsername);
+            return user != null ? user.getId() : null;
+        }
+        String sql = "SELECT id FROM users WHERE username = ?";
+
+        try (Connection conn = db.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, username);
+            ResultSet rs = stmt.executeQuery();
+
+            if (rs.next()) {
+                return rs.getInt("id");
+            }
+            return null;
+        }
+    }
+
     public User findById(int id) throws SQLException {
+        User user = cache.getOrLoadById(id, this::loadById);
+        return user != null ? new User(user) : null;
+    }
+
+    private User loadById(int id) throws SQLException {
         String sql = "SELECT * FROM users WHERE id = ?";
 
-        try (Connection conn = db.getConnection();
+        // primary while cached, an old replica row would otherwise stay until the TTL
+        try (Connection conn = cache.isEnabled() ? db.getConnection() : db.getReadConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setInt(1, id);
@@ -74,6 +124,8 @@ public class UserRepository {
             stmt.setInt(3, user.getId());
             stmt.executeUpdate();
         }
+        cache.invalidate(user.getUsername());
+        leaderboard.updateBio(user.getId(), user.getBio());
     }
 
      //Converts a ResultSet row into a User object
@@ -88,6 +140,7 @@ public class UserRepository {
         return user;
     }
 
+    // All users with their rating count, only to load the Leaderboard at startup
     public java.util.List<User> getLeaderboard() throws SQLException {
         // LEFT JOIN damit auch User mit 0 Ratings im auftauchen
         String sql = "SELECT u.id, u.username, u.bio, u.created_at, " +
@@ -98,7 +151,7 @@ public class UserRepository {
                 "ORDER BY rating_count DESC, u.username ASC";
 
         java.util.List<User> leaderboard = new java.util.ArrayList<>();
-        try (Connection conn = db.getConnection();
+        try (Connection conn = db.getConnection();  // primary: changes from here on are applied on top
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             ResultSet rs = stmt.executeQuery();
@@ -117,9 +170,14 @@ public class UserRepository {
     }
 
     public void loadUserStatistics(User user) throws SQLException {
-        // 1. Anzahl und Durchschnitt berechnen
+        loadRatingStats(user);
+        loadFavoriteGenre(user);
+    }
+
+    // 1. Anzahl und Durchschnitt berechnen
+    private void loadRatingStats(User user) throws SQLException {
         String sqlStats = "SELECT COUNT(id) AS total, COALESCE(AVG(stars), 0) AS avg_score FROM ratings WHERE user_id = ?";
-        try (Connection conn = db.getConnection();
+        try (Connection conn = db.getReadConnection();
              PreparedStatement stmt = conn.prepareStatement(sqlStats)) {
             stmt.setInt(1, user.getId());
             ResultSet rs = stmt.executeQuery();
@@ -128,8 +186,10 @@ public class UserRepository {
                 user.setAverageScore(rs.getDouble("avg_score"));
             }
         }
+    }
 
-        // 2. Lieblingsgenre berechnen (am häufigsten bewertete Genre)
+    // 2. Lieblingsgenre berechnen (am häufigsten bewertete Genre)
+    private void loadFavoriteGenre(User user) throws SQLException {
         String sqlGenre = "SELECT trim(t.genre_name) AS genre, COUNT(*) as count " +
                 "FROM ratings r " +
                 "JOIN media m ON r.media_id = m.id " +
@@ -137,7 +197,7 @@ public class UserRepository {
                 "WHERE r.user_id = ? AND trim(t.genre_name) != '' " +
                 "GROUP BY trim(t.genre_name) " +
                 "ORDER BY count DESC LIMIT 1";
-        try (Connection conn = db.getConnection();
+        try (Connection conn = db.getReadConnection();
              PreparedStatement stmt = conn.prepareStatement(sqlGenre)) {
             stmt.setInt(1, user.getId());
             ResultSet rs = stmt.executeQuery();
@@ -148,4 +208,39 @@ public class UserRepository {
             }
         }
     }
+
+    // --- Async variants: run on the DB executor, the calling thread does not wait (DatabaseManager.async) ---
+
+    // cache hits (also "no such user") are answered right here, no hop to the executor
+
+    public CompletableFuture<User> findByUsernameAsync(String username) {
+        Optional<User> cached = cache.getIfPresentByName(username);
+        if (cached != null) return CompletableFuture.completedFuture(cached.map(User::new).orElse(null));
+        return db.async(() -> findByUsername(username));
+    }
+
+    public CompletableFuture<Integer> findIdByUsernameAsync(String username) {
+        Optional<User> cached = cache.getIfPresentByName(username);
+        if (cached != null) return CompletableFuture.completedFuture(cached.map(User::getId).orElse(null));
+        return db.async(() -> findIdByUsername(username));
+    }
+
+    public CompletableFuture<User> findByIdAsync(int id) {
+        User cached = cache.getIfPresentById(id);
+        if (cached != null) return CompletableFuture.completedFuture(new User(cached));
+        return db.async(() -> findById(id));
+    }
+
+    // Both statistics queries at the same time on two connections, completes with the user once both are set
+    public CompletableFuture<User> loadUserStatisticsAsync(User user) {
+        CompletableFuture<Void> stats = db.async(() -> {
+            loadRatingStats(user);
+            return null;
+        });
+        CompletableFuture<Void> genre = db.async(() -> {
+            loadFavoriteGenre(user);
+            return null;
+        });
+        return CompletableFuture.allOf(stats, genre).thenApply(done -> user);
+    }
 }
\ No newline at end of file
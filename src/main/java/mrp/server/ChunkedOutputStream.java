@@ -0,0 +1,86 @@
+package mrp.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+// Body stream of a streaming response: collects output into chunks of CHUNK_SIZE and sends each as
+// "<hex length>\r\n<data>\r\n", close() sends the last chunk "0\r\n\r\n". The underlying stream stays open.
+// The response head is held back until the first chunk leaves, so as long as nothing has been
+// sent (isCommitted() == false) a failing body writer can still be answered with a 500.
+// chunked = false (HTTP/1.0 clients) writes the data as is, the end of the body is the closed connection.
+class ChunkedOutputStream extends OutputStream {
+    static final int CHUNK_SIZE = 8 * 1024;
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    private final OutputStream out;
+    private final boolean chunked;
+    private byte[] head;  // null once sent
+    private final byte[] buffer = new byte[CHUNK_SIZE];
+    private int count;
+    private boolean closed;
+
+    ChunkedOutputStream(OutputStream out, byte[] head, boolean chunked) {
+        this.out = out;
+        this.head = head;
+        this.chunked = chunked;
+    }
+
+    boolean isCommitted() {
+        return head == null;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buffer.length) writeChunk();
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        while (len > 0) {
+            if (count == buffer.length) writeChunk();
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (count > 0) writeChunk();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        if (count > 0) writeChunk();
+        commit();
+        if (chunked) out.write(LAST_CHUNK);
+        out.flush();
+        closed = true;
+    }
+
+    private void writeChunk() throws IOException {
+        commit();
+        if (chunked) {
+            out.write(Integer.toHexString(count).getBytes(StandardCharsets.ISO_8859_1));
+            out.write(CRLF);
+        }
+        out.write(buffer, 0, count);
+        if (chunked) out.write(CRLF);
+        count = 0;
+    }
+
+    private void commit() throws IOException {
+        if (head != null) {
+            out.write(head);
+            head = null;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package mrp.server;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Strong entity tags and If-None-Match (RFC 9110 13.1.2). A tag is either a hash of the body (exact, but the
+// body has to be built first) or a hash of a version stamp plus the request variant (path + query), which is
+// known before any query runs. ResponseCompressor appends -gzip/-deflate to the tag of a compressed body,
+// a strong tag must differ per content coding; matches() accepts the tag with or without that suffix.
+public final class ETag {
+    private static final String[] ENCODING_SUFFIXES = {"-" + ResponseCompressor.GZIP, "-" + ResponseCompressor.DEFLATE};
+
+    private ETag() {}
+
+    // Quoted tag from the SHA-256 of the body (first 128 bit)
+    public static String ofBody(byte[] body) {
+        return quote(sha256(body));
+    }
+
+    // Quoted tag for a version stamp (see mrp.cache.Version) and the variant of the request
+    public static String ofVersion(String stamp, HttpRequest request) {
+        StringBuilder variant = new StringBuilder(stamp).append('\n').append(request.getPath());
+        // query parameters sorted, ?a=1&b=2 and ?b=2&a=1 are the same list
+        for (Map.Entry<String, String> param : new TreeMap<>(request.getQueryParams()).entrySet()) {
+            variant.append('\n').append(param.getKey()).append('=').append(param.getValue());
+        }
+        return quote(sha256(variant.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // true if If-None-Match names this tag (or "*"). Weak comparison as the RFC requires for If-None-Match: W/ is ignored
+    public static boolean matches(HttpRequest request, String etag) {
+        String header = request.getHeader("If-None-Match");
+        if (header == null || etag == null) return false;
+        String expected = unquote(etag);
+        for (String part : header.split(",")) {
+            String tag = part.trim();
+            if (tag.equals("*")) return true;
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            tag = unquote(tag);
+            for (String suffix : ENCODING_SUFFIXES) {
+                if (tag.endsWith(suffix)) {
+                    tag = tag.substring(0, tag.length() - suffix.length());
+                    break;
+                }
+            }
+            if (tag.equals(expected)) return true;
+        }
+        return false;
+    }
+
+    // "abc" -> "abc-gzip"
+    static String withEncoding(String etag, String encoding) {
+        return quote(unquote(etag) + "-" + encoding);
+    }
+
+    private static String quote(String value) {
+        return "\"" + value + "\"";
+    }
+
+    private static String unquote(String tag) {
+        return tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"") ? tag.substring(1, tag.length() - 1) : tag;
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);  // required in every JRE
+        }
+    }
+}
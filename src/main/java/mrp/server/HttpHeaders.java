@@ -0,0 +1,172 @@
+package mrp.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+// Request headers kept as raw bytes of the header block plus offsets.
+// Lookups compare names case-insensitively byte by byte (no lowercasing, no allocation),
+// a value is only decoded to a String when it is actually asked for.
+public class HttpHeaders {
+    private static final int[] NO_OFFSETS = new int[0];
+
+    private final byte[] raw;
+    // 4 ints per header: nameStart, nameEnd, valueStart, valueEnd (relative to raw)
+    private final int[] offsets;
+    private final int count;
+    private String[] decodedValues;       // lazily decoded values
+    private Map<String, String> mapView;  // lazily built for getHeaders()
+
+    HttpHeaders(byte[] raw, int[] offsets, int count) {
+        this.raw = raw;
+        this.offsets = offsets;
+        this.count = count;
+    }
+
+    static HttpHeaders empty() {
+        return new HttpHeaders(new byte[0], NO_OFFSETS, 0);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // Case-insensitive lookup, the last occurrence wins (same as the old map based parsing)
+    public String get(String name) {
+        int i = indexOf(name);
+        return i < 0 ? null : value(i);
+    }
+
+    public boolean contains(String name) {
+        return indexOf(name) >= 0;
+    }
+
+    // True if the header occurs more than once with different values (byte-exact comparison)
+    public boolean hasConflictingValues(String name) {
+        int last = indexOf(name);
+        if (last < 0) return false;
+        int lastFrom = offsets[last * 4 + 2];
+        int lastLength = offsets[last * 4 + 3] - lastFrom;
+        for (int i = last - 1; i >= 0; i--) {
+            if (!regionEqualsIgnoreCase(offsets[i * 4], offsets[i * 4 + 1], name)) continue;
+            int from = offsets[i * 4 + 2];
+            if (offsets[i * 4 + 3] - from != lastLength) return true;
+            for (int k = 0; k < lastLength; k++) {
+                if (raw[from + k] != raw[lastFrom + k]) return true;
+            }
+        }
+        return false;
+    }
+
+    // Parses a numeric header without creating a String, e.g. Content-Length
+    public long getLong(String name, long defaultValue) {
+        int i = indexOf(name);
+        if (i < 0) return defaultValue;
+        int from = offsets[i * 4 + 2];
+        int to = offsets[i * 4 + 3];
+        if (from == to) throw new NumberFormatException("Empty value for " + name);
+        long result = 0;
+        for (int p = from; p < to; p++) {
+            int digit = raw[p] - '0';
+            if (digit < 0 || digit > 9) throw new NumberFormatException("Invalid value for " + name);
+            result = result * 10 + digit;
+            if (result < 0) throw new NumberFormatException("Value too large for " + name);
+        }
+        return result;
+    }
+
+    // True if the comma separated header value contains the token (case-insensitive),
+    // e.g. containsToken("connection", "close") for "Connection: keep-alive, close"
+    public boolean containsToken(String name, String token) {
+        int i = indexOf(name);
+        if (i < 0) return false;
+        int p = offsets[i * 4 + 2];
+        int to = offsets[i * 4 + 3];
+        while (p < to) {
+            int tokenEnd = p;
+            while (tokenEnd < to && raw[tokenEnd] != ',') tokenEnd++;
+            int s = p;
+            int e = tokenEnd;
+            while (s < e && isWhitespace(raw[s])) s++;
+            while (e > s && isWhitespace(raw[e - 1])) e--;
+            if (regionEqualsIgnoreCase(s, e, token)) return true;
+            p = tokenEnd + 1;
+        }
+        return false;
+    }
+
+    // Over ALL occurrences of the header, combined in order into one list (RFC 9110 5.3): true if the token
+    // occurs exactly once and is the last element. For Transfer-Encoding, where "last wins" is not enough:
+    // "chunked" in one line and "identity" in the next must not be read as chunked (or as no body).
+    // Empty list elements ("chunked, ") are skipped, RFC 9110 5.6.1.
+    public boolean isFinalTokenOnce(String name, String token) {
+        int matches = 0;
+        boolean last = false;
+        for (int i = 0; i < count; i++) {
+            if (!regionEqualsIgnoreCase(offsets[i * 4], offsets[i * 4 + 1], name)) continue;
+            int p = offsets[i * 4 + 2];
+            int to = offsets[i * 4 + 3];
+            while (p <= to) {
+                int tokenEnd = p;
+                while (tokenEnd < to && raw[tokenEnd] != ',') tokenEnd++;
+                int s = p;
+                int e = tokenEnd;
+                while (s < e && isWhitespace(raw[s])) s++;
+                while (e > s && isWhitespace(raw[e - 1])) e--;
+                if (s < e) {
+                    last = regionEqualsIgnoreCase(s, e, token);
+                    if (last) matches++;
+                }
+                p = tokenEnd + 1;
+            }
+        }
+        return matches == 1 && last;
+    }
+
+    // Builds the old lowercase-key map on first use. Only for code that really needs all headers.
+    public Map<String, String> toMap() {
+        if (mapView == null) {
+            Map<String, String> map = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                String name = new String(raw, offsets[i * 4], offsets[i * 4 + 1] - offsets[i * 4], StandardCharsets.ISO_8859_1);
+                map.put(name.toLowerCase(), value(i));
+            }
+            mapView = map;
+        }
+        return mapView;
+    }
+
+    private int indexOf(String name) {
+        for (int i = count - 1; i >= 0; i--) {
+            if (regionEqualsIgnoreCase(offsets[i * 4], offsets[i * 4 + 1], name)) return i;
+        }
+        return -1;
+    }
+
+    private String value(int i) {
+        if (decodedValues == null) decodedValues = new String[count];
+        String value = decodedValues[i];
+        if (value == null) {
+            int from = offsets[i * 4 + 2];
+            value = new String(raw, from, offsets[i * 4 + 3] - from, StandardCharsets.UTF_8);
+            decodedValues[i] = value;
+        }
+        return value;
+    }
+
+    private boolean regionEqualsIgnoreCase(int from, int to, String s) {
+        if (to - from != s.length()) return false;
+        for (int k = 0; k < s.length(); k++) {
+            if (lower(raw[from + k]) != lower(s.charAt(k))) return false;
+        }
+        return true;
+    }
+
+    private static int lower(int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+}
@@ -0,0 +1,20 @@
+package mrp.server;
+
+import java.io.IOException;
+
+// Thrown by the request parser for requests we refuse to process.
+// Carries the status code the server answers with before closing the connection.
+public class HttpParseException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public HttpParseException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
@@ -1,97 +1,62 @@
 package mrp.server;
 
-import java.io.BufferedReader;
+import mrp.metrics.RequestMetrics;
+
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
 public class HttpRequest {
+    private static final String[] NO_PARAMS = new String[0];
+
     private String method;          // GET, POST, PUT, DELETE
     private String path;            // /api/users/login
+    private String version;         // HTTP/1.1
     private String queryString;     // everything after '?'
-    private Map<String, String> headers;
-    private String body;
+    private HttpHeaders headers;
+    private byte[] bodyBytes;       // raw body, exactly Content-Length bytes
+    private String body;            // decoded on first getBody()
+    private StreamedBody bodyStream; // upload routes only: body read while it arrives, bodyBytes stays null
     private Map<String, String> queryParams;
-    private Map<String, String> pathParams;  // filled in by router later
+    // Path variables, filled in by router later (names of the matched route + values from the path)
+    private String[] pathParamNames = NO_PARAMS;
+    private String[] pathParamValues = NO_PARAMS;
+    private Map<String, String> pathParams;  // map view, built on demand
+    private RequestMetrics metrics;          // of the matched route, null if no route matched
 
     public HttpRequest() {
-        this.headers = new HashMap<>();
+        this.headers = HttpHeaders.empty();
         this.queryParams = new HashMap<>();
-        this.pathParams = new HashMap<>();
     }
 
-    // Reads raw bytes from socket and parses them into this object
-    public static HttpRequest parse(InputStream inputStream) throws IOException {
-        HttpRequest request = new HttpRequest();
-        // Byte-Stream -> Char-Stream -> buffered Char-Stream (Buffered Reader bietet readLine())
-        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-
-        // --- 1. Parse the request line ---
-        String requestLine = reader.readLine();
-        if (requestLine == null || requestLine.isEmpty()) {
-            throw new IOException("Empty request");
-        }
-
-        // "POST /api/users/login HTTP/1.1" -> ["POST", "/api/users/login", "HTTP/1.1"]
-        String[] parts = requestLine.split(" ");
-        if (parts.length < 2) {
-            throw new IOException("Malformed request line: " + requestLine);
-        }
-
-        // Save HTTP method in upper case (GET, POST)
-        request.method = parts[0].toUpperCase();
+    // Called by HttpRequestParser once the head is parsed
+    HttpRequest(String method, String target, String version, HttpHeaders headers) {
+        this();
+        this.method = method;
+        this.version = version;
+        this.headers = headers;
 
         // Split path from query string: "/api/media?genre=action" -> path + query
-        String fullPath = parts[1];
-        if (fullPath.contains("?")) {
-            // Position von '?'
-            int idx = fullPath.indexOf('?');
-            // fullPath von 0 bis (ohne) idx
-            // Save HTTP path
-            request.path = fullPath.substring(0, idx);
-            // fullPath alles nach '?' (auch ohne '?')
-            // Save HTTP queryString
-            request.queryString = fullPath.substring(idx + 1);
-            request.parseQueryParams();
+        int idx = target.indexOf('?');
+        if (idx >= 0) {
+            this.path = target.substring(0, idx);
+            this.queryString = target.substring(idx + 1);
+            parseQueryParams();
         } else {
-            // Save HTTP path
-            request.path = fullPath;
-        }
-
-        // --- 2. Parse headers ---
-        // Headers: one per line until empty line is hit
-        String headerLine;
-        while ((headerLine = reader.readLine()) != null && !headerLine.isEmpty()) {
-            int colonIdx = headerLine.indexOf(':');
-            if (colonIdx > 0) {
-                // Header in key value pairs umwandeln
-                String key = headerLine.substring(0, colonIdx).trim();
-                String value = headerLine.substring(colonIdx + 1).trim();
-                // Store headers lowercase for easy lookup
-                request.headers.put(key.toLowerCase(), value);
-            }
+            this.path = target;
         }
+    }
 
-        // --- 3. Parse body ---
-        // Only read body if Content-Length header is present
-        String contentLengthStr = request.headers.get("content-length");
-        if (contentLengthStr != null) {
-            int contentLength = Integer.parseInt(contentLengthStr.trim());
-            if (contentLength > 0) {
-                char[] bodyChars = new char[contentLength];
-                int totalRead = 0;
-                // must read exactly contentLength chars, may take multiple reads
-                while (totalRead < contentLength) {
-                    int read = reader.read(bodyChars, totalRead, contentLength - totalRead);
-                    if (read == -1) break;
-                    totalRead += read;
-                }
-                request.body = new String(bodyChars, 0, totalRead);
-            }
+    // Reads one request from the stream (see HttpRequestParser, which the servers use directly
+    // so that the parse buffer is reused for all requests of a keep-alive connection)
+    public static HttpRequest parse(InputStream inputStream) throws IOException {
+        HttpRequest request = new HttpRequestParser(inputStream, new ServerConfig()).next();
+        if (request == null) {
+            throw new IOException("Empty request");
         }
-
         return request;
     }
 
@@ -110,6 +75,15 @@ public class HttpRequest {
         }
     }
 
+    // HTTP/1.1 keeps the connection open unless the client sends "Connection: close",
+    // HTTP/1.0 only if the client explicitly asks for "Connection: keep-alive"
+    public boolean isKeepAlive() {
+        if ("HTTP/1.1".equals(version)) {
+            return !headers.containsToken("connection", "close");
+        }
+        return headers.containsToken("connection", "keep-alive");
+    }
+
     public String getToken() {
         String auth = headers.get("authorization");
         if (auth != null && auth.startsWith("Bearer ")) {
@@ -118,14 +92,75 @@ public class HttpRequest {
         return null;
     }
 
+    // Case-insensitive header lookup without building the header map
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    void setBodyBytes(byte[] bodyBytes) {
+        this.bodyBytes = bodyBytes;
+        this.body = null;
+    }
+
+    void setBodyStream(StreamedBody bodyStream) {
+        this.bodyStream = bodyStream;
+    }
+
+    boolean isBodyStreamed() {
+        return bodyStream != null;
+    }
+
+    // Body not read to the end by the handler -> the rest is still on the connection, which must then be closed
+    boolean hasUnreadBody() {
+        return bodyStream != null && !bodyStream.isComplete();
+    }
+
+    // The body as a stream: for upload routes (Router.addUploadRoute) while it is still arriving,
+    // otherwise the buffered bytes
+    public InputStream getBodyStream() {
+        if (bodyStream != null) return bodyStream;
+        return new ByteArrayInputStream(bodyBytes != null ? bodyBytes : new byte[0]);
+    }
+
     // Getters & setters
     public String getMethod() { return method; }
     public String getPath() { return path; }
-    public Map<String, String> getHeaders() { return headers; }
-    public String getBody() { return body; }
+    public String getVersion() { return version; }
+    // Lowercase header names -> values, built on first call
+    public Map<String, String> getHeaders() { return headers.toMap(); }
+    public HttpHeaders getHttpHeaders() { return headers; }
+    public String getBody() {
+        if (body == null && bodyBytes != null) {
+            body = new String(bodyBytes, StandardCharsets.UTF_8);
+        }
+        return body;
+    }
+    public byte[] getBodyBytes() { return bodyBytes; }
     public Map<String, String> getQueryParams() { return queryParams; }
     public String getQueryParam(String key) { return queryParams.get(key); }
-    public Map<String, String> getPathParams() { return pathParams; }
-    public String getPathParam(String key) { return pathParams.get(key); }
+    public Map<String, String> getPathParams() {
+        if (pathParams == null) {
+            pathParams = new HashMap<>();
+            for (int i = 0; i < pathParamNames.length; i++) {
+                pathParams.put(pathParamNames[i], pathParamValues[i]);
+            }
+        }
+        return pathParams;
+    }
+    public String getPathParam(String key) {
+        if (pathParams != null) return pathParams.get(key);
+        // Routes have only a handful of variables, a linear scan beats a map
+        for (int i = 0; i < pathParamNames.length; i++) {
+            if (pathParamNames[i].equals(key)) return pathParamValues[i];
+        }
+        return null;
+    }
     public void setPathParams(Map<String, String> pathParams) { this.pathParams = pathParams; }
-}
\ No newline at end of file
+    RequestMetrics getMetrics() { return metrics; }
+    void setMetrics(RequestMetrics metrics) { this.metrics = metrics; }
+    void setPathParams(String[] names, String[] values) {
+        this.pathParamNames = names;
+        this.pathParamValues = values;
+        this.pathParams = null;
+    }
+}
@@ -0,0 +1,446 @@
+package mrp.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+// Byte level HTTP/1.1 request parser with one reusable buffer per connection.
+// Works on a blocking InputStream (next()) as well as on bytes pushed in by the NIO engine
+// (readFrom() + tryParse()). The body is read by byte count, never beyond the configured limits.
+// Requests for which the streamBody predicate says so (upload routes) are returned right after the head,
+// their body is then decoded piece by piece while the handler reads it (no maxBodyBytes limit).
+public class HttpRequestParser {
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_CHUNK_LINE = 1024;
+    private static final String[] KNOWN_METHODS = {"GET", "POST", "PUT", "DELETE", "PATCH", "HEAD", "OPTIONS"};
+
+    // Chunked body states
+    private static final int CHUNK_SIZE = 0;
+    private static final int CHUNK_DATA = 1;
+    private static final int CHUNK_DATA_END = 2;
+    private static final int CHUNK_TRAILER = 3;
+
+    private final InputStream input;   // null if bytes come from readFrom()
+    private final int maxHeaderBytes;
+    private final int maxBodyBytes;
+
+    private byte[] buf = new byte[INITIAL_BUFFER_SIZE];
+    private ByteBuffer bufView = ByteBuffer.wrap(buf);
+    private int start;    // first unconsumed byte
+    private int end;      // end of received bytes
+    private int scanned;  // header end search continues here
+
+    // Request whose head is parsed but whose body is not complete yet
+    private HttpRequest pending;
+    private long contentLength;
+    private boolean chunked;
+    private int chunkState;
+    private long chunkRemaining;
+    private byte[] chunkedBody;
+    private int chunkedLength;
+    private boolean streamingBody;  // body of pending is read through readBody()
+    private Predicate<HttpRequest> streamBody = request -> false;
+
+    public HttpRequestParser(InputStream input, ServerConfig config) {
+        this.input = input;
+        this.maxHeaderBytes = config.getMaxHeaderBytes();
+        this.maxBodyBytes = config.getMaxBodyBytes();
+    }
+
+    // For the NIO engine: bytes are pushed in with readFrom()
+    public HttpRequestParser(ServerConfig config) {
+        this(null, config);
+    }
+
+    // Blocking: reads until the next request is complete.
+    // Returns null if the client closed the connection cleanly between two requests.
+    public HttpRequest next() throws IOException {
+        while (true) {
+            HttpRequest request = tryParse();
+            if (request != null) return request;
+
+            ensureSpace();
+            int read = input.read(buf, end, buf.length - end);
+            if (read < 0) {
+                if (pending == null && start == end) return null;
+                throw new HttpParseException(400, "Unexpected end of request");
+            }
+            end += read;
+        }
+    }
+
+    // Non-blocking: reads whatever the channel has into the buffer, returns -1 on end of stream
+    public int readFrom(ReadableByteChannel channel) throws IOException {
+        ensureSpace();
+        bufView.limit(buf.length).position(end);
+        int read = channel.read(bufView);
+        if (read > 0) end += read;
+        return read;
+    }
+
+    // Decides per request (after the head) whether its body is streamed, see RequestDispatcher.streamsBody()
+    public void setStreamBody(Predicate<HttpRequest> streamBody) {
+        this.streamBody = streamBody;
+    }
+
+    // Bytes of a following (pipelined) request are already buffered
+    public boolean hasBufferedData() {
+        return end > start;
+    }
+
+    // Nothing of a next request received yet (keep-alive connection waiting between requests)
+    public boolean isBetweenRequests() {
+        return pending == null && end == start;
+    }
+
+    // Returns the next complete request from the buffer or null if more bytes are needed
+    public HttpRequest tryParse() throws HttpParseException {
+        if (streamingBody) throw new IllegalStateException("Streamed body of the previous request not read");
+        if (pending == null) {
+            // Tolerate empty lines between requests (RFC 9112 2.2)
+            while (start < end && (buf[start] == '\r' || buf[start] == '\n')) start++;
+            if (scanned < start) scanned = start;
+
+            int headerEnd = findHeaderEnd();
+            if (headerEnd < 0) {
+                if (end - start > maxHeaderBytes) throw new HttpParseException(431, "Request header too large");
+                return null;
+            }
+            if (headerEnd - start > maxHeaderBytes) throw new HttpParseException(431, "Request header too large");
+
+            pending = parseHead(start, headerEnd);
+            start = headerEnd; // the head was copied, only the body is left in the buffer
+            scanned = start;
+            if (streamingBody) return pending;  // the body follows through readBody()
+        }
+
+        byte[] body;
+        if (chunked) {
+            while (true) {
+                if (chunkedLength == chunkedBody.length) {
+                    chunkedBody = Arrays.copyOf(chunkedBody, Math.max(1024, chunkedBody.length * 2));
+                }
+                int n = readChunks(chunkedBody, chunkedLength, chunkedBody.length - chunkedLength);
+                if (n == 0) return null;
+                if (n < 0) break;
+                chunkedLength += n;
+            }
+            body = chunkedLength == chunkedBody.length ? chunkedBody : Arrays.copyOf(chunkedBody, chunkedLength);
+            chunkedBody = null;
+        } else {
+            if (end - start < contentLength) return null;
+            body = contentLength > 0 ? Arrays.copyOfRange(buf, start, start + (int) contentLength) : null;
+            start += (int) contentLength;
+        }
+
+        HttpRequest request = pending;
+        request.setBodyBytes(body);
+        requestDone();
+        return request;
+    }
+
+    private void requestDone() {
+        pending = null;
+        streamingBody = false;
+        scanned = start;
+        if (start == end) {
+            start = 0;
+            end = 0;
+            scanned = 0;
+        }
+    }
+
+    // true between tryParse() returning an upload request and the end of its body
+    boolean isStreamingBody() {
+        return streamingBody;
+    }
+
+    // Streamed body: copies buffered body bytes to dst. Returns the number of bytes copied,
+    // 0 if more input is needed and -1 at the end of the body (the parser then continues with the next request).
+    int readBody(byte[] dst, int off, int len) throws HttpParseException {
+        if (!streamingBody) return -1;
+        int n;
+        if (chunked) {
+            n = readChunks(dst, off, len);
+        } else if (contentLength == 0) {
+            n = -1;
+        } else {
+            n = (int) Math.min(Math.min(len, contentLength), end - start);
+            System.arraycopy(buf, start, dst, off, n);
+            start += n;
+            contentLength -= n;
+        }
+        if (n < 0) requestDone();
+        return n;
+    }
+
+    // Blocking engine: the streamed body of the request tryParse() just returned, reads more from the socket as needed
+    StreamedBody openBody(StreamedBody.Continue beforeFirstRead) {
+        return new StreamedBody(beforeFirstRead) {
+            private boolean complete;
+
+            @Override
+            protected int readBody(byte[] b, int off, int len) throws IOException {
+                if (complete) return -1;
+                while (true) {
+                    int n = HttpRequestParser.this.readBody(b, off, len);
+                    if (n < 0) {
+                        complete = true;
+                        return -1;
+                    }
+                    if (n > 0) return n;
+                    ensureSpace();
+                    int read = input.read(buf, end, buf.length - end);
+                    if (read < 0) throw new HttpParseException(400, "Unexpected end of request body");
+                    end += read;
+                }
+            }
+
+            @Override
+            boolean isComplete() {
+                return complete;
+            }
+        };
+    }
+
+    // Index right after the empty line that ends the head, or -1. Accepts CRLF and bare LF.
+    private int findHeaderEnd() {
+        for (int i = scanned; i < end; i++) {
+            if (buf[i] != '\n') continue;
+            if (i + 1 < end && buf[i + 1] == '\n') return i + 2;
+            if (i + 2 < end && buf[i + 1] == '\r' && buf[i + 2] == '\n') return i + 3;
+            if (i + 2 >= end) {
+                // Not enough bytes yet to decide, look at this newline again next time
+                scanned = i;
+                return -1;
+            }
+        }
+        scanned = end;
+        return -1;
+    }
+
+    private HttpRequest parseHead(int from, int to) throws HttpParseException {
+        // One copy of the whole head, headers keep offsets into it
+        byte[] head = Arrays.copyOfRange(buf, from, to);
+        int len = head.length;
+
+        // --- 1. Request line: "POST /api/users/login HTTP/1.1" ---
+        int lineEnd = indexOf(head, (byte) '\n', 0, len);
+        int lineStop = trimCr(head, 0, lineEnd);
+        int sp1 = indexOf(head, (byte) ' ', 0, lineStop);
+        if (sp1 <= 0) throw new HttpParseException(400, "Malformed request line");
+        int sp2 = indexOf(head, (byte) ' ', sp1 + 1, lineStop);
+        int targetEnd = sp2 < 0 ? lineStop : sp2;
+        if (targetEnd <= sp1 + 1) throw new HttpParseException(400, "Malformed request line");
+
+        String method = method(head, 0, sp1);
+        String target = new String(head, sp1 + 1, targetEnd - sp1 - 1, StandardCharsets.UTF_8);
+        // Requests without version are treated as HTTP/1.0
+        String version = sp2 < 0 ? "HTTP/1.0" : version(head, sp2 + 1, lineStop);
+
+        // --- 2. Headers: "Name: value" per line until the empty line ---
+        int[] offsets = new int[32];
+        int count = 0;
+        int p = lineEnd + 1;
+        while (p < len) {
+            int nl = indexOf(head, (byte) '\n', p, len);
+            int stop = trimCr(head, p, nl);
+            if (stop == p) break; // empty line = end of head
+            int colon = indexOf(head, (byte) ':', p, stop);
+            if (colon > p) {
+                // "Transfer-Encoding : chunked" must be rejected, RFC 9112 5.1: another hop may not see that
+                // header at all and frame the body differently
+                if (isWhitespace(head[colon - 1])) throw new HttpParseException(400, "Whitespace before header colon");
+                int nameEnd = colon;
+                int valueStart = colon + 1;
+                int valueEnd = stop;
+                while (valueStart < valueEnd && isWhitespace(head[valueStart])) valueStart++;
+                while (valueEnd > valueStart && isWhitespace(head[valueEnd - 1])) valueEnd--;
+
+                if (count * 4 == offsets.length) offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                offsets[count * 4] = p;
+                offsets[count * 4 + 1] = nameEnd;
+                offsets[count * 4 + 2] = valueStart;
+                offsets[count * 4 + 3] = valueEnd;
+                count++;
+            }
+            p = nl + 1;
+        }
+        HttpHeaders headers = new HttpHeaders(head, offsets, count);
+        HttpRequest request = new HttpRequest(method, target, version, headers);
+
+        // --- 3. Body framing ---
+        // RFC 9112 6.3: any Transfer-Encoding decides the framing, and the only one we can decode is chunked as
+        // the final encoding. Everything else (gzip alone, "chunked" followed by "identity", chunked twice) would
+        // leave the body to be read as the next request on a keep-alive connection -> 400 and close.
+        chunked = headers.contains("transfer-encoding");
+        if (chunked) {
+            if (!headers.isFinalTokenOnce("transfer-encoding", "chunked")) {
+                throw new HttpParseException(400, "Unsupported Transfer-Encoding");
+            }
+            // Both headers at once is a request smuggling vector
+            if (headers.contains("content-length")) {
+                throw new HttpParseException(400, "Content-Length and Transfer-Encoding together");
+            }
+            chunkState = CHUNK_SIZE;
+            chunkedBody = new byte[0];
+            chunkedLength = 0;
+            contentLength = 0;
+        } else {
+            // Repeated Content-Length with different values: framing is ambiguous, another hop may pick the
+            // other one (request smuggling), RFC 9112 6.3. Identical repeats are accepted.
+            if (headers.hasConflictingValues("content-length")) {
+                throw new HttpParseException(400, "Conflicting Content-Length headers");
+            }
+            try {
+                contentLength = headers.getLong("content-length", 0);
+            } catch (NumberFormatException e) {
+                throw new HttpParseException(400, "Invalid Content-Length");
+            }
+        }
+        streamingBody = (chunked || contentLength > 0) && streamBody.test(request);
+        if (!chunked && !streamingBody && contentLength > maxBodyBytes) {
+            throw new HttpParseException(413, "Request body too large");
+        }
+        return request;
+    }
+
+    // Decodes buffered chunked body bytes into dst. Returns the number of bytes copied,
+    // 0 if more input is needed, -1 once the last chunk and the trailers were read.
+    private int readChunks(byte[] dst, int off, int len) throws HttpParseException {
+        while (true) {
+            switch (chunkState) {
+                case CHUNK_SIZE -> {
+                    int nl = indexOf(buf, (byte) '\n', start, end);
+                    if (nl < 0) {
+                        if (end - start > MAX_CHUNK_LINE) throw new HttpParseException(400, "Invalid chunk size");
+                        return 0;
+                    }
+                    long size = parseChunkSize(start, trimCr(buf, start, nl));
+                    start = nl + 1;
+                    if (size == 0) {
+                        chunkState = CHUNK_TRAILER;
+                    } else {
+                        if (!streamingBody && chunkedLength + size > maxBodyBytes) {
+                            throw new HttpParseException(413, "Request body too large");
+                        }
+                        chunkRemaining = size;
+                        chunkState = CHUNK_DATA;
+                    }
+                }
+                case CHUNK_DATA -> {
+                    int n = (int) Math.min(Math.min(chunkRemaining, end - start), len);
+                    if (n == 0) return 0;
+                    System.arraycopy(buf, start, dst, off, n);
+                    start += n;
+                    chunkRemaining -= n;
+                    if (chunkRemaining == 0) chunkState = CHUNK_DATA_END;
+                    return n;
+                }
+                case CHUNK_DATA_END -> {
+                    if (start < end && buf[start] == '\n') {
+                        start += 1;
+                    } else if (end - start < 2) {
+                        return 0;
+                    } else if (buf[start] == '\r' && buf[start + 1] == '\n') {
+                        start += 2;
+                    } else {
+                        throw new HttpParseException(400, "Missing CRLF after chunk");
+                    }
+                    chunkState = CHUNK_SIZE;
+                }
+                default -> { // CHUNK_TRAILER: ignore trailer fields until the empty line
+                    int nl = indexOf(buf, (byte) '\n', start, end);
+                    if (nl < 0) {
+                        if (end - start > maxHeaderBytes) throw new HttpParseException(431, "Trailer too large");
+                        return 0;
+                    }
+                    boolean emptyLine = trimCr(buf, start, nl) == start;
+                    start = nl + 1;
+                    if (emptyLine) return -1;
+                }
+            }
+        }
+    }
+
+    private long parseChunkSize(int from, int to) throws HttpParseException {
+        long size = 0;
+        int digits = 0;
+        for (int p = from; p < to && buf[p] != ';'; p++) {
+            int d = Character.digit(buf[p], 16);
+            if (d < 0) {
+                if (isWhitespace(buf[p])) continue;
+                throw new HttpParseException(400, "Invalid chunk size");
+            }
+            size = size * 16 + d;
+            if (++digits > 8) throw new HttpParseException(413, "Chunk too large");
+        }
+        if (digits == 0) throw new HttpParseException(400, "Invalid chunk size");
+        return size;
+    }
+
+    // Makes room for more bytes: first drop consumed bytes, then grow up to the configured limits
+    private void ensureSpace() throws HttpParseException {
+        if (end < buf.length) return;
+        if (start > 0) {
+            System.arraycopy(buf, start, buf, 0, end - start);
+            end -= start;
+            scanned = Math.max(0, scanned - start);
+            start = 0;
+            if (end < buf.length) return;
+        }
+        long limit = (long) maxHeaderBytes + maxBodyBytes + MAX_CHUNK_LINE;
+        if (buf.length >= limit) {
+            throw pending == null
+                    ? new HttpParseException(431, "Request header too large")
+                    : new HttpParseException(413, "Request body too large");
+        }
+        buf = Arrays.copyOf(buf, (int) Math.min(limit, buf.length * 2L));
+        bufView = ByteBuffer.wrap(buf);
+    }
+
+    // Common methods are returned as constants instead of allocating and uppercasing a new String
+    private static String method(byte[] b, int from, int to) {
+        for (String known : KNOWN_METHODS) {
+            if (equalsAscii(b, from, to, known)) return known;
+        }
+        return new String(b, from, to - from, StandardCharsets.US_ASCII).toUpperCase();
+    }
+
+    private static String version(byte[] b, int from, int to) {
+        if (equalsAscii(b, from, to, "HTTP/1.1")) return "HTTP/1.1";
+        if (equalsAscii(b, from, to, "HTTP/1.0")) return "HTTP/1.0";
+        return new String(b, from, to - from, StandardCharsets.US_ASCII).toUpperCase();
+    }
+
+    private static boolean equalsAscii(byte[] b, int from, int to, String s) {
+        if (to - from != s.length()) return false;
+        for (int i = 0; i < s.length(); i++) {
+            int c = b[from + i];
+            if (c >= 'a' && c <= 'z') c -= 'a' - 'A';
+            if (c != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] b, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (b[i] == value) return i;
+        }
+        return -1;
+    }
+
+    // End of the line content without a trailing '\r'
+    private static int trimCr(byte[] b, int from, int lineEnd) {
+        if (lineEnd < 0) return from;
+        return lineEnd > from && b[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+}
@@ -1,55 +1,213 @@
 package mrp.server;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.function.IntConsumer;
 
 public class HttpResponse {
-    private int statusCode;
-    private String statusMessage;
-    private Map<String, String> headers;
-    private String body;
+    private static final String JSON = "application/json";
+    private static final byte[] EMPTY = new byte[0];
+
+    // --- Pre-encoded pieces of the response head ---
+    private static final byte[] CONTENT_TYPE_JSON = ascii("Content-Type: application/json\r\n");
+    private static final byte[] CONTENT_TYPE = ascii("Content-Type: ");
+    private static final byte[] CONTENT_LENGTH = ascii("Content-Length: ");
+    private static final byte[] TRANSFER_ENCODING_CHUNKED = ascii("Transfer-Encoding: chunked\r\n");
+    private static final byte[] SEPARATOR = ascii(": ");
+    private static final byte[] CRLF = ascii("\r\n");
+    private static final byte[][] STATUS_LINES = new byte[600][];  // "HTTP/1.1 200 OK\r\n" per status code
+
+    // --- Pre-encoded bodies of the canned responses ---
+    private static final byte[] UNAUTHORIZED_BODY = ascii("{\"error\":\"Unauthorized\"}");
+    private static final byte[] FORBIDDEN_BODY = ascii("{\"error\":\"Forbidden\"}");
+    private static final byte[] NOT_FOUND_BODY = ascii("{\"error\":\"Not Found\"}");
+    private static final byte[] METHOD_NOT_ALLOWED_BODY = ascii("{\"error\":\"Method Not Allowed\"}");
+    private static final byte[] SERVICE_UNAVAILABLE_BODY = ascii("{\"error\":\"Service Unavailable\"}");
+    private static final byte[] ERROR_PREFIX = ascii("{\"error\":\"");
+    private static final byte[] ERROR_SUFFIX = ascii("\"}");
+
+    static {
+        for (int code : new int[]{200, 201, 204, 304, 400, 401, 403, 404, 405, 409, 413, 431, 500, 503}) {
+            statusLine(code);
+        }
+    }
+
+    private final int statusCode;
+    private String contentType = JSON;
+    private Map<String, String> headers;  // created on first header() call
+    private byte[] body = EMPTY;          // encoded exactly once
+
+    // Streaming responses: body is produced while sending (Transfer-Encoding: chunked)
+    private BodyWriter streamingBody;
+    private BodyFilter bodyFilter;        // e.g. compression, wraps the chunk stream
+    private boolean chunked = true;
+    private IntConsumer onStreamComplete;  // gets the status that was actually sent
+
+    // Writes the body of a streaming response. Runs on the thread that sends the response,
+    // after the handler has returned, so it has to open (and close) its own resources.
+    @FunctionalInterface
+    public interface BodyWriter {
+        void writeTo(OutputStream out) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface BodyFilter {
+        OutputStream wrap(OutputStream out) throws IOException;
+    }
 
     public HttpResponse(int statusCode) {
         this.statusCode = statusCode;
-        this.statusMessage = getDefaultMessage(statusCode);
-        this.headers = new HashMap<>();
-        this.body = "";
-        this.headers.put("Content-Type", "application/json");
+    }
+
+    // Response whose body is written straight to the connection in chunks instead of being built in memory
+    public static HttpResponse stream(int statusCode, BodyWriter writer) {
+        HttpResponse response = new HttpResponse(statusCode);
+        response.streamingBody = writer;
+        return response;
     }
 
     public HttpResponse body(String body) {
-        this.body = body;
+        this.body = body == null ? EMPTY : body.getBytes(StandardCharsets.UTF_8);
+        return this;
+    }
+
+    public HttpResponse body(byte[] body) {
+        this.body = body == null ? EMPTY : body;
         return this;
     }
 
     public HttpResponse header(String key, String value) {
-        this.headers.put(key, value);
+        if (key.equalsIgnoreCase("Content-Type")) {
+            this.contentType = value;
+        } else if (!key.equalsIgnoreCase("Content-Length") && !key.equalsIgnoreCase("Transfer-Encoding")) { // always computed from the body
+            if (headers == null) headers = new LinkedHashMap<>();
+            headers.put(key, value);
+        }
         return this;
     }
 
-    // Converts response to raw HTTP string
-    public String toRawString() {
-        StringBuilder sb = new StringBuilder();
+    // The body of a streaming response does not exist yet, filterBody() transforms it while it is written
+    public boolean isStreaming() { return streamingBody != null; }
 
-        // Status line
-        sb.append("HTTP/1.1 ").append(statusCode).append(" ").append(statusMessage).append("\r\n");
+    public HttpResponse filterBody(BodyFilter filter) {
+        this.bodyFilter = filter;
+        return this;
+    }
+
+    // HTTP/1.0 clients do not understand chunked encoding: body is sent raw and the connection closed after it
+    void disableChunking() { this.chunked = false; }
 
-        // Content-Length must match the body bytes
-        byte[] bodyBytes = body.getBytes(java.nio.charset.StandardCharsets.UTF_8);
-        headers.put("Content-Length", String.valueOf(bodyBytes.length));
+    // Called once the streamed body is written (or failed), e.g. to record the full request duration
+    void onStreamComplete(IntConsumer callback) { this.onStreamComplete = callback; }
 
-        // Headers
-        for (Map.Entry<String, String> entry : headers.entrySet()) {
-            sb.append(entry.getKey()).append(": ").append(entry.getValue()).append("\r\n");
+    // true if the connection has to be closed after this response to mark the end of the body
+    public boolean requiresClose() { return streamingBody != null && !chunked; }
+
+    // Writes status line, headers and body straight to the stream, the body is not copied
+    public void writeTo(OutputStream out) throws IOException {
+        if (streamingBody != null) {
+            writeStreaming(out);
+            return;
         }
+        out.write(encodeHead());
+        out.write(body);
+    }
 
-        //separate headers from body (empty line)
-        sb.append("\r\n");
+    // Head and body as separate buffers for a gathering channel write (NIO engine)
+    public ByteBuffer[] toBuffers() {
+        if (streamingBody != null) throw new IllegalStateException("Streaming response, use writeTo()");
+        return new ByteBuffer[]{ByteBuffer.wrap(encodeHead()), ByteBuffer.wrap(body)};
+    }
+
+    // Memory stays at one chunk buffer (+ compressor) no matter how large the body gets.
+    // If the writer fails before the first chunk left, the client gets a 500 instead; after that the
+    // body is cut off without the last chunk, which tells the client the response is incomplete.
+    // Both ways the connection is unusable afterwards -> IOException, the server closes it.
+    private void writeStreaming(OutputStream out) throws IOException {
+        ChunkedOutputStream chunks = new ChunkedOutputStream(out, encodeHead(), chunked);
+        int sentStatus = statusCode;
+        try {
+            OutputStream target = bodyFilter != null ? bodyFilter.wrap(chunks) : chunks;
+            streamingBody.writeTo(target);
+            target.close();  // finishes compression and writes the last chunk, keeps `out` open
+        } catch (Exception e) {
+            System.err.println("Streaming response failed: " + e.getMessage());
+            if (!chunks.isCommitted()) {
+                sentStatus = 500;
+                HttpResponse error = internalError("Internal server error");
+                error.header("Connection", "close");
+                error.writeTo(out);
+                out.flush();
+            }
+            throw e instanceof IOException io ? io : new IOException("Streaming response failed", e);
+        } finally {
+            if (onStreamComplete != null) onStreamComplete.accept(sentStatus);
+        }
+    }
 
-        // Body
-        sb.append(body);
+    // Status line + headers + empty line, sized exactly so nothing is copied or resized
+    private byte[] encodeHead() {
+        byte[] statusLine = statusLine(statusCode);
+        boolean hasLength = streamingBody == null && hasContentLength();
+        boolean hasChunked = streamingBody != null && chunked;
 
-        return sb.toString();
+        int size = statusLine.length + CRLF.length;
+        size += contentType.equals(JSON) ? CONTENT_TYPE_JSON.length : CONTENT_TYPE.length + contentType.length() + CRLF.length;
+        if (headers != null) {
+            for (Map.Entry<String, String> entry : headers.entrySet()) {
+                size += entry.getKey().length() + SEPARATOR.length + entry.getValue().length() + CRLF.length;
+            }
+        }
+        if (hasLength) size += CONTENT_LENGTH.length + digits(body.length) + CRLF.length;
+        if (hasChunked) size += TRANSFER_ENCODING_CHUNKED.length;
+
+        byte[] head = new byte[size];
+        int pos = put(head, 0, statusLine);
+        if (contentType.equals(JSON)) {
+            pos = put(head, pos, CONTENT_TYPE_JSON);
+        } else {
+            pos = put(head, put(head, put(head, pos, CONTENT_TYPE), contentType), CRLF);
+        }
+        if (headers != null) {
+            for (Map.Entry<String, String> entry : headers.entrySet()) {
+                pos = put(head, pos, entry.getKey());
+                pos = put(head, pos, SEPARATOR);
+                pos = put(head, pos, entry.getValue());
+                pos = put(head, pos, CRLF);
+            }
+        }
+        if (hasLength) {
+            pos = put(head, pos, CONTENT_LENGTH);
+            pos = putNumber(head, pos, body.length);
+            pos = put(head, pos, CRLF);
+        }
+        if (hasChunked) pos = put(head, pos, TRANSFER_ENCODING_CHUNKED);
+        put(head, pos, CRLF); // separate headers from body (empty line)
+        return head;
+    }
+
+    // 204 (and other bodiless statuses) must not carry a Content-Length
+    private boolean hasContentLength() {
+        return statusCode >= 200 && statusCode != 204 && statusCode != 304;
+    }
+
+    // Getters
+    public int getStatusCode() { return statusCode; }
+    public String getHeader(String key) {
+        if (key.equalsIgnoreCase("Content-Type")) return contentType;
+        return headers == null ? null : headers.get(key);
+    }
+    public byte[] getBodyBytes() { return body; }
+
+    // Strong ETag from the finished body; RequestDispatcher answers a matching If-None-Match with 304.
+    // For bodies that are cheap to build anyway, otherwise see ETag.ofVersion
+    public HttpResponse etagFromBody() {
+        if (streamingBody == null) header("ETag", ETag.ofBody(body));
+        return this;
     }
 
     // --- methods for common responses ---
@@ -66,42 +224,146 @@ public class HttpResponse {
         return new HttpResponse(204);
     }
 
+    // Conditional GET: the client's copy is current, no body
+    public static HttpResponse notModified(String etag) {
+        return new HttpResponse(304).header("ETag", etag);
+    }
+
     public static HttpResponse badRequest(String message) {
-        return new HttpResponse(400).body("{\"error\":\"" + message + "\"}");
+        return error(400, message);
     }
 
     public static HttpResponse unauthorized() {
-        return new HttpResponse(401).body("{\"error\":\"Unauthorized\"}");
+        return new HttpResponse(401).body(UNAUTHORIZED_BODY);
     }
 
     public static HttpResponse forbidden() {
-        return new HttpResponse(403).body("{\"error\":\"Forbidden\"}");
+        return new HttpResponse(403).body(FORBIDDEN_BODY);
     }
 
     public static HttpResponse notFound() {
-        return new HttpResponse(404).body("{\"error\":\"Not Found\"}");
+        return new HttpResponse(404).body(NOT_FOUND_BODY);
+    }
+
+    // Path exists, but not for this method. allow = "GET, PUT, DELETE"
+    public static HttpResponse methodNotAllowed(String allow) {
+        return new HttpResponse(405).body(METHOD_NOT_ALLOWED_BODY).header("Allow", allow);
     }
 
     public static HttpResponse conflict(String message) {
-        return new HttpResponse(409).body("{\"error\":\"" + message + "\"}");
+        return error(409, message);
+    }
+
+    // Generic error response, e.g. for requests the parser rejected (413, 431, ...)
+    // Body is {"error":"<message>"} assembled from the pre-encoded prefix/suffix
+    public static HttpResponse error(int statusCode, String message) {
+        byte[] text = escapeJson(message).getBytes(StandardCharsets.UTF_8);
+        byte[] body = new byte[ERROR_PREFIX.length + text.length + ERROR_SUFFIX.length];
+        put(body, put(body, put(body, 0, ERROR_PREFIX), text), ERROR_SUFFIX);
+        return new HttpResponse(statusCode).body(body);
     }
 
     public static HttpResponse internalError(String message) {
-        return new HttpResponse(500).body("{\"error\":\"" + message + "\"}");
+        return error(500, message);
+    }
+
+    // Server overloaded (request shed), the client may try again after retryAfterSeconds
+    public static HttpResponse serviceUnavailable(int retryAfterSeconds) {
+        return new HttpResponse(503).body(SERVICE_UNAVAILABLE_BODY)
+                .header("Retry-After", String.valueOf(retryAfterSeconds))
+                .header("Connection", "close");
     }
 
-    private String getDefaultMessage(int code) {
+    private static String getDefaultMessage(int code) {
         return switch (code) {
             case 200 -> "OK";
             case 201 -> "Created";
             case 204 -> "No Content";
+            case 304 -> "Not Modified";
             case 400 -> "Bad Request";
             case 401 -> "Unauthorized";
             case 403 -> "Forbidden";
             case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
             case 409 -> "Conflict";
+            case 413 -> "Payload Too Large";
+            case 431 -> "Request Header Fields Too Large";
             case 500 -> "Internal Server Error";
+            case 503 -> "Service Unavailable";
             default -> "Unknown";
         };
     }
-}
\ No newline at end of file
+
+    // --- encoding helpers ---
+
+    // Cached per status code; a concurrent first use just builds the same bytes twice
+    private static byte[] statusLine(int code) {
+        if (code < 100 || code >= STATUS_LINES.length) {
+            return ascii("HTTP/1.1 " + code + " " + getDefaultMessage(code) + "\r\n");
+        }
+        byte[] line = STATUS_LINES[code];
+        if (line == null) {
+            line = ascii("HTTP/1.1 " + code + " " + getDefaultMessage(code) + "\r\n");
+            STATUS_LINES[code] = line;
+        }
+        return line;
+    }
+
+    private static String escapeJson(String s) {
+        if (s == null) return "null";
+        StringBuilder sb = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20) {
+                if (sb == null) sb = new StringBuilder(s.length() + 8).append(s, 0, i);
+                switch (c) {
+                    case '"' -> sb.append("\\\"");
+                    case '\\' -> sb.append("\\\\");
+                    case '\n' -> sb.append("\\n");
+                    case '\r' -> sb.append("\\r");
+                    case '\t' -> sb.append("\\t");
+                    default -> sb.append(String.format("\\u%04x", (int) c));
+                }
+            } else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return sb == null ? s : sb.toString();
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static int put(byte[] target, int pos, byte[] source) {
+        System.arraycopy(source, 0, target, pos, source.length);
+        return pos + source.length;
+    }
+
+    // Header names/values are ISO-8859-1, characters outside are replaced
+    private static int put(byte[] target, int pos, String source) {
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+            target[pos++] = c < 256 ? (byte) c : (byte) '?';
+        }
+        return pos;
+    }
+
+    private static int digits(int n) {
+        int digits = 1;
+        while (n >= 10) {
+            n /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private static int putNumber(byte[] target, int pos, int n) {
+        int end = pos + digits(n);
+        for (int p = end - 1; p >= pos; p--) {
+            target[p] = (byte) ('0' + n % 10);
+            n /= 10;
+        }
+        return end;
+    }
+}
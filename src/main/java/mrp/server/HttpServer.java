@@ -1,78 +1,192 @@
 package mrp.server;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.nio.charset.StandardCharsets;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
 
 public class HttpServer {
-    private final int port;
-    private final Router router;
-    private final ExecutorService threadPool;
-    private boolean running;
+    // PLATFORM: an idle keep-alive connection checks this often whether connections are waiting for its thread
+    private static final int IDLE_POLL_MILLIS = 100;
+
+    private final ServerConfig config;
+    private final RequestDispatcher dispatcher;
+    private final WorkerPool workers;
+    private volatile boolean running;
+    private volatile ServerSocket serverSocket;
 
     public HttpServer(int port, Router router) {
-        this.port = port;
-        this.router = router;
-        // Each request gets its own thread from the pool (initialize thread pool)
-        this.threadPool = Executors.newFixedThreadPool(10);
+        this(withPort(port), router);
+    }
+
+    public HttpServer(ServerConfig config, Router router) {
+        this.config = config;
+        this.dispatcher = new RequestDispatcher(router, config);
+        // Each connection gets its own thread from the pool (initialize thread pool)
+        this.workers = new WorkerPool(config);
+    }
+
+    private static ServerConfig withPort(int port) {
+        ServerConfig config = new ServerConfig();
+        config.setPort(port);
+        return config;
     }
 
     public void start() {
         running = true;
-        System.out.println("Server starting on port " + port + "...");
+        int port = config.getPort();
+        System.out.println("Server starting on port " + port + " (" + config.getThreads().name().toLowerCase() + " threads)...");
 
         try (ServerSocket serverSocket = new ServerSocket(port)) {
+            this.serverSocket = serverSocket;
             System.out.println("Server listening on http://localhost:" + port);
 
             while (running) {
                 // This blocks until a client connects
                 Socket clientSocket = serverSocket.accept();
 
-                // Handle the request in a separate thread (dont block the accept loop)
-                threadPool.submit(() -> handleConnection(clientSocket));
+                // Handle the connection in a separate thread (dont block the accept loop)
+                workers.execute(new WorkerPool.Job() {
+                    @Override
+                    public void run() {
+                        handleConnection(clientSocket);
+                    }
+
+                    @Override
+                    public void shed() {
+                        rejectConnection(clientSocket);
+                    }
+                });
             }
         } catch (IOException e) {
-            System.err.println("Server error: " + e.getMessage());
+            // stop() closes the socket to end accept(), that is not an error
+            if (running) System.err.println("Server error: " + e.getMessage());
         }
     }
 
+    // Serves requests on one connection until the client closes it, asks for "Connection: close",
+    // the idle timeout hits or the per-connection request limit is reached.
+    // Pipelined requests are read from the same parser buffer and answered in order.
     private void handleConnection(Socket clientSocket) {
         try (clientSocket) { // auto-close
-            InputStream input = clientSocket.getInputStream();
-            OutputStream output = clientSocket.getOutputStream();
+            // Idle timeout: blocking read throws SocketTimeoutException if the client sends nothing
+            clientSocket.setSoTimeout(config.getIdleTimeoutMillis());
+            HttpRequestParser parser = new HttpRequestParser(clientSocket.getInputStream(), config);
+            parser.setStreamBody(dispatcher::streamsBody);
+            OutputStream output = new BufferedOutputStream(clientSocket.getOutputStream());
+            try {
+                serve(clientSocket, parser, output);
+            } catch (HttpParseException e) {
+                // Request we refuse to read (malformed, too large) -> answer with the error and close
+                sendError(output, e);
+            }
+        } catch (SocketTimeoutException e) {
+            // Idle keep-alive connection -> just close it
+        } catch (IOException e) {
+            System.err.println("Connection error: " + e.getMessage());
+        }
+    }
 
-            // 1. Parse raw HTTP into our request object
-            HttpRequest request = HttpRequest.parse(input);
-            System.out.println(request.getMethod() + " " + request.getPath());
+    private void serve(Socket clientSocket, HttpRequestParser parser, OutputStream output) throws IOException {
+        int served = 0;
+        boolean keepAlive = true;
+        while (keepAlive) {
+            // 1. Parse raw HTTP into our request object (null = client closed the connection or gave up its thread)
+            HttpRequest request = awaitRequest(clientSocket, parser);
+            if (request == null) break;
+            served++;
+            keepAlive = dispatcher.keepAlive(request, served, running);
+            if (parser.isStreamingBody()) {
+                // Upload route: the handler reads the body straight from the socket
+                StreamedBody.Continue sendContinue = StreamedBody.expectsContinue(request) ? () -> {
+                    output.write(StreamedBody.CONTINUE);
+                    output.flush();
+                } : null;
+                request.setBodyStream(parser.openBody(sendContinue));
+            }
 
             // 2. Route it to the correct handler
-            HttpResponse response;
-            try {
-                response = router.route(request);
-            } catch (Exception e) {
-                // Catch any unhandled exception -> 500
-                System.err.println("Error handling request: " + e.getMessage());
-                e.printStackTrace();
-                response = HttpResponse.internalError("Internal server error");
+            HttpResponse response = dispatcher.dispatch(request);
+            if (response.requiresClose()) keepAlive = false;
+            // Body not read to the end (e.g. 401 before the upload): the rest is still on the wire
+            if (request.hasUnreadBody()) keepAlive = false;
+            dispatcher.applyConnectionHeaders(response, keepAlive, served);
+
+            // 3. Send the response back (streaming responses are written chunk by chunk)
+            response.writeTo(output);
+            // Pipelining: only flush once no further request is waiting in the buffer,
+            // so several responses can leave in one TCP segment
+            if (!keepAlive || !parser.hasBufferedData()) {
+                output.flush();
             }
+        }
+        output.flush();
+    }
+
+    // With a fixed pool of platform threads an idle keep-alive connection would hold its worker for the whole
+    // idle timeout, a few idle clients could starve everyone else into 503s. So the wait is cut into short
+    // slices; if other connections queue for a worker while this one has not started a new request, it is
+    // closed (allowed between requests, clients retry on a fresh connection). Virtual threads just wait.
+    private HttpRequest awaitRequest(Socket clientSocket, HttpRequestParser parser) throws IOException {
+        if (config.getThreads() != ServerConfig.Threads.PLATFORM) return parser.next();
+
+        int idleTimeout = config.getIdleTimeoutMillis();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+        clientSocket.setSoTimeout(Math.min(IDLE_POLL_MILLIS, idleTimeout));
+        try {
+            while (true) {
+                try {
+                    return parser.next();  // a timeout leaves the parser state intact, next() continues after it
+                } catch (SocketTimeoutException e) {
+                    if (System.nanoTime() - deadline >= 0) throw e;
+                    if (workers.getQueued() > 0 && parser.isBetweenRequests()) return null;
+                }
+            }
+        } finally {
+            // the handler may read an upload from the socket: the full timeout again
+            clientSocket.setSoTimeout(idleTimeout);
+        }
+    }
 
-            // 3. Send the response back
-            String rawResponse = response.toRawString();
-            output.write(rawResponse.getBytes(StandardCharsets.UTF_8));
+    private void sendError(OutputStream output, HttpParseException e) {
+        try {
+            HttpResponse response = HttpResponse.error(e.getStatusCode(), e.getMessage());
+            response.header("Connection", "close");
+            response.writeTo(output);
             output.flush();
+        } catch (IOException ignored) {
+            // client is gone anyway
+        }
+    }
 
-        } catch (IOException e) {
-            System.err.println("Connection error: " + e.getMessage());
+    // Overloaded: answer 503 right away without parsing the request and close the connection.
+    // Whatever part of the request already arrived is skipped, so closing does not reset the connection
+    // before the client has read the 503.
+    private void rejectConnection(Socket clientSocket) {
+        try (clientSocket) {
+            OutputStream output = clientSocket.getOutputStream();
+            HttpResponse.serviceUnavailable(config.getRetryAfterSeconds()).writeTo(output);
+            output.flush();
+            clientSocket.shutdownOutput();
+            clientSocket.getInputStream().skip(clientSocket.getInputStream().available());
+        } catch (IOException ignored) {
+            // client is gone anyway
         }
     }
 
+    public WorkerPool getWorkers() {
+        return workers;
+    }
+
     public void stop() {
         running = false;
-        threadPool.shutdown();
+        try {
+            if (serverSocket != null) serverSocket.close();
+        } catch (IOException ignored) {
+        }
+        workers.shutdown();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,619 @@
+package mrp.server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Non-blocking server engine: one selector event loop per core does all socket reads and writes,
+// worker threads only ever see complete requests (except upload routes, whose body the loop pumps to the
+// worker while it arrives). Idle keep-alive connections therefore cost no thread.
+// Routing and controllers are the same as in the blocking HttpServer (shared RequestDispatcher).
+public class NioHttpServer {
+    // Streaming responses: at most STREAM_CREDITS buffers per connection wait for the socket,
+    // a faster producer (worker) blocks until the client has taken some of them.
+    // Uploads the other way round: at most STREAM_CREDITS buffers wait for the worker, then the loop stops reading.
+    private static final int STREAM_BUFFER_SIZE = 16 * 1024;
+    private static final int STREAM_CREDITS = 4;
+
+    private final ServerConfig config;
+    private final RequestDispatcher dispatcher;
+    private final WorkerPool workers;
+    private final EventLoop[] loops;
+    private volatile boolean running;
+    private volatile ServerSocketChannel serverChannel;
+
+    public NioHttpServer(ServerConfig config, Router router) {
+        this.config = config;
+        this.dispatcher = new RequestDispatcher(router, config);
+        this.workers = new WorkerPool(config);
+        this.loops = new EventLoop[Math.max(1, config.getEventLoops())];
+    }
+
+    public void start() {
+        running = true;
+        int port = config.getPort();
+        System.out.println("Server starting on port " + port + " (NIO, " + loops.length + " event loops)...");
+
+        try {
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new EventLoop();
+                Thread thread = new Thread(loops[i], "nio-loop-" + i);
+                thread.setDaemon(true);
+                thread.start();
+            }
+
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+            System.out.println("Server listening on http://localhost:" + port);
+
+            // Accepting stays blocking on this thread, new connections are spread round robin over the loops
+            int next = 0;
+            while (running) {
+                SocketChannel channel = serverChannel.accept();
+                try {
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                } catch (IOException e) {
+                    // client reset right after connecting: drop only this connection, keep accepting
+                    closeQuietly(channel);
+                    continue;
+                }
+                loops[next].register(channel);
+                next = (next + 1) % loops.length;
+            }
+        } catch (IOException e) {
+            if (running) System.err.println("Server error: " + e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    public WorkerPool getWorkers() {
+        return workers;
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (serverChannel != null) serverChannel.close();
+        } catch (IOException ignored) {
+        }
+        for (EventLoop loop : loops) {
+            if (loop != null) loop.selector.wakeup();
+        }
+        workers.shutdown();
+    }
+
+    // One selector thread. All Connection state is only touched on this thread,
+    // workers hand their results back through the task queue.
+    private class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        EventLoop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        void register(SocketChannel channel) {
+            execute(() -> {
+                try {
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                    key.attach(new Connection(this, channel, key));
+                } catch (ClosedChannelException e) {
+                    // client already gone
+                }
+            });
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            long idleCheckInterval = Math.max(100, config.getIdleTimeoutMillis() / 4);
+            long nextIdleCheck = System.currentTimeMillis() + idleCheckInterval;
+
+            while (running) {
+                try {
+                    selector.select(idleCheckInterval);
+
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        try {
+                            task.run();
+                        } catch (RuntimeException e) {
+                            System.err.println("Event loop task failed: " + e);
+                        }
+                    }
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        Connection conn = (Connection) key.attachment();
+                        if (!key.isValid() || conn == null) continue;
+                        try {
+                            if (key.isReadable()) conn.onReadable();
+                            if (key.isValid() && key.isWritable()) conn.onWritable();
+                        } catch (RuntimeException e) {
+                            // e.g. CancelledKeyException of a connection closed meanwhile:
+                            // only this connection is lost, the loop keeps serving the others
+                            conn.close();
+                        }
+                    }
+
+                    long now = System.currentTimeMillis();
+                    if (now >= nextIdleCheck) {
+                        closeIdleConnections(now);
+                        nextIdleCheck = now + idleCheckInterval;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Event loop error: " + e);
+                }
+            }
+
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection conn) conn.close();
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        private void closeIdleConnections(long now) {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection conn && conn.isIdleSince(now - config.getIdleTimeoutMillis())) {
+                    conn.close();
+                }
+            }
+        }
+    }
+
+    // Per-connection state machine: read until a request is complete -> worker -> write response -> repeat.
+    // Only one request per connection is in flight, so pipelined requests are answered in order.
+    private class Connection {
+        private final EventLoop loop;
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final Queue<ByteBuffer> pendingWrites = new ArrayDeque<>();
+        private final HttpRequestParser parser = new HttpRequestParser(config);
+        private long lastActive = System.currentTimeMillis();
+        private boolean processing;
+        private boolean responsePending;  // request in flight, its response not handed to the loop yet
+        private BodyPipe upload;          // body of the request in flight is still being pumped to the worker
+        private boolean closeAfterWrite;
+        private boolean inputClosed;
+        private int served;
+        // Streaming response in progress: buffers arrive one by one from the worker
+        private boolean streaming;
+        private int streamBuffers;  // stream buffers in pendingWrites, each holds one credit
+        private final Semaphore streamCredits = new Semaphore(STREAM_CREDITS);
+
+        Connection(EventLoop loop, SocketChannel channel, SelectionKey key) {
+            this.loop = loop;
+            this.channel = channel;
+            this.key = key;
+            parser.setStreamBody(dispatcher::streamsBody);
+        }
+
+        void onReadable() {
+            try {
+                int read = parser.readFrom(channel);
+                if (read < 0) {
+                    inputClosed = true;
+                    if (upload != null) {
+                        upload.pump();  // hands over what is left, fails the pipe if the body is incomplete
+                        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                        return;
+                    }
+                    // Client half-closed: finish the request in flight, otherwise close right away
+                    if (!processing) close();
+                    else key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                    return;
+                }
+                lastActive = System.currentTimeMillis();
+                if (upload != null) {
+                    upload.pump();
+                } else {
+                    tryDispatch();
+                }
+            } catch (HttpParseException e) {
+                sendError(e);
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        // Hands the next complete request from the parser buffer to a worker
+        private void tryDispatch() throws IOException {
+            if (processing) return;
+
+            HttpRequest request = parser.tryParse();
+            if (request == null) {
+                if (inputClosed) close();
+                return;
+            }
+            served++;
+            boolean keepAlive = !inputClosed && dispatcher.keepAlive(request, served, running);
+            int servedSoFar = served;
+
+            // Stop reading while a request is in flight: backpressure against clients flooding pipelined requests
+            processing = true;
+            responsePending = true;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            if (parser.isStreamingBody()) {
+                // Upload route: keep reading, the body goes through the pipe while the handler runs
+                upload = new BodyPipe(StreamedBody.expectsContinue(request) ? this::sendContinue : null);
+                request.setBodyStream(upload);
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                upload.pump();
+            }
+
+            workers.execute(new WorkerPool.Job() {
+                @Override
+                public void run() {
+                    // Async routes: the worker returns right away, the response is sent once the future completes
+                    CompletableFuture<HttpResponse> dispatched;
+                    try {
+                        dispatched = dispatcher.dispatchAsync(request);
+                    } catch (RuntimeException e) {
+                        dispatched = CompletableFuture.failedFuture(e);
+                    }
+                    dispatched.thenAccept(response -> {
+                        // Body not read to the end (e.g. 401 before the upload): the rest is still on the wire
+                        boolean keep = keepAlive && !response.requiresClose() && !request.hasUnreadBody();
+                        dispatcher.applyConnectionHeaders(response, keep, servedSoFar);
+                        if (response.isStreaming()) {
+                            stream(response, keep);
+                        } else {
+                            ByteBuffer[] buffers = response.toBuffers();
+                            loop.execute(() -> send(buffers, keep));
+                        }
+                    }).exceptionally(e -> {
+                        // finish(), the compressor or serializing the response failed: without this the
+                        // connection would wait forever with reading switched off
+                        System.err.println("Error sending response: " + e);
+                        loop.execute(Connection.this::failRequest);
+                        return null;
+                    });
+                }
+
+                @Override
+                public void shed() {
+                    // Overloaded: 503 + Retry-After and close, queue full -> still on the event loop
+                    ByteBuffer[] buffers = HttpResponse.serviceUnavailable(config.getRetryAfterSeconds()).toBuffers();
+                    loop.execute(() -> send(buffers, false));
+                }
+            });
+        }
+
+        // Runs on the worker: the response writes into a ChannelOutputStream, which hands full buffers
+        // to the event loop. A failed stream is cut off and the connection closed after what was sent.
+        private void stream(HttpResponse response, boolean keepAlive) {
+            ChannelOutputStream out = new ChannelOutputStream();
+            boolean complete = false;
+            try {
+                response.writeTo(out);
+                complete = true;
+            } catch (IOException e) {
+                // already logged by the response, or the client is gone
+            }
+            try {
+                out.flush();
+            } catch (IOException ignored) {
+            }
+            boolean keep = keepAlive && complete;
+            loop.execute(() -> {
+                streaming = false;
+                send(new ByteBuffer[0], keep);
+            });
+        }
+
+        // Worker asked for the body of an Expect: 100-continue request
+        private void sendContinue() {
+            loop.execute(() -> {
+                if (!channel.isOpen()) return;
+                pendingWrites.add(ByteBuffer.wrap(StreamedBody.CONTINUE));
+                onWritable();
+            });
+        }
+
+        // Event loop side of a stream buffer
+        private void sendStreamBuffer(ByteBuffer buffer) {
+            if (!channel.isOpen()) return;
+            responsePending = false;
+            streaming = true;
+            streamBuffers++;
+            pendingWrites.add(buffer);
+            onWritable();
+        }
+
+        // Event loop: no response will come for the request in flight. 500 if nothing of it was sent yet,
+        // otherwise the client cannot tell where the broken response ends -> close
+        private void failRequest() {
+            if (!channel.isOpen()) return;
+            if (!responsePending || streaming) {
+                close();
+                return;
+            }
+            HttpResponse response = HttpResponse.internalError("Internal server error");
+            response.header("Connection", "close");
+            send(response.toBuffers(), false);
+        }
+
+        // Request we refuse to read (malformed, too large) -> answer with the error and close
+        private void sendError(HttpParseException e) {
+            HttpResponse response = HttpResponse.error(e.getStatusCode(), e.getMessage());
+            response.header("Connection", "close");
+            processing = true;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            send(response.toBuffers(), false);
+        }
+
+        private void send(ByteBuffer[] buffers, boolean keepAlive) {
+            if (!channel.isOpen()) return;
+            responsePending = false;
+            closeAfterWrite = !keepAlive;
+            for (ByteBuffer buffer : buffers) {
+                if (buffer.hasRemaining()) pendingWrites.add(buffer);
+            }
+            onWritable();
+        }
+
+        void onWritable() {
+            try {
+                while (!pendingWrites.isEmpty()) {
+                    // Gathering write: response head and body leave in one system call
+                    channel.write(pendingWrites.toArray(new ByteBuffer[0]));
+                    while (!pendingWrites.isEmpty() && !pendingWrites.peek().hasRemaining()) {
+                        pendingWrites.poll();
+                        if (streamBuffers > 0) {
+                            // Stream buffers are the only ones queued while streaming -> give the worker a credit back
+                            streamBuffers--;
+                            streamCredits.release();
+                        }
+                    }
+                    if (!pendingWrites.isEmpty()) {
+                        // Socket buffer full: wait for OP_WRITE
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                }
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                lastActive = System.currentTimeMillis();
+                if (processing && !responsePending && !streaming) responseComplete();
+            } catch (HttpParseException e) {
+                sendError(e);
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void responseComplete() throws IOException {
+            processing = false;
+            upload = null;
+            if (closeAfterWrite) {
+                close();
+                return;
+            }
+            if (!inputClosed) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+            // Pipelined requests may already be waiting in the buffer
+            tryDispatch();
+        }
+
+        boolean isIdleSince(long threshold) {
+            return !processing && pendingWrites.isEmpty() && lastActive < threshold;
+        }
+
+        void close() {
+            streamCredits.release(STREAM_CREDITS);  // wake up a worker waiting to stream, it sees the closed channel
+            if (upload != null) upload.fail(new EOFException("Connection closed during upload"));
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        // Body of an upload request: the event loop pumps decoded body bytes in, the worker reads them.
+        // When STREAM_CREDITS buffers are queued the loop stops reading from the socket, so a slow handler
+        // throttles the client through TCP flow control and memory per upload stays constant.
+        private final class BodyPipe extends StreamedBody {
+            private final ReentrantLock lock = new ReentrantLock();
+            private final Condition readable = lock.newCondition();
+            private final ArrayDeque<ByteBuffer> chunks = new ArrayDeque<>();
+            private byte[] spare;        // loop side: next buffer to decode into
+            private boolean paused;      // pipe was full, the loop stopped reading
+            private boolean finished;    // whole body is in the pipe
+            private boolean complete;    // ... and the worker read it to the end
+            private IOException failure;
+
+            BodyPipe(Continue beforeFirstRead) {
+                super(beforeFirstRead);
+            }
+
+            // Event loop: moves decoded body bytes from the parser into the pipe until it is full
+            // or the parser needs more input
+            void pump() {
+                try {
+                    while (true) {
+                        lock.lock();
+                        try {
+                            if (failure != null) return;
+                            if (chunks.size() >= STREAM_CREDITS) {
+                                paused = true;
+                                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                                return;
+                            }
+                        } finally {
+                            lock.unlock();
+                        }
+                        if (spare == null) spare = new byte[STREAM_BUFFER_SIZE];
+                        int n = parser.readBody(spare, 0, spare.length);
+                        if (n == 0) {
+                            if (inputClosed) fail(new EOFException("Connection closed during upload"));
+                            return;
+                        }
+                        if (n < 0) {
+                            // Body done: back to "no reading while a request is in flight"
+                            upload = null;
+                            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                            offer(null);
+                            return;
+                        }
+                        offer(ByteBuffer.wrap(spare, 0, n));
+                        spare = null;
+                    }
+                } catch (HttpParseException e) {
+                    fail(e);  // broken chunk encoding: the handler gets the exception, the connection is closed after
+                }
+            }
+
+            // null = end of body
+            private void offer(ByteBuffer chunk) {
+                lock.lock();
+                try {
+                    if (chunk == null) finished = true;
+                    else chunks.add(chunk);
+                    readable.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            void fail(IOException e) {
+                lock.lock();
+                try {
+                    if (failure == null && !finished) failure = e;
+                    readable.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            // Event loop: the worker made room again
+            private void resume() {
+                if (upload != this || !channel.isOpen()) return;
+                if (!inputClosed) key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                pump();
+            }
+
+            @Override
+            protected int readBody(byte[] b, int off, int len) throws IOException {
+                lock.lock();
+                try {
+                    // A client that stops sending mid-upload is treated like an idle connection
+                    long nanos = TimeUnit.MILLISECONDS.toNanos(config.getIdleTimeoutMillis());
+                    while (chunks.isEmpty()) {
+                        if (failure != null) throw failure;
+                        if (finished) {
+                            complete = true;
+                            return -1;
+                        }
+                        if (nanos <= 0) throw new SocketTimeoutException("Upload timed out");
+                        nanos = readable.awaitNanos(nanos);
+                    }
+                    ByteBuffer chunk = chunks.peek();
+                    int n = Math.min(len, chunk.remaining());
+                    chunk.get(b, off, n);
+                    if (!chunk.hasRemaining()) {
+                        chunks.poll();
+                        if (paused) {
+                            paused = false;
+                            loop.execute(this::resume);
+                        }
+                    }
+                    return n;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while reading upload");
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            @Override
+            boolean isComplete() {
+                lock.lock();
+                try {
+                    return complete;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        // Output of a streaming response, used by the worker thread. Full buffers go to the event loop,
+        // the credits bound how much the worker can run ahead of the socket (constant memory per connection).
+        private final class ChannelOutputStream extends OutputStream {
+            private byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+            private int count;
+
+            @Override
+            public void write(int b) throws IOException {
+                if (count == buffer.length) handOff();
+                buffer[count++] = (byte) b;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                while (len > 0) {
+                    if (count == buffer.length) handOff();
+                    int n = Math.min(len, buffer.length - count);
+                    System.arraycopy(b, off, buffer, count, n);
+                    count += n;
+                    off += n;
+                    len -= n;
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (count > 0) handOff();
+            }
+
+            private void handOff() throws IOException {
+                try {
+                    streamCredits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while streaming");
+                }
+                if (!channel.isOpen()) throw new IOException("Connection closed");
+
+                ByteBuffer full = ByteBuffer.wrap(buffer, 0, count);
+                buffer = new byte[STREAM_BUFFER_SIZE];  // the loop owns the old one until it is written
+                count = 0;
+                loop.execute(() -> sendStreamBuffer(full));
+            }
+        }
+    }
+}
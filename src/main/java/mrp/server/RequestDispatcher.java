@@ -0,0 +1,124 @@
+package mrp.server;
+
+import mrp.metrics.RequestMetrics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// Engine independent part of request handling: routing, error handling, compression and connection headers.
+// Used by both the blocking HttpServer and the NioHttpServer so controllers behave identically.
+public class RequestDispatcher {
+    private final Router router;
+    private final ServerConfig config;
+    private final ResponseCompressor compressor;
+    private final RequestMetrics unmatched = new RequestMetrics("", "unmatched");  // 404/405
+
+    public RequestDispatcher(Router router, ServerConfig config) {
+        this.router = router;
+        this.config = config;
+        this.compressor = new ResponseCompressor(config);
+    }
+
+    // Blocking engine: waits for async handlers (cheap on a virtual thread, the connection is busy anyway)
+    public HttpResponse dispatch(HttpRequest request) {
+        return dispatchAsync(request).join();
+    }
+
+    // The future completes with the finished response (compressed, counted). For sync handlers it is already
+    // complete on return; for async routes it completes on the thread that completed the handler's future.
+    public CompletableFuture<HttpResponse> dispatchAsync(HttpRequest request) {
+        long start = System.nanoTime();
+        // stdout is synchronized: off by default, the per-route metrics count every request anyway
+        if (config.isLogRequests()) System.out.println(request.getMethod() + " " + request.getPath());
+        RequestScope[] scopes = router.getRequestScopes();
+        Runnable[] scopeEnds = openScopes(scopes, request);
+        CompletableFuture<HttpResponse> handled;
+        try {
+            handled = router.routeAsync(request);
+        } catch (Exception e) {
+            handled = CompletableFuture.failedFuture(e);
+        }
+        // Async handler still running: this thread moves on to other requests
+        if (!handled.isDone()) {
+            for (RequestScope scope : scopes) scope.detach();
+        }
+        return handled.handle((response, error) -> finish(request, response, error, start, scopeEnds));
+    }
+
+    private HttpResponse finish(HttpRequest request, HttpResponse response, Throwable error, long start,
+                                Runnable[] scopeEnds) {
+        if (error != null) {
+            // Catch any unhandled exception -> 500
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            System.err.println("Error handling request: " + cause.getMessage());
+            cause.printStackTrace();
+            response = HttpResponse.internalError("Internal server error");
+        }
+        response = conditional(request, response);
+        if (response.isStreaming() && !"HTTP/1.1".equals(request.getVersion())) {
+            response.disableChunking();
+        }
+        compressor.apply(request, response);
+
+        // Latency per route + status; streamed bodies are produced while sending, so they count when done
+        RequestMetrics metrics = request.getMetrics() != null ? request.getMetrics() : unmatched;
+        // The scope stays open while a streamed body is written, it is produced by the handler's code
+        if (response.isStreaming()) {
+            response.onStreamComplete(status -> {
+                metrics.observe(status, System.nanoTime() - start);
+                closeScopes(scopeEnds);
+            });
+        } else {
+            metrics.observe(response.getStatusCode(), System.nanoTime() - start);
+            closeScopes(scopeEnds);
+        }
+        return response;
+    }
+
+    // If-None-Match with the current ETag -> 304. A streamed body is then never produced, its query never runs
+    private static HttpResponse conditional(HttpRequest request, HttpResponse response) {
+        if (response.getStatusCode() != 200) return response;
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) return response;
+        String etag = response.getHeader("ETag");
+        if (etag == null || !ETag.matches(request, etag)) return response;
+        return HttpResponse.notModified(etag);
+    }
+
+    private static Runnable[] openScopes(RequestScope[] scopes, HttpRequest request) {
+        if (scopes.length == 0) return null;
+        Runnable[] ends = new Runnable[scopes.length];
+        for (int i = 0; i < scopes.length; i++) ends[i] = scopes[i].open(request);
+        return ends;
+    }
+
+    private static void closeScopes(Runnable[] ends) {
+        if (ends == null) return;
+        for (int i = ends.length - 1; i >= 0; i--) {
+            if (ends[i] != null) ends[i].run();
+        }
+    }
+
+    public ResponseCompressor getCompressor() { return compressor; }
+
+    // For the parser: body of this request is streamed to the handler instead of buffered
+    public boolean streamsBody(HttpRequest request) {
+        return router.streamsBody(request);
+    }
+
+    // served = number of requests on this connection including the current one
+    public boolean keepAlive(HttpRequest request, int served, boolean running) {
+        return running && request.isKeepAlive() && served < config.getMaxRequestsPerConnection();
+    }
+
+    public void applyConnectionHeaders(HttpResponse response, boolean keepAlive, int served) {
+        if (keepAlive) {
+            int timeoutSeconds = Math.max(1, config.getIdleTimeoutMillis() / 1000);
+            int remaining = config.getMaxRequestsPerConnection() - served;
+            response.header("Connection", "keep-alive");
+            response.header("Keep-Alive", "timeout=" + timeoutSeconds + ", max=" + remaining);
+        } else {
+            response.header("Connection", "close");
+        }
+    }
+}
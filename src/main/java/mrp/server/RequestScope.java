@@ -0,0 +1,16 @@
+package mrp.server;
+
+// Per-request context for layers below the controllers (e.g. read-your-writes routing in the database layer).
+// open() runs on the handler thread right before the handler, the returned Runnable once the response is
+// complete: for streaming responses after the body was written, which happens on that same thread.
+@FunctionalInterface
+public interface RequestScope {
+
+    // null = nothing to close
+    Runnable open(HttpRequest request);
+
+    // Async route whose handler returned before the response was ready: called on the handler thread, which
+    // moves on to other requests, so state open() bound to it has to be released here. The Runnable of
+    // open() still runs once the response is complete, on the thread that completed it.
+    default void detach() {}
+}
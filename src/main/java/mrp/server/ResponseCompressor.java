@@ -0,0 +1,283 @@
+package mrp.server;
+
+import mrp.metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+// Compresses response bodies (gzip or deflate) when the client accepts it and the body is large enough.
+// Deflaters are expensive to create (native zlib state), so they are pooled and reset after each use.
+// A pool instead of a ThreadLocal: with virtual threads every request has its own thread,
+// a ThreadLocal Deflater would be created (and never reused) per request.
+public final class ResponseCompressor {
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+
+    // gzip member header: magic, CM=deflate, no flags, no mtime, XFL=0, OS=unknown
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int GZIP_TRAILER = 8;  // CRC32 + uncompressed size, little endian
+
+    private final int minBytes;
+    private final int level;
+    private final int maxPooled = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private final DeflaterPool gzipPool = new DeflaterPool(true);      // raw deflate, framed by us
+    private final DeflaterPool deflatePool = new DeflaterPool(false);  // zlib format ("deflate" in HTTP)
+
+    // Statistics
+    private final LongAdder compressedResponses = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder compressionNanos = new LongAdder();
+
+    public ResponseCompressor(ServerConfig config) {
+        this.minBytes = config.getCompressionMinBytes();
+        this.level = config.getCompressionLevel();
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.counter("mrp_compression_responses_total", "Responses sent gzip/deflate compressed", "", this::getCompressedResponses);
+        metrics.counter("mrp_compression_input_bytes_total", "Body bytes before compression", "", this::getBytesIn);
+        metrics.counter("mrp_compression_output_bytes_total", "Body bytes after compression", "", this::getBytesOut);
+        metrics.counter("mrp_compression_seconds_total", "Time spent compressing", "", () -> getCompressionNanos() / 1e9);
+    }
+
+    // Replaces the body with its compressed form if possible and sets Content-Encoding + Vary
+    public void apply(HttpRequest request, HttpResponse response) {
+        if (minBytes < 0 || !isCompressible(response)) return;
+
+        // Representation depends on Accept-Encoding from here on, also for clients that get it uncompressed
+        response.header("Vary", "Accept-Encoding");
+
+        String encoding = negotiate(request.getHeader("Accept-Encoding"));
+        if (encoding == null) return;
+
+        if (response.isStreaming()) {
+            // Size unknown up front -> always compress, chunk by chunk while the body is written
+            response.filterBody(out -> new CompressingStream(encoding, out)).header("Content-Encoding", encoding);
+            tagEncoding(response, encoding);
+            return;
+        }
+
+        byte[] body = response.getBodyBytes();
+        long start = System.nanoTime();
+        byte[] compressed = GZIP.equals(encoding) ? gzip(body) : deflate(body);
+        compressionNanos.add(System.nanoTime() - start);
+
+        if (compressed.length >= body.length) return;  // incompressible, send as is
+        compressedResponses.increment();
+        bytesIn.add(body.length);
+        bytesOut.add(compressed.length);
+        response.body(compressed).header("Content-Encoding", encoding);
+        tagEncoding(response, encoding);
+    }
+
+    // A strong ETag names exactly these bytes, the compressed body needs its own
+    private static void tagEncoding(HttpResponse response, String encoding) {
+        String etag = response.getHeader("ETag");
+        if (etag != null) response.header("ETag", ETag.withEncoding(etag, encoding));
+    }
+
+    private boolean isCompressible(HttpResponse response) {
+        int status = response.getStatusCode();
+        if (status < 200 || status == 204 || status == 304) return false;
+        if (!response.isStreaming() && response.getBodyBytes().length < minBytes) return false;
+        if (response.getHeader("Content-Encoding") != null) return false;  // already encoded by the handler
+
+        String type = response.getHeader("Content-Type");
+        return type != null && (type.startsWith("application/json") || type.startsWith("text/"));
+    }
+
+    // Picks gzip or deflate from an Accept-Encoding header, null = identity.
+    // Honors q-values ("gzip;q=0" forbids gzip) and "*"; on equal q gzip wins.
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) return null;
+
+        float gzip = -1, deflate = -1, any = -1;
+        for (String part : acceptEncoding.split(",")) {
+            int semi = part.indexOf(';');
+            String coding = (semi < 0 ? part : part.substring(0, semi)).trim();
+            float q = semi < 0 ? 1f : qValue(part.substring(semi + 1));
+            if (coding.equalsIgnoreCase(GZIP) || coding.equalsIgnoreCase("x-gzip")) {
+                gzip = Math.max(gzip, q);
+            } else if (coding.equalsIgnoreCase(DEFLATE)) {
+                deflate = Math.max(deflate, q);
+            } else if (coding.equals("*")) {
+                any = q;
+            }
+        }
+        if (gzip < 0) gzip = any;
+        if (deflate < 0) deflate = any;
+
+        if (gzip > 0 && gzip >= deflate) return GZIP;
+        if (deflate > 0) return DEFLATE;
+        return null;
+    }
+
+    // "q=0.5" -> 0.5, anything unparsable counts as q=0 (not acceptable)
+    private static float qValue(String params) {
+        for (String param : params.split(";")) {
+            String p = param.trim();
+            if (p.length() > 2 && (p.charAt(0) == 'q' || p.charAt(0) == 'Q') && p.charAt(1) == '=') {
+                try {
+                    float q = Float.parseFloat(p.substring(2).trim());
+                    return q < 0 || q > 1 ? 0f : q;
+                } catch (NumberFormatException e) {
+                    return 0f;
+                }
+            }
+        }
+        return 1f;
+    }
+
+    byte[] gzip(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+
+        byte[] out = compress(gzipPool, body, GZIP_HEADER.length, GZIP_TRAILER);
+        System.arraycopy(GZIP_HEADER, 0, out, 0, GZIP_HEADER.length);
+        int pos = out.length - GZIP_TRAILER;
+        pos = putIntLE(out, pos, (int) crc.getValue());
+        putIntLE(out, pos, body.length);
+        return out;
+    }
+
+    byte[] deflate(byte[] body) {
+        return compress(deflatePool, body, 0, 0);
+    }
+
+    // Deflates body into a fresh array, leaving `prefix` bytes in front and `suffix` bytes after the data
+    private byte[] compress(DeflaterPool pool, byte[] body, int prefix, int suffix) {
+        Deflater deflater = pool.borrow();
+        try {
+            deflater.setInput(body);
+            deflater.finish();
+
+            // JSON usually shrinks to well below half, grow only if not
+            byte[] out = new byte[prefix + Math.max(64, body.length / 2) + suffix];
+            int pos = prefix;
+            while (!deflater.finished()) {
+                if (pos == out.length - suffix) {
+                    out = Arrays.copyOf(out, out.length + Math.max(64, body.length / 2));
+                }
+                pos += deflater.deflate(out, pos, out.length - suffix - pos);
+            }
+            return pos + suffix == out.length ? out : Arrays.copyOf(out, pos + suffix);
+        } finally {
+            pool.release(deflater);
+        }
+    }
+
+    private static int putIntLE(byte[] target, int pos, int value) {
+        target[pos] = (byte) value;
+        target[pos + 1] = (byte) (value >>> 8);
+        target[pos + 2] = (byte) (value >>> 16);
+        target[pos + 3] = (byte) (value >>> 24);
+        return pos + 4;
+    }
+
+    // Getters for the statistics
+    public long getCompressedResponses() { return compressedResponses.sum(); }
+    public long getBytesIn() { return bytesIn.sum(); }
+    public long getBytesOut() { return bytesOut.sum(); }
+    public long getCompressionNanos() { return compressionNanos.sum(); }
+
+    // Compressed size / original size over all compressed responses, e.g. 0.12 = 88% saved
+    public double getCompressionRatio() {
+        long in = bytesIn.sum();
+        return in == 0 ? 1.0 : (double) bytesOut.sum() / in;
+    }
+
+    // gzip/deflate as a stream for streaming responses, uses the pooled Deflaters as well.
+    // If the response is aborted close() is never called, the Deflater is then left to the GC (Cleaner frees it).
+    private final class CompressingStream extends DeflaterOutputStream {
+        private final DeflaterPool pool;
+        private final CRC32 crc;  // null for deflate
+        private boolean closed;
+
+        CompressingStream(String encoding, OutputStream out) throws IOException {
+            this(GZIP.equals(encoding) ? gzipPool : deflatePool, out);
+        }
+
+        private CompressingStream(DeflaterPool pool, OutputStream out) throws IOException {
+            super(out, pool.borrow(), ChunkedOutputStream.CHUNK_SIZE);
+            this.pool = pool;
+            this.crc = pool == gzipPool ? new CRC32() : null;
+            if (crc != null) out.write(GZIP_HEADER);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (crc != null) crc.update(b, off, len);
+            super.write(b, off, len);
+        }
+
+        // Same as DeflaterOutputStream.deflate(), only timed
+        @Override
+        protected void deflate() throws IOException {
+            long start = System.nanoTime();
+            int len = def.deflate(buf, 0, buf.length);
+            compressionNanos.add(System.nanoTime() - start);
+            if (len > 0) out.write(buf, 0, len);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (def.finished()) return;
+            super.finish();
+            if (crc != null) {
+                byte[] trailer = new byte[GZIP_TRAILER];
+                putIntLE(trailer, putIntLE(trailer, 0, (int) crc.getValue()), (int) def.getBytesRead());
+                out.write(trailer);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                super.close();  // finish() + closes the chunk stream (last chunk)
+            } finally {
+                compressedResponses.increment();
+                bytesIn.add(def.getBytesRead());
+                bytesOut.add(def.getBytesWritten() + (crc != null ? GZIP_HEADER.length + GZIP_TRAILER : 0));
+                pool.release(def);
+            }
+        }
+    }
+
+    // Bounded pool, Deflaters beyond maxPooled are released right away (end() frees the native memory)
+    private final class DeflaterPool {
+        private final boolean nowrap;
+        private final Queue<Deflater> idle = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger idleCount = new AtomicInteger();
+
+        DeflaterPool(boolean nowrap) {
+            this.nowrap = nowrap;
+        }
+
+        Deflater borrow() {
+            Deflater deflater = idle.poll();
+            if (deflater == null) return new Deflater(level, nowrap);
+            idleCount.decrementAndGet();
+            return deflater;
+        }
+
+        void release(Deflater deflater) {
+            deflater.reset();
+            if (idleCount.incrementAndGet() <= maxPooled) {
+                idle.offer(deflater);
+            } else {
+                idleCount.decrementAndGet();
+                deflater.end();
+            }
+        }
+    }
+}
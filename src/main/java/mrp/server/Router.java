@@ -1,71 +1,233 @@
 package mrp.server;
 
+import mrp.metrics.RequestMetrics;
+
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Function;
 
 public class Router {
+    private static final String[] NO_PARAMS = new String[0];
 
      // Route: METHOD + pattern + handler function
      // Pattern: "/api/media/{id}"
-     // Handler takes HttpRequest and returns HttpResponse
+     // Handler takes HttpRequest and returns HttpResponse (sync handlers as an already completed future)
     private record Route(
             String method,
             String pattern,           // e.g. "/api/media/{id}"
-            String[] patternParts,    // ["api", "media", "{id}"]
-            Function<HttpRequest, HttpResponse> handler
+            String[] paramNames,      // ["id"]
+            int[] paramSegments,      // segment index of each path variable: [2]
+            Function<HttpRequest, CompletableFuture<HttpResponse>> handler,
+            RequestMetrics metrics,   // latency per status, labelled with the pattern (not the concrete path)
+            boolean streamBody        // upload route: handler reads the body via getBodyStream() while it arrives
     ) {}
 
-    private final List<Route> routes = new ArrayList<>();
+    // Segment trie: one node per path segment, literal children first, then at most one
+    // path-variable child. Routes hang at the node where their pattern ends, one per method.
+    private static final class Node {
+        String[] literals = NO_PARAMS;
+        Node[] literalChildren = new Node[0];
+        Node paramChild;
+        Route[] routes = new Route[0];
+
+        Node literalChild(String segment) {
+            for (int i = 0; i < literals.length; i++) {
+                if (literals[i].equals(segment)) return literalChildren[i];
+            }
+            Node child = new Node();
+            literals = Arrays.copyOf(literals, literals.length + 1);
+            literalChildren = Arrays.copyOf(literalChildren, literalChildren.length + 1);
+            literals[literals.length - 1] = segment;
+            literalChildren[literalChildren.length - 1] = child;
+            return child;
+        }
+
+        Route route(String method) {
+            for (Route route : routes) {
+                if (route.method().equals(method)) return route;
+            }
+            return null;
+        }
+    }
+
+    private final Node root = new Node();
+    private volatile boolean hasUploadRoutes;
+    private volatile RequestScope[] requestScopes = new RequestScope[0];
 
-    // Register a route
+    // Register a route: the pattern is compiled into the trie once at startup
     public void addRoute(String method, String pattern, Function<HttpRequest, HttpResponse> handler) {
-        // Split pattern into parts for matching
+        add(method, pattern, sync(handler), false);
+    }
+
+    // Route whose handler returns before the response is ready, e.g. while async repository calls run on the
+    // DB executor: the worker thread is free for other requests in the meantime. The response is finished by
+    // the thread that completes the future, so it should not be a streamed one.
+    public void addAsyncRoute(String method, String pattern, Function<HttpRequest, CompletableFuture<HttpResponse>> handler) {
+        add(method, pattern, handler, false);
+    }
+
+    // Route whose request body is not buffered (and not limited by maxBodyBytes): the handler reads it
+    // with request.getBodyStream() while it is still being uploaded, e.g. bulk imports
+    public void addUploadRoute(String method, String pattern, Function<HttpRequest, HttpResponse> handler) {
+        add(method, pattern, sync(handler), true);
+        hasUploadRoutes = true;
+    }
+
+    private static Function<HttpRequest, CompletableFuture<HttpResponse>> sync(Function<HttpRequest, HttpResponse> handler) {
+        return request -> CompletableFuture.completedFuture(handler.apply(request));
+    }
+
+    // Opened around every routed request by the RequestDispatcher in the order added, closed in reverse
+    // order; see RequestScope
+    public void addRequestScope(RequestScope requestScope) {
+        RequestScope[] scopes = Arrays.copyOf(requestScopes, requestScopes.length + 1);
+        scopes[scopes.length - 1] = requestScope;
+        requestScopes = scopes;
+    }
+
+    RequestScope[] getRequestScopes() {
+        return requestScopes;
+    }
+
+    private void add(String method, String pattern, Function<HttpRequest, CompletableFuture<HttpResponse>> handler,
+                     boolean streamBody) {
         // "/api/media/{id}" -> ["api", "media", "{id}"]
-        String[] parts = pattern.substring(1).split("/"); // skip leading '/'
-        routes.add(new Route(method.toUpperCase(), pattern, parts, handler));
+        String[] parts = pattern.length() > 1 ? pattern.substring(1).split("/") : NO_PARAMS; // skip leading '/'
+
+        Node node = root;
+        List<String> names = new ArrayList<>();
+        List<Integer> segments = new ArrayList<>();
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i];
+            if (part.startsWith("{") && part.endsWith("}")) {
+                // Its a path variable -> one shared slot per position, the name belongs to the route
+                names.add(part.substring(1, part.length() - 1));
+                segments.add(i);
+                if (node.paramChild == null) node.paramChild = new Node();
+                node = node.paramChild;
+            } else {
+                node = node.literalChild(part);
+            }
+        }
+
+        String upperMethod = method.toUpperCase();
+        if (node.route(upperMethod) != null) {
+            throw new IllegalStateException("Route already registered: " + upperMethod + " " + pattern);
+        }
+        Route route = new Route(upperMethod, pattern, names.toArray(NO_PARAMS),
+                segments.stream().mapToInt(Integer::intValue).toArray(), handler,
+                new RequestMetrics(upperMethod, pattern), streamBody);
+        node.routes = Arrays.copyOf(node.routes, node.routes.length + 1);
+        node.routes[node.routes.length - 1] = route;
     }
 
-    // Finds matching route for a request
+    // Routes and waits for async handlers
     public HttpResponse route(HttpRequest request) {
-        String[] requestParts = request.getPath().substring(1).split("/");
-
-        for (Route route : routes) {
-            // Methode überprüfen
-            if (!route.method().equals(request.getMethod())) continue;
-            // Länge der Parts überprüfen
-            if (route.patternParts().length != requestParts.length) continue;
-
-            Map<String, String> pathParams = new HashMap<>();
-            boolean matches = true;
-
-            // Jeden pattern part der jeweiligen route durchgehen und mit dem jeweiligen part des requests vergleichen
-            for (int i = 0; i < route.patternParts().length; i++) {
-                String patternPart = route.patternParts()[i];
-                String requestPart = requestParts[i];
-
-                if (patternPart.startsWith("{") && patternPart.endsWith("}")) {
-                    // Its a path variable -> extract it
-                    // geschwungene Klammern entfernen
-                    String paramName = patternPart.substring(1, patternPart.length() - 1);
-                    pathParams.put(paramName, requestPart);
-                } else if (!patternPart.equals(requestPart)) {
-                    // Literal part doesnt match
-                    matches = false;
-                    break;
-                }
+        try {
+            return routeAsync(request).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+    }
+
+    // Finds matching route for a request.
+    // Lookup walks the path once per segment without splitting it; nothing is allocated on a miss.
+    public CompletableFuture<HttpResponse> routeAsync(HttpRequest request) {
+        String path = request.getPath();
+        if (path == null || path.isEmpty() || path.charAt(0) != '/') {
+            return CompletableFuture.completedFuture(HttpResponse.notFound());
+        }
+
+        // "/api/media/" is treated like "/api/media" (same as the old split based matching)
+        int end = path.length() > 1 && path.charAt(path.length() - 1) == '/' ? path.length() - 1 : path.length();
+
+        Node node = match(root, path, 1, end, request.getMethod());
+        if (node != null) {
+            Route route = node.route(request.getMethod());
+            // Inject extracted path params into the request
+            request.setPathParams(route.paramNames(), extractParams(route, path, end));
+            request.setMetrics(route.metrics());
+            // Führe die gespeicherte Funktion (Handler) mit request als Übergabeparameter aus
+            return route.handler().apply(request);
+        }
+
+        // Path exists with other methods -> 405 instead of 404
+        Node pathOnly = match(root, path, 1, end, null);
+        if (pathOnly != null) {
+            return CompletableFuture.completedFuture(HttpResponse.methodNotAllowed(allowedMethods(pathOnly)));
+        }
+        return CompletableFuture.completedFuture(HttpResponse.notFound());
+    }
+
+    // Asked by the parser right after the head: is the body of this request streamed to an upload route?
+    public boolean streamsBody(HttpRequest request) {
+        if (!hasUploadRoutes) return false;
+        String path = request.getPath();
+        if (path == null || path.isEmpty() || path.charAt(0) != '/') return false;
+        int end = path.length() > 1 && path.charAt(path.length() - 1) == '/' ? path.length() - 1 : path.length();
+        Node node = match(root, path, 1, end, request.getMethod());
+        return node != null && node.route(request.getMethod()).streamBody();
+    }
+
+    // Depth first with backtracking: a literal segment wins over a path variable,
+    // but if the literal branch dead-ends the variable branch is tried as well.
+    // method == null matches any node that has at least one route.
+    private Node match(Node node, String path, int pos, int end, String method) {
+        if (pos >= end) {
+            if (method == null) return node.routes.length > 0 ? node : null;
+            return node.route(method) != null ? node : null;
+        }
+
+        int segEnd = path.indexOf('/', pos);
+        if (segEnd < 0 || segEnd > end) segEnd = end;
+        int len = segEnd - pos;
+        int next = segEnd < end ? segEnd + 1 : end;
+
+        String[] literals = node.literals;
+        for (int i = 0; i < literals.length; i++) {
+            String literal = literals[i];
+            if (literal.length() == len && path.regionMatches(pos, literal, 0, len)) {
+                Node found = match(node.literalChildren[i], path, next, end, method);
+                if (found != null) return found;
             }
+        }
+        if (node.paramChild != null && len > 0) {
+            return match(node.paramChild, path, next, end, method);
+        }
+        return null;
+    }
 
-            if (matches) {
-                // Inject extracted path params into the request
-                request.setPathParams(pathParams);
-                // Führe die gespeicherte Funktion (Handler) mit request als Übergabeparameter aus
-                return route.handler().apply(request);
+    // Path variables into a small array in the order of the pattern
+    private static String[] extractParams(Route route, String path, int end) {
+        int[] wanted = route.paramSegments();
+        if (wanted.length == 0) return NO_PARAMS;
+
+        String[] values = new String[wanted.length];
+        int segment = 0;
+        int next = 0;
+        int pos = 1;
+        while (pos <= end && next < wanted.length) {
+            int segEnd = path.indexOf('/', pos);
+            if (segEnd < 0 || segEnd > end) segEnd = end;
+            if (segment == wanted[next]) {
+                values[next++] = path.substring(pos, segEnd);
             }
+            segment++;
+            pos = segEnd + 1;
         }
+        return values;
+    }
 
-        return HttpResponse.notFound();
+    private static String allowedMethods(Node node) {
+        StringBuilder sb = new StringBuilder();
+        for (Route route : node.routes) {
+            if (!sb.isEmpty()) sb.append(", ");
+            sb.append(route.method());
+        }
+        return sb.toString();
     }
-}
\ No newline at end of file
+}
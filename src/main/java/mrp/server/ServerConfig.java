@@ -0,0 +1,124 @@
+package mrp.server;
+
+// Settings for the HTTP server
+// Defaults can be overridden at startup with system properties, e.g. -Dmrp.server.port=8080
+public class ServerConfig {
+    // BLOCKING = one pooled thread per connection (HttpServer)
+    // NIO = selector event loops, threads only for complete requests (NioHttpServer)
+    public enum Engine { BLOCKING, NIO }
+
+    // PLATFORM = fixed pool of workerThreads, VIRTUAL = one virtual thread per connection/request
+    public enum Threads { PLATFORM, VIRTUAL }
+
+    private Engine engine = Engine.BLOCKING;
+    private Threads threads = Threads.PLATFORM;
+    private int eventLoops = Runtime.getRuntime().availableProcessors();
+    private int port = 9090;
+    private int workerThreads = 10;
+    private int idleTimeoutMillis = 5_000;          // close keep-alive connections after this idle time
+    private int maxRequestsPerConnection = 1_000;   // close connection after this many requests
+    private int maxHeaderBytes = 16 * 1024;         // request line + headers, larger -> 431
+    private int maxBodyBytes = 1024 * 1024;         // request body, larger -> 413
+    private int queueCapacity = 200;                // waiting connections/requests, more -> 503
+    private int queueTimeoutMillis = 2_000;         // waited longer -> 503 instead of starting the work
+    private int maxInFlight = 1_000;                // concurrently running jobs with virtual threads
+    private int retryAfterSeconds = 1;              // Retry-After of the 503
+    private int compressionMinBytes = 1024;         // gzip/deflate response bodies from this size on, -1 = off
+    private int compressionLevel = 6;               // Deflater level 1 (fast) .. 9 (small)
+    private boolean logRequests;                    // method + path of every request to stdout (debugging only)
+
+    public ServerConfig() {}
+
+    public static ServerConfig fromSystemProperties() {
+        ServerConfig config = new ServerConfig();
+        config.engine = enumProperty("mrp.server.engine", Engine.class, config.engine);
+        config.threads = enumProperty("mrp.server.threads", Threads.class, config.threads);
+        config.eventLoops = intProperty("mrp.server.eventLoops", config.eventLoops);
+        config.port = intProperty("mrp.server.port", config.port);
+        config.workerThreads = intProperty("mrp.server.workerThreads", config.workerThreads);
+        config.idleTimeoutMillis = intProperty("mrp.server.idleTimeoutMillis", config.idleTimeoutMillis);
+        config.maxRequestsPerConnection = intProperty("mrp.server.maxRequestsPerConnection", config.maxRequestsPerConnection);
+        config.maxHeaderBytes = intProperty("mrp.server.maxHeaderBytes", config.maxHeaderBytes);
+        config.maxBodyBytes = intProperty("mrp.server.maxBodyBytes", config.maxBodyBytes);
+        config.queueCapacity = intProperty("mrp.server.queueCapacity", config.queueCapacity);
+        config.queueTimeoutMillis = intProperty("mrp.server.queueTimeoutMillis", config.queueTimeoutMillis);
+        config.maxInFlight = intProperty("mrp.server.maxInFlight", config.maxInFlight);
+        config.retryAfterSeconds = intProperty("mrp.server.retryAfterSeconds", config.retryAfterSeconds);
+        config.compressionMinBytes = intProperty("mrp.server.compressionMinBytes", config.compressionMinBytes);
+        config.compressionLevel = intProperty("mrp.server.compressionLevel", config.compressionLevel);
+        if (config.compressionLevel < 1 || config.compressionLevel > 9) {
+            throw new IllegalArgumentException("Invalid value for mrp.server.compressionLevel: " + config.compressionLevel);
+        }
+        config.logRequests = Boolean.getBoolean("mrp.server.logRequests");
+        return config;
+    }
+
+    static int intProperty(String key, int defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null || value.isBlank()) return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + key + ": " + value);
+        }
+    }
+
+    static <E extends Enum<E>> E enumProperty(String key, Class<E> type, E defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null || value.isBlank()) return defaultValue;
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid value for " + key + ": " + value);
+        }
+    }
+
+    // Getters & setters
+    public Engine getEngine() { return engine; }
+    public void setEngine(Engine engine) { this.engine = engine; }
+
+    public Threads getThreads() { return threads; }
+    public void setThreads(Threads threads) { this.threads = threads; }
+
+    public int getEventLoops() { return eventLoops; }
+    public void setEventLoops(int eventLoops) { this.eventLoops = eventLoops; }
+
+    public int getPort() { return port; }
+    public void setPort(int port) { this.port = port; }
+
+    public int getWorkerThreads() { return workerThreads; }
+    public void setWorkerThreads(int workerThreads) { this.workerThreads = workerThreads; }
+
+    public int getIdleTimeoutMillis() { return idleTimeoutMillis; }
+    public void setIdleTimeoutMillis(int idleTimeoutMillis) { this.idleTimeoutMillis = idleTimeoutMillis; }
+
+    public int getMaxRequestsPerConnection() { return maxRequestsPerConnection; }
+    public void setMaxRequestsPerConnection(int maxRequestsPerConnection) { this.maxRequestsPerConnection = maxRequestsPerConnection; }
+
+    public int getMaxHeaderBytes() { return maxHeaderBytes; }
+    public void setMaxHeaderBytes(int maxHeaderBytes) { this.maxHeaderBytes = maxHeaderBytes; }
+
+    public int getMaxBodyBytes() { return maxBodyBytes; }
+    public void setMaxBodyBytes(int maxBodyBytes) { this.maxBodyBytes = maxBodyBytes; }
+
+    public int getQueueCapacity() { return queueCapacity; }
+    public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+
+    public int getQueueTimeoutMillis() { return queueTimeoutMillis; }
+    public void setQueueTimeoutMillis(int queueTimeoutMillis) { this.queueTimeoutMillis = queueTimeoutMillis; }
+
+    public int getMaxInFlight() { return maxInFlight; }
+    public void setMaxInFlight(int maxInFlight) { this.maxInFlight = maxInFlight; }
+
+    public int getRetryAfterSeconds() { return retryAfterSeconds; }
+    public void setRetryAfterSeconds(int retryAfterSeconds) { this.retryAfterSeconds = retryAfterSeconds; }
+
+    public int getCompressionMinBytes() { return compressionMinBytes; }
+    public void setCompressionMinBytes(int compressionMinBytes) { this.compressionMinBytes = compressionMinBytes; }
+
+    public int getCompressionLevel() { return compressionLevel; }
+    public void setCompressionLevel(int compressionLevel) { this.compressionLevel = compressionLevel; }
+
+    public boolean isLogRequests() { return logRequests; }
+    public void setLogRequests(boolean logRequests) { this.logRequests = logRequests; }
+}
@@ -0,0 +1,53 @@
+package mrp.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// Body of a request to an upload route (Router.addUploadRoute), read by the handler while it is still arriving
+// instead of being buffered up to maxBodyBytes. The first read sends "100 Continue" if the client asked for it
+// (Expect: 100-continue), so a request that is rejected before its body is read (e.g. 401) is never uploaded.
+abstract class StreamedBody extends InputStream {
+
+    @FunctionalInterface
+    interface Continue {
+        void send() throws IOException;
+    }
+
+    static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(java.nio.charset.StandardCharsets.ISO_8859_1);
+
+    private Continue beforeFirstRead;  // null once sent or if not requested
+
+    StreamedBody(Continue beforeFirstRead) {
+        this.beforeFirstRead = beforeFirstRead;
+    }
+
+    @Override
+    public final int read() throws IOException {
+        byte[] one = new byte[1];
+        int n = read(one, 0, 1);
+        return n < 0 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public final int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (beforeFirstRead != null) {
+            Continue send = beforeFirstRead;
+            beforeFirstRead = null;
+            send.send();
+        }
+        return readBody(b, off, len);
+    }
+
+    // Blocks until at least one byte is available, -1 at the end of the body
+    protected abstract int readBody(byte[] b, int off, int len) throws IOException;
+
+    // true once the handler read the body up to its end, otherwise the rest is still on the connection
+    abstract boolean isComplete();
+
+    // Expect: 100-continue only means something for HTTP/1.1
+    static boolean expectsContinue(HttpRequest request) {
+        String expect = request.getHeader("Expect");
+        return expect != null && expect.equalsIgnoreCase("100-continue") && request.getVersion().equals("HTTP/1.1");
+    }
+}
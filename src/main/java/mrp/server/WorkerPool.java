@@ -0,0 +1,146 @@
+package mrp.server;
+
+import mrp.metrics.MetricsRegistry;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Executes jobs (connections for HttpServer, requests for NioHttpServer) with admission control:
+// at most queueCapacity jobs wait, and a job that waited longer than queueTimeoutMillis is not started anymore.
+// Both cases are shed with job.shed() (-> 503 + Retry-After) instead of doing work no client is waiting for.
+//   PLATFORM: fixed pool of workerThreads with a bounded queue
+//   VIRTUAL:  one virtual thread per job, at most maxInFlight running, the others wait for a permit
+public final class WorkerPool {
+
+    public interface Job {
+        void run();
+        // Called instead of run() when the job is rejected: on the submitting thread if the queue is full,
+        // on a worker if the job waited too long. Must be quick (write a 503 and close).
+        void shed();
+    }
+
+    private final ExecutorService executor;
+    private final Semaphore inFlightPermits;  // only VIRTUAL, PLATFORM is bounded by its threads
+    private final int queueCapacity;
+    private final long queueTimeoutNanos;
+
+    // Statistics
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder shedQueueFull = new LongAdder();
+    private final LongAdder shedTimeout = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+
+    public WorkerPool(ServerConfig config) {
+        this.queueCapacity = config.getQueueCapacity();
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getQueueTimeoutMillis());
+        if (config.getThreads() == ServerConfig.Threads.VIRTUAL) {
+            // Virtual threads are cheap while blocked (socket reads, DB calls), the DB itself is
+            // protected by the connection limit in DatabaseManager.
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-worker-", 0).factory());
+            this.inFlightPermits = new Semaphore(config.getMaxInFlight());
+        } else {
+            // Bounded queue instead of the unbounded one of Executors.newFixedThreadPool
+            int threads = config.getWorkerThreads();
+            this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : new SynchronousQueue<>());
+            this.inFlightPermits = null;
+        }
+        registerMetrics(MetricsRegistry.getInstance());
+    }
+
+    private void registerMetrics(MetricsRegistry metrics) {
+        metrics.gauge("mrp_worker_queue_depth", "Jobs waiting for a worker", this::getQueued);
+        metrics.gauge("mrp_worker_in_flight", "Jobs currently running on a worker", this::getInFlight);
+        metrics.counter("mrp_worker_shed_total", "Jobs answered with 503 instead of being run",
+                MetricsRegistry.label("reason", "queue_full"), this::getShedQueueFull);
+        metrics.counter("mrp_worker_shed_total", "Jobs answered with 503 instead of being run",
+                MetricsRegistry.label("reason", "timeout"), this::getShedTimeout);
+        metrics.counter("mrp_worker_completed_total", "Jobs run to completion", "", this::getCompleted);
+    }
+
+    public void execute(Job job) {
+        long enqueuedAt = System.nanoTime();
+
+        if (inFlightPermits != null) {
+            if (queued.get() == 0 && inFlightPermits.tryAcquire()) {
+                // VIRTUAL with a free slot and nobody waiting: start right away
+                try {
+                    executor.execute(() -> runAdmitted(job));
+                } catch (RejectedExecutionException e) {
+                    inFlightPermits.release();  // shut down
+                    job.shed();
+                }
+                return;
+            }
+            if (queued.incrementAndGet() > queueCapacity) {
+                queued.decrementAndGet();
+                shedQueueFull.increment();
+                job.shed();
+                return;
+            }
+        } else {
+            queued.incrementAndGet();  // PLATFORM: the executor's bounded queue decides
+        }
+
+        try {
+            executor.execute(() -> startQueued(job, enqueuedAt));
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            shedQueueFull.increment();
+            job.shed();
+        }
+    }
+
+    private void startQueued(Job job, long enqueuedAt) {
+        boolean admitted;
+        try {
+            admitted = inFlightPermits == null || inFlightPermits.tryAcquire(
+                    Math.max(0, queueTimeoutNanos - (System.nanoTime() - enqueuedAt)), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        } finally {
+            queued.decrementAndGet();
+        }
+        if (!admitted || System.nanoTime() - enqueuedAt > queueTimeoutNanos) {
+            // Client has likely given up already, answer fast and do not start the actual work
+            if (admitted && inFlightPermits != null) inFlightPermits.release();
+            shedTimeout.increment();
+            job.shed();
+            return;
+        }
+        runAdmitted(job);
+    }
+
+    private void runAdmitted(Job job) {
+        inFlight.incrementAndGet();
+        try {
+            job.run();
+        } finally {
+            inFlight.decrementAndGet();
+            completed.increment();
+            if (inFlightPermits != null) inFlightPermits.release();
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // Getters for the statistics
+    public int getQueued() { return queued.get(); }
+    public int getInFlight() { return inFlight.get(); }
+    public long getShedQueueFull() { return shedQueueFull.sum(); }
+    public long getShedTimeout() { return shedTimeout.sum(); }
+    public long getShed() { return shedQueueFull.sum() + shedTimeout.sum(); }
+    public long getCompleted() { return completed.sum(); }
+}
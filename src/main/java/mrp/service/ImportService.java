@@ -0,0 +1,155 @@
+package mrp.service;
+
+import mrp.model.ImportResult;
+import mrp.model.Media;
+import mrp.model.Rating;
+import mrp.repository.MediaRepository;
+import mrp.repository.RatingRepository;
+import mrp.repository.RowSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Bulk import of media and ratings from an upload (NDJSON or CSV). Records are parsed and validated while
+// the upload arrives and go straight into COPY; invalid records are skipped and reported with their line.
+public class ImportService {
+    private final MediaRepository mediaRepo;
+    private final RatingRepository ratingRepo;
+
+    public ImportService(MediaRepository mediaRepo, RatingRepository ratingRepo) {
+        this.mediaRepo = mediaRepo;
+        this.ratingRepo = ratingRepo;
+    }
+
+    // Imported media belong to the importing user (like POST /api/media)
+    public ImportResult importMedia(InputStream body, String contentType, int userId) throws IOException, SQLException {
+        RecordReader reader = new RecordReader(body, RecordReader.formatOf(contentType));
+        ImportResult result = new ImportResult();
+        result.addAccepted(mediaRepo.importMedia(new ValidatingSource<>(reader, result, record -> toMedia(record, userId))));
+        return result;
+    }
+
+    // Ratings are always by the importing user
+    public ImportResult importRatings(InputStream body, String contentType, int userId) throws IOException, SQLException {
+        RecordReader reader = new RecordReader(body, RecordReader.formatOf(contentType));
+        ImportResult result = new ImportResult();
+        ratingRepo.importRatings(new ValidatingSource<>(reader, result, record -> toRating(record, userId)), result);
+        return result;
+    }
+
+    // Same limits as the table definition, a value the database refuses would abort the whole COPY
+    static Media toMedia(Map<String, Object> record, int userId) {
+        Media media = new Media();
+        media.setTitle(text(record, "title", 255, true));
+        media.setDescription(text(record, "description", Integer.MAX_VALUE, false));
+        media.setMediaType(text(record, "mediaType", 50, true));
+        media.setReleaseYear(number(record, "releaseYear", 0));
+        List<String> genres = genres(record.get("genres"));
+        if (String.join(",", genres).length() > 255) throw new IllegalArgumentException("genres too long");
+        media.setGenres(genres);
+        int ageRestriction = number(record, "ageRestriction", 0);
+        if (ageRestriction < 0) throw new IllegalArgumentException("ageRestriction must not be negative");
+        media.setAgeRestriction(ageRestriction);
+        media.setCreatedBy(userId);
+        return media;
+    }
+
+    static Rating toRating(Map<String, Object> record, int userId) {
+        if (record.get("mediaId") == null) throw new IllegalArgumentException("mediaId is required");
+        if (record.get("stars") == null) throw new IllegalArgumentException("stars is required");
+        Rating rating = new Rating();
+        rating.setMediaId(number(record, "mediaId", 0));
+        rating.setStars(number(record, "stars", 0));
+        if (rating.getStars() < 1 || rating.getStars() > 5) {
+            throw new IllegalArgumentException("Stars must be between 1 and 5");
+        }
+        rating.setComment(text(record, "comment", Integer.MAX_VALUE, false));
+        rating.setUserId(userId);
+        return rating;
+    }
+
+    private static String text(Map<String, Object> record, String field, int maxLength, boolean required) {
+        Object value = record.get(field);
+        if (value == null || value.toString().isBlank()) {
+            if (required) throw new IllegalArgumentException(field + " is required");
+            return null;
+        }
+        if (!(value instanceof String text)) throw new IllegalArgumentException(field + " must be a string");
+        if (text.length() > maxLength) throw new IllegalArgumentException(field + " longer than " + maxLength + " characters");
+        if (text.indexOf('\0') >= 0) throw new IllegalArgumentException(field + " contains a NUL character");
+        return text;
+    }
+
+    // JSON number or (CSV) numeric string, only whole numbers in int range
+    private static int number(Map<String, Object> record, String field, int defaultValue) {
+        Object value = record.get(field);
+        if (value == null) return defaultValue;
+        if (value instanceof Integer i) return i;
+        if (value instanceof String s) {
+            try {
+                return Integer.parseInt(s.trim());
+            } catch (NumberFormatException e) {
+                // falls through to the error below
+            }
+        }
+        throw new IllegalArgumentException(field + " must be a whole number");
+    }
+
+    // JSON array of strings or a comma separated string ("sci-fi,thriller", as stored)
+    private static List<String> genres(Object value) {
+        List<String> genres = new ArrayList<>();
+        if (value == null) return genres;
+        if (value instanceof List<?> list) {
+            for (Object genre : list) {
+                if (!(genre instanceof String s)) throw new IllegalArgumentException("genres must be strings");
+                if (!s.isBlank()) genres.add(s.trim());
+            }
+        } else if (value instanceof String s) {
+            for (String genre : s.split(",")) {
+                if (!genre.isBlank()) genres.add(genre.trim());
+            }
+        } else {
+            throw new IllegalArgumentException("genres must be a list or a comma separated string");
+        }
+        for (String genre : genres) {
+            if (genre.indexOf('\0') >= 0) throw new IllegalArgumentException("genres contain a NUL character");
+        }
+        return genres;
+    }
+
+    // Hands only valid records to the repository, broken or invalid ones end up in the result
+    private static final class ValidatingSource<T> implements RowSource<T> {
+        private final RecordReader reader;
+        private final ImportResult result;
+        private final Function<Map<String, Object>, T> convert;
+
+        ValidatingSource(RecordReader reader, ImportResult result, Function<Map<String, Object>, T> convert) {
+            this.reader = reader;
+            this.result = result;
+            this.convert = convert;
+        }
+
+        @Override
+        public T next() throws IOException {
+            while (true) {
+                try {
+                    Map<String, Object> record = reader.next();
+                    if (record == null) return null;
+                    return convert.apply(record);
+                } catch (IllegalArgumentException e) {
+                    result.reject(reader.line(), e.getMessage());
+                }
+            }
+        }
+
+        @Override
+        public long line() {
+            return reader.line();
+        }
+    }
+}
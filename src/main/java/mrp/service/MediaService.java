@@ -1,17 +1,36 @@
 package mrp.service;
 
+import mrp.cache.ResultCache;
+import mrp.cache.Version;
 import mrp.model.Media;
+import mrp.model.Page;
 import mrp.repository.MediaRepository;
+import mrp.repository.MediaRepository.SearchQuery;
+import mrp.repository.RowConsumer;
+import mrp.util.JsonUtil;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class MediaService {
     private final MediaRepository repo;
+    // JSON of search results by SearchQuery (= normalized filter parameters), valid for one list version
+    private final ResultCache<SearchQuery> searchCache;
 
     public MediaService(MediaRepository repo) {
+        this(repo, new ResultCache<>(0, 0));
+    }
+
+    public MediaService(MediaRepository repo, ResultCache<SearchQuery> searchCache) {
         this.repo = repo;
+        this.searchCache = searchCache;
     }
 
     public Media createMedia(Media media) throws SQLException {
@@ -22,6 +41,15 @@ public class MediaService {
         return repo.getById(id);
     }
 
+    public CompletableFuture<Media> getMediaByIdAsync(int id) {
+        return repo.getByIdAsync(id);
+    }
+
+    // Changes with every write that the media list shows (ETag of GET /api/media)
+    public Version getListVersion() {
+        return repo.getListVersion();
+    }
+
     public List<Media> getAllMedia() throws SQLException {
         return repo.getAll();
     }
@@ -49,7 +77,113 @@ public class MediaService {
         return repo.getFavoritesByUserId(userId);
     }
 
+    public void streamFavoritesByUserId(int userId, RowConsumer<Media> consumer) throws SQLException, IOException {
+        repo.streamFavoritesByUserId(userId, consumer);
+    }
+
+    public CompletableFuture<Page<Media>> getFavoritesPageAsync(int userId, String cursor, int limit) {
+        return repo.getFavoritesPageAsync(userId, cursor, limit);
+    }
+
+    public Page<Media> getFavoritesPage(int userId, String cursor, int limit) throws SQLException {
+        return repo.getFavoritesPage(userId, cursor, limit);
+    }
+
     public List<Media> searchAndFilter(Map<String, String> queryParams) throws SQLException {
         return repo.searchAndFilter(queryParams);
     }
+
+    // Validates the parameters (NumberFormatException) without touching the database
+    public SearchQuery buildSearch(Map<String, String> queryParams) {
+        return repo.buildSearch(queryParams);
+    }
+
+    public void streamSearch(SearchQuery query, RowConsumer<Media> consumer) throws SQLException, IOException {
+        repo.streamSearch(query, consumer);
+    }
+
+    // Like buildSearch, additionally rejects an invalid cursor (IllegalArgumentException)
+    public SearchQuery buildSearchPage(Map<String, String> queryParams, String cursor, int limit) {
+        return repo.buildSearchPage(queryParams, cursor, limit);
+    }
+
+    public CompletableFuture<Page<Media>> searchPageAsync(SearchQuery query, int limit) {
+        return repo.searchPageAsync(query, limit);
+    }
+
+    public Page<Media> searchPage(SearchQuery query, int limit) throws SQLException {
+        return repo.searchPage(query, limit);
+    }
+
+    // --- Such-Cache ---
+    // Schlüssel ist die SearchQuery: kanonisches SQL + Werte, also genau die normalisierten Filter (Reihenfolge,
+    // leere und unbekannte Parameter spielen keine Rolle mehr). Gültig nur für die Listen-Version, unter der das
+    // Ergebnis gebaut wurde: jedes Schreiben auf media/ratings zählt sie hoch, kein Schlüssel muss gesucht werden.
+
+    // Ganze Trefferliste als JSON-Array aus dem Cache, null = nicht im Cache oder seitdem geändert
+    public byte[] getCachedSearch(SearchQuery query) {
+        return searchCache.get(query, repo.getListVersion().generation());
+    }
+
+    // Trefferliste als JSON-Array in out streamen; vollständig und klein genug -> danach im Cache
+    public void streamSearchJson(SearchQuery query, OutputStream out) throws SQLException, IOException {
+        long generation = repo.getListVersion().generation();  // vor der Query, siehe ResultCache.put
+        if (!searchCache.isEnabled() || generation < 0) {
+            try (JsonUtil.ArrayWriter json = JsonUtil.arrayWriter(out)) {
+                repo.streamSearch(query, json::write);
+            }
+            return;
+        }
+        CapturingOutputStream capture = new CapturingOutputStream(out, searchCache.getMaxEntryBytes());
+        try (JsonUtil.ArrayWriter json = JsonUtil.arrayWriter(capture)) {
+            repo.streamSearch(query, json::write);
+        }
+        byte[] body = capture.captured();
+        if (body != null) searchCache.put(query, generation, body);
+    }
+
+    // Eine Seite als JSON (Page), aus dem Cache oder frisch abgefragt
+    public byte[] searchPageJson(SearchQuery query, int limit) throws SQLException {
+        long generation = repo.getListVersion().generation();
+        byte[] json = searchCache.get(query, generation);
+        if (json == null) {
+            json = JsonUtil.toJson(repo.searchPage(query, limit)).getBytes(StandardCharsets.UTF_8);
+            searchCache.put(query, generation, json);
+        }
+        return json;
+    }
+
+    // Schreibt durch und behält eine Kopie, bis sie limit überschreitet (dann nur noch durchreichen)
+    private static final class CapturingOutputStream extends FilterOutputStream {
+        private final int limit;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream(1024);
+
+        CapturingOutputStream(OutputStream out, int limit) {
+            super(out);
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            keep(1);
+            if (copy != null) copy.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            keep(len);
+            if (copy != null) copy.write(b, off, len);
+        }
+
+        private void keep(int len) {
+            if (copy != null && copy.size() + len > limit) copy = null;
+        }
+
+        // null if the body was larger than limit
+        byte[] captured() {
+            return copy != null ? copy.toByteArray() : null;
+        }
+    }
 }
\ No newline at end of file
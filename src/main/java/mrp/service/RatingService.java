@@ -1,11 +1,15 @@
 package mrp.service;
 
 import mrp.model.Media;
+import mrp.model.Page;
 import mrp.model.Rating;
 import mrp.repository.MediaRepository;
 import mrp.repository.RatingRepository;
+import mrp.repository.RowConsumer;
 
+import java.io.IOException;
 import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
 
 public class RatingService {
     private final RatingRepository ratingRepo;
@@ -70,6 +74,18 @@ public class RatingService {
         return ratingRepo.getByUserId(userId);
     }
 
+    public void streamRatingsByUserId(int userId, RowConsumer<Rating> consumer) throws SQLException, IOException {
+        ratingRepo.streamByUserId(userId, consumer);
+    }
+
+    public Page<Rating> getRatingPageByUserId(int userId, String cursor, int limit) throws SQLException {
+        return ratingRepo.getPageByUserId(userId, cursor, limit);
+    }
+
+    public CompletableFuture<Page<Rating>> getRatingPageByUserIdAsync(int userId, String cursor, int limit) {
+        return ratingRepo.getPageByUserIdAsync(userId, cursor, limit);
+    }
+
     public boolean deleteRating(int ratingId, int userId) throws SQLException {
         return ratingRepo.delete(ratingId, userId);
     }
@@ -0,0 +1,61 @@
+package mrp.service;
+
+import mrp.metrics.MetricsRegistry;
+import mrp.repository.RatingRepository;
+
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Periodically compares media_rating_stats with the ratings and recomputes rows that drifted.
+// The aggregate is maintained transactionally, so this only catches changes that bypass the
+// repository (manual SQL, restored backups). Interval: -Dmrp.db.statsRepairMinutes (0 = off).
+public class RatingStatsRepairJob {
+    private final RatingRepository ratingRepo;
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder repaired = new LongAdder();
+    private ScheduledExecutorService scheduler;
+
+    public RatingStatsRepairJob(RatingRepository ratingRepo) {
+        this.ratingRepo = ratingRepo;
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.counter("mrp_rating_stats_repair_runs_total", "Runs of the rating aggregate repair job", "", runs::sum);
+        metrics.counter("mrp_rating_stats_repaired_total", "Drifted media_rating_stats rows recomputed", "", repaired::sum);
+    }
+
+    public void start() {
+        long minutes = Long.getLong("mrp.db.statsRepairMinutes", 60);
+        if (minutes <= 0) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "rating-stats-repair");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runOnce, minutes, minutes, TimeUnit.MINUTES);
+    }
+
+    // Returns the number of repaired rows, -1 if the run failed (next run tries again)
+    public int runOnce() {
+        runs.increment();
+        try {
+            int count = ratingRepo.repairStats();
+            repaired.add(count);
+            if (count > 0) System.out.println("Rating stats repair: recomputed " + count + " drifted rows");
+            return count;
+        } catch (SQLException e) {
+            System.err.println("Rating stats repair failed: " + e.getMessage());
+            return -1;
+        } catch (RuntimeException e) {
+            // would otherwise cancel all further runs of scheduleWithFixedDelay without a trace
+            System.err.println("Rating stats repair failed: " + e);
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    public void stop() {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+}
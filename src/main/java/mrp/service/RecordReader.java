@@ -0,0 +1,166 @@
+package mrp.service;
+
+import mrp.util.JsonUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Reads an upload record by record while it arrives: NDJSON (one JSON object per line) or CSV with a header row.
+// Line based with a maximum line length, so one huge or endless line cannot exhaust memory.
+// A broken line throws IllegalArgumentException from next(), the following call continues with the next line.
+final class RecordReader {
+    static final int MAX_LINE_BYTES = 64 * 1024;
+
+    enum Format { NDJSON, CSV }
+
+    private final InputStream in;
+    private final Format format;
+    private final byte[] buf = new byte[16 * 1024];
+    private int pos;
+    private int limit;
+    private byte[] lineBuf = new byte[256];
+    private long line;
+    private String[] header;
+
+    RecordReader(InputStream in, Format format) {
+        this.in = in;
+        this.format = format;
+    }
+
+    // Content-Type -> format, parameters like "; charset=utf-8" are ignored
+    static Format formatOf(String contentType) {
+        String type = contentType == null ? "" : contentType.split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+        return switch (type) {
+            case "application/x-ndjson", "application/ndjson", "application/jsonl" -> Format.NDJSON;
+            case "text/csv" -> Format.CSV;
+            default -> throw new IllegalArgumentException("Unsupported Content-Type, use application/x-ndjson or text/csv");
+        };
+    }
+
+    // Next record as field name -> value (JSON types for NDJSON, strings for CSV; empty CSV fields are null),
+    // null at the end of the upload
+    Map<String, Object> next() throws IOException {
+        while (true) {
+            String text = readLine();
+            if (text == null) return null;
+            if (text.isBlank()) continue;
+            if (format == Format.NDJSON) return parseJson(text);
+            if (header == null) {
+                header = parseCsv(text);
+                for (int i = 0; i < header.length; i++) header[i] = header[i].trim();
+                continue;
+            }
+            return csvRecord(parseCsv(text));
+        }
+    }
+
+    // Line of the record last returned by next() (1-based, counting the CSV header)
+    long line() {
+        return line;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> parseJson(String text) {
+        text = text.stripLeading();  // indented lines are fine, blank ones never get here (next())
+        if (text.charAt(0) != '{') throw new IllegalArgumentException("Expected a JSON object");
+        try {
+            return JsonUtil.fromJson(text, Map.class);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid JSON");
+        }
+    }
+
+    private Map<String, Object> csvRecord(String[] fields) {
+        if (fields.length != header.length) {
+            throw new IllegalArgumentException("Expected " + header.length + " fields, got " + fields.length);
+        }
+        Map<String, Object> record = new HashMap<>();
+        for (int i = 0; i < fields.length; i++) {
+            record.put(header[i], fields[i].isEmpty() ? null : fields[i]);
+        }
+        return record;
+    }
+
+    // RFC 4180 within one line: "," separated, "..." quoted, "" = escaped quote
+    static String[] parseCsv(String text) {
+        String[] fields = new String[8];
+        int count = 0;
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                if (count == fields.length) fields = Arrays.copyOf(fields, count * 2);
+                fields[count++] = field.toString();
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) throw new IllegalArgumentException("Unterminated quoted field");
+        if (count == fields.length) fields = Arrays.copyOf(fields, count + 1);
+        fields[count++] = field.toString();
+        return Arrays.copyOf(fields, count);
+    }
+
+    // UTF-8 line without the line break, null at the end of the input.
+    // A line longer than MAX_LINE_BYTES is skipped up to its end and reported as broken.
+    private String readLine() throws IOException {
+        int length = 0;
+        boolean tooLong = false;
+        while (true) {
+            if (pos == limit) {
+                limit = in.read(buf, 0, buf.length);
+                pos = 0;
+                if (limit < 0) {
+                    limit = 0;
+                    if (length == 0 && !tooLong) return null;
+                    break;  // last line without line break
+                }
+            }
+            int nl = pos;
+            while (nl < limit && buf[nl] != '\n') nl++;
+            int n = nl - pos;
+            if (!tooLong) {
+                if (length + n > MAX_LINE_BYTES) {
+                    tooLong = true;
+                } else {
+                    if (length + n > lineBuf.length) {
+                        lineBuf = Arrays.copyOf(lineBuf, Math.min(MAX_LINE_BYTES, Math.max(length + n, lineBuf.length * 2)));
+                    }
+                    System.arraycopy(buf, pos, lineBuf, length, n);
+                    length += n;
+                }
+            }
+            pos = nl;
+            if (nl < limit) {
+                pos++;  // skip '\n'
+                break;
+            }
+        }
+        line++;
+        if (tooLong) throw new IllegalArgumentException("Line longer than " + MAX_LINE_BYTES + " bytes");
+        if (length > 0 && lineBuf[length - 1] == '\r') length--;
+        int from = 0;
+        if (line == 1 && length >= 3 && (lineBuf[0] & 0xFF) == 0xEF && (lineBuf[1] & 0xFF) == 0xBB && (lineBuf[2] & 0xFF) == 0xBF) {
+            from = 3;  // UTF-8 BOM (e.g. CSV exported from Excel)
+        }
+        return new String(lineBuf, from, length - from, StandardCharsets.UTF_8);
+    }
+}
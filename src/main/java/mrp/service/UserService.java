@@ -1,20 +1,27 @@
 package mrp.service;
 
 import mrp.auth.TokenManager;
+import mrp.cache.Version;
+import mrp.leaderboard.Leaderboard;
+import mrp.model.LeaderboardRank;
+import mrp.model.Page;
 import mrp.model.User;
 import mrp.repository.UserRepository;
 import org.mindrot.jbcrypt.BCrypt;
 
 import java.sql.SQLException;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class UserService {
     private final UserRepository userRepository;
     private final TokenManager tokenManager;
+    private final Leaderboard leaderboard;
 
-    public UserService(UserRepository userRepository, TokenManager tokenManager) {
+    public UserService(UserRepository userRepository, TokenManager tokenManager, Leaderboard leaderboard) {
         this.userRepository = userRepository;
         this.tokenManager = tokenManager;
+        this.leaderboard = leaderboard;
     }
 
      //Registers user
@@ -64,6 +71,26 @@ public class UserService {
         return user;
     }
 
+    // getProfile without waiting: user lookup, then both statistics queries in parallel on the DB executor.
+    // Completes exceptionally with IllegalArgumentException if the user does not exist.
+    public CompletableFuture<User> getProfileAsync(String username) {
+        return userRepository.findByUsernameAsync(username).thenCompose(user -> {
+            if (user == null) {
+                throw new IllegalArgumentException("User not found");
+            }
+            return userRepository.loadUserStatisticsAsync(user);
+        });
+    }
+
+    // id of a user, for endpoints that only need to check that the user exists (no statistics queries)
+    public int getUserId(String username) throws SQLException {
+        Integer id = userRepository.findIdByUsername(username);
+        if (id == null) {
+            throw new IllegalArgumentException("User not found");
+        }
+        return id;
+    }
+
     // Update (only the user itself)
     public User updateProfile(User authUser, String targetUsername, String newBio, String newEmail) throws SQLException {
         if (!authUser.getUsername().equals(targetUsername)) {
@@ -85,7 +112,24 @@ public class UserService {
         return targetUser;
     }
 
-    public java.util.List<User> getLeaderboard() throws java.sql.SQLException {
-        return userRepository.getLeaderboard();
+    // Leaderboard aus dem Speicher, keine Query
+    public java.util.List<User> getLeaderboard() {
+        return leaderboard.all();
+    }
+
+    public Version getLeaderboardVersion() {
+        return leaderboard.getVersion();
+    }
+
+    public Page<User> getLeaderboardPage(String cursor, int limit) {
+        return leaderboard.page(cursor, limit);
+    }
+
+    public LeaderboardRank getLeaderboardRank(String username, int neighbours) {
+        LeaderboardRank rank = leaderboard.rankOf(username, neighbours);
+        if (rank == null) {
+            throw new IllegalArgumentException("User not found");
+        }
+        return rank;
     }
 }
\ No newline at end of file
@@ -1,8 +1,16 @@
 package mrp.util;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import mrp.metrics.Histogram;
+import mrp.metrics.MetricsRegistry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
 
 public class JsonUtil {
     // one ObjectMapper for entire app
@@ -12,15 +20,28 @@ public class JsonUtil {
             .configure(com.fasterxml.jackson.databind.DeserializationFeature
                     .FAIL_ON_UNKNOWN_PROPERTIES, false);             // ignore extra JSON fields
 
+    // Serialization time per response body: toJson() as a whole, streamed arrays summed over all elements
+    private static final Histogram serializeTime = MetricsRegistry.getInstance().histogram(
+            "mrp_json_serialization_seconds", "Time spent serializing response bodies to JSON", MetricsRegistry.label("mode", "string"));
+    private static final Histogram streamSerializeTime = MetricsRegistry.getInstance().histogram(
+            "mrp_json_serialization_seconds", "Time spent serializing response bodies to JSON", MetricsRegistry.label("mode", "stream"));
+
+    // for streaming: no flush after every element, the output stream decides when to send
+    private static final ObjectWriter streamWriter = mapper.writer()
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
     /**
      * Object -> JSON string
      * Usage: JsonUtil.toJson(user)  ->  {"username":"max","bio":"hello"}
      */
     public static String toJson(Object obj) {
+        long start = System.nanoTime();
         try {
             return mapper.writeValueAsString(obj);
         } catch (Exception e) {
             throw new RuntimeException("JSON serialization failed", e);
+        } finally {
+            serializeTime.observeSince(start);
         }
     }
 
@@ -35,4 +56,37 @@ public class JsonUtil {
             throw new RuntimeException("JSON deserialization failed: " + e.getMessage(), e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Writes a JSON array element by element straight into a stream, nothing is collected in memory
+     * Usage: try (JsonUtil.ArrayWriter json = JsonUtil.arrayWriter(out)) { json.write(media); }  ->  [{...},{...}]
+     */
+    public static ArrayWriter arrayWriter(OutputStream out) throws IOException {
+        return new ArrayWriter(out);
+    }
+
+    public static final class ArrayWriter implements Closeable {
+        private final JsonGenerator generator;
+        private long nanos;  // serialization time of all elements (includes handing full buffers to the stream)
+
+        private ArrayWriter(OutputStream out) throws IOException {
+            this.generator = streamWriter.createGenerator(out);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);  // stream belongs to the caller
+            generator.writeStartArray();
+        }
+
+        public void write(Object element) throws IOException {
+            long start = System.nanoTime();
+            streamWriter.writeValue(generator, element);
+            nanos += System.nanoTime() - start;
+        }
+
+        // Closes the array and pushes the rest of the generator buffer into the stream
+        @Override
+        public void close() throws IOException {
+            generator.writeEndArray();
+            generator.close();
+            streamSerializeTime.observeNanos(nanos);
+        }
+    }
+}
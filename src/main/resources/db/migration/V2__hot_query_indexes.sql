@@ -0,0 +1,16 @@
+-- Indexes for the hot queries; before this only primary keys and unique constraints existed
+
+-- Rating history (WHERE user_id = ? ORDER BY created_at DESC), user statistics and the leaderboard join.
+-- UNIQUE (media_id, user_id) only helps lookups by media. INCLUDE lets COUNT/AVG(stars) and the
+-- favorite genre join run as index-only scans.
+CREATE INDEX IF NOT EXISTS ratings_user_created_idx ON ratings (user_id, created_at DESC) INCLUDE (stars, media_id);
+
+-- Favorites by user are covered by the primary key (user_id, media_id); by media they are only looked up
+-- by ON DELETE CASCADE, which otherwise scans the whole table for every deleted medium
+CREATE INDEX IF NOT EXISTS favorites_media_idx ON favorites (media_id);
+
+-- Search filters title/genre ILIKE '%x%': a leading wildcard cannot use a btree, trigram indexes can
+-- (for patterns with at least 3 characters, shorter ones still scan)
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX IF NOT EXISTS media_title_trgm_idx ON media USING gin (title gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS media_genre_trgm_idx ON media USING gin (genre gin_trgm_ops);
@@ -0,0 +1,24 @@
+-- Rating aggregate per medium, maintained by RatingRepository in the same transaction as every rating change.
+-- The search reads count/average from here instead of aggregating all ratings of all media per request.
+CREATE TABLE IF NOT EXISTS media_rating_stats (
+    media_id INT PRIMARY KEY REFERENCES media(id) ON DELETE CASCADE,
+    rating_count INT NOT NULL DEFAULT 0,
+    star_sum INT NOT NULL DEFAULT 0,
+    stars_1 INT NOT NULL DEFAULT 0,
+    stars_2 INT NOT NULL DEFAULT 0,
+    stars_3 INT NOT NULL DEFAULT 0,
+    stars_4 INT NOT NULL DEFAULT 0,
+    stars_5 INT NOT NULL DEFAULT 0,
+    avg_score NUMERIC GENERATED ALWAYS AS
+        (CASE WHEN rating_count > 0 THEN star_sum::numeric / rating_count ELSE 0 END) STORED,
+    updated_at TIMESTAMP NOT NULL DEFAULT NOW()
+);
+
+-- Backfill from the existing ratings
+INSERT INTO media_rating_stats (media_id, rating_count, star_sum, stars_1, stars_2, stars_3, stars_4, stars_5)
+SELECT media_id, count(*), sum(stars),
+       count(*) FILTER (WHERE stars = 1), count(*) FILTER (WHERE stars = 2), count(*) FILTER (WHERE stars = 3),
+       count(*) FILTER (WHERE stars = 4), count(*) FILTER (WHERE stars = 5)
+FROM ratings
+GROUP BY media_id
+ON CONFLICT (media_id) DO NOTHING;
@@ -0,0 +1,20 @@
+-- Keyset pagination (?limit=&cursor=): every page starts with WHERE (sort key, id) < (?, ?) and reads only
+-- limit + 1 rows, that is only cheap if an index delivers the rows in exactly this order
+
+-- Search sorted by title or year; id is the tiebreaker of the ORDER BY (a btree also scans backwards,
+-- so one index serves ASC and DESC). Sorting by score cannot use an index: media without ratings have no
+-- stats row and sort as 0 via COALESCE.
+CREATE INDEX IF NOT EXISTS media_title_id_idx ON media (title, id);
+CREATE INDEX IF NOT EXISTS media_year_id_idx ON media (release_year, id);
+
+-- Rating history ORDER BY created_at DESC, id DESC: replaces ratings_user_created_idx from V2 (same prefix,
+-- so user statistics and the leaderboard keep their index-only scans)
+CREATE INDEX IF NOT EXISTS ratings_user_created_id_idx ON ratings (user_id, created_at DESC, id DESC) INCLUDE (stars, media_id);
+DROP INDEX IF EXISTS ratings_user_created_idx;
+
+-- Favorites ORDER BY media_id DESC are covered by the primary key (user_id, media_id)
+
+-- NULL in a row comparison matches nothing, a medium without a year would end every cursor walk.
+-- The API always writes a year (0 = unknown), old rows get the same.
+UPDATE media SET release_year = 0 WHERE release_year IS NULL;
+ALTER TABLE media ALTER COLUMN release_year SET DEFAULT 0, ALTER COLUMN release_year SET NOT NULL;
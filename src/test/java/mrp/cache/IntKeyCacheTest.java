@@ -0,0 +1,132 @@
+package mrp.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntKeyCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private IntKeyCache<String> cache(int size, long ttlMillis) {
+        return new IntKeyCache<>(size, ttlMillis, now::get);
+    }
+
+    private String load(int key) {
+        loads.incrementAndGet();
+        return "value" + key;
+    }
+
+    @Test
+    void getOrLoad_SecondLookup_IsHit() throws SQLException {
+        IntKeyCache<String> cache = cache(100, 0);
+
+        assertEquals("value7", cache.getOrLoad(7, this::load));
+        assertEquals("value7", cache.getOrLoad(7, this::load));
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void getOrLoad_NotFound_IsNotCached() throws SQLException {
+        IntKeyCache<String> cache = cache(100, 0);
+
+        assertNull(cache.getOrLoad(1, key -> null));
+        assertNull(cache.get(1));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void get_AfterTtl_IsMiss() throws SQLException {
+        IntKeyCache<String> cache = cache(100, 1000);
+        cache.getOrLoad(1, this::load);
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+        assertEquals("value1", cache.get(1));
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(2));
+        assertNull(cache.get(1));
+
+        cache.getOrLoad(1, this::load);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidate_RemovesEntry() throws SQLException {
+        IntKeyCache<String> cache = cache(100, 0);
+        cache.getOrLoad(1, this::load);
+        cache.getOrLoad(2, this::load);
+
+        cache.invalidate(1);
+
+        assertNull(cache.getIfPresent(1));
+        assertEquals("value2", cache.getIfPresent(2));
+    }
+
+    @Test
+    void getOrLoad_InvalidatedWhileLoading_ResultIsNotCached() throws SQLException {
+        IntKeyCache<String> cache = cache(100, 0);
+
+        // the write commits after the loader read the old row
+        String value = cache.getOrLoad(1, key -> {
+            cache.invalidate(1);
+            return "old";
+        });
+
+        assertEquals("old", value);
+        assertNull(cache.getIfPresent(1));
+    }
+
+    @Test
+    void disabled_AlwaysLoads() throws SQLException {
+        IntKeyCache<String> cache = cache(0, 0);
+
+        cache.getOrLoad(1, this::load);
+        cache.getOrLoad(1, this::load);
+
+        assertFalse(cache.isEnabled());
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void put_OverMaximumSize_EvictsAndCounts() {
+        IntKeyCache<String> cache = cache(100, 0);
+
+        for (int key = 1; key <= 1000; key++) cache.put(key, "value" + key);
+
+        assertTrue(cache.size() <= 100, "size " + cache.size());
+        assertEquals(1000 - cache.size(), cache.getEvictions());
+    }
+
+    @Test
+    void hotKeys_SurviveScanOfOneOffKeys() throws SQLException {
+        IntKeyCache<String> cache = cache(100, 0);
+        for (int round = 0; round < 5; round++) {
+            for (int key = 1; key <= 80; key++) cache.getOrLoad(key, this::load);
+        }
+
+        // each hot key keeps being requested, in between a scan over ids that are requested once
+        // (80 hot + 80 new ids per round would push every hot key out of a plain LRU of 100)
+        int scanKey = 1_000;
+        for (int round = 0; round < 20; round++) {
+            for (int key = 1; key <= 80; key++) {
+                cache.getOrLoad(key, this::load);
+                cache.getOrLoad(scanKey++, this::load);
+            }
+        }
+
+        int hot = 0;
+        for (int key = 1; key <= 80; key++) {
+            if (cache.getIfPresent(key) != null) hot++;
+        }
+        assertTrue(hot >= 75, "hot keys still cached: " + hot);
+    }
+}
@@ -0,0 +1,73 @@
+package mrp.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResultCacheTest {
+
+    @Test
+    void get_OnlyHitsUnderTheSameGeneration() {
+        ResultCache<String> cache = new ResultCache<>(10_000, 1_000);
+        byte[] json = "[1,2]".getBytes();
+        cache.put("genre=action", 3, json);
+
+        assertSame(json, cache.get("genre=action", 3));
+        assertNull(cache.get("genre=action", 4), "changed since");
+        assertEquals(0, cache.size(), "the stale entry is dropped on the way");
+    }
+
+    @Test
+    void put_NewerGenerationDropsOlderEntries_OlderOneIsIgnored() {
+        ResultCache<String> cache = new ResultCache<>(10_000, 1_000);
+        cache.put("a", 1, new byte[10]);
+        cache.put("b", 1, new byte[10]);
+
+        cache.put("c", 2, new byte[10]);
+        assertEquals(1, cache.size());
+
+        cache.put("d", 1, new byte[10]);  // built before the change to 2
+        assertNull(cache.get("d", 1));
+        assertNotNull(cache.get("c", 2));
+    }
+
+    @Test
+    void put_NotSettledVersion_IsNotCached() {
+        Version version = new Version(60_000);
+        version.bump();
+        ResultCache<String> cache = new ResultCache<>(10_000, 1_000);
+
+        cache.put("a", version.generation(), new byte[10]);
+
+        assertEquals(-1, version.generation());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void put_BoundedInBytes_EvictsLeastRecentlyUsed() {
+        ResultCache<String> cache = new ResultCache<>(3 * (1_000 + 96), 1_000);
+        cache.put("a", 0, new byte[1_000]);
+        cache.put("b", 0, new byte[1_000]);
+        cache.put("c", 0, new byte[1_000]);
+        cache.get("a", 0);  // a is now newer than b
+
+        cache.put("d", 0, new byte[1_000]);
+
+        assertNotNull(cache.get("a", 0));
+        assertNull(cache.get("b", 0));
+        assertTrue(cache.bytes() <= 3 * (1_000 + 96));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    void put_LargerThanMaxEntryBytes_IsNotCached() {
+        ResultCache<String> cache = new ResultCache<>(100_000, 1_000);
+        cache.put("big", 0, new byte[1_001]);
+        assertNull(cache.get("big", 0));
+
+        ResultCache<String> disabled = new ResultCache<>(0, 1_000);
+        disabled.put("a", 0, new byte[1]);
+        assertFalse(disabled.isEnabled());
+        assertNull(disabled.get("a", 0));
+    }
+}
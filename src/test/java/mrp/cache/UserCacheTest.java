@@ -0,0 +1,105 @@
+package mrp.cache;
+
+import mrp.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private UserCache cache(int size) {
+        return new UserCache(size, 60_000, 5_000, now::get);
+    }
+
+    private User load(String username) {
+        loads.incrementAndGet();
+        if (username.startsWith("unknown")) return null;
+        User user = new User(username, "hash");
+        user.setId(username.hashCode() & 0xffff);
+        return user;
+    }
+
+    @Test
+    void getOrLoadByName_SecondLookup_IsHit_AlsoById() throws SQLException {
+        UserCache cache = cache(100);
+
+        User user = cache.getOrLoadByName("alice", this::load);
+        assertSame(user, cache.getOrLoadByName("alice", this::load));
+        assertSame(user, cache.getOrLoadById(user.getId(), id -> fail("cached by name")));
+
+        assertEquals(1, loads.get());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(2.0 / 3, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    void unknownUsername_IsCachedBriefly() throws SQLException {
+        UserCache cache = cache(100);
+
+        assertNull(cache.getOrLoadByName("unknown1", this::load));
+        assertNull(cache.getOrLoadByName("unknown1", this::load));
+        assertEquals(Optional.empty(), cache.getIfPresentByName("unknown1"));
+        assertEquals(1, loads.get());
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(6));
+        assertNull(cache.getIfPresentByName("unknown1"), "negative entries expire after a few seconds");
+        cache.getOrLoadByName("unknown1", this::load);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidate_DropsBothMaps() throws SQLException {
+        UserCache cache = cache(100);
+        User user = cache.getOrLoadByName("alice", this::load);
+
+        cache.invalidate("alice");
+
+        assertNull(cache.getIfPresentByName("alice"));
+        assertNull(cache.getIfPresentById(user.getId()));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void loadOverlappingInvalidation_IsNotCached() throws SQLException {
+        UserCache cache = cache(100);
+
+        cache.getOrLoadByName("alice", name -> {
+            cache.invalidate(name);  // e.g. the profile update commits while the old row is being read
+            return load(name);
+        });
+
+        assertNull(cache.getIfPresentByName("alice"));
+    }
+
+    @Test
+    void full_DropsEntriesToStayWithinMaximumSize() throws SQLException {
+        UserCache cache = cache(50);
+
+        for (int i = 0; i < 200; i++) cache.getOrLoadByName("user" + i, this::load);
+
+        assertTrue(cache.size() <= 50, "size " + cache.size());
+        assertTrue(cache.getEvictions() >= 150);
+    }
+
+    @Test
+    void disabled_AlwaysLoads() throws SQLException {
+        UserCache cache = new UserCache(0, 60_000, 5_000);
+
+        cache.getOrLoadByName("alice", this::load);
+        cache.getOrLoadByName("alice", this::load);
+
+        assertFalse(cache.isEnabled());
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.size());
+    }
+}
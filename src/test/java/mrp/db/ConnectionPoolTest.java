@@ -0,0 +1,247 @@
+package mrp.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class ConnectionPoolTest {
+
+    private final List<Connection> opened = new ArrayList<>();
+    private ConnectionPool pool;
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) pool.close();
+    }
+
+    private static PoolConfig config(int minIdle, int maxConnections) {
+        PoolConfig config = new PoolConfig();
+        config.setMinIdle(minIdle);
+        config.setMaxConnections(maxConnections);
+        config.setAcquireTimeoutMillis(1_000);
+        config.setHousekeepingMillis(0);  // housekeep() is called by the tests
+        return config;
+    }
+
+    // Physical connection: healthy, autocommit on
+    private Connection openMock() throws SQLException {
+        Connection raw = mock(Connection.class);
+        when(raw.getAutoCommit()).thenReturn(true);
+        when(raw.isValid(anyInt())).thenReturn(true);
+        when(raw.prepareStatement(anyString())).thenAnswer(call -> mock(PreparedStatement.class));
+        opened.add(raw);
+        return raw;
+    }
+
+    private ConnectionPool pool(PoolConfig config) {
+        pool = new ConnectionPool("test", config, this::openMock);
+        return pool;
+    }
+
+    @Test
+    void getConnection_AfterClose_ReusesPhysicalConnection() throws SQLException {
+        pool(config(0, 2));
+
+        Connection first = pool.getConnection();
+        first.close();
+        Connection second = pool.getConnection();
+
+        assertEquals(1, opened.size());
+        assertTrue(first.isClosed());
+        assertThrows(SQLException.class, first::createStatement);  // stale handle is dead
+        second.createStatement();
+        verify(opened.get(0)).createStatement();
+        verify(opened.get(0), never()).close();
+        assertEquals(1, pool.getActive());
+    }
+
+    @Test
+    void getConnection_PoolExhausted_TimesOut() throws SQLException {
+        PoolConfig config = config(0, 1);
+        config.setAcquireTimeoutMillis(50);
+        pool(config);
+
+        pool.getConnection();
+
+        assertThrows(SQLTransientConnectionException.class, pool::getConnection);
+        assertEquals(1, pool.getTimeouts());
+        assertEquals(1, opened.size());
+    }
+
+    @Test
+    void getConnection_PoolExhausted_WaiterGetsReturnedConnection() throws Exception {
+        pool(config(0, 1));
+        Connection first = pool.getConnection();
+
+        CompletableFuture<Connection> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.getConnection();
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        while (pool.getWaiting() == 0) Thread.sleep(5);
+        first.close();
+
+        assertNotNull(waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(1, opened.size());
+    }
+
+    @Test
+    void close_OpenTransaction_IsRolledBackAndAutocommitReset() throws SQLException {
+        pool(config(0, 1));
+        Connection conn = pool.getConnection();
+        Connection raw = opened.get(0);
+        when(raw.getAutoCommit()).thenReturn(false);
+
+        conn.close();
+
+        verify(raw).rollback();
+        verify(raw).setAutoCommit(true);
+        assertEquals(1, pool.getIdle());
+    }
+
+    @Test
+    void getConnection_DeadIdleConnection_IsReplaced() throws SQLException {
+        PoolConfig config = config(0, 2);
+        config.setValidationIntervalMillis(0);  // validate on every borrow
+        pool(config);
+        pool.getConnection().close();
+        when(opened.get(0).isValid(anyInt())).thenReturn(false);
+
+        pool.getConnection();
+
+        assertEquals(2, opened.size());
+        assertEquals(1, pool.getValidationFailures());
+        verify(opened.get(0)).close();
+        assertEquals(1, pool.getTotal());
+    }
+
+    @Test
+    void getConnection_FactoryFails_ReleasesSlot() {
+        pool = new ConnectionPool("test", config(0, 1), () -> {
+            throw new SQLException("connection refused");
+        });
+
+        assertThrows(SQLException.class, pool::getConnection);
+        assertThrows(SQLException.class, pool::getConnection);  // not a timeout: the slot is free again
+        assertEquals(0, pool.getTotal());
+        assertEquals(0, pool.getTimeouts());
+    }
+
+    @Test
+    void housekeep_ClosesUnusedConnectionsAboveMinIdle() throws Exception {
+        PoolConfig config = config(1, 3);
+        config.setIdleTimeoutMillis(1);
+        pool(config);
+        Connection a = pool.getConnection();
+        Connection b = pool.getConnection();
+        Connection c = pool.getConnection();
+        a.close();
+        b.close();
+        c.close();
+        Thread.sleep(5);
+
+        pool.housekeep();
+
+        assertEquals(1, pool.getIdle());
+        assertEquals(1, pool.getTotal());
+        long physicallyClosed = opened.stream()
+                .filter(raw -> mockingDetails(raw).getInvocations().stream()
+                        .anyMatch(call -> call.getMethod().getName().equals("close")))
+                .count();
+        assertEquals(2, physicallyClosed);
+    }
+
+    @Test
+    void housekeep_OpensConnectionsUpToMinIdle() {
+        pool(config(2, 5));
+
+        pool.housekeep();
+
+        assertEquals(2, pool.getIdle());
+        assertEquals(2, pool.getCreated());
+    }
+
+    @Test
+    void housekeep_ConnectionHeldTooLong_IsReportedOnce() throws Exception {
+        PoolConfig config = config(0, 1);
+        config.setLeakDetectionMillis(1);
+        pool(config);
+        pool.getConnection();
+        Thread.sleep(5);
+
+        pool.housekeep();
+        pool.housekeep();
+
+        assertEquals(1, pool.getLeaks());
+    }
+
+    @Test
+    void prepareStatement_SameSqlOnLaterBorrow_IsServedFromCache() throws SQLException {
+        pool(config(0, 1));
+        String sql = "SELECT * FROM media WHERE id = ?";
+
+        PreparedStatement first;
+        try (Connection conn = pool.getConnection(); PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, 1);
+            first = stmt;
+        }
+        try (Connection conn = pool.getConnection(); PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, 2);
+            assertSame(conn, stmt.getConnection());
+        }
+
+        Connection raw = opened.get(0);
+        verify(raw, times(1)).prepareStatement(sql);
+        assertTrue(first.isClosed());
+        assertEquals(1, pool.getStatementHits());
+        assertEquals(1, pool.getStatementMisses());
+    }
+
+    @Test
+    void prepareStatement_SameSqlOpenTwice_SecondIsNotShared() throws SQLException {
+        pool(config(0, 1));
+        String sql = "SELECT 1";
+
+        try (Connection conn = pool.getConnection()) {
+            PreparedStatement outer = conn.prepareStatement(sql);
+            PreparedStatement inner = conn.prepareStatement(sql);
+            inner.close();
+            outer.execute();
+        }
+
+        verify(opened.get(0), times(2)).prepareStatement(sql);
+    }
+
+    @Test
+    void close_StatementLeftOpen_IsResetForNextBorrow() throws SQLException {
+        pool(config(0, 1));
+        String sql = "SELECT * FROM ratings WHERE user_id = ?";
+
+        Connection conn = pool.getConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql);
+        stmt.setInt(1, 7);
+        conn.close();  // statement not closed by the caller
+
+        assertTrue(stmt.isClosed());
+        assertThrows(SQLException.class, stmt::executeQuery);
+        try (Connection again = pool.getConnection()) {
+            again.prepareStatement(sql).close();
+        }
+        assertEquals(1, pool.getStatementHits());
+    }
+}
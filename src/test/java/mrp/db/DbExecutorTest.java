@@ -0,0 +1,71 @@
+package mrp.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DbExecutorTest {
+
+    private final ReadYourWrites readYourWrites = new ReadYourWrites(60_000);
+
+    @AfterEach
+    void tearDown() {
+        QueryStats.unbind();
+        readYourWrites.restore(null);
+    }
+
+    @Test
+    void submit_CarriesRequestContextToTheExecutorThread() {
+        DbExecutor executor = new DbExecutor(2, 10, readYourWrites);
+        QueryStats stats = QueryStats.bind();
+        Runnable end = readYourWrites.bind(1, true);
+
+        CompletableFuture<Boolean> seen = executor.submit(() -> QueryStats.current() == stats && readYourWrites.pinned());
+        // a stage started from a completed call belongs to the same request
+        CompletableFuture<Boolean> chained = seen.thenCompose(first -> executor.submit(() -> QueryStats.current() == stats));
+
+        assertTrue(seen.join());
+        assertTrue(chained.join());
+        end.run();
+    }
+
+    @Test
+    void submit_ExecutorThreadIsCleanAfterTheCall() {
+        DbExecutor executor = new DbExecutor(1, 10, readYourWrites);
+        QueryStats.bind();
+        executor.submit(() -> null).join();
+        QueryStats.unbind();
+
+        assertNull(executor.submit(QueryStats::current).join());
+    }
+
+    @Test
+    void submit_QueueFull_FailsRightAway() throws InterruptedException {
+        DbExecutor executor = new DbExecutor(1, 1, readYourWrites);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(() -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+        running.await();
+        executor.submit(() -> null);  // waits in the queue
+
+        CompletableFuture<Object> rejected = executor.submit(() -> null);
+
+        CompletionException e = assertThrows(CompletionException.class, rejected::join);
+        assertInstanceOf(SQLTransientConnectionException.class, e.getCause());
+        release.countDown();
+    }
+}
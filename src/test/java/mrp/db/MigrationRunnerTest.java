@@ -0,0 +1,63 @@
+package mrp.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+public class MigrationRunnerTest {
+
+    @Test
+    void scan_SortsByNumericVersion() throws Exception {
+        List<MigrationRunner.Migration> migrations = MigrationRunner.scan("db/migration-test");
+
+        assertEquals(List.of(1, 2, 10), migrations.stream().map(MigrationRunner.Migration::version).toList());
+        assertEquals("add b", migrations.get(1).description());
+        assertEquals("ALTER TABLE a ADD COLUMN b INT;\n", migrations.get(1).script());
+    }
+
+    @Test
+    void scan_ShippedMigrationsStartAtVersion1() throws Exception {
+        List<MigrationRunner.Migration> migrations = MigrationRunner.scan("db/migration");
+
+        assertEquals(1, migrations.get(0).version());
+        assertTrue(migrations.get(0).script().contains("CREATE TABLE IF NOT EXISTS ratings"));
+    }
+
+    @Test
+    void checksum_IgnoresLineEndingsButNotContent() {
+        String unix = "CREATE INDEX x ON t (a);\nCREATE INDEX y ON t (b);\n";
+
+        assertEquals(MigrationRunner.checksum(unix), MigrationRunner.checksum(unix.replace("\n", "\r\n")));
+        assertNotEquals(MigrationRunner.checksum(unix), MigrationRunner.checksum(unix.replace("(b)", "(c)")));
+    }
+
+    @Test
+    void migrate_ChangedAppliedMigration_FailsAndReleasesLock() throws Exception {
+        DatabaseManager db = mock(DatabaseManager.class);
+        Connection conn = mock(Connection.class);
+        Statement stmt = mock(Statement.class);
+        ResultSet applied = mock(ResultSet.class);
+        when(db.getConnection()).thenReturn(conn);
+        when(conn.createStatement()).thenReturn(stmt);
+        when(stmt.executeQuery(anyString())).thenReturn(applied);
+        when(applied.next()).thenReturn(true, false);
+        when(applied.getInt(1)).thenReturn(1);
+        when(applied.getString(2)).thenReturn("checksum of an older V1");
+
+        MigrationRunner runner = new MigrationRunner(db, "db/migration-test");
+        IllegalStateException e = assertThrows(IllegalStateException.class, runner::migrate);
+
+        assertTrue(e.getMessage().contains("V1"));
+        verify(stmt).execute(startsWith("SELECT pg_advisory_unlock("));
+        verify(conn, never()).commit();  // nothing applied
+        verify(conn).close();
+    }
+}
@@ -0,0 +1,116 @@
+package mrp.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class QueryStatsTest {
+
+    private ConnectionPool pool;
+
+    @AfterEach
+    void tearDown() {
+        QueryStats.unbind();
+        if (pool != null) pool.close();
+    }
+
+    // Every statement returns a result with two rows
+    private static Connection openMock() throws SQLException {
+        Connection raw = mock(Connection.class);
+        when(raw.getAutoCommit()).thenReturn(true);
+        when(raw.isValid(anyInt())).thenReturn(true);
+        when(raw.prepareStatement(anyString())).thenAnswer(call -> {
+            PreparedStatement statement = mock(PreparedStatement.class);
+            when(statement.executeQuery()).thenAnswer(q -> {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.next()).thenReturn(true, true, false);
+                return rs;
+            });
+            return statement;
+        });
+        return raw;
+    }
+
+    private ConnectionPool pool() {
+        PoolConfig config = new PoolConfig();
+        config.setMinIdle(0);
+        config.setMaxConnections(2);
+        config.setHousekeepingMillis(0);
+        pool = new ConnectionPool("test", config, QueryStatsTest::openMock);
+        return pool;
+    }
+
+    private static void query(Connection conn, String sql) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                // read all rows
+            }
+        }
+    }
+
+    @Test
+    void statements_WhileBound_CountQueriesRowsAndRepeats() throws SQLException {
+        pool();
+        QueryStats stats = QueryStats.bind();
+
+        try (Connection conn = pool.getConnection()) {
+            query(conn, "SELECT * FROM users WHERE username = ?");
+            for (int i = 0; i < 3; i++) query(conn, "SELECT * FROM media WHERE id = ?");
+            conn.commit();
+        }
+
+        assertEquals(4, stats.getQueries());
+        assertEquals(5, stats.getRoundTrips(), "4 statements + commit");
+        assertEquals(8, stats.getRows());
+        Map.Entry<String, Integer> repeated = stats.mostRepeated();
+        assertEquals("SELECT * FROM media WHERE id = ?", repeated.getKey());
+        assertEquals(3, repeated.getValue());
+    }
+
+    @Test
+    void mostRepeated_NoStatementTwice_IsNull() throws SQLException {
+        pool();
+        QueryStats stats = QueryStats.bind();
+
+        try (Connection conn = pool.getConnection()) {
+            query(conn, "SELECT 1");
+            query(conn, "SELECT 2");
+        }
+
+        assertNull(stats.mostRepeated());
+    }
+
+    @Test
+    void statements_NotBound_AreNotWrapped() throws SQLException {
+        pool();
+
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT 1")) {
+            ResultSet rs = stmt.executeQuery();
+            assertTrue(mockingDetails(rs).isMock(), "result set comes straight from the driver");
+        }
+        assertNull(QueryStats.current());
+    }
+
+    @Test
+    void queryBudget_OpenAndClose_BindsStatsOnlyForTheRequest() {
+        QueryBudget budget = new QueryBudget(1, false);
+
+        Runnable end = budget.open("GET", "/api/media");
+        assertNotNull(QueryStats.current());
+        end.run();
+
+        assertNull(QueryStats.current());
+    }
+}
@@ -0,0 +1,64 @@
+package mrp.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReadYourWritesTest {
+
+    @Test
+    void pinned_DuringWriteRequestAndForWindowAfterIt() {
+        ReadYourWrites ryw = new ReadYourWrites(60_000);
+
+        Runnable end = ryw.bind(1, true);
+        assertTrue(ryw.pinned(), "reads inside a write request go to the primary");
+        end.run();
+        assertFalse(ryw.pinned(), "no user bound after the request");
+
+        Runnable read = ryw.bind(1, false);
+        assertTrue(ryw.pinned(), "next request of the same user is still within the window");
+        read.run();
+
+        Runnable other = ryw.bind(2, false);
+        assertFalse(ryw.pinned(), "other users read from the replica");
+        other.run();
+    }
+
+    @Test
+    void pinned_EndsAfterWindow() throws InterruptedException {
+        ReadYourWrites ryw = new ReadYourWrites(20);
+        ryw.bind(1, true).run();
+
+        Thread.sleep(50);
+
+        Runnable end = ryw.bind(1, false);
+        assertFalse(ryw.pinned());
+        end.run();
+    }
+
+    @Test
+    void pinned_ZeroWindowOnlyPinsTheWriteRequestItself() {
+        ReadYourWrites ryw = new ReadYourWrites(0);
+
+        Runnable end = ryw.bind(1, true);
+        assertTrue(ryw.pinned());
+        end.run();
+
+        Runnable next = ryw.bind(1, false);
+        assertFalse(ryw.pinned());
+        next.run();
+    }
+
+    @Test
+    void pinned_UserIsBoundPerThread() throws Exception {
+        ReadYourWrites ryw = new ReadYourWrites(60_000);
+        Runnable end = ryw.bind(1, true);
+
+        boolean otherThread = CompletableFuture.supplyAsync(ryw::pinned).get();
+
+        assertFalse(otherThread);
+        end.run();
+    }
+}
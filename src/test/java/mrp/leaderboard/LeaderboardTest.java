@@ -0,0 +1,141 @@
+package mrp.leaderboard;
+
+import mrp.model.LeaderboardRank;
+import mrp.model.Page;
+import mrp.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LeaderboardTest {
+
+    private static User user(int id, String username, int ratings) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername(username);
+        user.setRatingCount(ratings);
+        return user;
+    }
+
+    private static List<String> names(List<User> users) {
+        return users.stream().map(User::getUsername).toList();
+    }
+
+    @Test
+    void all_OrdersByRatingsThenUsername() {
+        Leaderboard leaderboard = new Leaderboard();
+        leaderboard.load(List.of(user(1, "carol", 2), user(2, "alice", 5), user(3, "bob", 2), user(4, "dave", 0)));
+
+        assertEquals(List.of("alice", "bob", "carol", "dave"), names(leaderboard.all()));
+        assertEquals(5, leaderboard.all().get(0).getRatingCount());
+    }
+
+    @Test
+    void adjust_MovesUserAndIgnoresUnknown() {
+        Leaderboard leaderboard = new Leaderboard();
+        leaderboard.load(List.of(user(1, "alice", 1), user(2, "bob", 1), user(3, "carol", 1)));
+
+        leaderboard.adjust(3, 1);
+        leaderboard.adjust(1, -1);
+        leaderboard.adjust(99, 1);
+
+        assertEquals(List.of("carol", "bob", "alice"), names(leaderboard.all()));
+        assertEquals(0, leaderboard.all().get(2).getRatingCount());
+    }
+
+    @Test
+    void adjustAll_AppliesEveryDelta() {
+        Leaderboard leaderboard = new Leaderboard();
+        leaderboard.load(List.of(user(1, "alice", 3), user(2, "bob", 2), user(3, "carol", 1)));
+
+        leaderboard.adjustAll(Map.of(1, -3, 3, 4));
+
+        assertEquals(List.of("carol", "bob", "alice"), names(leaderboard.all()));
+    }
+
+    @Test
+    void page_FollowsCursorToTheEnd() {
+        Leaderboard leaderboard = new Leaderboard();
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 25; i++) users.add(user(i + 1, String.format("user%02d", i), i % 4));
+        leaderboard.load(users);
+
+        List<String> paged = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            Page<User> page = leaderboard.page(cursor, 10);
+            paged.addAll(names(page.items()));
+            cursor = page.next();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(names(leaderboard.all()), paged);
+    }
+
+    @Test
+    void page_UserMovesBetweenPages_NextPageStartsAfterCursorPosition() {
+        Leaderboard leaderboard = new Leaderboard();
+        leaderboard.load(List.of(user(1, "a", 4), user(2, "b", 3), user(3, "c", 2), user(4, "d", 1)));
+
+        Page<User> first = leaderboard.page(null, 2);
+        leaderboard.adjust(1, -4);  // "a" drops behind the cursor position
+
+        assertEquals(List.of("a", "b"), names(first.items()));
+        assertEquals(List.of("c", "d"), names(leaderboard.page(first.next(), 2).items()));
+    }
+
+    @Test
+    void page_InvalidCursor_Throws() {
+        Leaderboard leaderboard = new Leaderboard();
+        assertThrows(IllegalArgumentException.class, () -> leaderboard.page("not-a-cursor", 10));
+    }
+
+    @Test
+    void rankOf_ReturnsRankAndNeighbours() {
+        Leaderboard leaderboard = new Leaderboard();
+        leaderboard.load(List.of(user(1, "a", 5), user(2, "b", 4), user(3, "c", 3), user(4, "d", 2), user(5, "e", 1)));
+
+        LeaderboardRank rank = leaderboard.rankOf("b", 2);
+
+        assertEquals(2, rank.rank());
+        assertEquals(5, rank.total());
+        assertEquals("b", rank.user().getUsername());
+        assertEquals(List.of("a"), names(rank.above()));
+        assertEquals(List.of("c", "d"), names(rank.below()));
+        assertNull(leaderboard.rankOf("nobody", 2));
+    }
+
+    @Test
+    void randomChanges_MatchSortedReference() {
+        Random random = new Random(42);
+        Leaderboard leaderboard = new Leaderboard();
+        List<User> reference = new ArrayList<>();
+        for (int i = 0; i < 500; i++) reference.add(user(i + 1, "u" + random.nextInt(1_000_000) + "_" + i, random.nextInt(20)));
+        leaderboard.load(reference);
+
+        for (int step = 0; step < 5_000; step++) {
+            User user = reference.get(random.nextInt(reference.size()));
+            int delta = random.nextBoolean() ? 1 : -1;
+            if (user.getRatingCount() + delta < 0) continue;
+            user.setRatingCount(user.getRatingCount() + delta);
+            leaderboard.adjust(user.getId(), delta);
+        }
+        reference.sort(Comparator.comparingInt(User::getRatingCount).reversed().thenComparing(User::getUsername));
+
+        assertEquals(names(reference), names(leaderboard.all()));
+        for (int i = 0; i < reference.size(); i += 37) {
+            LeaderboardRank rank = leaderboard.rankOf(reference.get(i).getUsername(), 1);
+            assertEquals(i + 1, rank.rank());
+            assertEquals(reference.get(i).getRatingCount(), rank.user().getRatingCount());
+            if (i > 0) assertEquals(reference.get(i - 1).getUsername(), rank.above().get(0).getUsername());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package mrp.metrics;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsRegistryTest {
+
+    private MetricsRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new MetricsRegistry();
+    }
+
+    @Test
+    void histogram_RendersCumulativeBucketsSumAndCount() {
+        Histogram histogram = registry.histogram("test_seconds", "Test latency");
+        histogram.observeNanos(TimeUnit.MICROSECONDS.toNanos(300));  // <= 0.0005
+        histogram.observeNanos(TimeUnit.MILLISECONDS.toNanos(30));   // <= 0.05
+        histogram.observeNanos(TimeUnit.SECONDS.toNanos(20));        // +Inf
+
+        String text = registry.render();
+
+        assertTrue(text.contains("# HELP test_seconds Test latency\n"));
+        assertTrue(text.contains("# TYPE test_seconds histogram\n"));
+        assertTrue(text.contains("test_seconds_bucket{le=\"5.0E-4\"} 1\n"));
+        assertTrue(text.contains("test_seconds_bucket{le=\"0.025\"} 1\n"));
+        assertTrue(text.contains("test_seconds_bucket{le=\"0.05\"} 2\n"));
+        assertTrue(text.contains("test_seconds_bucket{le=\"10.0\"} 2\n"));
+        assertTrue(text.contains("test_seconds_bucket{le=\"+Inf\"} 3\n"));
+        assertTrue(text.contains("test_seconds_count 3\n"));
+        assertEquals(20.0303, histogram.getSumSeconds(), 1e-9);
+    }
+
+    @Test
+    void histogram_SameNameAndLabels_ReturnsSameInstance() {
+        Histogram a = registry.histogram("x_seconds", "X", MetricsRegistry.label("mode", "a"));
+        Histogram b = registry.histogram("x_seconds", "X", MetricsRegistry.label("mode", "a"));
+        Histogram c = registry.histogram("x_seconds", "X", MetricsRegistry.label("mode", "b"));
+
+        assertSame(a, b);
+        assertNotSame(a, c);
+    }
+
+    @Test
+    void counterAndGauge_ReadSupplierOnRender() {
+        long[] value = {1};
+        registry.counter("jobs_total", "Jobs", MetricsRegistry.label("reason", "timeout"), () -> value[0]);
+        registry.gauge("queue_depth", "Queue", () -> 7);
+        value[0] = 5;
+
+        String text = registry.render();
+
+        assertTrue(text.contains("# TYPE jobs_total counter\n"));
+        assertTrue(text.contains("jobs_total{reason=\"timeout\"} 5.0\n"));
+        assertTrue(text.contains("# TYPE queue_depth gauge\nqueue_depth 7.0\n"));
+    }
+
+    @Test
+    void register_SameNameWithOtherType_Throws() {
+        registry.gauge("depth", "Depth", () -> 0);
+        assertThrows(IllegalArgumentException.class, () -> registry.histogram("depth", "Depth"));
+    }
+
+    @Test
+    void label_EscapesQuotesAndBackslashes() {
+        assertEquals("route=\"/a\\\"b\\\\c\\n\"", MetricsRegistry.label("route", "/a\"b\\c\n"));
+    }
+
+    @Test
+    void requestMetrics_SplitsByStatusWithRouteLabels() {
+        RequestMetrics metrics = new RequestMetrics(registry, "GET", "/api/media/{id}");
+        metrics.observe(200, 1_000_000);
+        metrics.observe(200, 2_000_000);
+        metrics.observe(404, 1_000_000);
+
+        String text = registry.render();
+
+        assertTrue(text.contains(RequestMetrics.NAME
+                + "_count{method=\"GET\",route=\"/api/media/{id}\",status=\"200\"} 2\n"));
+        assertTrue(text.contains(RequestMetrics.NAME
+                + "_count{method=\"GET\",route=\"/api/media/{id}\",status=\"404\"} 1\n"));
+    }
+}
@@ -0,0 +1,111 @@
+package mrp.repository;
+
+import mrp.db.DatabaseManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class BatchWriterTest {
+
+    private DatabaseManager db;
+    private Connection conn;
+    private final List<List<Integer>> flushed = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        db = mock(DatabaseManager.class);
+        conn = mock(Connection.class);
+        when(db.getConnection()).thenReturn(conn);
+    }
+
+    // Inserts every item once, like INSERT ... ON CONFLICT DO NOTHING RETURNING
+    private final Set<Integer> table = new HashSet<>();
+
+    private boolean[] insert(Connection c, List<Integer> items) {
+        flushed.add(items);
+        Set<Integer> returned = new HashSet<>();
+        for (Integer item : items) {
+            if (table.add(item)) returned.add(item);
+        }
+        return BatchWriter.inserted(items, returned);
+    }
+
+    @Test
+    void submit_ConcurrentCallers_AreWrittenTogetherWithOwnResults() throws Exception {
+        BatchWriter<Integer> writer = new BatchWriter<>("test", db, 100, 50, this::insert);
+        table.add(7);  // already liked
+
+        ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor();
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            int item = i;
+            results.add(callers.submit(() -> writer.submit(item)));
+        }
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i != 7, results.get(i).get());
+        }
+        callers.shutdown();
+
+        assertTrue(writer.getFlushes() < 20, "expected batching, got " + writer.getFlushes() + " flushes");
+        verify(conn, times((int) writer.getFlushes())).commit();
+    }
+
+    @Test
+    void inserted_SameItemTwiceInOneBatch_OnlyFirstCounts() {
+        assertArrayEquals(new boolean[]{true, false, true},
+                BatchWriter.inserted(List.of(1, 1, 2), new HashSet<>(Set.of(1, 2))));
+    }
+
+    @Test
+    void submit_BatchFails_RetriesRowByRowSoOnlyBadRowFails() throws Exception {
+        BatchWriter<Integer> writer = new BatchWriter<>("test", db, 100, 50, (c, items) -> {
+            if (items.contains(-1)) throw new SQLException("violates foreign key constraint", "23503");
+            return insert(c, items);
+        });
+
+        ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor();
+        Future<Boolean> good = callers.submit(() -> writer.submit(1));
+        Future<Boolean> bad = callers.submit(() -> writer.submit(-1));
+
+        assertTrue(good.get());
+        Exception e = assertThrows(Exception.class, bad::get);
+        assertInstanceOf(SQLException.class, e.getCause());
+        verify(conn, atLeastOnce()).rollback();
+        callers.shutdown();
+    }
+
+    @Test
+    void submit_DatabaseUnavailable_FailsWholeBatchWithoutRowByRowRetry() throws Exception {
+        when(db.getConnection()).thenThrow(new SQLException("Timeout waiting for a connection", "08001"));
+        // batch size 5 with a long linger: the 5 items below are flushed together as one batch
+        BatchWriter<Integer> writer = new BatchWriter<>("test", db, 5, 10_000, this::insert);
+
+        ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor();
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            int item = i;
+            results.add(callers.submit(() -> writer.submit(item)));
+        }
+        for (Future<Boolean> result : results) {
+            Exception e = assertThrows(Exception.class, result::get);
+            assertInstanceOf(SQLException.class, e.getCause());
+        }
+        callers.shutdown();
+
+        // one attempt for the batch, not one more per row
+        verify(db, times(1)).getConnection();
+    }
+}
@@ -0,0 +1,69 @@
+package mrp.repository;
+
+import mrp.db.DatabaseManager;
+import mrp.repository.MediaRepository.SearchQuery;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class PageCursorTest {
+
+    @Test
+    void encodeDecode_RoundTripKeepsKeyWithSeparators() {
+        PageCursor cursor = new PageCursor("title", "Star Wars\nEpisode IV, ä", 42);
+
+        String token = cursor.encode();
+
+        assertTrue(token.matches("[A-Za-z0-9_-]+"), "token must be safe in a URL without escaping");
+        assertEquals(cursor, PageCursor.decode(token, "title"));
+    }
+
+    @Test
+    void decode_NoTokenIsFirstPage() {
+        assertNull(PageCursor.decode(null, "id"));
+        assertNull(PageCursor.decode("", "id"));
+    }
+
+    @Test
+    void decode_RejectsGarbageAndCursorOfOtherSort() {
+        String titleCursor = new PageCursor("title", "Alien", 7).encode();
+
+        assertThrows(IllegalArgumentException.class, () -> PageCursor.decode(titleCursor, "year"));
+        assertThrows(IllegalArgumentException.class, () -> PageCursor.decode("not base64!", "id"));
+        assertThrows(IllegalArgumentException.class, () -> PageCursor.decode(new PageCursor("id", null, 1).encode().substring(0, 3), "id"));
+    }
+
+    @Test
+    void buildSearchPage_BindsKeysetAfterFiltersAndOneRowMoreThanLimit() {
+        MediaRepository repo = new MediaRepository(mock(DatabaseManager.class));
+        String cursor = new PageCursor("score", "3.5000000000000000", 12).encode();
+
+        SearchQuery first = repo.buildSearchPage(Map.of("genre", "drama", "sortBy", "score"), null, 20);
+        SearchQuery next = repo.buildSearchPage(Map.of("genre", "drama", "sortBy", "score"), cursor, 20);
+
+        assertFalse(first.sql().contains("< (?, ?)"));
+        assertTrue(first.sql().endsWith("LIMIT ?"));
+        assertEquals(List.of("%drama%", 21), first.values());
+        assertTrue(next.sql().contains("AND (COALESCE(s.avg_score, 0), m.id) < (?, ?) ORDER BY avg_score DESC, m.id DESC LIMIT ?"));
+        assertEquals(List.of("%drama%", new BigDecimal("3.5000000000000000"), 12, 21), next.values());
+        // canonical SQL: same filters and page type -> same String object for the statement cache
+        assertSame(next.sql(), repo.buildSearchPage(Map.of("genre", "x", "sortBy", "score"), cursor, 5).sql());
+    }
+
+    @Test
+    void buildSearch_WithoutPagingHasNoLimit() {
+        MediaRepository repo = new MediaRepository(mock(DatabaseManager.class));
+
+        SearchQuery query = repo.buildSearch(Map.of("sortBy", "year"));
+
+        assertTrue(query.sql().endsWith("ORDER BY m.release_year DESC, m.id DESC "));
+        assertEquals("year", query.sort());
+        assertThrows(IllegalArgumentException.class,
+                () -> repo.buildSearchPage(Map.of("sortBy", "year"), new PageCursor("id", null, 3).encode(), 10));
+    }
+}
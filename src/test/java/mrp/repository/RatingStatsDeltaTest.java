@@ -0,0 +1,48 @@
+package mrp.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class RatingStatsDeltaTest {
+
+    @Test
+    void create_AddsOneRatingWithItsStars() {
+        // count, sum, stars_1 .. stars_5
+        assertArrayEquals(new int[]{1, 4, 0, 0, 0, 1, 0}, RatingRepository.statsDelta(4, 0));
+    }
+
+    @Test
+    void update_MovesTheRatingBetweenBuckets_CountUnchanged() {
+        assertArrayEquals(new int[]{0, 3, 0, -1, 0, 0, 1}, RatingRepository.statsDelta(5, 2));
+    }
+
+    @Test
+    void delete_RemovesOneRatingWithItsStars() {
+        assertArrayEquals(new int[]{-1, -1, -1, 0, 0, 0, 0}, RatingRepository.statsDelta(0, 1));
+    }
+
+    @Test
+    void applyStatsDelta_BindsMediaIdAndDeltaInColumnOrder() throws SQLException {
+        Connection conn = mock(Connection.class);
+        PreparedStatement stmt = mock(PreparedStatement.class);
+        when(conn.prepareStatement(anyString())).thenReturn(stmt);
+
+        RatingRepository.applyStatsDelta(conn, 42, 3, 5);
+
+        verify(stmt).setInt(1, 42);
+        verify(stmt).setInt(2, 0);   // rating_count
+        verify(stmt).setInt(3, -2);  // star_sum
+        verify(stmt).setInt(4, 0);
+        verify(stmt).setInt(5, 0);
+        verify(stmt).setInt(6, 1);   // stars_3
+        verify(stmt).setInt(7, 0);
+        verify(stmt).setInt(8, -1);  // stars_5
+        verify(stmt).executeUpdate();
+    }
+}
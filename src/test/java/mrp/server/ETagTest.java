@@ -0,0 +1,97 @@
+package mrp.server;
+
+import mrp.cache.Version;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ETagTest {
+
+    private static HttpRequest request(String target, String ifNoneMatch) throws IOException {
+        String raw = "GET " + target + " HTTP/1.1\r\n" +
+                (ifNoneMatch != null ? "If-None-Match: " + ifNoneMatch + "\r\n" : "") +
+                "\r\n";
+        return HttpRequest.parse(new ByteArrayInputStream(raw.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void matches_ListWeakWildcardAndEncodingSuffix() throws IOException {
+        String etag = "\"abc\"";
+
+        assertTrue(ETag.matches(request("/x", "\"abc\""), etag));
+        assertTrue(ETag.matches(request("/x", "\"other\", W/\"abc\""), etag));
+        assertTrue(ETag.matches(request("/x", "\"abc-gzip\""), etag), "tag of the compressed body");
+        assertTrue(ETag.matches(request("/x", "*"), etag));
+        assertFalse(ETag.matches(request("/x", "\"abcd\""), etag));
+        assertFalse(ETag.matches(request("/x", null), etag));
+        assertFalse(ETag.matches(request("/x", "\"abc\""), null));
+    }
+
+    @Test
+    void ofVersion_SameForReorderedQueryAndChangesWithVersion() throws IOException {
+        Version version = new Version(0);
+        String stamp = version.stamp();
+
+        assertEquals(ETag.ofVersion(stamp, request("/api/media?genre=a&sortBy=title", null)),
+                ETag.ofVersion(stamp, request("/api/media?sortBy=title&genre=a", null)));
+        assertNotEquals(ETag.ofVersion(stamp, request("/api/media?genre=a", null)),
+                ETag.ofVersion(stamp, request("/api/media?genre=b", null)));
+
+        version.bump();
+        assertNotEquals(ETag.ofVersion(stamp, request("/api/media", null)),
+                ETag.ofVersion(version.stamp(), request("/api/media", null)));
+    }
+
+    @Test
+    void version_NoStampWhileChangeIsYoungerThanSettleTime() {
+        Version version = new Version(60_000);
+        assertNotNull(version.stamp());
+
+        version.bump();
+
+        assertNull(version.stamp(), "a replica may not have the change yet");
+    }
+
+    @Test
+    void dispatch_MatchingIfNoneMatch_Returns304WithoutBody() throws IOException {
+        Router router = new Router();
+        router.addRoute("GET", "/api/media/{id}", req -> HttpResponse.ok("{\"id\":1}").etagFromBody());
+        RequestDispatcher dispatcher = new RequestDispatcher(router, new ServerConfig());
+
+        HttpResponse full = dispatcher.dispatch(request("/api/media/1", null));
+        String etag = full.getHeader("ETag");
+        assertEquals(200, full.getStatusCode());
+        assertNotNull(etag);
+
+        HttpResponse conditional = dispatcher.dispatch(request("/api/media/1", etag));
+        assertEquals(304, conditional.getStatusCode());
+        assertEquals(etag, conditional.getHeader("ETag"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        conditional.writeTo(out);
+        String raw = out.toString(StandardCharsets.ISO_8859_1);
+        assertTrue(raw.startsWith("HTTP/1.1 304 Not Modified\r\n"));
+        assertFalse(raw.contains("Content-Length"));
+        assertTrue(raw.endsWith("\r\n\r\n"), "no body");
+
+        assertEquals(200, dispatcher.dispatch(request("/api/media/1", "\"stale\"")).getStatusCode());
+    }
+
+    @Test
+    void compressedBody_GetsEncodingSpecificTag() throws IOException {
+        ServerConfig config = new ServerConfig();
+        config.setCompressionMinBytes(0);
+        HttpResponse response = HttpResponse.ok("{\"items\":[\"" + "x".repeat(500) + "\"]}").etagFromBody();
+        String etag = response.getHeader("ETag");
+        String raw = "GET /api/media HTTP/1.1\r\nAccept-Encoding: gzip\r\n\r\n";
+
+        new ResponseCompressor(config).apply(HttpRequest.parse(new ByteArrayInputStream(raw.getBytes(StandardCharsets.UTF_8))), response);
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals(etag.substring(0, etag.length() - 1) + "-gzip\"", response.getHeader("ETag"));
+    }
+}
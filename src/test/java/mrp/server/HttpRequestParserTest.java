@@ -0,0 +1,233 @@
+package mrp.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HttpRequestParserTest {
+
+    private static HttpRequestParser parserFor(String raw, ServerConfig config) {
+        return new HttpRequestParser(new ByteArrayInputStream(raw.getBytes(StandardCharsets.UTF_8)), config);
+    }
+
+    @Test
+    void next_ParsesRequestLineQueryAndHeaders() throws IOException {
+        HttpRequest request = parserFor(
+                "get /api/media?genre=action&sortBy=score HTTP/1.1\r\n" +
+                "Host: localhost\r\n" +
+                "AUTHORIZATION: Bearer max-mrpToken\r\n\r\n", new ServerConfig()).next();
+
+        assertEquals("GET", request.getMethod());
+        assertEquals("/api/media", request.getPath());
+        assertEquals("HTTP/1.1", request.getVersion());
+        assertEquals("action", request.getQueryParam("genre"));
+        assertEquals("score", request.getQueryParam("sortBy"));
+        assertEquals("max-mrpToken", request.getToken());
+        assertEquals("localhost", request.getHeader("host"));
+        assertEquals("localhost", request.getHeaders().get("host")); // old lowercase map still works
+        assertNull(request.getBody());
+    }
+
+    @Test
+    void next_ReadsBodyByByteCountForMultiByteUtf8() throws IOException {
+        String body = "{\"bio\":\"Ich liebe Filme! äöü €\"}";
+        int byteLength = body.getBytes(StandardCharsets.UTF_8).length;
+        HttpRequestParser parser = parserFor(
+                "PUT /api/users/max/profile HTTP/1.1\r\nContent-Length: " + byteLength + "\r\n\r\n" + body +
+                "GET /api/leaderboard HTTP/1.1\r\n\r\n", new ServerConfig());
+
+        HttpRequest first = parser.next();
+        assertEquals(body, first.getBody());
+
+        // The following pipelined request must start exactly after the body
+        HttpRequest second = parser.next();
+        assertEquals("/api/leaderboard", second.getPath());
+        assertNull(parser.next()); // clean end of connection
+    }
+
+    @Test
+    void next_DecodesChunkedBody() throws IOException {
+        HttpRequest request = parserFor(
+                "POST /api/media HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n" +
+                "5\r\n{\"a\":\r\n4;ext=1\r\n\"b\"}\r\n0\r\n\r\n", new ServerConfig()).next();
+
+        assertEquals("{\"a\":\"b\"}", request.getBody());
+    }
+
+    @Test
+    void next_BodyLargerThanLimit_Throws413() {
+        ServerConfig config = new ServerConfig();
+        config.setMaxBodyBytes(10);
+
+        HttpParseException e = assertThrows(HttpParseException.class, () ->
+                parserFor("POST /api/media HTTP/1.1\r\nContent-Length: 1000000000\r\n\r\n", config).next());
+        assertEquals(413, e.getStatusCode());
+    }
+
+    @Test
+    void next_ConflictingContentLengths_Throws400_IdenticalRepeatIsAccepted() throws IOException {
+        HttpParseException e = assertThrows(HttpParseException.class, () -> parserFor(
+                "POST /api/media HTTP/1.1\r\nContent-Length: 2\r\ncontent-length: 7\r\n\r\n{}GET / HTTP/1.1\r\n\r\n",
+                new ServerConfig()).next());
+        assertEquals(400, e.getStatusCode());
+
+        HttpRequest request = parserFor("POST /api/media HTTP/1.1\r\nContent-Length: 2\r\nContent-Length: 2\r\n\r\n{}",
+                new ServerConfig()).next();
+        assertEquals("{}", request.getBody());
+    }
+
+    @Test
+    void next_TransferEncodingWithoutFinalChunked_Throws400() {
+        String[] heads = {
+                "Transfer-Encoding: gzip\r\n",                                    // body would become the next request
+                "Transfer-Encoding: chunked\r\nTransfer-Encoding: identity\r\n",  // last line alone said "no chunked"
+                "Transfer-Encoding: chunked, gzip\r\n",
+                "Transfer-Encoding: chunked\r\nTransfer-Encoding: chunked\r\n",
+                "Transfer-Encoding: \r\n",
+        };
+        for (String head : heads) {
+            HttpParseException e = assertThrows(HttpParseException.class, () -> parserFor(
+                    "POST /a HTTP/1.1\r\n" + head + "\r\n" + "GET /smuggled HTTP/1.1\r\n\r\n",
+                    new ServerConfig()).next(), head);
+            assertEquals(400, e.getStatusCode(), head);
+        }
+    }
+
+    @Test
+    void next_ChunkedAsFinalEncodingOverSeveralLines_IsDecoded() throws IOException {
+        HttpRequestParser parser = parserFor(
+                "POST /api/media HTTP/1.1\r\nTransfer-Encoding: identity\r\ntransfer-encoding: , Chunked\r\n\r\n" +
+                "2\r\n{}\r\n0\r\n\r\nGET /api/leaderboard HTTP/1.1\r\n\r\n", new ServerConfig());
+
+        assertEquals("{}", parser.next().getBody());
+        assertEquals("/api/leaderboard", parser.next().getPath());
+    }
+
+    @Test
+    void next_WhitespaceBeforeHeaderColon_Throws400() {
+        for (String header : new String[] {"Transfer-Encoding : chunked", "Content-Length\t: 2"}) {
+            HttpParseException e = assertThrows(HttpParseException.class, () -> parserFor(
+                    "POST /api/media HTTP/1.1\r\n" + header + "\r\n\r\n2\r\n{}\r\n0\r\n\r\n",
+                    new ServerConfig()).next(), header);
+            assertEquals(400, e.getStatusCode(), header);
+        }
+    }
+
+    @Test
+    void next_HeaderLargerThanLimit_Throws431() {
+        ServerConfig config = new ServerConfig();
+        config.setMaxHeaderBytes(64);
+
+        HttpParseException e = assertThrows(HttpParseException.class, () ->
+                parserFor("GET /api/media HTTP/1.1\r\nX-Filler: " + "x".repeat(200) + "\r\n\r\n", config).next());
+        assertEquals(431, e.getStatusCode());
+    }
+
+    @Test
+    void next_MalformedRequestLine_Throws400() {
+        HttpParseException e = assertThrows(HttpParseException.class, () ->
+                parserFor("GARBAGE\r\n\r\n", new ServerConfig()).next());
+        assertEquals(400, e.getStatusCode());
+    }
+
+    @Test
+    void tryParse_WaitsUntilRequestIsCompleteWhenBytesArriveInPieces() throws IOException {
+        HttpRequestParser parser = new HttpRequestParser(new ServerConfig());
+        String raw = "POST /api/users/login HTTP/1.1\r\nContent-Length: 2\r\n\r\n{}";
+
+        // Feed one byte at a time like a slow client on the NIO engine
+        for (int i = 0; i < raw.length() - 1; i++) {
+            parser.readFrom(channelOf(raw.substring(i, i + 1)));
+            assertNull(parser.tryParse());
+        }
+        parser.readFrom(channelOf(raw.substring(raw.length() - 1)));
+        HttpRequest request = parser.tryParse();
+
+        assertNotNull(request);
+        assertEquals("{}", request.getBody());
+        assertFalse(parser.hasBufferedData());
+    }
+
+    @Test
+    void isKeepAlive_DependsOnVersionAndConnectionHeader() throws IOException {
+        assertTrue(parserFor("GET / HTTP/1.1\r\n\r\n", new ServerConfig()).next().isKeepAlive());
+        assertFalse(parserFor("GET / HTTP/1.1\r\nConnection: Close\r\n\r\n", new ServerConfig()).next().isKeepAlive());
+        assertFalse(parserFor("GET / HTTP/1.0\r\n\r\n", new ServerConfig()).next().isKeepAlive());
+        assertTrue(parserFor("GET / HTTP/1.0\r\nConnection: keep-alive\r\n\r\n", new ServerConfig()).next().isKeepAlive());
+    }
+
+    private static ReadableByteChannel channelOf(String s) {
+        ByteBuffer data = ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+        return new ReadableByteChannel() {
+            public int read(ByteBuffer dst) {
+                if (!data.hasRemaining()) return -1;
+                int n = Math.min(dst.remaining(), data.remaining());
+                for (int i = 0; i < n; i++) dst.put(data.get());
+                return n;
+            }
+            public boolean isOpen() { return true; }
+            public void close() {}
+        };
+    }
+
+    @Test
+    void next_UploadRoute_StreamsBodyBeyondMaxBodyBytes() throws IOException {
+        ServerConfig config = new ServerConfig();
+        config.setMaxBodyBytes(16);
+        String body = "x".repeat(100_000);
+        HttpRequestParser parser = parserFor(
+                "POST /api/import/media HTTP/1.1\r\nContent-Length: " + body.length() + "\r\n\r\n" + body +
+                "GET /api/leaderboard HTTP/1.1\r\n\r\n", config);
+        parser.setStreamBody(request -> request.getPath().startsWith("/api/import/"));
+
+        HttpRequest upload = parser.next();
+        assertTrue(parser.isStreamingBody());
+        upload.setBodyStream(parser.openBody(null));
+        assertTrue(upload.hasUnreadBody());
+        assertEquals(body, new String(upload.getBodyStream().readAllBytes(), StandardCharsets.UTF_8));
+        assertFalse(upload.hasUnreadBody());
+
+        // The pipelined request after the streamed body is parsed normally
+        assertEquals("/api/leaderboard", parser.next().getPath());
+    }
+
+    @Test
+    void next_UploadRoute_DecodesChunkedBodyAndSendsContinueOnFirstRead() throws IOException {
+        HttpRequestParser parser = parserFor(
+                "POST /api/import/ratings HTTP/1.1\r\nExpect: 100-continue\r\nTransfer-Encoding: chunked\r\n\r\n" +
+                "3\r\nabc\r\n2\r\nde\r\n0\r\n\r\n", new ServerConfig());
+        parser.setStreamBody(request -> true);
+
+        HttpRequest upload = parser.next();
+        assertTrue(StreamedBody.expectsContinue(upload));
+        int[] continues = new int[1];
+        upload.setBodyStream(parser.openBody(() -> continues[0]++));
+        assertEquals(0, continues[0]);  // not before the handler reads
+
+        InputStream in = upload.getBodyStream();
+        assertEquals('a', in.read());
+        assertEquals("bcde", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        assertEquals(1, continues[0]);
+        assertNull(parser.next());
+    }
+
+    @Test
+    void next_UploadRoute_TruncatedBody_Returns400() throws IOException {
+        HttpRequestParser parser = parserFor(
+                "POST /api/import/media HTTP/1.1\r\nContent-Length: 10\r\n\r\nabc", new ServerConfig());
+        parser.setStreamBody(request -> true);
+
+        HttpRequest upload = parser.next();
+        upload.setBodyStream(parser.openBody(null));
+        HttpParseException e = assertThrows(HttpParseException.class, () -> upload.getBodyStream().readAllBytes());
+        assertEquals(400, e.getStatusCode());
+        assertTrue(upload.hasUnreadBody());
+    }
+}
@@ -0,0 +1,107 @@
+package mrp.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HttpResponseTest {
+
+    private static String serialize(HttpResponse response) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.writeTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void writeTo_ContentLengthCountsUtf8Bytes() throws IOException {
+        String raw = serialize(HttpResponse.ok("{\"title\":\"Amélie\"}").header("Connection", "close"));
+
+        assertEquals("HTTP/1.1 200 OK\r\n" +
+                "Content-Type: application/json\r\n" +
+                "Connection: close\r\n" +
+                "Content-Length: 19\r\n" +
+                "\r\n" +
+                "{\"title\":\"Amélie\"}", raw);
+    }
+
+    @Test
+    void writeTo_NoContentHasNoContentLength() throws IOException {
+        String raw = serialize(HttpResponse.noContent());
+
+        assertEquals("HTTP/1.1 204 No Content\r\nContent-Type: application/json\r\n\r\n", raw);
+    }
+
+    @Test
+    void error_EscapesMessageIntoValidJson() throws IOException {
+        HttpResponse response = HttpResponse.badRequest("Unexpected \"}\" in body");
+
+        assertEquals("{\"error\":\"Unexpected \\\"}\\\" in body\"}",
+                new String(response.getBodyBytes(), StandardCharsets.UTF_8));
+        assertTrue(serialize(response).startsWith("HTTP/1.1 400 Bad Request\r\n"));
+    }
+
+    @Test
+    void cannedResponses_UsePrecomputedBodies() {
+        assertSame(HttpResponse.notFound().getBodyBytes(), HttpResponse.notFound().getBodyBytes());
+        assertEquals("{\"error\":\"Unauthorized\"}", new String(HttpResponse.unauthorized().getBodyBytes(), StandardCharsets.UTF_8));
+    }
+
+    // Decodes a chunked body: "<hex>\r\n<data>\r\n" ... "0\r\n\r\n"
+    private static String dechunk(String body) {
+        StringBuilder sb = new StringBuilder();
+        int pos = 0;
+        while (true) {
+            int lineEnd = body.indexOf("\r\n", pos);
+            int size = Integer.parseInt(body.substring(pos, lineEnd), 16);
+            if (size == 0) {
+                assertEquals(lineEnd + 4, body.length(), "nothing after the last chunk");
+                return sb.toString();
+            }
+            sb.append(body, lineEnd + 2, lineEnd + 2 + size);
+            pos = lineEnd + 2 + size + 2;
+        }
+    }
+
+    @Test
+    void stream_WritesChunkedBodyWithoutContentLength() throws IOException {
+        String row = "{\"id\":1,\"title\":\"Movie\"},";
+        HttpResponse response = HttpResponse.stream(200, out -> {
+            for (int i = 0; i < 1000; i++) out.write(row.getBytes(StandardCharsets.UTF_8));
+        });
+
+        String raw = serialize(response);
+        int headEnd = raw.indexOf("\r\n\r\n");
+        String head = raw.substring(0, headEnd);
+
+        assertTrue(head.contains("Transfer-Encoding: chunked"));
+        assertFalse(head.contains("Content-Length"));
+        assertEquals(row.repeat(1000), dechunk(raw.substring(headEnd + 4)));
+    }
+
+    @Test
+    void stream_FailureBeforeFirstChunk_BecomesInternalError() {
+        HttpResponse response = HttpResponse.stream(200, out -> {
+            out.write('[');
+            throw new IllegalStateException("database down");
+        });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertThrows(IOException.class, () -> response.writeTo(out));
+        String raw = out.toString(StandardCharsets.UTF_8);
+        assertTrue(raw.startsWith("HTTP/1.1 500 Internal Server Error\r\n"));
+        assertTrue(raw.contains("Connection: close"));
+    }
+
+    @Test
+    void stream_WithoutChunking_WritesRawBodyAndRequiresClose() throws IOException {
+        HttpResponse response = HttpResponse.stream(200, out -> out.write("[]".getBytes(StandardCharsets.UTF_8)));
+        response.disableChunking();
+
+        assertTrue(response.requiresClose());
+        assertEquals("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\n\r\n[]", serialize(response));
+    }
+}
@@ -0,0 +1,104 @@
+package mrp.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HttpServerKeepAliveTest {
+
+    private HttpServer server;
+
+    private int start(ServerConfig config) throws Exception {
+        Router router = new Router();
+        router.addRoute("GET", "/api/echo/{id}", req -> HttpResponse.ok("{\"id\":\"" + req.getPathParam("id") + "\"}"));
+        int port = TestConnection.freePort();
+        config.setPort(port);
+        server = new HttpServer(config, router);
+        TestConnection.startServer(server::start, port);
+        return port;
+    }
+
+    @AfterEach
+    void stop() {
+        if (server != null) server.stop();
+    }
+
+    @Test
+    void pipelinedRequests_AnsweredInOrderOnOneConnection() throws Exception {
+        int port = start(new ServerConfig());
+        try (TestConnection conn = new TestConnection(port)) {
+            conn.send("GET /api/echo/1 HTTP/1.1\r\nHost: x\r\n\r\nGET /api/echo/2 HTTP/1.1\r\nHost: x\r\n\r\n");
+
+            TestConnection.Response first = conn.read();
+            TestConnection.Response second = conn.read();
+            assertEquals("{\"id\":\"1\"}", first.body());
+            assertEquals("{\"id\":\"2\"}", second.body());
+            assertEquals("keep-alive", second.header("Connection"));
+        }
+    }
+
+    @Test
+    void connectionClose_ClosesAfterResponse() throws Exception {
+        int port = start(new ServerConfig());
+        try (TestConnection conn = new TestConnection(port)) {
+            conn.send("GET /api/echo/1 HTTP/1.1\r\nHost: x\r\nConnection: close\r\n\r\n");
+
+            assertEquals("close", conn.read().header("Connection"));
+            assertTrue(conn.isClosedByServer());
+        }
+    }
+
+    @Test
+    void requestLimit_ClosesAfterLastAllowedRequest() throws Exception {
+        ServerConfig config = new ServerConfig();
+        config.setMaxRequestsPerConnection(2);
+        int port = start(config);
+        try (TestConnection conn = new TestConnection(port)) {
+            conn.send("GET /api/echo/1 HTTP/1.1\r\nHost: x\r\n\r\n");
+            TestConnection.Response first = conn.read();
+            assertEquals("keep-alive", first.header("Connection"));
+            assertEquals("timeout=5, max=1", first.header("Keep-Alive"));
+
+            conn.send("GET /api/echo/2 HTTP/1.1\r\nHost: x\r\n\r\n");
+            assertEquals("close", conn.read().header("Connection"));
+            assertTrue(conn.isClosedByServer());
+        }
+    }
+
+    @Test
+    void idleTimeout_ClosesIdleConnection() throws Exception {
+        ServerConfig config = new ServerConfig();
+        config.setIdleTimeoutMillis(300);
+        int port = start(config);
+        try (TestConnection conn = new TestConnection(port)) {
+            conn.send("GET /api/echo/1 HTTP/1.1\r\nHost: x\r\n\r\n");
+            assertEquals(200, conn.read().status());
+
+            conn.setTimeout(3_000);
+            long start = System.nanoTime();
+            assertTrue(conn.isClosedByServer());
+            assertTrue(System.nanoTime() - start < 2_000_000_000L, "closed after the idle timeout, not the socket timeout");
+        }
+    }
+
+    @Test
+    void platformThreads_IdleConnectionGivesItsWorkerToWaitingConnection() throws Exception {
+        ServerConfig config = new ServerConfig();
+        config.setThreads(ServerConfig.Threads.PLATFORM);
+        config.setWorkerThreads(1);
+        config.setIdleTimeoutMillis(10_000);
+        int port = start(config);
+        try (TestConnection idle = new TestConnection(port); TestConnection waiting = new TestConnection(port)) {
+            idle.send("GET /api/echo/1 HTTP/1.1\r\nHost: x\r\n\r\n");
+            assertEquals(200, idle.read().status());
+
+            // the only worker sits on the idle keep-alive connection, this one is queued behind it
+            waiting.send("GET /api/echo/2 HTTP/1.1\r\nHost: x\r\n\r\n");
+            TestConnection.Response response = waiting.read();
+
+            assertEquals(200, response.status(), "not 503 after the queue timeout");
+            assertTrue(idle.isClosedByServer());
+        }
+    }
+}
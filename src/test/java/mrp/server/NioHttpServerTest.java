@@ -0,0 +1,105 @@
+package mrp.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NioHttpServerTest {
+
+    private NioHttpServer server;
+    private int port;
+
+    @BeforeEach
+    void start() throws Exception {
+        Router router = new Router();
+        router.addRoute("GET", "/api/echo/{id}", req -> HttpResponse.ok("{\"id\":\"" + req.getPathParam("id") + "\"}"));
+        router.addRoute("POST", "/api/echo", req -> HttpResponse.ok(req.getBody()));
+        router.addAsyncRoute("GET", "/api/async/{id}", req -> CompletableFuture.supplyAsync(
+                () -> HttpResponse.ok("{\"async\":\"" + req.getPathParam("id") + "\"}")));
+        router.addRoute("GET", "/api/throws", req -> {
+            throw new IllegalStateException("handler failed");
+        });
+        // null response: fails in RequestDispatcher.finish, i.e. after the handler's own error handling
+        router.addRoute("GET", "/api/broken", req -> null);
+
+        ServerConfig config = new ServerConfig();
+        port = TestConnection.freePort();
+        config.setPort(port);
+        config.setEngine(ServerConfig.Engine.NIO);
+        config.setEventLoops(1);  // all connections on one loop: a failure must not take the others with it
+        server = new NioHttpServer(config, router);
+        TestConnection.startServer(server::start, port);
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop();
+    }
+
+    @Test
+    void roundTrip_KeepsConnectionOpen() throws Exception {
+        try (TestConnection conn = new TestConnection(port)) {
+            conn.send("POST /api/echo HTTP/1.1\r\nHost: x\r\nContent-Length: 11\r\n\r\n{\"stars\":5}");
+            TestConnection.Response response = conn.read();
+            assertEquals(200, response.status());
+            assertEquals("{\"stars\":5}", response.body());
+            assertEquals("keep-alive", response.header("Connection"));
+
+            conn.send("GET /api/echo/2 HTTP/1.1\r\nHost: x\r\n\r\n");
+            assertEquals("{\"id\":\"2\"}", conn.read().body());
+        }
+    }
+
+    @Test
+    void pipelinedRequests_AnsweredInOrder() throws Exception {
+        try (TestConnection conn = new TestConnection(port)) {
+            conn.send("GET /api/async/1 HTTP/1.1\r\nHost: x\r\n\r\n" +
+                    "GET /api/echo/2 HTTP/1.1\r\nHost: x\r\n\r\n" +
+                    "GET /api/async/3 HTTP/1.1\r\nHost: x\r\n\r\n");
+
+            assertEquals("{\"async\":\"1\"}", conn.read().body());
+            assertEquals("{\"id\":\"2\"}", conn.read().body());
+            assertEquals("{\"async\":\"3\"}", conn.read().body());
+        }
+    }
+
+    @Test
+    void throwingHandler_Returns500AndConnectionStaysUsable() throws Exception {
+        try (TestConnection conn = new TestConnection(port)) {
+            conn.send("GET /api/throws HTTP/1.1\r\nHost: x\r\n\r\n");
+            assertEquals(500, conn.read().status());
+
+            conn.send("GET /api/echo/1 HTTP/1.1\r\nHost: x\r\n\r\n");
+            assertEquals(200, conn.read().status());
+        }
+    }
+
+    @Test
+    void failureAfterHandler_Returns500AndCloses_InsteadOfHanging() throws Exception {
+        try (TestConnection conn = new TestConnection(port)) {
+            conn.send("GET /api/broken HTTP/1.1\r\nHost: x\r\n\r\n");
+            TestConnection.Response response = conn.read();
+            assertEquals(500, response.status());
+            assertEquals("close", response.header("Connection"));
+            assertTrue(conn.isClosedByServer());
+        }
+        // the event loop survived: new connections are still served
+        try (TestConnection conn = new TestConnection(port)) {
+            conn.send("GET /api/echo/9 HTTP/1.1\r\nHost: x\r\n\r\n");
+            assertEquals("{\"id\":\"9\"}", conn.read().body());
+        }
+    }
+
+    @Test
+    void connectionClose_ClosesAfterResponse() throws Exception {
+        try (TestConnection conn = new TestConnection(port)) {
+            conn.send("GET /api/echo/1 HTTP/1.1\r\nHost: x\r\nConnection: close\r\n\r\n");
+            assertEquals("close", conn.read().header("Connection"));
+            assertTrue(conn.isClosedByServer());
+        }
+    }
+}
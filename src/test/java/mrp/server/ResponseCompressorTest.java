@@ -0,0 +1,135 @@
+package mrp.server;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResponseCompressorTest {
+
+    private ResponseCompressor compressor;
+
+    @BeforeEach
+    void setUp() {
+        ServerConfig config = new ServerConfig();
+        config.setCompressionMinBytes(256);
+        compressor = new ResponseCompressor(config);
+    }
+
+    private static String largeJson() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 200; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"id\":").append(i).append(",\"title\":\"Movie ").append(i).append("\",\"genres\":[\"drama\"]}");
+        }
+        return sb.append(']').toString();
+    }
+
+    private static HttpRequest request(String acceptEncoding) throws IOException {
+        String raw = "GET /api/media HTTP/1.1\r\n" +
+                (acceptEncoding != null ? "Accept-Encoding: " + acceptEncoding + "\r\n" : "") +
+                "\r\n";
+        return HttpRequest.parse(new ByteArrayInputStream(raw.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void negotiate_HonorsQValuesAndWildcard() {
+        assertEquals("gzip", ResponseCompressor.negotiate("gzip, deflate, br"));
+        assertEquals("deflate", ResponseCompressor.negotiate("gzip;q=0, deflate"));
+        assertEquals("deflate", ResponseCompressor.negotiate("gzip;q=0.2, deflate;q=0.8"));
+        assertEquals("gzip", ResponseCompressor.negotiate("*"));
+        assertNull(ResponseCompressor.negotiate("br, identity"));
+        assertNull(ResponseCompressor.negotiate("*;q=0"));
+        assertNull(ResponseCompressor.negotiate(null));
+    }
+
+    @Test
+    void apply_Gzip_RoundTripsAndSetsHeaders() throws IOException {
+        String json = largeJson();
+        HttpResponse response = HttpResponse.ok(json);
+
+        compressor.apply(request("gzip, deflate"), response);
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        assertTrue(response.getBodyBytes().length < json.length());
+        assertEquals(json, read(new GZIPInputStream(new ByteArrayInputStream(response.getBodyBytes()))));
+        assertEquals(1, compressor.getCompressedResponses());
+        assertTrue(compressor.getCompressionRatio() < 0.5);
+    }
+
+    @Test
+    void apply_Deflate_UsesZlibFormat() throws IOException {
+        String json = largeJson();
+        HttpResponse response = HttpResponse.ok(json);
+
+        compressor.apply(request("deflate"), response);
+
+        assertEquals("deflate", response.getHeader("Content-Encoding"));
+        assertEquals(json, read(new InflaterInputStream(new ByteArrayInputStream(response.getBodyBytes()))));
+    }
+
+    @Test
+    void apply_ClientWithoutAcceptEncoding_GetsIdentityButVary() throws IOException {
+        String json = largeJson();
+        HttpResponse response = HttpResponse.ok(json);
+
+        compressor.apply(request(null), response);
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        assertEquals(json, new String(response.getBodyBytes(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void apply_BelowThreshold_IsLeftAlone() throws IOException {
+        HttpResponse response = HttpResponse.ok("{\"id\":1}");
+
+        compressor.apply(request("gzip"), response);
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertNull(response.getHeader("Vary"));
+    }
+
+    @Test
+    void apply_StreamingResponse_IsCompressedWhileWritten() throws IOException {
+        String json = largeJson();
+        HttpResponse response = HttpResponse.stream(200, out -> out.write(json.getBytes(StandardCharsets.UTF_8)));
+
+        compressor.apply(request("gzip"), response);
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        response.writeTo(raw);
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        byte[] bytes = raw.toByteArray();
+        String text = raw.toString(StandardCharsets.ISO_8859_1);
+        int bodyStart = text.indexOf("\r\n\r\n") + 4;
+
+        // collect the chunks, then gunzip
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int pos = bodyStart;
+        while (true) {
+            int lineEnd = text.indexOf("\r\n", pos);
+            int size = Integer.parseInt(text.substring(pos, lineEnd), 16);
+            if (size == 0) break;
+            body.write(bytes, lineEnd + 2, size);
+            pos = lineEnd + 2 + size + 2;
+        }
+        assertEquals(json, read(new GZIPInputStream(new ByteArrayInputStream(body.toByteArray()))));
+        assertEquals(body.size(), compressor.getBytesOut());
+    }
+}
@@ -0,0 +1,158 @@
+package mrp.server;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RouterTest {
+
+    private Router router;
+    private String handledBy;
+
+    @BeforeEach
+    void setUp() {
+        router = new Router();
+        router.addRoute("POST", "/api/users/login", req -> handled("login"));
+        router.addRoute("GET", "/api/users/{username}/profile", req -> handled("profile:" + req.getPathParam("username")));
+        router.addRoute("GET", "/api/media", req -> handled("list"));
+        router.addRoute("GET", "/api/media/{id}", req -> handled("media:" + req.getPathParam("id")));
+        router.addRoute("DELETE", "/api/media/{id}", req -> handled("delete:" + req.getPathParam("id")));
+        router.addRoute("POST", "/api/media/{mediaId}/rate", req -> handled("rate:" + req.getPathParam("mediaId")));
+    }
+
+    private HttpResponse handled(String name) {
+        handledBy = name;
+        return HttpResponse.ok("{}");
+    }
+
+    private static HttpRequest request(String method, String target) throws IOException {
+        String raw = method + " " + target + " HTTP/1.1\r\n\r\n";
+        return HttpRequest.parse(new ByteArrayInputStream(raw.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void route_LiteralAndVariableSegments() throws IOException {
+        router.route(request("GET", "/api/media/42"));
+        assertEquals("media:42", handledBy);
+
+        router.route(request("POST", "/api/media/7/rate"));
+        assertEquals("rate:7", handledBy);
+
+        router.route(request("GET", "/api/media?genre=action"));
+        assertEquals("list", handledBy);
+    }
+
+    @Test
+    void route_BacktracksFromLiteralToVariable() throws IOException {
+        // "login" is a literal child of /api/users, but only the {username} branch has /profile
+        HttpRequest request = request("GET", "/api/users/login/profile");
+        router.route(request);
+
+        assertEquals("profile:login", handledBy);
+        assertEquals("login", request.getPathParams().get("username"));
+    }
+
+    @Test
+    void route_TrailingSlashIsIgnored() throws IOException {
+        router.route(request("GET", "/api/media/"));
+        assertEquals("list", handledBy);
+    }
+
+    @Test
+    void route_UnknownPath_Returns404() throws IOException {
+        assertEquals(404, router.route(request("GET", "/api/unknown")).getStatusCode());
+        assertEquals(404, router.route(request("GET", "/api/media/1/2/3")).getStatusCode());
+        assertNull(handledBy);
+    }
+
+    @Test
+    void route_KnownPathWrongMethod_Returns405WithAllowHeader() throws IOException {
+        HttpResponse response = router.route(request("PUT", "/api/media/1"));
+
+        assertEquals(405, response.getStatusCode());
+        assertEquals("GET, DELETE", response.getHeader("Allow"));
+        assertNull(handledBy);
+    }
+
+    @Test
+    void addRoute_DuplicateRoute_Throws() {
+        assertThrows(IllegalStateException.class, () -> router.addRoute("GET", "/api/media/{other}", req -> null));
+    }
+
+    @Test
+    void streamsBody_OnlyForUploadRoutes() throws IOException {
+        assertFalse(router.streamsBody(request("POST", "/api/users/login")));
+
+        router.addUploadRoute("POST", "/api/import/{type}", req -> handled("import:" + req.getPathParam("type")));
+        assertTrue(router.streamsBody(request("POST", "/api/import/media")));
+        assertFalse(router.streamsBody(request("GET", "/api/import/media")));
+        assertFalse(router.streamsBody(request("POST", "/api/media/7/rate")));
+
+        router.route(request("POST", "/api/import/ratings"));
+        assertEquals("import:ratings", handledBy);
+    }
+
+    // Records the calls of the dispatcher
+    private static RequestScope recordingScope(List<String> events) {
+        return new RequestScope() {
+            @Override
+            public Runnable open(HttpRequest request) {
+                events.add("open");
+                return () -> events.add("close");
+            }
+
+            @Override
+            public void detach() {
+                events.add("detach");
+            }
+        };
+    }
+
+    @Test
+    void dispatchAsync_PendingAsyncRoute_DetachesScopeAndClosesItOnCompletion() throws IOException {
+        CompletableFuture<HttpResponse> pending = new CompletableFuture<>();
+        router.addAsyncRoute("GET", "/api/slow", req -> pending);
+        List<String> events = new ArrayList<>();
+        router.addRequestScope(recordingScope(events));
+        RequestDispatcher dispatcher = new RequestDispatcher(router, new ServerConfig());
+
+        CompletableFuture<HttpResponse> response = dispatcher.dispatchAsync(request("GET", "/api/slow"));
+
+        assertFalse(response.isDone(), "worker returns before the response is ready");
+        assertEquals(List.of("open", "detach"), events);
+
+        pending.complete(HttpResponse.ok("{}"));
+        assertEquals(200, response.join().getStatusCode());
+        assertEquals(List.of("open", "detach", "close"), events);
+    }
+
+    @Test
+    void dispatchAsync_SyncRoute_CompletesWithoutDetach() throws IOException {
+        List<String> events = new ArrayList<>();
+        router.addRequestScope(recordingScope(events));
+        RequestDispatcher dispatcher = new RequestDispatcher(router, new ServerConfig());
+
+        CompletableFuture<HttpResponse> response = dispatcher.dispatchAsync(request("GET", "/api/media/1"));
+
+        assertTrue(response.isDone());
+        assertEquals("media:1", handledBy);
+        assertEquals(List.of("open", "close"), events);
+    }
+
+    @Test
+    void dispatchAsync_FailedAsyncRoute_Returns500() throws IOException {
+        router.addAsyncRoute("GET", "/api/broken",
+                req -> CompletableFuture.failedFuture(new IllegalStateException("boom")));
+        RequestDispatcher dispatcher = new RequestDispatcher(router, new ServerConfig());
+
+        assertEquals(500, dispatcher.dispatch(request("GET", "/api/broken")).getStatusCode());
+    }
+}
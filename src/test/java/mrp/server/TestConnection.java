@@ -0,0 +1,109 @@
+package mrp.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+// Raw socket client for server tests: exact control over keep-alive, pipelining and when the server closes
+final class TestConnection implements Closeable {
+
+    record Response(int status, Map<String, String> headers, String body) {
+        String header(String name) {
+            return headers.get(name.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+
+    TestConnection(int port) throws IOException {
+        socket = new Socket("localhost", port);
+        socket.setSoTimeout(5_000);
+        in = socket.getInputStream();
+        out = socket.getOutputStream();
+    }
+
+    void send(String raw) throws IOException {
+        out.write(raw.getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    // One response with Content-Length body (no chunked responses in these tests)
+    Response read() throws IOException {
+        String statusLine = readLine();
+        if (statusLine == null) throw new IOException("Connection closed before a response");
+        int status = Integer.parseInt(statusLine.split(" ")[1]);
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine()) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+        }
+        int length = Integer.parseInt(headers.getOrDefault("content-length", "0"));
+        byte[] body = in.readNBytes(length);
+        return new Response(status, headers, new String(body, StandardCharsets.UTF_8));
+    }
+
+    // true if the server closed the connection (EOF) within the socket timeout
+    boolean isClosedByServer() throws IOException {
+        try {
+            return in.read() == -1;
+        } catch (SocketTimeoutException e) {
+            return false;
+        } catch (IOException e) {
+            return true;  // reset
+        }
+    }
+
+    void setTimeout(int millis) throws IOException {
+        socket.setSoTimeout(millis);
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') return line.toString(StandardCharsets.ISO_8859_1).stripTrailing();
+            line.write(b);
+        }
+        return line.size() == 0 ? null : line.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    // Runs start (blocks while the server runs) on a daemon thread and waits until the port accepts
+    static void startServer(Runnable start, int port) throws InterruptedException {
+        Thread thread = new Thread(start, "test-server");
+        thread.setDaemon(true);
+        thread.start();
+        for (int i = 0; i < 100; i++) {
+            try (Socket ignored = new Socket("localhost", port)) {
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        fail("Server did not start");
+    }
+}
@@ -0,0 +1,102 @@
+package mrp.server;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+// Throughput comparison of the fixed platform pool against virtual threads (not a unit test, run manually):
+//   mvn test-compile && java -cp target/classes:target/test-classes mrp.server.ThreadModeBenchmark [clients] [queryMillis] [seconds]
+// Every request "queries the DB" for queryMillis, the DB allows 50 concurrent queries (like a connection limit).
+// Clients use keep-alive connections, so in PLATFORM mode a connection holds its worker the whole time.
+public class ThreadModeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int queryMillis = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        for (ServerConfig.Threads threads : ServerConfig.Threads.values()) {
+            double rps = run(threads, clients, queryMillis, seconds);
+            System.out.printf("%-8s clients=%d query=%dms -> %.0f req/s%n", threads, clients, queryMillis, rps);
+        }
+        System.exit(0);
+    }
+
+    private static double run(ServerConfig.Threads threads, int clients, int queryMillis, int seconds) throws Exception {
+        Semaphore db = new Semaphore(50);
+        Router router = new Router();
+        router.addRoute("GET", "/api/media/{id}", req -> {
+            try {
+                db.acquire();
+                try {
+                    Thread.sleep(queryMillis);
+                } finally {
+                    db.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return HttpResponse.ok("{\"id\":" + req.getPathParam("id") + "}");
+        });
+
+        ServerConfig config = new ServerConfig();
+        config.setPort(freePort());
+        config.setThreads(threads);
+        config.setIdleTimeoutMillis(60_000);
+        config.setMaxRequestsPerConnection(Integer.MAX_VALUE);
+        HttpServer server = new HttpServer(config, router);
+        Thread serverThread = new Thread(server::start);
+        serverThread.setDaemon(true);
+        serverThread.start();
+        Thread.sleep(500);
+
+        LongAdder completed = new LongAdder();
+        long deadline = System.currentTimeMillis() + seconds * 1000L;
+        List<Thread> clientThreads = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            clientThreads.add(Thread.ofVirtual().start(() -> runClient(config.getPort(), deadline, completed)));
+        }
+        for (Thread t : clientThreads) t.join();
+        server.stop();
+        return completed.sum() / (double) seconds;
+    }
+
+    // One keep-alive connection sending requests back to back until the deadline
+    private static void runClient(int port, long deadline, LongAdder completed) {
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(1_000);
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+            byte[] request = "GET /api/media/1 HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+            while (System.currentTimeMillis() < deadline) {
+                out.write(request);
+                out.flush();
+                int contentLength = 0;
+                String line;
+                while ((line = in.readLine()) != null && !line.isEmpty()) {
+                    if (line.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                        contentLength = Integer.parseInt(line.substring(15).trim());
+                    }
+                }
+                if (line == null) return;
+                in.skip(contentLength);
+                completed.increment();
+            }
+        } catch (Exception e) {
+            // starved clients time out in PLATFORM mode, that is part of the result
+        }
+    }
+
+    private static int freePort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package mrp.server;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+import mrp.db.DatabaseManager;
+import org.junit.jupiter.api.Test;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VirtualThreadPinningTest {
+
+    // Runs the request hot path on virtual threads and fails if JFR reports a pinned carrier thread
+    // (a virtual thread blocking while it holds a monitor, e.g. inside a synchronized block)
+    @Test
+    void virtualThreadMode_HotPathDoesNotPinCarrierThreads() throws Exception {
+        List<RecordedEvent> pinnedEvents = new CopyOnWriteArrayList<>();
+
+        Router router = new Router();
+        router.addRoute("POST", "/api/work/{id}", req -> {
+            // DB path: singleton lookup + pool checkout (no DB running in unit tests -> SQLException)
+            try (Connection ignored = DatabaseManager.getInstance().getConnection()) {
+                // nothing to do
+            } catch (SQLException e) {
+                // expected without database
+            }
+            try {
+                Thread.sleep(20); // simulates a blocking query
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return HttpResponse.ok("{\"id\":\"" + req.getPathParam("id") + "\"}");
+        });
+
+        ServerConfig config = new ServerConfig();
+        config.setPort(freePort());
+        config.setThreads(ServerConfig.Threads.VIRTUAL);
+        HttpServer server = new HttpServer(config, router);
+
+        try (RecordingStream recording = new RecordingStream()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.onEvent("jdk.VirtualThreadPinned", pinnedEvents::add);
+            recording.startAsync();
+
+            Thread serverThread = new Thread(server::start);
+            serverThread.setDaemon(true);
+            serverThread.start();
+            waitUntilListening(config.getPort());
+
+            HttpClient client = HttpClient.newHttpClient();
+            List<CompletableFuture<java.net.http.HttpResponse<String>>> responses = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                java.net.http.HttpRequest request = java.net.http.HttpRequest
+                        .newBuilder(URI.create("http://localhost:" + config.getPort() + "/api/work/" + i))
+                        .POST(BodyPublishers.ofString("{\"stars\":5}"))
+                        .build();
+                responses.add(client.sendAsync(request, BodyHandlers.ofString()));
+            }
+            for (CompletableFuture<java.net.http.HttpResponse<String>> response : responses) {
+                assertEquals(200, response.get().statusCode());
+            }
+
+            server.stop();
+            recording.stop(); // flushes outstanding events
+        }
+
+        assertTrue(pinnedEvents.isEmpty(), () -> "Pinned carrier thread:\n" + pinnedEvents.get(0));
+    }
+
+    private static int freePort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void waitUntilListening(int port) throws Exception {
+        for (int i = 0; i < 100; i++) {
+            try (java.net.Socket ignored = new java.net.Socket("localhost", port)) {
+                return;
+            } catch (java.io.IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        fail("Server did not start");
+    }
+}
@@ -0,0 +1,93 @@
+package mrp.server;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorkerPoolTest {
+
+    private static WorkerPool pool(ServerConfig.Threads threads, int queueCapacity, int queueTimeoutMillis) {
+        ServerConfig config = new ServerConfig();
+        config.setThreads(threads);
+        config.setWorkerThreads(1);
+        config.setMaxInFlight(1);
+        config.setQueueCapacity(queueCapacity);
+        config.setQueueTimeoutMillis(queueTimeoutMillis);
+        return new WorkerPool(config);
+    }
+
+    private static WorkerPool.Job job(Runnable run, AtomicInteger shed) {
+        return new WorkerPool.Job() {
+            @Override
+            public void run() {
+                run.run();
+            }
+
+            @Override
+            public void shed() {
+                shed.incrementAndGet();
+            }
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerConfig.Threads.class)
+    void execute_QueueFull_ShedsImmediately(ServerConfig.Threads threads) throws InterruptedException {
+        WorkerPool pool = pool(threads, 1, 10_000);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch queuedDone = new CountDownLatch(1);
+        AtomicInteger shed = new AtomicInteger();
+
+        pool.execute(job(() -> { started.countDown(); await(release); }, shed));
+        await(started);
+        pool.execute(job(queuedDone::countDown, shed));  // waits in the queue
+        pool.execute(job(() -> fail("must not run"), shed));
+
+        assertEquals(1, shed.get());
+        assertEquals(1, pool.getShedQueueFull());
+        assertEquals(1, pool.getInFlight());
+
+        release.countDown();
+        await(queuedDone);
+        assertEquals(1, shed.get());
+        pool.shutdown();
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerConfig.Threads.class)
+    void execute_WaitedLongerThanDeadline_IsShedInsteadOfRun(ServerConfig.Threads threads) throws InterruptedException {
+        WorkerPool pool = pool(threads, 10, 50);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger shed = new AtomicInteger();
+        AtomicInteger ran = new AtomicInteger();
+
+        pool.execute(job(() -> { started.countDown(); await(release); }, shed));
+        await(started);
+        pool.execute(job(ran::incrementAndGet, shed));
+        Thread.sleep(200);
+        release.countDown();
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (shed.get() == 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertEquals(1, shed.get());
+        assertEquals(0, ran.get());
+        assertEquals(1, pool.getShedTimeout());
+        assertEquals(0, pool.getQueued());
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,153 @@
+package mrp.service;
+
+import mrp.model.ImportResult;
+import mrp.model.Media;
+import mrp.model.Rating;
+import mrp.repository.MediaRepository;
+import mrp.repository.RatingRepository;
+import mrp.repository.RowSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ImportServiceTest {
+
+    @Mock
+    private MediaRepository mediaRepo;
+
+    @Mock
+    private RatingRepository ratingRepo;
+
+    @InjectMocks
+    private ImportService importService;
+
+    private static InputStream upload(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Lets the mocked repository drain the source like the COPY loop does
+    @SuppressWarnings("unchecked")
+    private List<Media> importedMedia() throws Exception {
+        List<Media> imported = new ArrayList<>();
+        when(mediaRepo.importMedia(any())).thenAnswer(invocation -> {
+            RowSource<Media> rows = invocation.getArgument(0);
+            Media media;
+            while ((media = rows.next()) != null) imported.add(media);
+            return (long) imported.size();
+        });
+        return imported;
+    }
+
+    @Test
+    void importMedia_Ndjson_SkipsInvalidLinesWithLineNumber() throws Exception {
+        List<Media> imported = importedMedia();
+
+        ImportResult result = importService.importMedia(upload(
+                "{\"title\":\"Inception\",\"mediaType\":\"movie\",\"releaseYear\":2010,\"genres\":[\"sci-fi\",\"thriller\"]}\n" +
+                "\n" +
+                "{\"title\":\"No type\"}\n" +
+                "not json\n" +
+                "{\"title\":\"Dark\",\"mediaType\":\"series\",\"ageRestriction\":-1}\n" +
+                "{\"title\":\"Dark\",\"mediaType\":\"series\",\"genres\":\"drama, mystery\"}"), "application/x-ndjson; charset=utf-8", 7);
+
+        assertEquals(2, result.getAccepted());
+        assertEquals(3, result.getRejected());
+        assertEquals(List.of(3L, 4L, 5L), result.getErrors().stream().map(ImportResult.LineError::line).toList());
+        assertEquals("mediaType is required", result.getErrors().get(0).error());
+
+        assertEquals("Inception", imported.get(0).getTitle());
+        assertEquals(2010, imported.get(0).getReleaseYear());
+        assertEquals(List.of("drama", "mystery"), imported.get(1).getGenres());
+        assertEquals(7, imported.get(1).getCreatedBy());
+    }
+
+    @Test
+    void importMedia_Ndjson_LeadingWhitespaceIsAccepted() throws Exception {
+        List<Media> imported = importedMedia();
+
+        ImportResult result = importService.importMedia(upload(
+                "  {\"title\":\"Inception\",\"mediaType\":\"movie\"}\n" +
+                "\t{\"title\":\"Dark\",\"mediaType\":\"series\"}\n"), "application/x-ndjson", 7);
+
+        assertEquals(2, result.getAccepted());
+        assertEquals(0, result.getRejected());
+        assertEquals("Dark", imported.get(1).getTitle());
+    }
+
+    @Test
+    void importMedia_Csv_QuotedFieldsAndFieldCount() throws Exception {
+        List<Media> imported = importedMedia();
+
+        ImportResult result = importService.importMedia(upload(
+                "﻿title,mediaType,releaseYear,genres\r\n" +
+                "\"Lock, Stock\",movie,1998,\"crime,comedy\"\r\n" +
+                "\"Say \"\"Hi\"\"\",game,,\r\n" +
+                "Broken,movie\r\n" +
+                "Year,movie,soon,\r\n"), "text/csv", 1);
+
+        assertEquals(2, result.getAccepted());
+        assertEquals("Lock, Stock", imported.get(0).getTitle());
+        assertEquals(List.of("crime", "comedy"), imported.get(0).getGenres());
+        assertEquals("Say \"Hi\"", imported.get(1).getTitle());
+        assertEquals(0, imported.get(1).getReleaseYear());
+        assertEquals("Expected 4 fields, got 2", result.getErrors().get(0).error());
+        assertEquals(4, result.getErrors().get(0).line());
+        assertEquals("releaseYear must be a whole number", result.getErrors().get(1).error());
+    }
+
+    @Test
+    void importMedia_LineTooLong_RejectedAndSkipped() throws Exception {
+        List<Media> imported = importedMedia();
+
+        String huge = "{\"title\":\"" + "x".repeat(RecordReader.MAX_LINE_BYTES) + "\",\"mediaType\":\"movie\"}";
+        ImportResult result = importService.importMedia(upload(
+                huge + "\n{\"title\":\"After\",\"mediaType\":\"movie\"}\n"), "application/x-ndjson", 1);
+
+        assertEquals(1, result.getRejected());
+        assertEquals(1, result.getErrors().get(0).line());
+        assertEquals("After", imported.get(0).getTitle());
+    }
+
+    @Test
+    void importMedia_UnsupportedContentType_ThrowsBeforeReading() {
+        assertThrows(IllegalArgumentException.class,
+                () -> importService.importMedia(upload("{}"), "application/json", 1));
+        verifyNoInteractions(mediaRepo);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void importRatings_ValidatesStarsAndUsesImportingUser() throws Exception {
+        List<Rating> staged = new ArrayList<>();
+        doAnswer(invocation -> {
+            RowSource<Rating> rows = invocation.getArgument(0);
+            Rating rating;
+            while ((rating = rows.next()) != null) staged.add(rating);
+            return null;
+        }).when(ratingRepo).importRatings(any(), any(ImportResult.class));
+
+        ImportResult result = importService.importRatings(upload(
+                "mediaId,stars,comment\n1,5,Great\n2,6,\n,3,\n3,1,\n"), "text/csv", 42);
+
+        assertEquals(2, result.getRejected());
+        assertEquals("Stars must be between 1 and 5", result.getErrors().get(0).error());
+        assertEquals("mediaId is required", result.getErrors().get(1).error());
+        assertEquals(2, staged.size());
+        assertEquals(42, staged.get(0).getUserId());
+        assertEquals("Great", staged.get(0).getComment());
+        assertNull(staged.get(1).getComment());
+    }
+}
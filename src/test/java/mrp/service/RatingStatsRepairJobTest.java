@@ -0,0 +1,46 @@
+package mrp.service;
+
+import mrp.repository.RatingRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class RatingStatsRepairJobTest {
+
+    @Mock
+    private RatingRepository ratingRepo;
+
+    @InjectMocks
+    private RatingStatsRepairJob job;
+
+    @Test
+    void runOnce_ReturnsRepairedRows() throws SQLException {
+        when(ratingRepo.repairStats()).thenReturn(3);
+
+        assertEquals(3, job.runOnce());
+    }
+
+    @Test
+    void runOnce_DatabaseError_DoesNotThrow() throws SQLException {
+        // A failing run must not kill the scheduler thread, the next run tries again
+        when(ratingRepo.repairStats()).thenThrow(new SQLException("connection refused"));
+
+        assertEquals(-1, job.runOnce());
+        verify(ratingRepo).repairStats();
+    }
+
+    @Test
+    void runOnce_UnexpectedException_DoesNotThrow() throws SQLException {
+        when(ratingRepo.repairStats()).thenThrow(new IllegalStateException("pool shut down"));
+
+        assertEquals(-1, job.runOnce());
+    }
+}
@@ -12,6 +12,8 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -120,6 +122,39 @@ public class UserServiceTest {
 
     // --- PROFILE TESTS ---
 
+    @Test
+    void getProfileAsync_ExistingUser_LoadsStatistics() throws Exception {
+        when(userRepository.findByUsernameAsync("testuser")).thenReturn(CompletableFuture.completedFuture(testUser));
+        when(userRepository.loadUserStatisticsAsync(testUser)).thenReturn(CompletableFuture.completedFuture(testUser));
+
+        assertSame(testUser, userService.getProfileAsync("testuser").join());
+    }
+
+    @Test
+    void getProfileAsync_UnknownUser_FailsWithIllegalArgumentException() {
+        when(userRepository.findByUsernameAsync("unknown")).thenReturn(CompletableFuture.completedFuture(null));
+
+        CompletionException e = assertThrows(CompletionException.class,
+                () -> userService.getProfileAsync("unknown").join());
+        assertInstanceOf(IllegalArgumentException.class, e.getCause());
+        verify(userRepository, never()).loadUserStatisticsAsync(any());
+    }
+
+    @Test
+    void getUserId_ExistingUser_DoesNotLoadStatistics() throws Exception {
+        when(userRepository.findIdByUsername("testuser")).thenReturn(7);
+
+        assertEquals(7, userService.getUserId("testuser"));
+        verify(userRepository, never()).loadUserStatistics(any());
+    }
+
+    @Test
+    void getUserId_UnknownUser_ThrowsIllegalArgumentException() throws Exception {
+        when(userRepository.findIdByUsername("unknown")).thenReturn(null);
+
+        assertThrows(IllegalArgumentException.class, () -> userService.getUserId("unknown"));
+    }
+
     @Test
     void updateProfile_OwnProfile_UpdatesSuccessfully() throws Exception {
         // Arrange